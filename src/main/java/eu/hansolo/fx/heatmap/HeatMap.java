@@ -18,7 +18,8 @@ package eu.hansolo.fx.heatmap;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.nio.IntBuffer;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -28,15 +29,13 @@ import javafx.embed.swing.SwingFXUtils;
 import javafx.geometry.Point2D;
 import javafx.scene.Node;
 import javafx.scene.SnapshotParameters;
-import javafx.scene.canvas.Canvas;
-import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
-import javafx.scene.image.PixelReader;
+import javafx.scene.image.PixelBuffer;
+import javafx.scene.image.PixelFormat;
 import javafx.scene.image.PixelWriter;
 import javafx.scene.image.WritableImage;
 import javafx.scene.paint.Color;
-import javafx.scene.paint.LinearGradient;
 import javafx.scene.paint.Stop;
 import javax.imageio.ImageIO;
 
@@ -46,21 +45,26 @@ import javax.imageio.ImageIO;
  * User: hansolo
  * Date: 27.12.12
  * Time: 05:46
+ * 
+ * TFE, 20261019: events are accumulated as kernel density in the background by KernelDensityRenderer
+ * instead of drawing an image per event on a canvas and recoloring a snapshot of it.
  */
 public class HeatMap extends ImageView {
     private static final SnapshotParameters SNAPSHOT_PARAMETERS = new SnapshotParameters();
-    private List<HeatMapEvent>  eventList;
+    private static final int    INITIAL_CAPACITY = 1024;
+    private double[]            eventX;
+    private double[]            eventY;
+    private int                 eventCount;
     private Map<String, Image>  eventImages;
     private ColorMapping        colorMapping;
-    private LinearGradient      mappingGradient;
+    private int[]               colorTable;
     private boolean             fadeColors;
     private double              radius;
     private OpacityDistribution opacityDistribution;
-    private Image               eventImage;
-    private Canvas              monochrome;
-    private GraphicsContext     ctx;
-    private WritableImage       monochromeImage;
-    private WritableImage       heatMap;
+    private int                 width;
+    private int                 height;
+    private final KernelDensityRenderer renderer = new KernelDensityRenderer();
+    private PixelBuffer<IntBuffer> pixelBuffer;
 
 
     // ******************** Constructors **************************************
@@ -79,18 +83,17 @@ public class HeatMap extends ImageView {
     public HeatMap(final double WIDTH, final double HEIGHT, ColorMapping COLOR_MAPPING, final double EVENT_RADIUS, final boolean FADE_COLORS, final double HEAT_MAP_OPACITY, final OpacityDistribution OPACITY_DISTRIBUTION) {
         super();
         SNAPSHOT_PARAMETERS.setFill(Color.TRANSPARENT);
-        eventList           = new ArrayList<>();
+        eventX              = new double[INITIAL_CAPACITY];
+        eventY              = new double[INITIAL_CAPACITY];
+        eventCount          = 0;
         eventImages         = new HashMap<>();
         colorMapping        = COLOR_MAPPING;
-        mappingGradient     = colorMapping.mapping;
+        colorTable          = KernelDensityRenderer.getColorTable(colorMapping);
         fadeColors          = FADE_COLORS;
         radius              = EVENT_RADIUS;
         opacityDistribution = OPACITY_DISTRIBUTION;
-        eventImage          = createEventImage(radius, opacityDistribution);
-        monochrome          = new Canvas(WIDTH, HEIGHT);
-        ctx                 = monochrome.getGraphicsContext2D();
-        monochromeImage     = new WritableImage((int) WIDTH, (int) HEIGHT);
-        setImage(heatMap);
+        width               = (int) WIDTH;
+        height              = (int) HEIGHT;
         setMouseTransparent(true);
         setOpacity(HEAT_MAP_OPACITY);
         registerListeners();
@@ -110,8 +113,7 @@ public class HeatMap extends ImageView {
      */
     public void addEvents(final Point2D... EVENTS) {
         for (Point2D event : EVENTS) {
-            eventList.add(new HeatMapEvent(event.getX(), event.getY(), radius, opacityDistribution));
-            ctx.drawImage(eventImage, event.getX() - radius, event.getY() - radius);
+            storeEvent(event.getX(), event.getY());
         }
         updateHeatMap();
     }
@@ -122,15 +124,28 @@ public class HeatMap extends ImageView {
      * @param EVENTS
      */
     public void addEvents(final List<Point2D> EVENTS) {
-        EVENTS.forEach(event -> {
-            eventList.add(new HeatMapEvent(event.getX(), event.getY(), radius, opacityDistribution));
-            ctx.drawImage(eventImage, event.getX() - radius, event.getY() - radius);
-        });
+        EVENTS.forEach(event -> storeEvent(event.getX(), event.getY()));
+        updateHeatMap();
+    }
+
+    /**
+     * Add events given as arrays of coordinates and update the heatmap
+     * after all events have been added - avoids a Point2D per event
+     * @param X
+     * @param Y
+     * @param COUNT number of events to add
+     */
+    public void addEvents(final double[] X, final double[] Y, final int COUNT) {
+        ensureCapacity(eventCount + COUNT);
+        System.arraycopy(X, 0, eventX, eventCount, COUNT);
+        System.arraycopy(Y, 0, eventY, eventCount, COUNT);
+        eventCount += COUNT;
         updateHeatMap();
     }
 
     /**
      * Visualizes an event with the given radius and opacity gradient
+     * TFE, 20261019: all events share the kernel of the heat map - radius and gradient are ignored
      * @param X
      * @param Y
      * @param OFFSET_X
@@ -139,14 +154,15 @@ public class HeatMap extends ImageView {
      * @param OPACITY_GRADIENT
      */
     public void addEvent(final double X, final double Y, final double OFFSET_X, final double OFFSET_Y, final double RADIUS, final OpacityDistribution OPACITY_GRADIENT) {
-        eventImage = createEventImage(RADIUS, OPACITY_GRADIENT);
-        addEvent(X, Y, eventImage, OFFSET_X, OFFSET_Y);
+        storeEvent(X, Y);
+        updateHeatMap();
     }
 
     /**
      * Visualizes an event with a given image at the given position and with
      * the given offset. So one could use different weighted images for different
      * kinds of events (e.g. important events more opaque as unimportant events)
+     * TFE, 20261019: all events share the kernel of the heat map - the event is placed at the center of the image
      * @param X
      * @param Y
      * @param EVENT_IMAGE
@@ -154,8 +170,7 @@ public class HeatMap extends ImageView {
      * @param OFFSET_Y
      */
     public void addEvent(final double X, final double Y, final Image EVENT_IMAGE, final double OFFSET_X, final double OFFSET_Y) {
-        eventList.add(new HeatMapEvent(X, Y, radius, opacityDistribution));
-        ctx.drawImage(EVENT_IMAGE, X - OFFSET_X, Y - OFFSET_Y);
+        storeEvent(X - OFFSET_X + EVENT_IMAGE.getWidth() / 2, Y - OFFSET_Y + EVENT_IMAGE.getHeight() / 2);
         updateHeatMap();
     }
 
@@ -166,16 +181,15 @@ public class HeatMap extends ImageView {
      * @param Y
      */
     public void addEvent(final double X, final double Y) {
-        addEvent(X, Y, eventImage, radius, radius);
+        storeEvent(X, Y);
+        updateHeatMap();
     }
 
     /**
      * Calling this method will lead to a clean new heat map without any data
      */
     public void clearHeatMap() {
-        eventList.clear();
-        ctx.clearRect(0, 0, monochrome.getWidth(), monochrome.getHeight());
-        monochromeImage = new WritableImage(monochrome.widthProperty().intValue(), monochrome.heightProperty().intValue());
+        eventCount = 0;
         updateHeatMap();
     }
 
@@ -196,8 +210,8 @@ public class HeatMap extends ImageView {
      * @param COLOR_MAPPING
      */
     public void setColorMapping(final ColorMapping COLOR_MAPPING) {
-        colorMapping    = COLOR_MAPPING;
-        mappingGradient = COLOR_MAPPING.mapping;
+        colorMapping = COLOR_MAPPING;
+        colorTable   = KernelDensityRenderer.getColorTable(COLOR_MAPPING);
         updateHeatMap();
     }
 
@@ -241,7 +255,6 @@ public class HeatMap extends ImageView {
      */
     public void setEventRadius(final double RADIUS) {
         radius = RADIUS < 1 ? 1 : RADIUS;
-        eventImage = createEventImage(radius, opacityDistribution);
     }
 
     /**
@@ -264,7 +277,6 @@ public class HeatMap extends ImageView {
      */
     public void setOpacityDistribution(final OpacityDistribution OPACITY_DISTRIBUTION) {
         opacityDistribution = OPACITY_DISTRIBUTION;
-        eventImage          = createEventImage(radius, opacityDistribution);
     }
 
     /**
@@ -354,81 +366,63 @@ public class HeatMap extends ImageView {
      * @param OPACITY_GRADIENT
      */
     public void updateMonochromeMap(final OpacityDistribution OPACITY_GRADIENT) {
-        ctx.clearRect(0, 0, monochrome.getWidth(), monochrome.getHeight());
-        eventList.forEach(event -> {
-            event.setOpacityDistribution(OPACITY_GRADIENT);
-            ctx.drawImage(createEventImage(event.getRadius(), event.getOpacityDistribution()), event.getX() - event.getRadius(), event.getY() - event.getRadius());
-        });
+        opacityDistribution = OPACITY_GRADIENT;
         updateHeatMap();
     }
 
     /**
-     * Recreates the heatmap based on the current monochrome map.
+     * Recreates the heatmap in the background based on the current events.
      * Using this approach makes it easy to change the used color
      * mapping.
      */
     private void updateHeatMap() {
-        monochrome.snapshot(SNAPSHOT_PARAMETERS, monochromeImage);
-        heatMap = new WritableImage(monochromeImage.widthProperty().intValue(), monochromeImage.heightProperty().intValue());
-        Color       colorFromMonoChromeImage;
-        double      brightness;
-        Color       mappedColor;
-        PixelWriter pixelWriter = heatMap.getPixelWriter();
-        PixelReader pixelReader = monochromeImage.getPixelReader();
-        int width  = (int) monochromeImage.getWidth();
-        int height = (int) monochromeImage.getHeight();
-        for (int y = 0 ; y < height ; y++) {
-            for (int x = 0 ; x < width ; x++) {
-                colorFromMonoChromeImage = pixelReader.getColor(x, y);
-                brightness = colorFromMonoChromeImage.getOpacity();
-                mappedColor = getColorAt(mappingGradient, brightness);
-                if (fadeColors) {
-                    pixelWriter.setColor(x, y, Color.color(mappedColor.getRed(), mappedColor.getGreen(), mappedColor.getBlue(), brightness));
-                } else {
-                    pixelWriter.setColor(x, y, mappedColor);
-                }
-            }
+        if (width <= 0 || height <= 0) {
+            return;
         }
-        setImage(heatMap);
+        
+        // the renderer gets its own copy - we might add events while it is running
+        renderer.renderAsync(
+                Arrays.copyOf(eventX, eventCount), Arrays.copyOf(eventY, eventCount), eventCount, 
+                width, height, radius, opacityDistribution, colorTable, fadeColors, 
+                (frame) -> Platform.runLater(() -> showFrame(frame)));
     }
-
-    /**
-     * Calculates the color in a linear gradient at the given fraction
-     * @param GRADIENT
-     * @param FRACTION
-     * @return the color in a linear gradient at the given fraction
-     */
-    private Color getColorAt(final LinearGradient GRADIENT, final double FRACTION) {
-        List<Stop> stops     = GRADIENT.getStops();
-        double     fraction  = FRACTION < 0f ? 0f : (FRACTION > 1 ? 1 : FRACTION);
-        Stop       lowerStop = new Stop(0.0, stops.get(0).getColor());
-        Stop       upperStop = new Stop(1.0, stops.get(stops.size() - 1).getColor());
-
-        for (Stop stop : stops) {
-            double currentFraction = stop.getOffset();
-            if (Double.compare(currentFraction, fraction) == 0) {
-                return stop.getColor();
-            } else if (Double.compare(currentFraction, fraction) < 0) {
-                lowerStop = new Stop(currentFraction, stop.getColor());
-            } else {
-                upperStop = new Stop(currentFraction, stop.getColor());
-                break;
-            }
+    
+    private void showFrame(final KernelDensityRenderer.Frame FRAME) {
+        if (pixelBuffer == null || pixelBuffer.getWidth() != FRAME.getWidth() || pixelBuffer.getHeight() != FRAME.getHeight()) {
+            pixelBuffer = new PixelBuffer<>(FRAME.getWidth(), FRAME.getHeight(), IntBuffer.allocate(FRAME.getWidth() * FRAME.getHeight()), PixelFormat.getIntArgbPreInstance());
+            setImage(new WritableImage(pixelBuffer));
         }
+        
+        // only copy here - all the work has been done in the background
+        pixelBuffer.updateBuffer(buffer -> {
+            final IntBuffer pixels = buffer.getBuffer();
+            pixels.clear();
+            pixels.put(FRAME.getPixels());
+            pixels.rewind();
+            return null;
+        });
+    }
 
-        double interpolationFraction = (fraction - lowerStop.getOffset()) / (upperStop.getOffset() - lowerStop.getOffset());
-        return (Color) Interpolator.LINEAR.interpolate(lowerStop.getColor(), upperStop.getColor(), interpolationFraction);
+    private void storeEvent(final double X, final double Y) {
+        ensureCapacity(eventCount + 1);
+        eventX[eventCount] = X;
+        eventY[eventCount] = Y;
+        eventCount++;
+    }
+    
+    private void ensureCapacity(final int CAPACITY) {
+        if (CAPACITY > eventX.length) {
+            final int newCapacity = Math.max(CAPACITY, 2 * eventX.length);
+            eventX = Arrays.copyOf(eventX, newCapacity);
+            eventY = Arrays.copyOf(eventY, newCapacity);
+        }
     }
 
     private void resize() {
-        double width  = getFitWidth();
-        double height = getFitHeight();
-
-        monochrome.setWidth(width);
-        monochrome.setHeight(height);
+        width  = (int) getFitWidth();
+        height = (int) getFitHeight();
 
         if (width > 0 && height > 0) {
-            monochromeImage = new WritableImage(monochrome.widthProperty().intValue(), monochrome.heightProperty().intValue());
             updateHeatMap();
         }
     }
@@ -0,0 +1,298 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package eu.hansolo.fx.heatmap;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+import javafx.animation.Interpolator;
+import javafx.scene.paint.Color;
+import javafx.scene.paint.LinearGradient;
+import javafx.scene.paint.Stop;
+
+/**
+ * Kernel density estimation of heat map events into an ARGB pixel array - to be shown via a PixelBuffer.
+ * 
+ * Events are counted on a float grid with the size of the heat map. The grid is then blurred with a 
+ * separable gaussian kernel - one pass for rows & one for columns, each in parallel. So the cost is 
+ * linear in the number of events with a tiny constant plus a fixed cost per pixel.
+ * 
+ * The kernel has a peak of one and overlapping events add up like transparent layers: 
+ * brightness = 1 - (1 - 0.9)^density. So a single event looks the same as in the original hansolo heat map.
+ * 
+ * The size of the kernel follows the opacity distribution: the gaussian is half as bright as its center 
+ * where the distribution drops to half of its maximum.
+ *
+ * @author thomas
+ */
+public class KernelDensityRenderer {
+    // brightness in the center of a single event
+    public final static double PEAK_BRIGHTNESS = 0.9;
+    // half width at half maximum of a gaussian in units of sigma
+    private final static double HWHM = Math.sqrt(2.0 * Math.log(2.0));
+    // kernel is cut off after that many sigma
+    private final static double KERNEL_WIDTH = 3.0;
+    
+    private final static ExecutorService executorService = Executors.newSingleThreadExecutor(
+            (Runnable r) -> {
+                final Thread thread = new Thread(r, "KernelDensityRenderer");
+                thread.setDaemon(true);
+                return thread;
+            });
+    
+    private final AtomicLong lastRequest = new AtomicLong(0);
+    
+    /**
+     * Result of a rendering.
+     */
+    public static class Frame {
+        private final int width;
+        private final int height;
+        private final int[] pixels;
+        
+        private Frame(final int w, final int h) {
+            width = w;
+            height = h;
+            pixels = new int[w * h];
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        /**
+         * Premultiplied ARGB pixels.
+         * 
+         * @return the pixels
+         */
+        public int[] getPixels() {
+            return pixels;
+        }
+    }
+    
+    /**
+     * Render in the background - only the latest request is calculated and handed to the callback.
+     * 
+     * @param x x coordinates of events - not changed afterwards by the caller
+     * @param y y coordinates of events - not changed afterwards by the caller
+     * @param count number of events
+     * @param width width of the heat map
+     * @param height height of the heat map
+     * @param radius event radius
+     * @param opacityDistribution opacity distribution for the size of the kernel
+     * @param colors color lookup table from getColorTable()
+     * @param fadeColors use brightness as opacity
+     * @param callback called from the background thread with the result
+     */
+    public void renderAsync(
+            final double[] x, final double[] y, final int count, 
+            final int width, final int height, 
+            final double radius, final OpacityDistribution opacityDistribution, 
+            final int[] colors, final boolean fadeColors,
+            final Consumer<Frame> callback) {
+        final long request = lastRequest.incrementAndGet();
+        
+        executorService.submit(() -> {
+            if (request != lastRequest.get()) {
+                // someone was faster
+                return;
+            }
+            final Frame frame = render(x, y, count, width, height, radius, opacityDistribution, colors, fadeColors);
+            if (request != lastRequest.get()) {
+                return;
+            }
+            callback.accept(frame);
+        });
+    }
+    
+    public Frame render(
+            final double[] x, final double[] y, final int count, 
+            final int width, final int height, 
+            final double radius, final OpacityDistribution opacityDistribution, 
+            final int[] colors, final boolean fadeColors) {
+        final Frame frame = new Frame(width, height);
+        if (width <= 0 || height <= 0) {
+            return frame;
+        }
+        
+        final float[] kernel = getKernel(radius, opacityDistribution);
+        final int kernelRadius = kernel.length - 1;
+
+        // 1) count events per pixel
+        final float[] density = new float[width * height];
+        final boolean[] rowUsed = new boolean[height];
+        for (int i = 0; i < count; i++) {
+            final int col = (int) Math.floor(x[i]);
+            final int row = (int) Math.floor(y[i]);
+            if (col >= 0 && col < width && row >= 0 && row < height) {
+                density[row * width + col] += 1.0f;
+                rowUsed[row] = true;
+            }
+        }
+        
+        // 2) blur rows - only where there is something to blur
+        final float[] temp = new float[width * height];
+        IntStream.range(0, height).parallel().forEach((row) -> {
+            if (!rowUsed[row]) {
+                return;
+            }
+            final int offset = row * width;
+            for (int col = 0; col < width; col++) {
+                final float value = density[offset + col];
+                if (value == 0.0f) {
+                    continue;
+                }
+                final int from = Math.max(0, col - kernelRadius);
+                final int to = Math.min(width - 1, col + kernelRadius);
+                for (int k = from; k <= to; k++) {
+                    temp[offset + k] += value * kernel[Math.abs(k - col)];
+                }
+            }
+        });
+        
+        // 3) blur columns & map to colors
+        final double logBase = Math.log(1.0 - PEAK_BRIGHTNESS);
+        final int[] pixels = frame.getPixels();
+        IntStream.range(0, width).parallel().forEach((col) -> {
+            for (int row = 0; row < height; row++) {
+                final int from = Math.max(0, row - kernelRadius);
+                final int to = Math.min(height - 1, row + kernelRadius);
+                float value = 0.0f;
+                for (int k = from; k <= to; k++) {
+                    value += temp[k * width + col] * kernel[Math.abs(k - row)];
+                }
+                
+                final double brightness = (value > 0.0f) ? 1.0 - Math.exp(logBase * value) : 0.0;
+                pixels[row * width + col] = getPixel(colors, brightness, fadeColors);
+            }
+        });
+        
+        return frame;
+    }
+    
+    /**
+     * Cancel all pending requests.
+     */
+    public void cancel() {
+        lastRequest.incrementAndGet();
+    }
+    
+    /**
+     * One half of the separable kernel, starting at the center.
+     * 
+     * @param radius event radius
+     * @param opacityDistribution opacity distribution of an event
+     * @return kernel values
+     */
+    public static float[] getKernel(final double radius, final OpacityDistribution opacityDistribution) {
+        final double sigma = Math.max(getHalfWidth(opacityDistribution) * Math.max(radius, 1.0) / HWHM, 0.5);
+        final int kernelRadius = (int) Math.ceil(Math.min(KERNEL_WIDTH * sigma, Math.max(radius, 1.0)));
+        
+        final float[] result = new float[kernelRadius + 1];
+        for (int i = 0; i <= kernelRadius; i++) {
+            result[i] = (float) Math.exp(-0.5 * i * i / (sigma * sigma));
+        }
+        return result;
+    }
+    
+    // fraction of the radius where the distribution has dropped to half of its maximum
+    private static double getHalfWidth(final OpacityDistribution opacityDistribution) {
+        final double[] distribution = opacityDistribution.distribution;
+        final double half = distribution[0] / 2.0;
+        for (int i = 1; i < distribution.length; i++) {
+            if (distribution[i] <= half) {
+                final double step = 1.0 / (distribution.length - 1);
+                return (i - 1 + (distribution[i - 1] - half) / (distribution[i - 1] - distribution[i])) * step;
+            }
+        }
+        return 1.0;
+    }
+    
+    /**
+     * Lookup table of 256 opaque colors along the gradient of a color mapping.
+     * 
+     * @param colorMapping color mapping to use
+     * @return ARGB colors
+     */
+    public static int[] getColorTable(final ColorMapping colorMapping) {
+        final int[] result = new int[256];
+        for (int i = 0; i < result.length; i++) {
+            final Color color = getColorAt(colorMapping.mapping, i / 255.0);
+            result[i] = 0xFF000000 | 
+                    ((int) Math.round(color.getRed() * 255) << 16) | 
+                    ((int) Math.round(color.getGreen() * 255) << 8) | 
+                    (int) Math.round(color.getBlue() * 255);
+        }
+        return result;
+    }
+    
+    private static int getPixel(final int[] colors, final double brightness, final boolean fadeColors) {
+        final int color = colors[(int) Math.round(Math.max(0.0, Math.min(brightness, 1.0)) * 255)];
+        if (!fadeColors) {
+            return color;
+        }
+        
+        // premultiplied alpha
+        final int alpha = (int) Math.round(brightness * 255);
+        final int red = ((color >> 16) & 0xFF) * alpha / 255;
+        final int green = ((color >> 8) & 0xFF) * alpha / 255;
+        final int blue = (color & 0xFF) * alpha / 255;
+        return (alpha << 24) | (red << 16) | (green << 8) | blue;
+    }
+
+    // color in a linear gradient at the given fraction - without the need for the fx thread
+    private static Color getColorAt(final LinearGradient gradient, final double fraction) {
+        final List<Stop> stops = gradient.getStops();
+        final double value = Math.max(0.0, Math.min(fraction, 1.0));
+        Stop lowerStop = new Stop(0.0, stops.get(0).getColor());
+        Stop upperStop = new Stop(1.0, stops.get(stops.size() - 1).getColor());
+
+        for (Stop stop : stops) {
+            final double offset = stop.getOffset();
+            if (Double.compare(offset, value) == 0) {
+                return stop.getColor();
+            } else if (Double.compare(offset, value) < 0) {
+                lowerStop = stop;
+            } else {
+                upperStop = stop;
+                break;
+            }
+        }
+
+        if (upperStop.getOffset() <= lowerStop.getOffset()) {
+            return lowerStop.getColor();
+        }
+        final double interpolation = (value - lowerStop.getOffset()) / (upperStop.getOffset() - lowerStop.getOffset());
+        return (Color) Interpolator.LINEAR.interpolate(lowerStop.getColor(), upperStop.getColor(), interpolation);
+    }
+}
@@ -225,6 +225,28 @@ public class EarthGeometry {
         return distance(c1, c2);
     }
     
+    /**
+     * Haversine distance on the average sphere without creating any objects.
+     * 
+     * @param latitude1 latitude of the first point
+     * @param longitude1 longitude of the first point
+     * @param latitude2 latitude of the second point
+     * @param longitude2 longitude of the second point
+     * @return the distance, in meters
+     */
+    public static double distance2D(final double latitude1, final double longitude1, final double latitude2, final double longitude2) {
+        final double lat1 = FastMath.toRadians(latitude1);
+        final double lat2 = FastMath.toRadians(latitude2);
+        
+        final double sinlat212 = FastMath.sin((lat2 - lat1) / 2.0);
+        final double sinlon212 = FastMath.sin(FastMath.toRadians(longitude2 - longitude1) / 2.0);
+        
+        final double a =
+                sinlat212 * sinlat212
+                + FastMath.cos(lat1) * FastMath.cos(lat2) * sinlon212 * sinlon212;
+        return 2.0 * FastMath.atan2(FastMath.sqrt(a), FastMath.sqrt(1.0-a)) * EarthAverageRadius;
+    }
+    
     public static double elevationAngle(final IGeoCoordinate c1, final IGeoCoordinate c2) {
         final double elevation_diff = c2.getElevation() - c1.getElevation();
         if (elevation_diff == 0.0) {
@@ -517,11 +539,31 @@ public class EarthGeometry {
     public static IGeoCoordinate destinationPoint(final IGeoCoordinate point, final double distance, final double bearing) {
         final IGeoCoordinate result = point.cloneMe();
         
+        // TFE, 20261019: use primitive version - also used by the horizon engine
+        final double[] latLon = new double[2];
+        destinationPoint(point.getLatitude(), point.getLongitude(), distance, bearing, latLon);
+        
+        result.setLatitude(latLon[0]);
+        result.setLongitude(latLon[1]);
+
+        return result;
+    }
+    
+    /**
+     * Destination point without creating any objects.
+     * 
+     * @param latitude latitude of the start point
+     * @param longitude longitude of the start point
+     * @param distance distance in meters
+     * @param bearing bearing in degrees
+     * @param result array to store latitude & longitude of the destination
+     */
+    public static void destinationPoint(final double latitude, final double longitude, final double distance, final double bearing, final double[] result) {
         final double delta = distance / EarthAverageRadius;
         final double theta = FastMath.toRadians(bearing);
 
-        final double phi1 = FastMath.toRadians(point.getLatitude());
-        final double lambda1 = FastMath.toRadians(point.getLongitude());
+        final double phi1 = FastMath.toRadians(latitude);
+        final double lambda1 = FastMath.toRadians(longitude);
         
         final double sinphi2 = FastMath.sin(phi1) * FastMath.cos(delta) + FastMath.cos(phi1) * FastMath.sin(delta) * FastMath.cos(theta);
         final double phi2 = FastMath.asin(sinphi2);
@@ -530,9 +572,7 @@ public class EarthGeometry {
         final double x = Math.cos(delta) - Math.sin(phi1) * sinphi2;
         final double lambda2 = lambda1 + FastMath.atan2(y, x);        
         
-        result.setLatitude(FastMath.toDegrees(phi2));
-        result.setLongitude(FastMath.toDegrees(lambda2));
-
-        return result;
+        result[0] = FastMath.toDegrees(phi2);
+        result[1] = FastMath.toDegrees(lambda2);
     }
-}
\ No newline at end of file
+}
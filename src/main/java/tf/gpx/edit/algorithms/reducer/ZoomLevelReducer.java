@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.gpx.edit.algorithms.reducer;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import tf.gpx.edit.algorithms.EarthGeometry;
+import tf.gpx.edit.items.GPXMeasurable;
+import tf.gpx.edit.items.GPXWaypoint;
+
+/**
+ * Level of detail for showing tracks on a map.
+ * 
+ * For each zoom level the waypoints are reduced with Douglas-Peucker using the size of a pixel as tolerance.
+ * That keeps the shape of the track as it would be drawn anyways - but with only a fraction of the points when zoomed out.
+ * 
+ * Results are cached per item and zoom level and invalidated once the waypoints of an item change.
+ * 
+ * Pixel size: https://wiki.openstreetmap.org/wiki/Zoom_levels
+ *
+ * @author thomas
+ */
+public class ZoomLevelReducer {
+    private final static ZoomLevelReducer INSTANCE = new ZoomLevelReducer();
+    
+    public final static int MIN_ZOOM = 0;
+    public final static int MAX_ZOOM = 20;
+    
+    // meters per pixel at zoom level 0 at the equator for 256 pixel tiles
+    private final static double METERS_PER_PIXEL_ZOOM_0 = 156543.03392;
+    // deviation of less than one pixel can't be seen
+    private final static double PIXEL_TOLERANCE = 1.0;
+    
+    private static class LevelOfDetail {
+        private final long fingerprint;
+        private final Boolean[][] keepPerZoom = new Boolean[MAX_ZOOM - MIN_ZOOM + 1][];
+        
+        private LevelOfDetail(final long print) {
+            fingerprint = print;
+        }
+    }
+
+    // weak keys: no need to keep anything once the item is gone
+    private final Map<GPXMeasurable, LevelOfDetail> lodCache = new WeakHashMap<>();
+
+    private ZoomLevelReducer() {
+        super();
+        // Exists only to defeat instantiation.
+    }
+
+    public static ZoomLevelReducer getInstance() {
+        return INSTANCE;
+    }
+    
+    public static int clampZoom(final int zoom) {
+        return Math.max(MIN_ZOOM, Math.min(MAX_ZOOM, zoom));
+    }
+    
+    /**
+     * Size of a pixel on the map in meters.
+     *
+     * @param zoom zoom level
+     * @param latitude latitude
+     * @return size of a pixel in meters
+     */
+    public static double getMetersPerPixel(final int zoom, final double latitude) {
+        return METERS_PER_PIXEL_ZOOM_0 * Math.cos(Math.toRadians(latitude)) / Math.pow(2, zoom);
+    }
+    
+    /**
+     * Waypoints of the item to show for the given zoom level.
+     *
+     * @param item track segment / route / ...
+     * @param zoom zoom level
+     * @return the points to keep from the waypoints of the item
+     */
+    public synchronized Boolean[] apply(final GPXMeasurable item, final int zoom) {
+        final List<GPXWaypoint> waypoints = item.getGPXWaypoints();
+        final int zoomLevel = clampZoom(zoom);
+        
+        final long fingerprint = getFingerprint(waypoints);
+        LevelOfDetail lod = lodCache.get(item);
+        if (lod == null || lod.fingerprint != fingerprint) {
+            // new item or waypoints have changed
+            lod = new LevelOfDetail(fingerprint);
+            lodCache.put(item, lod);
+        }
+        
+        if (lod.keepPerZoom[zoomLevel - MIN_ZOOM] == null) {
+            lod.keepPerZoom[zoomLevel - MIN_ZOOM] = reduce(waypoints, zoomLevel);
+        }
+        
+        return lod.keepPerZoom[zoomLevel - MIN_ZOOM];
+    }
+    
+    /**
+     * Find the highest zoom level up to the given one where the number of points to show doesn't exceed the limit.
+     *
+     * @param items track segments / routes / ...
+     * @param zoom preferred zoom level
+     * @param maxPoints maximum number of points to show
+     * @return zoom level to use for the items
+     */
+    public synchronized int getZoomForLimit(final List<? extends GPXMeasurable> items, final int zoom, final int maxPoints) {
+        int zoomLevel = clampZoom(zoom);
+        
+        while (zoomLevel > MIN_ZOOM) {
+            int count = 0;
+            for (GPXMeasurable item : items) {
+                count += countKeep(apply(item, zoomLevel));
+                if (count > maxPoints) {
+                    break;
+                }
+            }
+            if (count <= maxPoints) {
+                break;
+            }
+            zoomLevel--;
+        }
+        
+        return zoomLevel;
+    }
+    
+    public synchronized void clear() {
+        lodCache.clear();
+    }
+    
+    public static int countKeep(final Boolean[] keep) {
+        int result = 0;
+        for (Boolean value : keep) {
+            if (value) {
+                result++;
+            }
+        }
+        return result;
+    }
+    
+    private static Boolean[] reduce(final List<GPXWaypoint> waypoints, final int zoom) {
+        if (waypoints.size() <= 2) {
+            final Boolean[] keep = new Boolean[waypoints.size()];
+            Arrays.fill(keep, true);
+            return keep;
+        }
+        
+        // pixel size depends on latitude - use the middle of the waypoints, good enough for anything but the poles
+        final double latitude = (waypoints.get(0).getLatitude() + waypoints.get(waypoints.size() - 1).getLatitude()) / 2.0;
+        final double epsilon = PIXEL_TOLERANCE * getMetersPerPixel(zoom, latitude);
+
+        // Douglas-Peucker preserves the shape of the track - and use a fast distance calculation since we only need pixel precision
+        return DouglasPeuckerReducer.getInstance().apply(waypoints, epsilon, EarthGeometry.DistanceAlgorithm.SmallDistanceApproximation);
+    }
+    
+    public static long getFingerprint(final List<GPXWaypoint> waypoints) {
+        // much cheaper than any reduction - and waypoints might have been moved, added, deleted, ...
+        long result = waypoints.size();
+        for (GPXWaypoint waypoint : waypoints) {
+            result = 31 * result + Double.doubleToLongBits(waypoint.getLatitude());
+            result = 31 * result + Double.doubleToLongBits(waypoint.getLongitude());
+        }
+        return result;
+    }
+}
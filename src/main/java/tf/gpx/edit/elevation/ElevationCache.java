@@ -0,0 +1,334 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.gpx.edit.elevation;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.apache.commons.lang3.tuple.Pair;
+import tf.gpx.edit.helper.GPXEditorPreferences;
+import tf.gpx.edit.leafletmap.IGeoCoordinate;
+
+/**
+ * Persistent cache for elevations retrieved from remote services.
+ *
+ * Coordinates are quantized to 1e-5 degrees (approx. 1m) and used as key.
+ * The cache is kept in memory as LRU map and written to disk as an append-only file of (key, elevation) records.
+ * Once the file contains too many stale records it gets compacted by rewriting the current content.
+ *
+ * @author thomas
+ */
+public class ElevationCache {
+    // this is a singleton for everyones use
+    // http://www.javaworld.com/article/2073352/core-java/simply-singleton.html
+    private final static ElevationCache INSTANCE = new ElevationCache(
+            Paths.get(GPXEditorPreferences.CACHE_PATH.getAsString(), ElevationCache.CACHE_FILE_NAME),
+            GPXEditorPreferences.ELEVATION_CACHE_SIZE.getAsType());
+
+    public final static String CACHE_FILE_NAME = "elevation.cache";
+    public final static int DEFAULT_MAX_ENTRIES = 1000000;
+
+    // 1e-5 degree is approx. 1m at the equator - more than good enough for remote services
+    public final static double QUANTIZATION = 1e5;
+
+    // compact once the file contains twice as many records as the cache can hold
+    private final static int COMPACTION_FACTOR = 2;
+
+    private final static int FILE_MAGIC = 0x47505845;
+    private final static int FILE_VERSION = 1;
+
+    private final Path cacheFile;
+    private final int maxEntries;
+
+    private final Map<Long, Float> elevationStore;
+    // number of records in the cache file - to decide when to compact
+    private long fileRecords = 0;
+
+    private long hitCount = 0;
+    private long missCount = 0;
+
+    private boolean initDone = false;
+
+    public ElevationCache(final Path file, final int maxSize) {
+        cacheFile = file;
+        maxEntries = Math.max(0, maxSize);
+
+        // access ordered map with eviction of the least recently used entries
+        elevationStore = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<Long, Float> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    public static ElevationCache getInstance() {
+        return INSTANCE;
+    }
+
+    public boolean isEnabled() {
+        return maxEntries > 0;
+    }
+
+    public Path getCacheFile() {
+        return cacheFile;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public static long getKeyForCoordinate(final double latitude, final double longitude) {
+        final long latKey = Math.round(latitude * QUANTIZATION);
+        final long lonKey = Math.round(longitude * QUANTIZATION);
+
+        return (latKey << 32) | (lonKey & 0xFFFFFFFFL);
+    }
+
+    public synchronized Pair<Boolean, Double> getElevationForCoordinate(final IGeoCoordinate coord) {
+        return getElevationForCoordinate(coord.getLatitude(), coord.getLongitude());
+    }
+
+    public synchronized Pair<Boolean, Double> getElevationForCoordinate(final double latitude, final double longitude) {
+        if (!isEnabled()) {
+            return Pair.of(false, IElevationProvider.NO_ELEVATION);
+        }
+        initCache();
+
+        final Float elevation = elevationStore.get(getKeyForCoordinate(latitude, longitude));
+        if (elevation != null) {
+            hitCount++;
+            return Pair.of(true, elevation.doubleValue());
+        } else {
+            missCount++;
+            return Pair.of(false, IElevationProvider.NO_ELEVATION);
+        }
+    }
+
+    /**
+     * Add all valid elevations to the cache and append them to the cache file.
+     *
+     * @param coords coordinates that have been looked up
+     * @param elevations results of the look up - in the same order as the coordinates
+     */
+    public synchronized void putElevationsForCoordinates(final List<? extends IGeoCoordinate> coords, final List<Pair<Boolean, Double>> elevations) {
+        assert coords.size() == elevations.size();
+
+        if (!isEnabled()) {
+            return;
+        }
+        initCache();
+
+        final Map<Long, Float> newValues = new LinkedHashMap<>();
+        for (int i = 0; i < Math.min(coords.size(), elevations.size()); i++) {
+            final Pair<Boolean, Double> elevation = elevations.get(i);
+            // only cache what we have found - no data might be available later on
+            if (elevation.getLeft()) {
+                final IGeoCoordinate coord = coords.get(i);
+                newValues.put(getKeyForCoordinate(coord.getLatitude(), coord.getLongitude()), elevation.getRight().floatValue());
+            }
+        }
+
+        if (newValues.isEmpty()) {
+            return;
+        }
+        elevationStore.putAll(newValues);
+
+        if (fileRecords + newValues.size() > COMPACTION_FACTOR * maxEntries) {
+            compact();
+        } else {
+            appendToFile(newValues);
+        }
+    }
+
+    /**
+     * Rewrite cache file with the current content of the cache.
+     * Records are written from least to most recently used so that reading them back keeps the LRU order.
+     */
+    public synchronized void compact() {
+        if (!isEnabled()) {
+            return;
+        }
+        initCache();
+
+        try {
+            Files.createDirectories(cacheFile.toAbsolutePath().getParent());
+
+            final Path tempFile = Files.createTempFile(cacheFile.toAbsolutePath().getParent(), CACHE_FILE_NAME, ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile.toFile())))) {
+                writeHeader(out);
+                for (Map.Entry<Long, Float> entry : elevationStore.entrySet()) {
+                    writeRecord(out, entry.getKey(), entry.getValue());
+                }
+            }
+            Files.move(tempFile, cacheFile, StandardCopyOption.REPLACE_EXISTING);
+
+            fileRecords = elevationStore.size();
+        } catch (IOException ex) {
+            Logger.getLogger(ElevationCache.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+
+    public synchronized void clear() {
+        elevationStore.clear();
+        fileRecords = 0;
+        resetStatistics();
+
+        try {
+            Files.deleteIfExists(cacheFile);
+        } catch (IOException ex) {
+            Logger.getLogger(ElevationCache.class.getName()).log(Level.SEVERE, null, ex);
+        }
+        // nothing left to read
+        initDone = true;
+    }
+
+    public synchronized int size() {
+        initCache();
+        return elevationStore.size();
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized double getHitRate() {
+        final long total = hitCount + missCount;
+        return (total > 0) ? (1.0 * hitCount) / total : 0.0;
+    }
+
+    public synchronized void resetStatistics() {
+        hitCount = 0;
+        missCount = 0;
+    }
+
+    public synchronized long getFileRecords() {
+        initCache();
+        return fileRecords;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("ElevationCache: %d entries, %d hits, %d misses, hit rate %.1f%%", elevationStore.size(), hitCount, missCount, getHitRate() * 100.0);
+    }
+
+    private void initCache() {
+        if (initDone) {
+            return;
+        }
+        initDone = true;
+
+        final File file = cacheFile.toFile();
+        if (!file.exists() || !file.isFile() || !file.canRead()) {
+            return;
+        }
+
+        boolean validFile = true;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != FILE_MAGIC || in.readInt() != FILE_VERSION) {
+                validFile = false;
+            } else {
+                // read until we run out of complete records - a crash while appending might have left a partial one
+                while (true) {
+                    final long key = in.readLong();
+                    final float elevation = in.readFloat();
+
+                    elevationStore.put(key, elevation);
+                    fileRecords++;
+                }
+            }
+        } catch (EOFException ex) {
+            // done reading
+        } catch (IOException ex) {
+            Logger.getLogger(ElevationCache.class.getName()).log(Level.SEVERE, null, ex);
+        }
+
+        if (!validFile) {
+            Logger.getLogger(ElevationCache.class.getName()).log(Level.WARNING, "Ignoring invalid elevation cache file: {0}", cacheFile);
+            elevationStore.clear();
+            fileRecords = 0;
+            try {
+                Files.deleteIfExists(cacheFile);
+            } catch (IOException ex) {
+                Logger.getLogger(ElevationCache.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        } else if (fileRecords > COMPACTION_FACTOR * maxEntries) {
+            compact();
+        }
+    }
+
+    private void appendToFile(final Map<Long, Float> values) {
+        try {
+            final boolean newFile = !cacheFile.toFile().exists();
+            if (newFile) {
+                Files.createDirectories(cacheFile.toAbsolutePath().getParent());
+            }
+
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(cacheFile.toFile(), true)))) {
+                if (newFile) {
+                    writeHeader(out);
+                    fileRecords = 0;
+                }
+                for (Map.Entry<Long, Float> entry : values.entrySet()) {
+                    writeRecord(out, entry.getKey(), entry.getValue());
+                }
+            }
+
+            fileRecords += values.size();
+        } catch (IOException ex) {
+            Logger.getLogger(ElevationCache.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+
+    private static void writeHeader(final DataOutputStream out) throws IOException {
+        out.writeInt(FILE_MAGIC);
+        out.writeInt(FILE_VERSION);
+    }
+
+    private static void writeRecord(final DataOutputStream out, final long key, final float elevation) throws IOException {
+        out.writeLong(key);
+        out.writeFloat(elevation);
+    }
+}
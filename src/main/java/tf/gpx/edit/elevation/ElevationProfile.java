@@ -0,0 +1,292 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.gpx.edit.elevation;
+
+import java.util.List;
+import tf.gpx.edit.algorithms.EarthGeometry;
+import tf.gpx.edit.items.GPXMeasurable;
+import tf.gpx.edit.leafletmap.IGeoCoordinate;
+
+/**
+ * Elevation profile along a polyline, sampled at a fixed spacing from the SRTM data.
+ * 
+ * Unlike assigning elevations this doesn't depend on the points of the polyline: 
+ * samples are taken every spacing meters from the start plus the end point. 
+ * That way a route with only a few points gets a realistic profile as well.
+ * 
+ * All lookups are done in one go via arrays - consecutive samples use the same SRTM tile. 
+ * Results are primitive arrays to be used directly for charts & statistics.
+ * 
+ * @author thomas
+ */
+public class ElevationProfile {
+    public final static double DEFAULT_SPACING = 10.0;
+    
+    private final double[] pointLatitudes;
+    private final double[] pointLongitudes;
+    private final double spacing;
+    
+    private final ElevationProvider elevationService;
+    
+    // the samples
+    private int sampleCount = 0;
+    private double[] distances = new double[0];
+    private double[] latitudes = new double[0];
+    private double[] longitudes = new double[0];
+    private double[] elevations = new double[0];
+    private boolean[] found = new boolean[0];
+    private int foundCount = 0;
+    
+    // the statistics
+    private double length = 0.0;
+    private double ascent = 0.0;
+    private double descent = 0.0;
+    private double minElevation = IElevationProvider.NO_ELEVATION;
+    private double maxElevation = IElevationProvider.NO_ELEVATION;
+
+    /**
+     * Profile along the waypoints of a route or track segment.
+     * 
+     * @param item the route or track segment
+     * @param space distance between samples in meters
+     */
+    public ElevationProfile(final GPXMeasurable item, final double space) {
+        this(item.getGPXWaypoints(), space);
+    }
+    
+    public ElevationProfile(final List<? extends IGeoCoordinate> polyline, final double space) {
+        this(polyline, space, new SRTMDataOptions());
+    }
+    
+    public ElevationProfile(final List<? extends IGeoCoordinate> polyline, final double space, final SRTMDataOptions srtmOpts) {
+        this(getLatitudes(polyline), getLongitudes(polyline), space, srtmOpts);
+    }
+
+    /**
+     * Profile along a polyline given as arrays - e.g. while it is edited on the map.
+     * 
+     * @param lats latitudes of the points of the polyline
+     * @param lons longitudes of the points of the polyline
+     * @param space distance between samples in meters
+     * @param srtmOpts SRTM data to use
+     */
+    public ElevationProfile(final double[] lats, final double[] lons, final double space, final SRTMDataOptions srtmOpts) {
+        assert lats.length == lons.length;
+        
+        if (space <= 0.0) {
+            throw new IllegalArgumentException("Spacing needs to be positive: " + space);
+        }
+        
+        pointLatitudes = lats;
+        pointLongitudes = lons;
+        spacing = space;
+        
+        elevationService = 
+            new ElevationProviderBuilder(
+                    new ElevationProviderOptions(ElevationProviderOptions.LookUpMode.SRTM_ONLY), 
+                    srtmOpts).build();
+    }
+    
+    private static double[] getLatitudes(final List<? extends IGeoCoordinate> polyline) {
+        final double[] result = new double[polyline.size()];
+        int i = 0;
+        for (IGeoCoordinate coord : polyline) {
+            result[i] = coord.getLatitude();
+            i++;
+        }
+        return result;
+    }
+    
+    private static double[] getLongitudes(final List<? extends IGeoCoordinate> polyline) {
+        final double[] result = new double[polyline.size()];
+        int i = 0;
+        for (IGeoCoordinate coord : polyline) {
+            result[i] = coord.getLongitude();
+            i++;
+        }
+        return result;
+    }
+    
+    /**
+     * Sample the polyline and look up the elevations.
+     * 
+     * @return this for chaining
+     */
+    public ElevationProfile calculate() {
+        final int pointCount = pointLatitudes.length;
+
+        // length of each segment of the polyline
+        final double[] segmentLengths = new double[Math.max(0, pointCount - 1)];
+        length = 0.0;
+        for (int i = 0; i < segmentLengths.length; i++) {
+            segmentLengths[i] = EarthGeometry.distance2D(pointLatitudes[i], pointLongitudes[i], pointLatitudes[i+1], pointLongitudes[i+1]);
+            length += segmentLengths[i];
+        }
+        
+        if (pointCount == 0) {
+            sampleCount = 0;
+        } else {
+            // one sample every spacing meters plus the end point - if not already hit
+            sampleCount = (int) Math.floor(length / spacing) + 1;
+            if (length - (sampleCount - 1) * spacing > spacing * 1e-6) {
+                sampleCount++;
+            }
+        }
+        
+        distances = new double[sampleCount];
+        latitudes = new double[sampleCount];
+        longitudes = new double[sampleCount];
+        elevations = new double[sampleCount];
+        found = new boolean[sampleCount];
+        
+        // walk along the segments - interpolation on the segments is linear in lat / lon, good enough for the usual segment lengths
+        int segment = 0;
+        double segmentStart = 0.0;
+        for (int i = 0; i < sampleCount; i++) {
+            final double distance = Math.min(i * spacing, length);
+            distances[i] = distance;
+            
+            while (segment < segmentLengths.length - 1 && segmentStart + segmentLengths[segment] < distance) {
+                segmentStart += segmentLengths[segment];
+                segment++;
+            }
+            
+            if (segmentLengths.length == 0 || segmentLengths[segment] == 0.0) {
+                latitudes[i] = pointLatitudes[segment];
+                longitudes[i] = pointLongitudes[segment];
+            } else {
+                final double fraction = Math.min(1.0, (distance - segmentStart) / segmentLengths[segment]);
+                latitudes[i] = pointLatitudes[segment] + fraction * (pointLatitudes[segment+1] - pointLatitudes[segment]);
+                longitudes[i] = pointLongitudes[segment] + fraction * (pointLongitudes[segment+1] - pointLongitudes[segment]);
+            }
+        }
+        
+        foundCount = elevationService.getSRTMElevationsForCoordinates(latitudes, longitudes, elevations, found);
+
+        calculateStatistics();
+
+        return this;
+    }
+    
+    private void calculateStatistics() {
+        ascent = 0.0;
+        descent = 0.0;
+        minElevation = Double.MAX_VALUE;
+        maxElevation = -Double.MAX_VALUE;
+        
+        // samples without data are simply skipped
+        double lastElevation = Double.NaN;
+        for (int i = 0; i < sampleCount; i++) {
+            if (!found[i]) {
+                continue;
+            }
+            final double elevation = elevations[i];
+
+            minElevation = Math.min(minElevation, elevation);
+            maxElevation = Math.max(maxElevation, elevation);
+            
+            if (!Double.isNaN(lastElevation)) {
+                if (elevation > lastElevation) {
+                    ascent += elevation - lastElevation;
+                } else {
+                    descent += lastElevation - elevation;
+                }
+            }
+            lastElevation = elevation;
+        }
+
+        if (foundCount == 0) {
+            minElevation = IElevationProvider.NO_ELEVATION;
+            maxElevation = IElevationProvider.NO_ELEVATION;
+        }
+    }
+    
+    public double getSpacing() {
+        return spacing;
+    }
+    
+    public int getSampleCount() {
+        return sampleCount;
+    }
+    
+    public int getFoundCount() {
+        return foundCount;
+    }
+    
+    public boolean noElevationData() {
+        return foundCount == 0;
+    }
+    
+    /**
+     * Distance of the samples from the start of the polyline.
+     * 
+     * @return distances in meters
+     */
+    public double[] getDistances() {
+        return distances;
+    }
+    
+    public double[] getLatitudes() {
+        return latitudes;
+    }
+    
+    public double[] getLongitudes() {
+        return longitudes;
+    }
+    
+    /**
+     * Elevations of the samples - NO_ELEVATION where no data is available.
+     * 
+     * @return elevations in meters
+     */
+    public double[] getElevations() {
+        return elevations;
+    }
+    
+    public boolean[] getFound() {
+        return found;
+    }
+    
+    public double getLength() {
+        return length;
+    }
+    
+    public double getCumulativeAscent() {
+        return ascent;
+    }
+    
+    public double getCumulativeDescent() {
+        return descent;
+    }
+    
+    public double getMinElevation() {
+        return minElevation;
+    }
+    
+    public double getMaxElevation() {
+        return maxElevation;
+    }
+}
@@ -26,9 +26,11 @@
 package tf.gpx.edit.elevation;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 import org.apache.commons.lang3.tuple.Pair;
 import tf.gpx.edit.leafletmap.IGeoCoordinate;
 
@@ -94,7 +96,7 @@ public class ElevationProvider implements IElevationProvider {
         // SRTM_LAST + SRTM_NONE: check openelevationservice first for all values 
         if (ElevationProviderOptions.LookUpMode.SRTM_LAST.equals(elevOptions.getLookUpMode()) ||
                 ElevationProviderOptions.LookUpMode.SRTM_NONE.equals(elevOptions.getLookUpMode())) {
-            final List<Pair<Boolean, Double>> elevations = olServices.getElevationsForCoordinates(distinctCoords);
+            final List<Pair<Boolean, Double>> elevations = getRemoteElevationsForCoordinates(distinctCoords);
             int i = 0;
             for (IGeoCoordinate coord: distinctCoords) {
                 coordElevMap.put(coord, elevations.get(i));
@@ -109,11 +111,16 @@ public class ElevationProvider implements IElevationProvider {
         
         // if nothing from srtm service maybe we have a fallback...
         if (ElevationProviderOptions.LookUpMode.SRTM_FIRST.equals(elevOptions.getLookUpMode())) {
-            // possible optimization: collect all coords with missing elevation and use getElevationsForCoordinates
-            for (IGeoCoordinate coord: distinctCoords) {
-                if (!coordElevMap.get(coord).getLeft()) {
-                    coordElevMap.put(coord, olServices.getElevationForCoordinate(coord));
-                }
+            // TFE, 20261019: collect all coords with missing elevation and use getElevationsForCoordinates
+            final List<IGeoCoordinate> missingCoords = distinctCoords.stream().filter((t) -> {
+                return !coordElevMap.get(t).getLeft();
+            }).collect(Collectors.toList());
+            
+            final List<Pair<Boolean, Double>> elevations = getRemoteElevationsForCoordinates(missingCoords);
+            int i = 0;
+            for (IGeoCoordinate coord: missingCoords) {
+                coordElevMap.put(coord, elevations.get(i));
+                i++;
             }
         }
         
@@ -129,6 +136,124 @@ public class ElevationProvider implements IElevationProvider {
         return flattenMap(coordElevMap, coords);
     }
     
+    /**
+     * Lookup for far away coordinates where a coarse value is good enough.
+     * 
+     * Only SRTM data supports this - all other services are used with their normal resolution as fallback.
+     * 
+     * @param coord coordinate to look up
+     * @param groundResolution required resolution in meters
+     * @param statistic what value of a downsampled cell to use
+     * @return pair of found flag and elevation
+     */
+    public Pair<Boolean, Double> getElevationForCoordinate(final IGeoCoordinate coord, final double groundResolution, final SRTMDataPyramid.Statistic statistic) {
+        if (ElevationProviderOptions.LookUpMode.SRTM_NONE.equals(elevOptions.getLookUpMode())) {
+            return getElevationForCoordinate(coord);
+        }
+        
+        final Pair<Boolean, Double> result = srtmService.getElevationForCoordinate(coord.getLatitude(), coord.getLongitude(), groundResolution, statistic);
+        if (!result.getLeft() && !ElevationProviderOptions.LookUpMode.SRTM_ONLY.equals(elevOptions.getLookUpMode())) {
+            return getElevationForCoordinate(coord);
+        }
+        
+        return result;
+    }
+    
+    /**
+     * Lookup for large arrays of coordinates, e.g. a raster around a location.
+     * 
+     * Only SRTM data is used - nothing we would want to send to a remote service.
+     * 
+     * @param latitudes latitudes of the coordinates
+     * @param longitudes longitudes of the coordinates
+     * @param elevations result values - NO_ELEVATION if not found
+     * @param found result flags
+     * @return number of coordinates with values
+     */
+    public int getSRTMElevationsForCoordinates(final double[] latitudes, final double[] longitudes, final double[] elevations, final boolean[] found) {
+        if (ElevationProviderOptions.LookUpMode.SRTM_NONE.equals(elevOptions.getLookUpMode())) {
+            Arrays.fill(elevations, 0, latitudes.length, NO_ELEVATION);
+            Arrays.fill(found, 0, latitudes.length, false);
+            return 0;
+        }
+        
+        return srtmService.getElevationsForCoordinates(latitudes, longitudes, elevations, found);
+    }
+    
+    /**
+     * Grid size of the SRTM data covering a coordinate.
+     * 
+     * @param coord coordinate to check
+     * @return grid size in arc seconds or 0 if no data is available
+     */
+    public int getSRTMGridSizeForCoordinate(final IGeoCoordinate coord) {
+        if (ElevationProviderOptions.LookUpMode.SRTM_NONE.equals(elevOptions.getLookUpMode())) {
+            return 0;
+        }
+        
+        return srtmService.getGridSizeForCoordinate(coord.getLatitude(), coord.getLongitude());
+    }
+    
+    /**
+     * Upper bound for all elevations this provider can return for coordinates in an area.
+     * 
+     * Only known if nothing else than SRTM data is used - otherwise we can't know what a remote service returns.
+     * Coordinates without data count as NO_ELEVATION - as for any other lookup.
+     * 
+     * @param minLatitude min latitude of the area
+     * @param minLongitude min longitude of the area
+     * @param maxLatitude max latitude of the area
+     * @param maxLongitude max longitude of the area
+     * @return max elevation or Double.POSITIVE_INFINITY if no bound is known
+     */
+    public double getMaxElevationForArea(final double minLatitude, final double minLongitude, final double maxLatitude, final double maxLongitude) {
+        if (!ElevationProviderOptions.LookUpMode.SRTM_ONLY.equals(elevOptions.getLookUpMode())) {
+            return Double.POSITIVE_INFINITY;
+        }
+        
+        final Pair<Boolean, Double> result = srtmService.getMaxElevationForArea(minLatitude, minLongitude, maxLatitude, maxLongitude);
+        if (!result.getLeft()) {
+            return NO_ELEVATION;
+        }
+        return Math.max(result.getRight(), NO_ELEVATION);
+    }
+    
+    // TFE, 20261019: check the elevation cache before bothering the remote service
+    private List<Pair<Boolean, Double>> getRemoteElevationsForCoordinates(final List<IGeoCoordinate> coords) {
+        final ElevationCache cache = elevOptions.getElevationCache();
+        if (cache == null || !cache.isEnabled()) {
+            return olServices.getElevationsForCoordinates(coords);
+        }
+
+        final List<Pair<Boolean, Double>> result = new ArrayList<>();
+        final List<IGeoCoordinate> uncachedCoords = new ArrayList<>();
+        final List<Integer> uncachedIndices = new ArrayList<>();
+        
+        int i = 0;
+        for (IGeoCoordinate coord: coords) {
+            final Pair<Boolean, Double> elevation = cache.getElevationForCoordinate(coord);
+            result.add(elevation);
+            if (!elevation.getLeft()) {
+                uncachedCoords.add(coord);
+                uncachedIndices.add(i);
+            }
+            i++;
+        }
+        
+        if (!uncachedCoords.isEmpty()) {
+            final List<Pair<Boolean, Double>> elevations = olServices.getElevationsForCoordinates(uncachedCoords);
+            cache.putElevationsForCoordinates(uncachedCoords, elevations);
+
+            i = 0;
+            for (Integer index : uncachedIndices) {
+                result.set(index, elevations.get(i));
+                i++;
+            }
+        }
+        
+        return result;
+    }
+    
     private List<Pair<Boolean, Double>> flattenMap(final Map<IGeoCoordinate, Pair<Boolean, Double>> coordElevMap, final List<? extends IGeoCoordinate> coords) {
         final List<Pair<Boolean, Double>> result = new ArrayList<>();
         
@@ -68,6 +68,11 @@ public class ElevationProviderOptions {
     
     private AssignMode assignMode;
     private LookUpMode lookUpMode;
+    // TFE, 20261019: allow to use other endpoints (e.g. for testing) & cache remote results
+    private String elevationServiceURL = OpenElevationService.SERVICE_URL;
+    private ElevationCache elevationCache = ElevationCache.getInstance();
+    private int maxConcurrentRequests = OpenElevationService.DEFAULT_MAX_CONCURRENT_REQUESTS;
+    private long retryBackoffMillis = OpenElevationService.DEFAULT_RETRY_BACKOFF_MILLIS;
     
     public ElevationProviderOptions() {
         this(GPXEditorPreferences.HEIGHT_ASSIGN_MODE.getAsType(), GPXEditorPreferences.HEIGHT_LOOKUP_MODE.getAsType());
@@ -103,4 +108,40 @@ public class ElevationProviderOptions {
         lookUpMode = lookup;
         return this;
     }
+
+    public String getElevationServiceURL() {
+        return elevationServiceURL;
+    }
+
+    public ElevationProviderOptions setElevationServiceURL(final String url) {
+        elevationServiceURL = url;
+        return this;
+    }
+
+    public ElevationCache getElevationCache() {
+        return elevationCache;
+    }
+
+    public ElevationProviderOptions setElevationCache(final ElevationCache cache) {
+        elevationCache = cache;
+        return this;
+    }
+
+    public int getMaxConcurrentRequests() {
+        return maxConcurrentRequests;
+    }
+
+    public ElevationProviderOptions setMaxConcurrentRequests(final int maxRequests) {
+        maxConcurrentRequests = maxRequests;
+        return this;
+    }
+
+    public long getRetryBackoffMillis() {
+        return retryBackoffMillis;
+    }
+
+    public ElevationProviderOptions setRetryBackoffMillis(final long backoff) {
+        retryBackoffMillis = backoff;
+        return this;
+    }
 }
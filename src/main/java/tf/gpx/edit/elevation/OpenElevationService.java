@@ -29,13 +29,21 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import java.io.IOException;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -54,10 +62,11 @@ import tf.gpx.edit.leafletmap.IGeoCoordinate;
  * @author thomas
  */
 public class OpenElevationService implements IElevationProvider {
-    private final static String LINE_SERVICE_URL = "https://api.openrouteservice.org/elevation/line";
+    public final static String SERVICE_URL = "https://api.openrouteservice.org/elevation";
+    private final static String LINE_SERVICE = "/line";
     private final static String LINE_REQUEST_PREFIX = "{\"format_in\":\"polyline\",\"format_out\":\"geojson\",\"geometry\":";
     private final static String REQUEST_SUFFIX = "}";
-    private final static String POINT_SERVICE_URL = "https://api.openrouteservice.org/elevation/point";
+    private final static String POINT_SERVICE = "/point";
     private final static String POINT_REQUEST_PREFIX = "{\"format_in\":\"point\",\"format_out\":\"geojson\",\"geometry\":";
 
     private static final HttpClient client = HttpClient.newHttpClient();
@@ -67,10 +76,21 @@ public class OpenElevationService implements IElevationProvider {
     private final static int STATUS_OK = 200;
     private final static int STATUS_OK2 = 201;
     private final static int STATUS_NO_DATA = 404;
+    private final static int STATUS_TOO_MANY_REQUESTS = 429;
+    private final static int STATUS_SERVER_ERROR = 500;
+    
+    // TFE, 20261019: parameters for parallel requests & retries
+    public final static int DEFAULT_MAX_CONCURRENT_REQUESTS = 4;
+    public final static long DEFAULT_RETRY_BACKOFF_MILLIS = 500;
+    private final static int MAX_RETRIES = 5;
+    private final static long MAX_RETRY_DELAY_MILLIS = 30000;
 
     private static final ObjectMapper objectMapper = new ObjectMapper();
 
     private ElevationProviderOptions elevOptions;
+    
+    // TFE, 20261019: replaced as a whole after each call - concurrent calls must not mix their latencies
+    private volatile List<Long> chunkLatencies = new ArrayList<>();
 
     // this only makes sense with options
     private OpenElevationService() {
@@ -93,27 +113,126 @@ public class OpenElevationService implements IElevationProvider {
         API_KEY = GPXEditorPreferences.ROUTING_API_KEY.getAsType();
         
         if (!coords.isEmpty()) {
-            // split into blocks of 1000 points - that seems to be an API limit
-            final List<Pair<Boolean, Double>> result = new ArrayList<>();
+            // TFE, 20261019: coalesce duplicate coordinates - no need to ask twice, even if they would end up in different chunks
+            // quantization is the same as for the elevation cache, so results would be stored under the same key anyways
+            final Map<Long, Integer> uniqueIndices = new HashMap<>();
+            final List<IGeoCoordinate> uniqueCoords = new ArrayList<>();
+            final int[] coordToUnique = new int[coords.size()];
+            for (int i = 0; i < coords.size(); i++) {
+                final IGeoCoordinate coord = coords.get(i);
+                final long key = ElevationCache.getKeyForCoordinate(coord.getLatitude(), coord.getLongitude());
+
+                Integer uniqueIndex = uniqueIndices.get(key);
+                if (uniqueIndex == null) {
+                    uniqueIndex = uniqueCoords.size();
+                    uniqueIndices.put(key, uniqueIndex);
+                    uniqueCoords.add(coord);
+                }
+                coordToUnique[i] = uniqueIndex;
+            }
 
+            // split into blocks of 1000 points - that seems to be an API limit
             // all those +/-1 moves...
-            final int chunkCount = ((coords.size()-1) / CHUNK_SIZE) + 1;
+            final int chunkCount = ((uniqueCoords.size()-1) / CHUNK_SIZE) + 1;
+            final List<List<Pair<Boolean, Double>>> chunkResults = new ArrayList<>(Collections.nCopies(chunkCount, null));
+            final Long[] latencies = new Long[chunkCount];
+
+            // TFE, 20261019: send chunks in parallel - but don't overdo it
+            final Semaphore permits = new Semaphore(Math.max(1, elevOptions.getMaxConcurrentRequests()));
+            final List<CompletableFuture<Void>> futures = new ArrayList<>();
             for (int i = 0; i < chunkCount; i++) {
                 // fromIndex inclusive, toIndex exclusive
-                final List<? extends IGeoCoordinate> subCoords = coords.subList(i*CHUNK_SIZE, Math.min((i+1)*CHUNK_SIZE, coords.size()));
+                final List<IGeoCoordinate> subCoords = uniqueCoords.subList(i*CHUNK_SIZE, Math.min((i+1)*CHUNK_SIZE, uniqueCoords.size()));
+                final int chunk = i;
+
+                try {
+                    permits.acquire();
+                } catch (InterruptedException ex) {
+                    Logger.getLogger(OpenElevationService.class.getName()).log(Level.SEVERE, null, ex);
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+
+                final long startTime = System.nanoTime();
+                final CompletableFuture<String> response;
                 if (subCoords.size() == 1) {
-                    result.addAll(deserializePointResponse(httpPostResponse(POINT_SERVICE_URL, buildPointRequest(subCoords.get(0))), subCoords));
+                    response = httpPostResponseAsync(elevOptions.getElevationServiceURL() + POINT_SERVICE, buildPointRequest(subCoords.get(0)));
                 } else {
-                    result.addAll(deserializeLineResponse(httpPostResponse(LINE_SERVICE_URL, buildLineRequest(subCoords)), subCoords));
+                    response = httpPostResponseAsync(elevOptions.getElevationServiceURL() + LINE_SERVICE, buildLineRequest(subCoords));
                 }
+                
+                futures.add(response.handle((body, ex) -> {
+                    permits.release();
+                    latencies[chunk] = (System.nanoTime() - startTime) / 1000000L;
+
+                    if (ex != null) {
+                        Logger.getLogger(OpenElevationService.class.getName()).log(Level.SEVERE, null, ex);
+                    }
+                    final String responseBody = (body != null) ? body : "";
+                    // TFE, 20261019: a bad chunk must not fail the whole lookup - it simply has no elevations
+                    try {
+                        final List<Pair<Boolean, Double>> elevations;
+                        if (subCoords.size() == 1) {
+                            elevations = deserializePointResponse(responseBody, subCoords);
+                        } else {
+                            elevations = deserializeLineResponse(responseBody, subCoords);
+                        }
+                        // more elevations than coordinates - no way to know which one belongs to which point
+                        if (elevations.size() == subCoords.size()) {
+                            chunkResults.set(chunk, elevations);
+                        } else {
+                            Logger.getLogger(OpenElevationService.class.getName()).log(Level.SEVERE, 
+                                    "OpenElevationService returned {0} elevations for {1} points", new Object[]{elevations.size(), subCoords.size()});
+                        }
+                    } catch (RuntimeException ex2) {
+                        Logger.getLogger(OpenElevationService.class.getName()).log(Level.SEVERE, null, ex2);
+                    }
+                    
+                    Logger.getLogger(OpenElevationService.class.getName()).log(Level.FINE, 
+                            "OpenElevationService chunk {0} of {1}: {2} points in {3} ms", new Object[]{chunk+1, chunkCount, subCoords.size(), latencies[chunk]});
+                    return null;
+                }));
+            }
+            
+            CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+            chunkLatencies = new ArrayList<>(Arrays.asList(latencies));
+
+            final List<Pair<Boolean, Double>> uniqueResults = new ArrayList<>();
+            for (int i = 0; i < chunkCount; i++) {
+                final List<IGeoCoordinate> subCoords = uniqueCoords.subList(i*CHUNK_SIZE, Math.min((i+1)*CHUNK_SIZE, uniqueCoords.size()));
+                if (chunkResults.get(i) != null) {
+                    uniqueResults.addAll(chunkResults.get(i));
+                } else {
+                    // we have been interrupted before sending this chunk or its response was invalid
+                    subCoords.forEach((t) -> {
+                        uniqueResults.add(Pair.of(false, IElevationProvider.NO_ELEVATION));
+                    });
+                }
+            }
+
+            final List<Pair<Boolean, Double>> result = new ArrayList<>();
+            for (int i = 0; i < coords.size(); i++) {
+                result.add(uniqueResults.get(coordToUnique[i]));
             }
 
             return result;
         } else {
+            chunkLatencies = new ArrayList<>();
             return new ArrayList<>();
         }
     }
     
+    /**
+     * Latencies of the chunks of the last completed call to getElevationsForCoordinates() in milliseconds, including retries.
+     * 
+     * Chunks that haven't been sent have a latency of null.
+     * 
+     * @return list of latencies per chunk
+     */
+    public List<Long> getChunkLatencies() {
+        return new ArrayList<>(chunkLatencies);
+    }
+    
     private String buildPointRequest(IGeoCoordinate coord) {
         return POINT_REQUEST_PREFIX +
                 "[" + coord.getLongitude().toString() + "," + coord.getLatitude().toString() + "]" + 
@@ -128,9 +247,7 @@ public class OpenElevationService implements IElevationProvider {
                 REQUEST_SUFFIX;
     }
     
-    private String httpPostResponse(final String url, final String request) {
-        String result = "";
-        
+    private CompletableFuture<String> httpPostResponseAsync(final String url, final String request) {
         final HttpRequest requestPOST = HttpRequest.newBuilder()
              .uri(URI.create(url))
              .header("Content-Type", "application/json; charset=utf-8")
@@ -139,9 +256,9 @@ public class OpenElevationService implements IElevationProvider {
              .POST(HttpRequest.BodyPublishers.ofString(request))
              .build();
         
-        try {
-            final HttpResponse<String> response = client.send(requestPOST, HttpResponse.BodyHandlers.ofString());
-            
+        return sendWithRetry(requestPOST, 0).thenApply((response) -> {
+            String result = "";
+
             if (response.statusCode() == STATUS_OK || response.statusCode() == STATUS_OK2) {
                 result = response.body();
             } else {
@@ -151,13 +268,48 @@ public class OpenElevationService implements IElevationProvider {
                             "OpenElevationService returned: {0}, {1}", new Object[]{response.statusCode(), response.body()});
                 }
             }
-        } catch (IOException | InterruptedException ex) {
-            Logger.getLogger(OpenElevationService.class.getName()).log(Level.SEVERE, null, ex);
+
+            return result;
+        });
+    }
+    
+    // TFE, 20261019: retry with exponential backoff if the service is busy or has hickups
+    private CompletableFuture<HttpResponse<String>> sendWithRetry(final HttpRequest request, final int attempt) {
+        return client.sendAsync(request, HttpResponse.BodyHandlers.ofString()).thenCompose((response) -> {
+            if (attempt < MAX_RETRIES && isRetryStatus(response.statusCode())) {
+                final long delay = getRetryDelay(response, attempt);
+                Logger.getLogger(OpenElevationService.class.getName()).log(Level.FINE, 
+                        "OpenElevationService returned: {0}, retrying in {1} ms", new Object[]{response.statusCode(), delay});
+
+                final Executor delayed = CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS);
+                return CompletableFuture.supplyAsync(() -> attempt + 1, delayed).thenCompose((t) -> sendWithRetry(request, t));
+            } else {
+                return CompletableFuture.completedFuture(response);
+            }
+        });
+    }
+    
+    private static boolean isRetryStatus(final int status) {
+        return status == STATUS_TOO_MANY_REQUESTS || (status >= STATUS_SERVER_ERROR && status < STATUS_SERVER_ERROR + 100);
+    }
+    
+    private long getRetryDelay(final HttpResponse<String> response, final int attempt) {
+        // exponential backoff: 1x, 2x, 4x, ...
+        long result = elevOptions.getRetryBackoffMillis() * (1L << attempt);
+        
+        // the server might know better - but we only support the delay-seconds format of Retry-After
+        final Optional<String> retryAfter = response.headers().firstValue("Retry-After");
+        if (retryAfter.isPresent()) {
+            try {
+                result = Math.max(result, Long.parseLong(retryAfter.get().trim()) * 1000L);
+            } catch (NumberFormatException ex) {
+                // http-date format - stick with our own value
+            }
         }
         
-        return result;
+        return Math.min(result, MAX_RETRY_DELAY_MILLIS);
     }
-
+    
     private List<Pair<Boolean, Double>> deserializePointResponse(final String response, final List<? extends IGeoCoordinate> coords) {
         final List<Pair<Boolean, Double>> result = new ArrayList<>();
         
@@ -204,7 +356,7 @@ public class OpenElevationService implements IElevationProvider {
         }
         
         // add enough values to fill the list
-        for (int i = 0; i < coords.size() - result.size(); i++) {
+        while (result.size() < coords.size()) {
             result.add(Pair.of(false, IElevationProvider.NO_ELEVATION));
         }
         
@@ -33,8 +33,6 @@ import org.apache.commons.lang3.tuple.Pair;
  * @author Thomas
  */
 class SRTMData {
-    private final static double EPSILON = 0.1d;
-    private final static short NO_DATA = Short.MIN_VALUE;
 
     private final String myDataFile;
     private final SRTMDataKey myDataKey;
@@ -44,6 +42,13 @@ class SRTMData {
 
     // TFE, 20250624: speed up things a bit - clone() is faster than fill()
     private final short[] myInitValues; 
+    
+    // TFE, 20261019: numeric tile codes to check coordinates without building names
+    private final int myLatitudeCode;
+    private final int myLongitudeCode;
+    
+    // TFE, 20261019: downsampled levels for far away lookups - calculated on first use
+    private volatile SRTMDataPyramid myPyramid = null;
 
     public SRTMData(final String dataFile, final String name, final SRTMDataHelper.SRTMDataType type) {
         myDataFile = dataFile;
@@ -54,6 +59,9 @@ class SRTMData {
         
         myInitValues = new short[numberCols];
         Arrays.fill(myInitValues, (short) IElevationProvider.NO_ELEVATION);
+        
+        myLatitudeCode = getTileCodeForName(name, true);
+        myLongitudeCode = getTileCodeForName(name, false);
     }
     
     public SRTMDataKey getKey() {
@@ -122,6 +130,64 @@ class SRTMData {
         return getValueForCoordinateStatic(latitude, longitude, avarageMode, this);
     }
 
+    protected Pair<Boolean, Double> getValueForCoordinate(final double latitude, final double longitude, final double groundResolution, final SRTMDataPyramid.Statistic statistic) {
+        if (isEmpty()) {
+            return Pair.of(false, IElevationProvider.NO_ELEVATION);
+        }
+        
+        final SRTMDataPyramid pyramid = getPyramid();
+        final int factor = pyramid.getFactorForResolution(groundResolution);
+        if (factor == 1 || !containsCoordinate(latitude, longitude)) {
+            // no need for anything fancy
+            return getValueForCoordinateStatic(latitude, longitude, SRTMDataOptions.SRTMDataAverage.NEAREST_ONLY, this);
+        }
+        
+        return pyramid.getValueForCoordinate(latitude, longitude, factor, statistic);
+    }
+    
+    /**
+     * Calculate elevations for a range of coordinates without creating objects per coordinate.
+     * 
+     * Coordinates that don't belong to this tile are marked as not found.
+     * 
+     * @param latitudes latitudes of the coordinates
+     * @param longitudes longitudes of the coordinates
+     * @param from first index to calculate
+     * @param to index after the last one to calculate
+     * @param averageMode how to combine the grid values
+     * @param elevations result values - NO_ELEVATION if not found
+     * @param found result flags
+     * @return number of coordinates with values
+     */
+    protected int getValuesForCoordinates(
+            final double[] latitudes, 
+            final double[] longitudes, 
+            final int from, 
+            final int to, 
+            final SRTMDataOptions.SRTMDataAverage averageMode, 
+            final double[] elevations, 
+            final boolean[] found) {
+        return SRTMDataKernels.getValuesForCoordinates(this, latitudes, longitudes, from, to, averageMode, elevations, found);
+    }
+    
+    protected boolean containsCoordinate(final double latitude, final double longitude) {
+        return !isEmpty() && getTileCode(latitude) == myLatitudeCode && getTileCode(longitude) == myLongitudeCode;
+    }
+    
+    protected SRTMDataPyramid getPyramid() {
+        SRTMDataPyramid result = myPyramid;
+        if (result == null) {
+            synchronized (this) {
+                result = myPyramid;
+                if (result == null) {
+                    result = new SRTMDataPyramid(this);
+                    myPyramid = result;
+                }
+            }
+        }
+        return result;
+    }
+
     private static Pair<Boolean, Double> getValueForCoordinateStatic(final double latitude, final double longitude, final SRTMDataOptions.SRTMDataAverage avarageMode, final SRTMData data) {
         // https://gis.stackexchange.com/questions/43743/extracting-elevation-from-hgt-file
 //        SRTM data are distributed in two levels: SRTM1 (for the U.S. and its territories and possessions)
@@ -144,161 +210,67 @@ class SRTMData {
 //        error source in the elevation data has the characteristics of random noise this reduces that error 
 //        by roughly a factor of three.
 
-        double result = NO_DATA;
-        
-        // convert lon & lat to name & check against self
-        if (SRTMDataHelper.getNameForCoordinate(latitude, longitude).equals(data.getKey().getKey())) {
-            //System.out.println("SRTM data found: " + data.getKey().getKey());
-            // convert lon & lat to col & row
-            
-            // get arcsecs from lat & lon - values are passed as double!
-            double latarcsecs = (Math.abs(latitude) % 1) * 3600d;
-            double lonarcsecs = (Math.abs(longitude) % 1) * 3600d;
-
-            // inacurate data has one value per 3 arcsecs
-            latarcsecs /= data.getKey().getValue().getGridSize();
-            lonarcsecs /= data.getKey().getValue().getGridSize();
-
-            // data starts in north / east corner - naming is from south / east corner...
-            // TFE, 20181023: inverse counting on southern hemisphere
-            int rowNum;
-            if (latitude > 0) {
-                rowNum = data.getKey().getValue().getDataCount() - 1 - (int) Math.round(latarcsecs);
-            } else {
-                rowNum = (int) Math.round(latarcsecs);
-            }
-            int colNum;
-            if (longitude > 0) {
-                colNum = (int) Math.round(lonarcsecs);
-            } else {
-                // for data points in west values are negative and more negative further west...
-                colNum = data.getKey().getValue().getDataCount() - 1 - (int) Math.round(lonarcsecs);
-            }
-            assert rowNum > -1;
-            assert colNum > -1;
-            assert rowNum < data.getNumberRows();
-            assert colNum < data.getNumberColumns();
+        // TFE, 20261019: calculation moved to allocation-free kernels
+        if (!data.containsCoordinate(latitude, longitude)) {
+            return Pair.of(false, IElevationProvider.NO_ELEVATION);
+        }
 
-            result = data.getValue(rowNum, colNum);
-            
-            if (SRTMDataOptions.SRTMDataAverage.AVERAGE_NEIGHBOURS.equals(avarageMode)) {
-                // "neighbour" can mean a few things... here its the following:
-                // on a grid you can have up to 4 neighbours for a point
-                // a: 1 neighbour: point is on center of grid tile => neighbour is this grid (upper left)
-                // b: 2 neighbours: point is on stright line between east/west or north/south grid tiles => neighbours are those two grids (upper 2 rights)
-                // c: 4 neighbours: point is somewhere else on a grid tile => neighbours are the this grid and the three "in the quadrant" of the point from grid center
-                //
-                // 1-1-1-1-1-------2-2-2-2-2-2-2-2-2
-                // |       |       |       |       |
-                // 1   a   1       2   X b 2   X   2
-                // |       |       |       |       |
-                // 1-1-1-1-1-------2-2-2-2-2-2-2-2-2
-                // |       |       |       |       |
-                // |       |       |       |       |
-                // |       |       |       |       |
-                // |-------4-4-4-4-4-4-4-4-4-------|
-                // |       |       |       |       |
-                // |       4   X   4   X   4       |
-                // |       |       |       |       |
-                // |-------4-4-4-4-4-4-4-4-4-------|
-                // |       |     c |       |       |
-                // |       4   X   4   X   4       |
-                // |       |       |       |       |
-                // |-------4-4-4-4-4-4-4-4-4-------|
-                
-                // weight is based on distance to center of tile - BUT where is the center of the tile?
-                // lets have a look at row 0 / col 0:
-                //
-                //       |------0.5/0.5
-                //       |       |
-                //       |  0/0  |
-                //       |       |
-                //-0.5/-0.5------|
-                // 
-                // its center is 0/0, so it covers the region from -0.5/-0.5 to 0.5/0.5
-                // the distance of a point to the center of the tile is therefore caculated from the fractional of lat/lon of arcsecs
-                
-                // TODO: alterantively, do bilinear interpolation: http://supercomputingblog.com/graphics/coding-bilinear-interpolation/
-                
-                // distance to center of tile 
-                final double latFractional = latarcsecs - (int) Math.round(latarcsecs);
-                final double lonFractional = lonarcsecs - (int) Math.round(lonarcsecs);
-                //System.out.println("latarcsecs: " + latarcsecs + ", latFractional: " + latFractional + ", lonarcsecs: " + lonarcsecs + ", lonFractional: " + lonFractional);
+        final double result = SRTMDataKernels.getValueForCoordinate(data, latitude, longitude, avarageMode);
 
-                // weight of a grid point is calculated from distance to point
-                double weight = 0.0;
-                // sum of all weighted results from valid points
-                double weightedResult = 0.0;
-                // sum of all weights from valid points - used in the end to normalize result
-                double normalization = 0.0;
+        return Pair.of(!Double.isNaN(result), Double.isNaN(result) ? IElevationProvider.NO_ELEVATION : result);
+    }
+    
+    // TFE, 20261019: also needed for the overview levels
+    protected static int getRowNumForLatitude(final double latitude, final SRTMDataHelper.SRTMDataType type) {
+        final double latarcsecs = (Math.abs(latitude) % 1) * 3600d / type.getGridSize();
 
-                // first, the grid that contains the coordinates
-                // height value might not be set
-                if (result != NO_DATA) {
-                    weight = 1d / distanceOnGrid(latFractional, lonFractional);
-                    weightedResult = result * weight;
-                    normalization = weight;
-                    //System.out.println("Result1: " + result + ", weight: " + weight + ", weightedResult: " + weightedResult + ", normalization: " + normalization);
-                }
-                
-                // what are the neighbouring cells? use them only if point is not too close to tile center
-                int nextRowNum = -1;
-                if (Math.abs(latFractional) > EPSILON * EPSILON) {
-                    nextRowNum = rowNum - (int) Math.signum(latFractional);
-                }
-                int nextColNum = -1;
-                if (Math.abs(lonFractional) > EPSILON * EPSILON) {
-                    nextColNum = colNum + (int) Math.signum(lonFractional);
-                }
-                
-                short neighbourValue; 
-                if (isInArray(nextRowNum, data.getNumberRows())) {
-                    neighbourValue = data.getValue(nextRowNum, colNum);
-                    // height value might not be set
-                    if (neighbourValue != NO_DATA) {
-                        weight = 1d / distanceOnGrid(1d - Math.abs(latFractional), lonFractional);
-                        weightedResult += neighbourValue * weight;
-                        normalization += weight;
-                        //System.out.println("Result2: " + neighbourValue + ", weight: " + weight + ", weightedResult: " + weightedResult + ", normalization: " + normalization);
-                    }
-                }
-                if (isInArray(nextColNum, data.getNumberColumns())) {
-                    neighbourValue = data.getValue(rowNum, nextColNum);
-                    // height value might not be set
-                    if (neighbourValue != NO_DATA) {
-                        weight = 1d / distanceOnGrid(latFractional, 1d - Math.abs(lonFractional));
-                        weightedResult += neighbourValue * weight;
-                        normalization += weight;
-                        //System.out.println("Result3: " + neighbourValue + ", weight: " + weight + ", weightedResult: " + weightedResult + ", normalization: " + normalization);
-                    }
-                }
-                if (isInArray(nextRowNum, data.getNumberRows()) && isInArray(nextColNum, data.getNumberColumns())) {
-                    neighbourValue = data.getValue(nextRowNum, nextColNum);
-                    // height value might not be set
-                    if (neighbourValue != NO_DATA) {
-                        weight = 1d / distanceOnGrid(1d - Math.abs(latFractional), 1d - Math.abs(lonFractional));
-                        weightedResult += neighbourValue * weight;
-                        normalization += weight;
-                        //System.out.println("Result4: " + neighbourValue + ", weight: " + weight + ", weightedResult: " + weightedResult + ", normalization: " + normalization);
-                    }
-                }
+        // data starts in north / east corner - naming is from south / east corner...
+        // TFE, 20181023: inverse counting on southern hemisphere
+        if (latitude > 0) {
+            return type.getDataCount() - 1 - (int) Math.round(latarcsecs);
+        } else {
+            return (int) Math.round(latarcsecs);
+        }
+    }
 
-                result = weightedResult / normalization;
-                //System.out.println("Result: " + result);
-                //System.out.println("");
-            }
+    protected static int getColNumForLongitude(final double longitude, final SRTMDataHelper.SRTMDataType type) {
+        final double lonarcsecs = (Math.abs(longitude) % 1) * 3600d / type.getGridSize();
 
-            //System.out.println("latitude: " + latitude + ", longitude: " + longitude + ", latarcsecs: " + latarcsecs + ", lonarcsecs: " + lonarcsecs + ", rowNum: " + rowNum + ", colNum: " + colNum + ", result: " + result + ", result2: " + result2);
+        if (longitude > 0) {
+            return (int) Math.round(lonarcsecs);
+        } else {
+            // for data points in west values are negative and more negative further west...
+            return type.getDataCount() - 1 - (int) Math.round(lonarcsecs);
         }
-
-        return Pair.of(result != NO_DATA, result == NO_DATA ? IElevationProvider.NO_ELEVATION : result);
     }
     
-    private static double distanceOnGrid(final double latDist, final double lonDist) {
-        return Math.max(latDist*latDist + lonDist*lonDist, EPSILON*EPSILON);
+    /**
+     * Numeric version of SRTMDataHelper.getNameForCoordinate: N / E are positive, S / W are negative.
+     * Offset by one to tell N00 from S00.
+     */
+    protected static int getTileCode(final double value) {
+        if (value > 0) {
+            return (int) value + 1;
+        } else {
+            double absValue = Math.abs(value);
+            if (absValue % 1 != 0) {
+               absValue++; 
+            }
+            return -((int) absValue + 1);
+        }
     }
     
-    private static boolean isInArray(final int check, final int arraySize) {
-        return (check > -1 && check < arraySize);
+    private static int getTileCodeForName(final String name, final boolean latitude) {
+        final int value = latitude ? SRTMDataHelper.getLatitudeForName(name) : SRTMDataHelper.getLongitudeForName(name);
+        if (value == Integer.MIN_VALUE) {
+            return Integer.MIN_VALUE;
+        }
+
+        final char direction = latitude ? name.charAt(0) : name.charAt(3);
+        if (direction == 'N' || direction == 'E') {
+            return value + 1;
+        } else {
+            return value - 1;
+        }
     }
 }
@@ -0,0 +1,383 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.gpx.edit.elevation;
+
+/**
+ * Interpolation kernels working directly on the values of a SRTM data tile.
+ * 
+ * All methods work on primitive values and arrays only - no objects are created per coordinate. 
+ * Coordinates that aren't part of the tile or have no data are marked as not found.
+ * 
+ * Positions on the grid are measured in cells: row 0 is the northern edge, column 0 the western edge of the tile.
+ * 
+ * @author thomas
+ */
+class SRTMDataKernels {
+    private final static double EPSILON = 0.1d;
+    private final static short NO_DATA = Short.MIN_VALUE;
+    
+    private SRTMDataKernels() {
+        // only static methods
+    }
+    
+    /**
+     * Calculate elevations for a range of coordinates of one tile.
+     * 
+     * @param data the tile
+     * @param latitudes latitudes of the coordinates
+     * @param longitudes longitudes of the coordinates
+     * @param from first index to calculate
+     * @param to index after the last one to calculate
+     * @param averageMode how to combine the grid values
+     * @param elevations result values - NO_ELEVATION if not found
+     * @param found result flags
+     * @return number of coordinates with values
+     */
+    static int getValuesForCoordinates(
+            final SRTMData data, 
+            final double[] latitudes, 
+            final double[] longitudes, 
+            final int from, 
+            final int to, 
+            final SRTMDataOptions.SRTMDataAverage averageMode, 
+            final double[] elevations, 
+            final boolean[] found) {
+        assert latitudes.length == longitudes.length;
+        assert elevations.length >= to;
+        assert found.length >= to;
+        
+        int result = 0;
+
+        for (int i = from; i < to; i++) {
+            double value = Double.NaN;
+            
+            if (data.containsCoordinate(latitudes[i], longitudes[i])) {
+                value = getValueForCoordinate(data, latitudes[i], longitudes[i], averageMode);
+            }
+            
+            if (Double.isNaN(value)) {
+                elevations[i] = IElevationProvider.NO_ELEVATION;
+                found[i] = false;
+            } else {
+                elevations[i] = value;
+                found[i] = true;
+                result++;
+            }
+        }
+        
+        return result;
+    }
+
+    /**
+     * Calculate elevation for a single coordinate.
+     * 
+     * The caller needs to make sure that the coordinate belongs to the tile.
+     * 
+     * @param data the tile
+     * @param latitude latitude of the coordinate
+     * @param longitude longitude of the coordinate
+     * @param averageMode how to combine the grid values
+     * @return elevation or NaN if not found
+     */
+    static double getValueForCoordinate(final SRTMData data, final double latitude, final double longitude, final SRTMDataOptions.SRTMDataAverage averageMode) {
+        final SRTMDataHelper.SRTMDataType dataType = data.getKey().getValue();
+        final short[][] values = data.getValues();
+
+        // get arcsecs from lat & lon - values are passed as double!
+        // inacurate data has one value per 3 arcsecs
+        final double latarcsecs = (Math.abs(latitude) % 1) * 3600d / dataType.getGridSize();
+        final double lonarcsecs = (Math.abs(longitude) % 1) * 3600d / dataType.getGridSize();
+        
+        switch (averageMode) {
+            case BILINEAR:
+                return bilinear(values, dataType.getDataCount(), rowPosition(latitude, latarcsecs, dataType), colPosition(longitude, lonarcsecs, dataType));
+            case BICUBIC:
+                return bicubic(values, dataType.getDataCount(), rowPosition(latitude, latarcsecs, dataType), colPosition(longitude, lonarcsecs, dataType));
+            case AVERAGE_NEIGHBOURS:
+                return averageNeighbours(values, dataType, latitude, longitude, latarcsecs, lonarcsecs);
+            default:
+                return nearest(values, SRTMData.getRowNumForLatitude(latitude, dataType), SRTMData.getColNumForLongitude(longitude, dataType));
+        }
+    }
+    
+    private static double nearest(final short[][] values, final int rowNum, final int colNum) {
+        final short value = getValue(values, rowNum, colNum);
+        return (value != NO_DATA) ? value : Double.NaN;
+    }
+
+    private static double averageNeighbours(
+            final short[][] values, 
+            final SRTMDataHelper.SRTMDataType dataType, 
+            final double latitude, 
+            final double longitude, 
+            final double latarcsecs, 
+            final double lonarcsecs) {
+        final int dataCount = dataType.getDataCount();
+        final int rowNum = SRTMData.getRowNumForLatitude(latitude, dataType);
+        final int colNum = SRTMData.getColNumForLongitude(longitude, dataType);
+        
+        final short value = getValue(values, rowNum, colNum);
+
+        // "neighbour" can mean a few things... here its the following:
+        // on a grid you can have up to 4 neighbours for a point
+        // a: 1 neighbour: point is on center of grid tile => neighbour is this grid (upper left)
+        // b: 2 neighbours: point is on stright line between east/west or north/south grid tiles => neighbours are those two grids (upper 2 rights)
+        // c: 4 neighbours: point is somewhere else on a grid tile => neighbours are the this grid and the three "in the quadrant" of the point from grid center
+        //
+        // 1-1-1-1-1-------2-2-2-2-2-2-2-2-2
+        // |       |       |       |       |
+        // 1   a   1       2   X b 2   X   2
+        // |       |       |       |       |
+        // 1-1-1-1-1-------2-2-2-2-2-2-2-2-2
+        // |       |       |       |       |
+        // |       |       |       |       |
+        // |       |       |       |       |
+        // |-------4-4-4-4-4-4-4-4-4-------|
+        // |       |       |       |       |
+        // |       4   X   4   X   4       |
+        // |       |       |       |       |
+        // |-------4-4-4-4-4-4-4-4-4-------|
+        // |       |     c |       |       |
+        // |       4   X   4   X   4       |
+        // |       |       |       |       |
+        // |-------4-4-4-4-4-4-4-4-4-------|
+
+        // weight is based on distance to center of tile - BUT where is the center of the tile?
+        // lets have a look at row 0 / col 0:
+        //
+        //       |------0.5/0.5
+        //       |       |
+        //       |  0/0  |
+        //       |       |
+        //-0.5/-0.5------|
+        // 
+        // its center is 0/0, so it covers the region from -0.5/-0.5 to 0.5/0.5
+        // the distance of a point to the center of the tile is therefore caculated from the fractional of lat/lon of arcsecs
+
+        // distance to center of tile 
+        final double latFractional = latarcsecs - (int) Math.round(latarcsecs);
+        final double lonFractional = lonarcsecs - (int) Math.round(lonarcsecs);
+
+        double weight;
+        // sum of all weighted results from valid points
+        double weightedResult = 0.0;
+        // sum of all weights from valid points - used in the end to normalize result
+        double normalization = 0.0;
+
+        // first, the grid that contains the coordinates
+        // height value might not be set
+        if (value != NO_DATA) {
+            weight = 1d / distanceOnGrid(latFractional, lonFractional);
+            weightedResult = value * weight;
+            normalization = weight;
+        }
+
+        // what are the neighbouring cells? use them only if point is not too close to tile center
+        // TFE, 20261019: rows count the other way round on the southern hemisphere, cols on the western
+        int nextRowNum = -1;
+        if (Math.abs(latFractional) > EPSILON * EPSILON) {
+            nextRowNum = rowNum - (latitude > 0 ? 1 : -1) * (int) Math.signum(latFractional);
+        }
+        int nextColNum = -1;
+        if (Math.abs(lonFractional) > EPSILON * EPSILON) {
+            nextColNum = colNum + (longitude > 0 ? 1 : -1) * (int) Math.signum(lonFractional);
+        }
+        final boolean validRow = isInArray(nextRowNum, dataCount);
+        final boolean validCol = isInArray(nextColNum, dataCount);
+
+        short neighbourValue; 
+        if (validRow) {
+            neighbourValue = getValue(values, nextRowNum, colNum);
+            if (neighbourValue != NO_DATA) {
+                weight = 1d / distanceOnGrid(1d - Math.abs(latFractional), lonFractional);
+                weightedResult += neighbourValue * weight;
+                normalization += weight;
+            }
+        }
+        if (validCol) {
+            neighbourValue = getValue(values, rowNum, nextColNum);
+            if (neighbourValue != NO_DATA) {
+                weight = 1d / distanceOnGrid(latFractional, 1d - Math.abs(lonFractional));
+                weightedResult += neighbourValue * weight;
+                normalization += weight;
+            }
+        }
+        if (validRow && validCol) {
+            neighbourValue = getValue(values, nextRowNum, nextColNum);
+            if (neighbourValue != NO_DATA) {
+                weight = 1d / distanceOnGrid(1d - Math.abs(latFractional), 1d - Math.abs(lonFractional));
+                weightedResult += neighbourValue * weight;
+                normalization += weight;
+            }
+        }
+        
+        if (normalization == 0.0) {
+            return Double.NaN;
+        }
+        return weightedResult / normalization;
+    }
+    
+    private static double bilinear(final short[][] values, final int dataCount, final double rowPos, final double colPos) {
+        final int row0 = clamp((int) Math.floor(rowPos), dataCount);
+        final int col0 = clamp((int) Math.floor(colPos), dataCount);
+        final int row1 = clamp(row0 + 1, dataCount);
+        final int col1 = clamp(col0 + 1, dataCount);
+        final double rowFrac = Math.max(0.0, Math.min(1.0, rowPos - row0));
+        final double colFrac = Math.max(0.0, Math.min(1.0, colPos - col0));
+        
+        double weightedResult = 0.0;
+        double normalization = 0.0;
+        
+        // skip missing values and renormalize with the remaining weights
+        double weight = (1.0 - rowFrac) * (1.0 - colFrac);
+        short value = getValue(values, row0, col0);
+        if (value != NO_DATA && weight > 0.0) {
+            weightedResult += value * weight;
+            normalization += weight;
+        }
+        weight = (1.0 - rowFrac) * colFrac;
+        value = getValue(values, row0, col1);
+        if (value != NO_DATA && weight > 0.0) {
+            weightedResult += value * weight;
+            normalization += weight;
+        }
+        weight = rowFrac * (1.0 - colFrac);
+        value = getValue(values, row1, col0);
+        if (value != NO_DATA && weight > 0.0) {
+            weightedResult += value * weight;
+            normalization += weight;
+        }
+        weight = rowFrac * colFrac;
+        value = getValue(values, row1, col1);
+        if (value != NO_DATA && weight > 0.0) {
+            weightedResult += value * weight;
+            normalization += weight;
+        }
+        
+        if (normalization == 0.0) {
+            return Double.NaN;
+        }
+        return weightedResult / normalization;
+    }
+
+    private static double bicubic(final short[][] values, final int dataCount, final double rowPos, final double colPos) {
+        // Catmull-Rom spline over the 4x4 neighbourhood
+        final int row1 = clamp((int) Math.floor(rowPos), dataCount);
+        final int col1 = clamp((int) Math.floor(colPos), dataCount);
+        final double rowFrac = Math.max(0.0, Math.min(1.0, rowPos - row1));
+        final double colFrac = Math.max(0.0, Math.min(1.0, colPos - col1));
+
+        double result = 0.0;
+        for (int i = -1; i <= 2; i++) {
+            final int rowNum = row1 + i;
+            
+            final double v0 = getExtrapolatedValue(values, dataCount, rowNum, col1 - 1);
+            final double v1 = getExtrapolatedValue(values, dataCount, rowNum, col1);
+            final double v2 = getExtrapolatedValue(values, dataCount, rowNum, col1 + 1);
+            final double v3 = getExtrapolatedValue(values, dataCount, rowNum, col1 + 2);
+            if (Double.isNaN(v0) || Double.isNaN(v1) || Double.isNaN(v2) || Double.isNaN(v3)) {
+                // no way to do a proper spline through holes
+                return bilinear(values, dataCount, rowPos, colPos);
+            }
+            
+            result += cubicWeight(i, rowFrac) * cubic(v0, v1, v2, v3, colFrac);
+        }
+        
+        return result;
+    }
+    
+    private static double getExtrapolatedValue(final short[][] values, final int dataCount, final int rowNum, final int colNum) {
+        // outside of the tile: continue linear from the last two values at the border
+        if (rowNum < 0) {
+            return 2.0 * getExtrapolatedValue(values, dataCount, 0, colNum) - getExtrapolatedValue(values, dataCount, 1, colNum);
+        } else if (rowNum >= dataCount) {
+            return 2.0 * getExtrapolatedValue(values, dataCount, dataCount - 1, colNum) - getExtrapolatedValue(values, dataCount, dataCount - 2, colNum);
+        } else if (colNum < 0) {
+            return 2.0 * getExtrapolatedValue(values, dataCount, rowNum, 0) - getExtrapolatedValue(values, dataCount, rowNum, 1);
+        } else if (colNum >= dataCount) {
+            return 2.0 * getExtrapolatedValue(values, dataCount, rowNum, dataCount - 1) - getExtrapolatedValue(values, dataCount, rowNum, dataCount - 2);
+        }
+        
+        final short value = getValue(values, rowNum, colNum);
+        return (value != NO_DATA) ? value : Double.NaN;
+    }
+
+    private static double cubic(final double v0, final double v1, final double v2, final double v3, final double t) {
+        return v1 + 0.5 * t * (v2 - v0 + t * (2.0 * v0 - 5.0 * v1 + 4.0 * v2 - v3 + t * (3.0 * (v1 - v2) + v3 - v0)));
+    }
+
+    private static double cubicWeight(final int i, final double t) {
+        // Catmull-Rom weights for the four points at -1, 0, 1, 2
+        final double t2 = t * t;
+        final double t3 = t2 * t;
+        switch (i) {
+            case -1:
+                return 0.5 * (-t3 + 2.0 * t2 - t);
+            case 0:
+                return 0.5 * (3.0 * t3 - 5.0 * t2 + 2.0);
+            case 1:
+                return 0.5 * (-3.0 * t3 + 4.0 * t2 + t);
+            default:
+                return 0.5 * (t3 - t2);
+        }
+    }
+    
+    private static double rowPosition(final double latitude, final double latarcsecs, final SRTMDataHelper.SRTMDataType dataType) {
+        // same logic as for the row number - without rounding
+        if (latitude > 0) {
+            return dataType.getDataCount() - 1 - latarcsecs;
+        } else {
+            return latarcsecs;
+        }
+    }
+
+    private static double colPosition(final double longitude, final double lonarcsecs, final SRTMDataHelper.SRTMDataType dataType) {
+        // same logic as for the col number - without rounding
+        if (longitude > 0) {
+            return lonarcsecs;
+        } else {
+            return dataType.getDataCount() - 1 - lonarcsecs;
+        }
+    }
+    
+    private static short getValue(final short[][] values, final int rowNum, final int colNum) {
+        final short[] row = values[rowNum];
+        // rows that haven't been set have the default value
+        return (row != null) ? row[colNum] : (short) IElevationProvider.NO_ELEVATION;
+    }
+
+    private static double distanceOnGrid(final double latDist, final double lonDist) {
+        return Math.max(latDist*latDist + lonDist*lonDist, EPSILON*EPSILON);
+    }
+    
+    private static boolean isInArray(final int check, final int arraySize) {
+        return (check > -1 && check < arraySize);
+    }
+    
+    private static int clamp(final int check, final int arraySize) {
+        return Math.max(0, Math.min(arraySize - 1, check));
+    }
+}
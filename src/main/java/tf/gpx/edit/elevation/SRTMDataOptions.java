@@ -34,7 +34,10 @@ import tf.gpx.edit.helper.GPXEditorPreferences;
 public class SRTMDataOptions {
     public enum SRTMDataAverage {
         NEAREST_ONLY("Use only nearest data point"),
-        AVERAGE_NEIGHBOURS("Average neighbouring data points");
+        AVERAGE_NEIGHBOURS("Average neighbouring data points"),
+        // TFE, 20261019: proper interpolation between data points
+        BILINEAR("Bilinear interpolation"),
+        BICUBIC("Bicubic interpolation");
 
         private final String description;
 
@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.gpx.edit.elevation;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javafx.geometry.BoundingBox;
+import tf.gpx.edit.helper.GPXEditorPreferences;
+import tf.gpx.edit.items.GPXMeasurable;
+import tf.gpx.edit.leafletmap.IGeoCoordinate;
+
+/**
+ * Load SRTM data files in the background before someone asks for them.
+ * 
+ * Tiles are otherwise read on the thread that first needs an elevation - typically the UI thread.
+ * Here we read them on a single low-priority thread whenever the visible map area or the selected items change.
+ * 
+ * @author thomas
+ */
+public class SRTMDataPrefetcher {
+    // this is a singleton for everyones use
+    // http://www.javaworld.com/article/2073352/core-java/simply-singleton.html
+    private final static SRTMDataPrefetcher INSTANCE = new SRTMDataPrefetcher();
+    
+    // don't try to load the world when zoomed out - each tile can be up to 26MB
+    public final static int MAX_PREFETCH_TILES = 9;
+    
+    private final ExecutorService executorService;
+    // names that are already scheduled - no need to do it twice
+    private final Set<String> pendingNames = ConcurrentHashMap.newKeySet();
+
+    private SRTMDataPrefetcher() {
+        executorService = Executors.newSingleThreadExecutor((Runnable r) -> {
+            final Thread thread = new Thread(r, "SRTMDataPrefetcher");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    public static SRTMDataPrefetcher getInstance() {
+        return INSTANCE;
+    }
+    
+    /**
+     * Prefetch all tiles for the visible map area.
+     * 
+     * @param boundingBox as used by TrackMap: minX = min latitude, minY = min longitude
+     * @return future to wait for the loading
+     */
+    public Future<?> prefetchForBoundingBox(final BoundingBox boundingBox) {
+        if (boundingBox == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return prefetchDataNames(getDataNamesForBoundingBox(boundingBox));
+    }
+
+    /**
+     * Prefetch all tiles touched by the waypoints of the selected items.
+     * 
+     * The waypoints are collected in the background as well - for large selections that is already noticeable.
+     * 
+     * @param lineItems selected items
+     * @return future to wait for the loading
+     */
+    public Future<?> prefetchForMeasurables(final List<? extends GPXMeasurable> lineItems) {
+        if (!isPrefetchEnabled() || lineItems.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        
+        final List<GPXMeasurable> items = new ArrayList<>(lineItems);
+        final SRTMDataOptions srtmOptions = new SRTMDataOptions();
+        return executorService.submit(() -> {
+            final List<IGeoCoordinate> coords = new ArrayList<>();
+            try {
+                for (GPXMeasurable lineItem : items) {
+                    coords.addAll(lineItem.getCombinedGPXWaypoints(null));
+                }
+            } catch (RuntimeException ex) {
+                // items might have been changed in the meantime - prefetching is only a nice to have
+                Logger.getLogger(SRTMDataPrefetcher.class.getName()).log(Level.FINE, null, ex);
+                return;
+            }
+            loadDataNames(getNamesToLoad(getDataNamesForCoordinates(coords), srtmOptions), srtmOptions);
+        });
+    }
+
+    public Future<?> prefetchForCoordinates(final List<? extends IGeoCoordinate> coords) {
+        return prefetchDataNames(getDataNamesForCoordinates(coords));
+    }
+    
+    public Future<?> prefetchDataNames(final Collection<String> dataNames) {
+        return prefetchDataNames(dataNames, new SRTMDataOptions());
+    }
+
+    public Future<?> prefetchDataNames(final Collection<String> dataNames, final SRTMDataOptions srtmOptions) {
+        if (!isPrefetchEnabled()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        
+        final List<String> loadNames = getNamesToLoad(dataNames, srtmOptions);
+        if (loadNames.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        
+        return executorService.submit(() -> {
+            loadDataNames(loadNames, srtmOptions);
+        });
+    }
+    
+    private static boolean isPrefetchEnabled() {
+        // nothing to do if we're not allowed to use SRTM data anyways
+        return !ElevationProviderOptions.LookUpMode.SRTM_NONE.equals(GPXEditorPreferences.HEIGHT_LOOKUP_MODE.getAsType());
+    }
+    
+    private List<String> getNamesToLoad(final Collection<String> dataNames, final SRTMDataOptions srtmOptions) {
+        final List<String> loadNames = new ArrayList<>();
+        for (String dataName : dataNames) {
+            if (loadNames.size() >= MAX_PREFETCH_TILES) {
+                break;
+            }
+            // only what isn't there yet, can be read and isn't already on its way
+            if (!SRTMDataStore.getInstance().hasDataForName(dataName) &&
+                    srtmOptions.getSRTMDataReader().checkSRTMDataFile(dataName, srtmOptions.getSRTMDataPath()) &&
+                    pendingNames.add(dataName)) {
+                loadNames.add(dataName);
+            }
+        }
+        return loadNames;
+    }
+    
+    private void loadDataNames(final List<String> loadNames, final SRTMDataOptions srtmOptions) {
+        for (String dataName : loadNames) {
+            try {
+                SRTMDataStore.getInstance().getDataForName(dataName, srtmOptions);
+            } finally {
+                pendingNames.remove(dataName);
+            }
+        }
+    }
+    
+    public static Set<String> getDataNamesForBoundingBox(final BoundingBox boundingBox) {
+        final Set<String> result = new LinkedHashSet<>();
+        
+        final int minLat = Math.max(-90, (int) Math.floor(boundingBox.getMinX()));
+        final int maxLat = Math.min(89, (int) Math.floor(boundingBox.getMaxX()));
+        final int minLon = (int) Math.floor(boundingBox.getMinY());
+        final int maxLon = (int) Math.floor(boundingBox.getMaxY());
+        
+        if ((maxLat - minLat + 1) * (maxLon - minLon + 1) > MAX_PREFETCH_TILES) {
+            return result;
+        }
+        
+        for (int lat = minLat; lat <= maxLat; lat++) {
+            for (int lon = minLon; lon <= maxLon; lon++) {
+                // leaflet happily shows longitudes beyond the date line
+                final int tileLon = Math.floorMod(lon + 180, 360) - 180;
+                // use center of tile to avoid any rounding issues at the borders
+                result.add(SRTMDataHelper.getNameForCoordinate(lat + 0.5, tileLon + 0.5));
+            }
+        }
+        
+        return result;
+    }
+    
+    public static Set<String> getDataNamesForCoordinates(final List<? extends IGeoCoordinate> coords) {
+        final Set<String> result = new LinkedHashSet<>();
+        
+        // first collect tiles as numbers - much faster than building names for each coordinate
+        final Set<Long> tiles = new LinkedHashSet<>();
+        for (IGeoCoordinate coord : coords) {
+            final long lat = (long) Math.floor(coord.getLatitude());
+            final long lon = (long) Math.floor(coord.getLongitude());
+            tiles.add((lat << 32) | (lon & 0xFFFFFFFFL));
+        }
+        
+        for (Long tile : tiles) {
+            final int lat = (int) (tile >> 32);
+            final int lon = (int) (tile & 0xFFFFFFFFL);
+            result.add(SRTMDataHelper.getNameForCoordinate(lat + 0.5, lon + 0.5));
+        }
+        
+        return result;
+    }
+}
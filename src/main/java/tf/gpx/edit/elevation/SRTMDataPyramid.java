@@ -0,0 +1,228 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.gpx.edit.elevation;
+
+import java.util.Arrays;
+import org.apache.commons.lang3.tuple.Pair;
+import tf.gpx.edit.algorithms.EarthGeometry;
+
+/**
+ * Downsampled overview levels of a SRTM data tile.
+ * 
+ * Each level combines factor x factor cells of the full data into one cell and stores min, max and mean of them.
+ * Queries for far away locations don't need the full resolution - here they can pick the coarsest level that 
+ * still matches the requested ground resolution and touch only a fraction of the memory.
+ * 
+ * Levels are calculated in one pass over the full data when first needed.
+ * 
+ * @author thomas
+ */
+public class SRTMDataPyramid {
+    public enum Statistic {
+        MIN,
+        MAX,
+        MEAN
+    }
+    
+    // 2x, 4x, 8x
+    public final static int[] LEVEL_FACTORS = {2, 4, 8};
+    
+    // one arc second along a meridian - good enough to decide on the level
+    // along a circle of latitude cells are even smaller so this is on the safe side
+    public final static double METER_PER_ARCSEC = EarthGeometry.LengthOfADegree / 3600d;
+    
+    private final static short NO_DATA = Short.MIN_VALUE;
+
+    private final SRTMDataHelper.SRTMDataType dataType;
+    private final Level[] levels;
+    // max of all valid values - to give an upper bound for lookups
+    private short maxValue = NO_DATA;
+    
+    private static class Level {
+        private final int factor;
+        private final int size;
+        private final short[] minValues;
+        private final short[] maxValues;
+        private final short[] meanValues;
+        
+        private Level(final int fact, final int dataCount) {
+            factor = fact;
+            size = (dataCount + factor - 1) / factor;
+            minValues = new short[size * size];
+            maxValues = new short[size * size];
+            meanValues = new short[size * size];
+        }
+        
+        private short getValue(final int rowNum, final int colNum, final Statistic statistic) {
+            final int index = rowNum * size + colNum;
+            switch (statistic) {
+                case MIN:
+                    return minValues[index];
+                case MAX:
+                    return maxValues[index];
+                default:
+                    return meanValues[index];
+            }
+        }
+    }
+    
+    protected SRTMDataPyramid(final SRTMData data) {
+        dataType = data.getKey().getValue();
+        levels = new Level[LEVEL_FACTORS.length];
+        
+        final int dataCount = dataType.getDataCount();
+        
+        // accumulators for all levels - filled in one pass over the data
+        final long[][] sums = new long[LEVEL_FACTORS.length][];
+        final int[][] counts = new int[LEVEL_FACTORS.length][];
+        for (int i = 0; i < LEVEL_FACTORS.length; i++) {
+            final Level level = new Level(LEVEL_FACTORS[i], dataCount);
+            Arrays.fill(level.minValues, Short.MAX_VALUE);
+            Arrays.fill(level.maxValues, Short.MIN_VALUE);
+            levels[i] = level;
+
+            sums[i] = new long[level.size * level.size];
+            counts[i] = new int[level.size * level.size];
+        }
+        
+        final short[][] values = data.getValues();
+        for (int rowNum = 0; rowNum < dataCount; rowNum++) {
+            final short[] row = values[rowNum];
+            for (int colNum = 0; colNum < dataCount; colNum++) {
+                // rows that haven't been set have the default value
+                final short value = (row != null) ? row[colNum] : (short) IElevationProvider.NO_ELEVATION;
+                if (value == NO_DATA) {
+                    continue;
+                }
+                
+                for (int i = 0; i < levels.length; i++) {
+                    final Level level = levels[i];
+                    final int index = (rowNum / level.factor) * level.size + (colNum / level.factor);
+                    
+                    if (value < level.minValues[index]) {
+                        level.minValues[index] = value;
+                    }
+                    if (value > level.maxValues[index]) {
+                        level.maxValues[index] = value;
+                    }
+                    sums[i][index] += value;
+                    counts[i][index]++;
+                }
+            }
+        }
+        
+        for (int i = 0; i < levels.length; i++) {
+            final Level level = levels[i];
+            for (int index = 0; index < level.meanValues.length; index++) {
+                if (counts[i][index] > 0) {
+                    level.meanValues[index] = (short) Math.round((double) sums[i][index] / counts[i][index]);
+                } else {
+                    // no valid data in this cell at all
+                    level.minValues[index] = NO_DATA;
+                    level.maxValues[index] = NO_DATA;
+                    level.meanValues[index] = NO_DATA;
+                }
+            }
+        }
+        
+        // coarsest level is enough to find the overall max
+        for (short value : levels[levels.length - 1].maxValues) {
+            if (value > maxValue) {
+                maxValue = value;
+            }
+        }
+    }
+    
+    /**
+     * Find the coarsest level with cells not larger than the requested ground resolution.
+     * 
+     * @param groundResolution requested resolution in meters
+     * @return factor of the level or 1 if the full data should be used
+     */
+    public int getFactorForResolution(final double groundResolution) {
+        int result = 1;
+        
+        final double cellSize = dataType.getGridSize() * METER_PER_ARCSEC;
+        for (int factor : LEVEL_FACTORS) {
+            if (factor * cellSize <= groundResolution) {
+                result = factor;
+            }
+        }
+        
+        return result;
+    }
+
+    /**
+     * Get value from the level with the given factor.
+     * 
+     * @param latitude latitude in the tile
+     * @param longitude longitude in the tile
+     * @param factor one of LEVEL_FACTORS
+     * @param statistic what value of the cell to use
+     * @return pair of found flag and elevation
+     */
+    public Pair<Boolean, Double> getValueForCoordinate(final double latitude, final double longitude, final int factor, final Statistic statistic) {
+        Level level = null;
+        for (Level check : levels) {
+            if (check.factor == factor) {
+                level = check;
+                break;
+            }
+        }
+        if (level == null) {
+            return Pair.of(false, IElevationProvider.NO_ELEVATION);
+        }
+
+        final int rowNum = SRTMData.getRowNumForLatitude(latitude, dataType) / factor;
+        final int colNum = SRTMData.getColNumForLongitude(longitude, dataType) / factor;
+        assert rowNum > -1;
+        assert colNum > -1;
+        assert rowNum < level.size;
+        assert colNum < level.size;
+
+        final short result = level.getValue(rowNum, colNum, statistic);
+        
+        return Pair.of(result != NO_DATA, result == NO_DATA ? IElevationProvider.NO_ELEVATION : result);
+    }
+    
+    /**
+     * Max value of the whole tile - no lookup returns anything larger.
+     * 
+     * @return pair of found flag and max elevation
+     */
+    public Pair<Boolean, Double> getMaxValue() {
+        return Pair.of(maxValue != NO_DATA, maxValue == NO_DATA ? IElevationProvider.NO_ELEVATION : maxValue);
+    }
+    
+    public int getLevelSize(final int factor) {
+        for (Level level : levels) {
+            if (level.factor == factor) {
+                return level.size;
+            }
+        }
+        return dataType.getDataCount();
+    }
+}
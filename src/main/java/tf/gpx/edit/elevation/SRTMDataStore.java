@@ -26,10 +26,11 @@
 package tf.gpx.edit.elevation;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
 import org.apache.commons.io.FilenameUtils;
 
 /**
@@ -42,8 +43,27 @@ class SRTMDataStore {
     private final static SRTMDataStore INSTANCE = new SRTMDataStore();
     
     public final static String HGT_EXT = "hgt";
+    
+    // TFE, 20261019: each tile can be up to 26MB - only keep the most recently used ones in memory
+    public final static int MAX_STORE_SIZE = 16;
+    private int maxStoreSize = MAX_STORE_SIZE;
 
-    private final Map<SRTMDataKey, SRTMData> srtmStore = new HashMap<>();
+    // TFE, 20261019: store is filled from the prefetcher thread as well - so make it thread-safe
+    private final Map<SRTMDataKey, SRTMData> srtmStore = new ConcurrentHashMap<>();
+    // TFE, 20261019: helper map to find best key for a name without scanning the whole store
+    // access-ordered to drop the least recently used names - only to be used in synchronized methods
+    private final Map<String, SRTMDataKey> nameStore = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, SRTMDataKey> eldest) {
+            if (size() > maxStoreSize) {
+                removeDataForName(eldest.getKey());
+                return true;
+            }
+            return false;
+        }
+    };
+    // TFE, 20261019: only one thread should read a given file
+    private final Map<String, Object> loadLocks = new ConcurrentHashMap<>();
 
     // this only makes sense with options
     private SRTMDataStore() {
@@ -62,20 +82,33 @@ class SRTMDataStore {
         }
 
         // check store for matching data
-        SRTMDataKey dataKey = dataKeyForName(name);
+        result = dataForName(name);
         
-        if (dataKey == null) {
-            // if not found: try to read file and add to store
-            result = srtmOptions.getSRTMDataReader().readSRTMData(name, srtmOptions.getSRTMDataPath());
-            
-            srtmStore.put(result.getKey(), result);
-        } else {
-            result = srtmStore.get(dataKey);
+        if (result == null) {
+            synchronized (loadLocks.computeIfAbsent(name, k -> new Object())) {
+                // someone else might have been faster - e.g. the prefetcher
+                result = dataForName(name);
+                if (result == null) {
+                    // if not found: try to read file and add to store
+                    result = srtmOptions.getSRTMDataReader().readSRTMData(name, srtmOptions.getSRTMDataPath());
+
+                    putData(result);
+                }
+            }
         }
         
         return result;
     }
     
+    protected boolean hasDataForName(final String dataName) {
+        String name = dataName;
+        if (name.endsWith(HGT_EXT)) {
+            name = FilenameUtils.getBaseName(name);
+        }
+
+        return (dataKeyForName(name) != null);
+    }
+    
     protected void addMissingDataToStore(final SRTMData newData) {
         assert newData != null;
         
@@ -89,27 +122,46 @@ class SRTMDataStore {
 
         // add if not already there
         if (dataKey == null) {
-            srtmStore.put(newData.getKey(), newData);
+            putData(newData);
         }
     }
     
-    private SRTMDataKey dataKeyForName(final String dataName) {
-        SRTMDataKey result = null;
-        
-        // TODO: speed this up! called umpteen times for data viewer...
-        final List<SRTMDataKey> dataEntries = srtmStore.keySet().stream().
-                filter((SRTMDataKey key) -> {
-                    return key.getKey().equals(dataName);
-                }).
-                sorted((SRTMDataKey key1, SRTMDataKey key2) -> key1.getValue().compareTo(key2.getValue())).
-                collect(Collectors.toList());
-        
-        if (!dataEntries.isEmpty()) {
-            // sorted by type and therefore sorted by accuracy :-)
-            result = dataEntries.get(0);
+    private synchronized void putData(final SRTMData data) {
+        srtmStore.put(data.getKey(), data);
+        // keep the most accurate key per name - types are sorted by accuracy :-)
+        nameStore.merge(data.getKey().getKey(), data.getKey(), 
+                (SRTMDataKey key1, SRTMDataKey key2) -> (key1.getValue().compareTo(key2.getValue()) <= 0) ? key1 : key2);
+    }
+    
+    private synchronized SRTMDataKey dataKeyForName(final String dataName) {
+        // TFE, 20261019: sped up using helper map
+        return nameStore.get(dataName);
+    }
+    
+    private synchronized SRTMData dataForName(final String dataName) {
+        // key & data in one go - data might be dropped from the store in between otherwise
+        final SRTMDataKey dataKey = nameStore.get(dataName);
+        return (dataKey != null) ? srtmStore.get(dataKey) : null;
+    }
+    
+    private void removeDataForName(final String dataName) {
+        // all data for the name - not only the most accurate one
+        srtmStore.keySet().removeIf((t) -> t.getKey().equals(dataName));
+    }
+    
+    protected synchronized int size() {
+        return nameStore.size();
+    }
+    
+    protected synchronized void setMaxStoreSize(final int size) {
+        maxStoreSize = size;
+
+        // drop what is too much now
+        final Iterator<String> iter = nameStore.keySet().iterator();
+        while (nameStore.size() > maxStoreSize && iter.hasNext()) {
+            removeDataForName(iter.next());
+            iter.remove();
         }
-        
-        return result;
     }
 
     protected List<String> findMissingDataFiles(final List<String> srtmnames, final SRTMDataOptions srtmOptions) {
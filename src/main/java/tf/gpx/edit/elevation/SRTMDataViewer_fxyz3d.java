@@ -31,10 +31,9 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.function.Function;
+import java.util.function.DoubleUnaryOperator;
 import java.util.stream.Collectors;
 import javafx.application.Platform;
-import javafx.geometry.Point2D;
 import javafx.geometry.Pos;
 import javafx.scene.Group;
 import javafx.scene.Node;
@@ -47,29 +46,30 @@ import javafx.scene.control.Alert;
 import javafx.scene.control.ButtonBar;
 import javafx.scene.control.ButtonType;
 import javafx.scene.control.Label;
+import javafx.scene.image.WritableImage;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.layout.StackPane;
 import javafx.scene.paint.Color;
+import javafx.scene.paint.PhongMaterial;
 import javafx.scene.shape.CullFace;
 import javafx.scene.shape.DrawMode;
+import javafx.scene.shape.MeshView;
 import javafx.scene.shape.Shape3D;
+import javafx.scene.shape.TriangleMesh;
 import javafx.stage.FileChooser;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
 import me.himanshusoni.gpxparser.modal.Waypoint;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.io.FilenameUtils;
-import org.apache.commons.lang3.tuple.Pair;
 import org.apache.commons.math3.util.FastMath;
 import org.fxyz3d.geometry.MathUtils;
 import org.fxyz3d.geometry.Point3D;
-import org.fxyz3d.scene.paint.Palette;
 import org.fxyz3d.shapes.composites.PolyLine3D;
 import org.fxyz3d.utils.CameraTransformer;
 import tf.gpx.edit.algorithms.EarthGeometry;
 import tf.gpx.edit.elevation.charts.Axis;
 import tf.gpx.edit.elevation.charts.Fxyz3dHelper;
-import tf.gpx.edit.elevation.charts.SurfacePlotMesh_Fast;
 import tf.gpx.edit.helper.GPXEditorPreferences;
 import tf.gpx.edit.items.Bounds3D;
 import tf.gpx.edit.items.GPXLineItem;
@@ -101,6 +101,7 @@ public class SRTMDataViewer_fxyz3d {
     private final int MAP_WIDTH = 1440;
     private final int MAP_HEIGHT = 1080;
     
+    // TFE, 20261019: only used for the waypoints of lines - the surface has its own level of detail
     private final int DATA_FRACTION = 4;
     
     // TFE, 20230205: we need some scaling here for different sizes of maps
@@ -124,7 +125,8 @@ public class SRTMDataViewer_fxyz3d {
     private double axesScaling = 1;
     
     private final Map<Shape3D, Label> ticToLabel = new HashMap<>();
-    private SurfacePlotMesh_Fast surface;
+    private Group surface;
+    private SRTMTerrainMesh terrain;
     private Group axes;
     private List<PolyLine3D> lines;
 
@@ -154,43 +156,6 @@ public class SRTMDataViewer_fxyz3d {
     private double elevationScaling = 1d/10000d;
     private boolean hasNoElevation = false;
 
-    private static class ElevationColors implements Palette.ColorPalette {
-
-        private final List<Color> colors;
-
-        public ElevationColors(Color... colors) {
-            this(new ArrayList<>(Arrays.asList(colors)));
-        }
-
-        public ElevationColors(List<Color> colors) {
-            this.colors = colors;
-        }
-
-        public void setColors(Color... colors) {
-            setColors(new ArrayList<>(Arrays.asList(colors)));
-        }
-
-        public void setColors(List<Color> colors) {
-            this.colors.clear();
-            this.colors.addAll(colors);
-        }
-
-        public List<Color> getColors() {
-            return colors;
-        }
-
-        @Override
-        public Color getColor(int i) {
-            return colors != null && ! colors.isEmpty() ?
-                    colors.get(Math.max(0, Math.min(i, colors.size() - 1))) : Color.BLACK;
-        }
-
-        @Override
-        public int getNumColors() {
-            return colors != null ? colors.size() : 0;
-        }
-    }
-
     private SRTMDataViewer_fxyz3d() {
         // Exists only to defeat instantiation.
         stage.initModality(Modality.APPLICATION_MODAL); 
@@ -409,7 +374,12 @@ public class SRTMDataViewer_fxyz3d {
 //        System.out.println("");
 
         // try again with those values
-        setSurface(dataBounds);
+        // TFE, 20261019: no need to read the data again - only the scaling has changed
+        if (!terrain.noElevationData()) {
+            minElevation = Math.max(0d, elevationScaler.applyAsDouble(terrain.getMinElevation()));
+            maxElevation = Math.max(0d, elevationScaler.applyAsDouble(terrain.getMaxElevation()));
+        }
+        setSurfaceMeshes(dataBounds);
         // TFE, 20220717: and now we know the elevation min/max values and might need to rescale
         dataBounds.setMinElev(minElevation);
         dataBounds.setMaxElev(maxElevation);
@@ -763,8 +733,9 @@ public class SRTMDataViewer_fxyz3d {
     }
     
     // scale the height values to match lat / lon scaling
-//    private Function<Double, Double> elevationScaler = (value) -> Math.sqrt(value) / 40d;
-    private Function<Double, Double> elevationScaler = (value) -> value * elevationScaling;
+    // TFE, 20261019: primitive operator - it's also used for every vertex of the terrain mesh
+//    private DoubleUnaryOperator elevationScaler = (value) -> Math.sqrt(value) / 40d;
+    private DoubleUnaryOperator elevationScaler = (value) -> value * elevationScaling;
     
     private void setSurface(final Bounds3D dataBounds) {
         latDist = (dataBounds.getMaxLat() - dataBounds.getMinLat());
@@ -772,42 +743,27 @@ public class SRTMDataViewer_fxyz3d {
         latCenter = (dataBounds.getMaxLat() + dataBounds.getMinLat()) / 2d;
         lonCenter = (dataBounds.getMaxLon() + dataBounds.getMinLon()) / 2d;
         
-        minElevation = Double.MAX_VALUE;
-        maxElevation = -Double.MAX_VALUE;
-
-        hasNoElevation = false;
-        
-        final Function<Point2D,Number> elevationFunction = (t) -> {
-            // convert point into lat & lon = scale & shift properly <- lat = y lon = x AND we need to go lat "backwards"
-            final Pair<Boolean, Double> elevation = elevationService.getElevationForCoordinate(-t.getY()+latCenter, t.getX()+lonCenter);
-            final double elevationValue = Math.max(0d, elevationScaler.apply(elevation.getRight()));
-
-            if (elevation.getLeft()) {
-                minElevation = Math.min(minElevation, elevationValue);
-                maxElevation = Math.max(maxElevation, elevationValue);
-            } else {
-                hasNoElevation = true;
-            }
-            
-            return elevationValue;
-        };
-        
-//        System.out.println("Bounds:  " + dataBounds.getMinLat() + ", " + dataBounds.getMaxLat() + ", " + dataBounds.getMinLon() + ", " + dataBounds.getMaxLon());
-//        System.out.println("Shifted: " + latCenter + ", " + latDist + ", " + lonCenter + ", " + lonDist);
-
-        // we don't want to plot the full set, only 1/4 of it
-        final int dataCount = SRTMDataHelper.SRTMDataType.SRTM3.getDataCount();
-        final int steps = dataCount / DATA_FRACTION;
+        // TFE, 20261019: chunked meshes with level of detail read directly from the SRTM data
+        // instead of one SurfacePlotMesh_Fast for the whole area calling a function for each point
+        terrain = new SRTMTerrainMesh(elevationService, 
+                dataBounds.getMinLat(), dataBounds.getMaxLat(), dataBounds.getMinLon(), dataBounds.getMaxLon()).calculate();
         
-        // SurfacePlotMesh is good for a known function since it avoids DelaunayMesh...
-        surface = new SurfacePlotMesh_Fast(elevationFunction, lonDist, latDist, steps, steps, 1);
-        surface.setCullFace(CullFace.NONE);
-        
-        ElevationColors colors;
+        hasNoElevation = terrain.hasNoData();
+        if (!terrain.noElevationData()) {
+            minElevation = Math.max(0d, elevationScaler.applyAsDouble(terrain.getMinElevation()));
+            maxElevation = Math.max(0d, elevationScaler.applyAsDouble(terrain.getMaxElevation()));
+        } else {
+            minElevation = 0d;
+            maxElevation = 0d;
+        }
+    }
+    
+    private void setSurfaceMeshes(final Bounds3D dataBounds) {
+        List<Color> colors;
         // we have 8 colors + "transparent" that should be used for zero values
         // we want to use the "transparent" ONLY for zero values
         if (hasNoElevation) {
-            colors = new ElevationColors(
+            colors = Arrays.asList(
                         Color.TRANSPARENT,
                         adaptColor(Color.BLUE), 
                         adaptColor(Color.LIGHTBLUE), 
@@ -818,7 +774,7 @@ public class SRTMDataViewer_fxyz3d {
                         adaptColor(Color.RED), 
                         adaptColor(Color.DARKRED));
         } else {
-            colors = new ElevationColors(
+            colors = Arrays.asList(
                         adaptColor(Color.BLUE), 
                         adaptColor(Color.LIGHTBLUE), 
                         adaptColor(Color.CYAN), 
@@ -829,18 +785,30 @@ public class SRTMDataViewer_fxyz3d {
                         adaptColor(Color.DARKRED));
         }
         
-        surface.setTextureModeVertices3D(colors, 
-                p -> {
-                    // so elevation for zero should be something so much lower than minElevation that it will
-                    // certainly be shown as transparent without impacting the other color range
-                    if (p.y >= minElevation) {
-                        return p.y;
-                    } else {
-//                        System.out.println("Returning artifical height");
-                        return - 200d*minElevation;
-                    }
-                        });
-        surface.setDrawMode(DrawMode.FILL);
+        // one row palette image - texture coordinates of the meshes point to the pixel centers
+        final WritableImage palette = new WritableImage(colors.size(), 1);
+        for (int i = 0; i < colors.size(); i++) {
+            palette.getPixelWriter().setColor(i, 0, colors.get(i));
+        }
+        final PhongMaterial material = new PhongMaterial();
+        material.setDiffuseMap(palette);
+        
+        // TFE, 20261019: same scaler as for the tracks - otherwise they end up above or below the terrain
+        terrain.buildMeshes(elevationScaler, latCenter, lonCenter, colors.size(), hasNoElevation);
+        
+        surface = new Group();
+        for (SRTMTerrainMesh.Chunk chunk : terrain.getChunks()) {
+            final TriangleMesh mesh = new TriangleMesh();
+            mesh.getPoints().setAll(chunk.getPoints());
+            mesh.getTexCoords().setAll(chunk.getTexCoords());
+            mesh.getFaces().setAll(chunk.getFaces());
+            
+            final MeshView meshView = new MeshView(mesh);
+            meshView.setMaterial(material);
+            meshView.setCullFace(CullFace.NONE);
+            meshView.setDrawMode(DrawMode.FILL);
+            surface.getChildren().add(meshView);
+        }
         surface.setUserData(dataBounds);
     }
     
@@ -870,7 +838,7 @@ public class SRTMDataViewer_fxyz3d {
                 points.add(new Point3D(
                         waypoint.getLongitude()-lonCenter, 
                         // TFE, 20230205: added scaling based on viewport dimensions
-                        elevationScaler.apply(waypoint.getElevation()) + LINE_RAISE * lineScaling, 
+                        elevationScaler.applyAsDouble(waypoint.getElevation()) + LINE_RAISE * lineScaling, 
                         latCenter-waypoint.getLatitude()));
             }
             
@@ -25,8 +25,10 @@
  */
 package tf.gpx.edit.elevation;
 
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Set;
 import org.apache.commons.lang3.tuple.Pair;
 import tf.gpx.edit.leafletmap.IGeoCoordinate;
 
@@ -68,11 +70,165 @@ public class SRTMElevationService implements IElevationProvider {
         return result;
     }
     
+    /**
+     * Lookup using the downsampled overview levels of the SRTM data.
+     * 
+     * @param latitude latitude
+     * @param longitude longitude
+     * @param groundResolution required resolution in meters - coarsest level with cells not larger than this is used
+     * @param statistic what value of a downsampled cell to use
+     * @return pair of found flag and elevation
+     */
+    public Pair<Boolean, Double> getElevationForCoordinate(final double latitude, final double longitude, final double groundResolution, final SRTMDataPyramid.Statistic statistic) {
+        Pair<Boolean, Double> result = Pair.of(false, NO_ELEVATION);
+        
+        // check store for matching data
+        final SRTMData srtmData = getSRTMData(latitude, longitude);
+        
+        // ask data for value
+        if (srtmData != null && !srtmData.isEmpty()) {
+            result = srtmData.getValueForCoordinate(latitude, longitude, groundResolution, statistic);
+        }
+        
+        return result;
+    }
+    
     @Override
     public List<Pair<Boolean, Double>> getElevationsForCoordinates(final List<? extends IGeoCoordinate> coords) {
-        return coords.stream().map((t) -> {
-            return getElevationForCoordinate(t.getLatitude(), t.getLongitude());
-        }).collect(Collectors.toList());
+        // TFE, 20261019: use the array version - one lookup per tile instead of per coordinate
+        final double[] latitudes = new double[coords.size()];
+        final double[] longitudes = new double[coords.size()];
+        int i = 0;
+        for (IGeoCoordinate coord : coords) {
+            latitudes[i] = coord.getLatitude();
+            longitudes[i] = coord.getLongitude();
+            i++;
+        }
+        
+        final double[] elevations = new double[coords.size()];
+        final boolean[] found = new boolean[coords.size()];
+        getElevationsForCoordinates(latitudes, longitudes, elevations, found);
+        
+        final List<Pair<Boolean, Double>> result = new ArrayList<>(coords.size());
+        for (i = 0; i < coords.size(); i++) {
+            result.add(Pair.of(found[i], elevations[i]));
+        }
+        return result;
+    }
+
+    /**
+     * Lookup for arrays of coordinates without creating objects per coordinate.
+     * 
+     * Consecutive coordinates in the same tile are handed over to the tile in one go - as they come for tracks & routes.
+     * 
+     * @param latitudes latitudes of the coordinates
+     * @param longitudes longitudes of the coordinates
+     * @param elevations result values - NO_ELEVATION if not found
+     * @param found result flags
+     * @return number of coordinates with values
+     */
+    public int getElevationsForCoordinates(final double[] latitudes, final double[] longitudes, final double[] elevations, final boolean[] found) {
+        assert latitudes.length == longitudes.length;
+        assert elevations.length >= latitudes.length;
+        assert found.length >= latitudes.length;
+
+        int result = 0;
+        
+        int from = 0;
+        while (from < latitudes.length) {
+            // check store for matching data
+            final SRTMData srtmData = getSRTMData(latitudes[from], longitudes[from]);
+            
+            if (srtmData == null || srtmData.isEmpty()) {
+                elevations[from] = NO_ELEVATION;
+                found[from] = false;
+                from++;
+                continue;
+            }
+            
+            // how far do we get with this tile?
+            int to = from + 1;
+            while (to < latitudes.length && srtmData.containsCoordinate(latitudes[to], longitudes[to])) {
+                to++;
+            }
+
+            result += srtmData.getValuesForCoordinates(latitudes, longitudes, from, to, srtmOptions.getSRTMDataAverage(), elevations, found);
+            from = to;
+        }
+        
+        return result;
+    }
+    
+    /**
+     * Grid size of the SRTM data covering a coordinate.
+     * 
+     * @param latitude latitude
+     * @param longitude longitude
+     * @return grid size in arc seconds or 0 if no data is available
+     */
+    public int getGridSizeForCoordinate(final double latitude, final double longitude) {
+        final SRTMData srtmData = getSRTMData(latitude, longitude);
+        
+        if (srtmData == null || srtmData.isEmpty()) {
+            return 0;
+        }
+        return srtmData.getKey().getValue().getGridSize();
+    }
+    
+    /**
+     * Max elevation of all tiles touched by an area.
+     * 
+     * Longitudes are used as they are - same as for any other lookup.
+     * 
+     * @param minLatitude min latitude of the area
+     * @param minLongitude min longitude of the area
+     * @param maxLatitude max latitude of the area
+     * @param maxLongitude max longitude of the area
+     * @return pair of found flag and max elevation
+     */
+    public Pair<Boolean, Double> getMaxElevationForArea(final double minLatitude, final double minLongitude, final double maxLatitude, final double maxLongitude) {
+        boolean found = false;
+        double maxElevation = NO_ELEVATION;
+        
+        // check each integer border and a point inside each tile - border coordinates might belong to the neighbouring tile
+        final Set<String> dataNames = new LinkedHashSet<>();
+        for (double latitude : getTileCheckValues(minLatitude, maxLatitude)) {
+            for (double longitude : getTileCheckValues(minLongitude, maxLongitude)) {
+                dataNames.add(SRTMDataHelper.getNameForCoordinate(latitude, longitude));
+            }
+        }
+        
+        for (String dataName : dataNames) {
+            final SRTMData srtmData = SRTMDataStore.getInstance().getDataForName(dataName, srtmOptions);
+            if (srtmData == null || srtmData.isEmpty()) {
+                continue;
+            }
+            
+            final Pair<Boolean, Double> tileMax = srtmData.getPyramid().getMaxValue();
+            if (tileMax.getLeft() && (!found || tileMax.getRight() > maxElevation)) {
+                found = true;
+                maxElevation = tileMax.getRight();
+            }
+        }
+        
+        return Pair.of(found, maxElevation);
+    }
+    
+    private static List<Double> getTileCheckValues(final double minValue, final double maxValue) {
+        final List<Double> result = new ArrayList<>();
+        
+        result.add(minValue);
+        for (double value = Math.floor(minValue); value <= maxValue; value++) {
+            if (value > minValue) {
+                result.add(value);
+            }
+            if (value + 0.5 > minValue && value + 0.5 < maxValue) {
+                result.add(value + 0.5);
+            }
+        }
+        result.add(maxValue);
+        
+        return result;
     }
     
     SRTMData getSRTMData(final double latitude, final double longitude) {
@@ -0,0 +1,625 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.gpx.edit.elevation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.DoubleUnaryOperator;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Terrain meshes for an area of SRTM data, split into square chunks with distance based level of detail.
+ * 
+ * The area is put on the grid of the finest SRTM data found and split into chunks of a power of 2 cells.
+ * Each chunk samples every step-th grid point, starting with full resolution close to the focus 
+ * and doubling the step for every ring further away. If the total number of vertices exceeds the budget 
+ * the base step is doubled until it fits - this keeps multi-tile areas within the memory of the graphics card.
+ * 
+ * Elevations are read with the array lookup of the elevation service - no objects per grid point.
+ * Chunks are sampled & meshed in parallel. Border vertices of finer chunks are pulled onto the edges 
+ * of coarser neighbours so that no cracks show between chunks of different detail.
+ * 
+ * Meshes are returned as plain arrays in the layout of javafx.scene.shape.TriangleMesh with
+ * x = longitude, y = elevation and z = latitude (increasing to the south), shifted by the center of the area.
+ * 
+ * @author thomas
+ */
+public class SRTMTerrainMesh {
+    public final static int DEFAULT_CHUNK_CELLS = 64;
+    // approx. 36 bytes of vram per vertex
+    public final static int DEFAULT_MAX_VERTICES = 1000000;
+    // chunks closer than this to the focus are shown with the base step
+    public final static int FULL_DETAIL_CHUNKS = 2;
+    // don't create too many nodes for large areas - chunks get larger instead
+    public final static int MAX_CHUNKS_PER_SIDE = 32;
+    
+    private final static double EPSILON = 1e-6;
+    // fraction of a cell - small enough for the nearest grid point to stay the same
+    private final static double EDGE_SHIFT = 1e-3;
+    private final static int[][] EDGE_SHIFTS = {{1, 0}, {0, 1}, {1, 1}};
+
+    private final static ExecutorService executorService = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), 
+            (Runnable r) -> {
+                final Thread thread = new Thread(r, "SRTMTerrainMesh");
+                thread.setDaemon(true);
+                return thread;
+            });
+    
+    private final SRTMElevationService elevationService;
+    private final double minLatitude;
+    private final double maxLatitude;
+    private final double minLongitude;
+    private final double maxLongitude;
+    private double focusLatitude;
+    private double focusLongitude;
+    private int maxVertices = DEFAULT_MAX_VERTICES;
+    
+    // grid geometry: index of the northern / western grid line, grid size in arc seconds & degrees
+    private int gridSize;
+    private double cellSize;
+    private int northIndex;
+    private int westIndex;
+    private int cellRows;
+    private int cellCols;
+    private int chunkCells;
+    private int chunkRows;
+    private int chunkCols;
+    private int baseStep;
+    
+    private Chunk[] chunks = new Chunk[0];
+    private double minElevation = Double.NaN;
+    private double maxElevation = Double.NaN;
+    private boolean hasNoData = false;
+    
+    /**
+     * Part of the terrain with its own step width.
+     */
+    public static class Chunk {
+        private final int chunkRow;
+        private final int chunkCol;
+        private final int firstRow;
+        private final int firstCol;
+        private final int cellRows;
+        private final int cellCols;
+        private final int step;
+        private final int vertexRows;
+        private final int vertexCols;
+        // NaN for no data
+        private final float[] elevations;
+        
+        private float[] points;
+        private float[] texCoords;
+        private int[] faces;
+        
+        private Chunk(final int chRow, final int chCol, final int fRow, final int fCol, final int cRows, final int cCols, final int st) {
+            chunkRow = chRow;
+            chunkCol = chCol;
+            firstRow = fRow;
+            firstCol = fCol;
+            cellRows = cRows;
+            cellCols = cCols;
+            step = st;
+            vertexRows = getVertexCountForCells(cellRows, step);
+            vertexCols = getVertexCountForCells(cellCols, step);
+            elevations = new float[vertexRows * vertexCols];
+        }
+        
+        public int getChunkRow() {
+            return chunkRow;
+        }
+
+        public int getChunkColumn() {
+            return chunkCol;
+        }
+
+        public int getStep() {
+            return step;
+        }
+
+        public int getVertexRows() {
+            return vertexRows;
+        }
+
+        public int getVertexColumns() {
+            return vertexCols;
+        }
+        
+        public int getVertexCount() {
+            return vertexRows * vertexCols;
+        }
+
+        /**
+         * Elevation of a vertex in meters.
+         * 
+         * @param row row of the vertex, 0 is the northern edge
+         * @param col column of the vertex, 0 is the western edge
+         * @return elevation or NaN for no data
+         */
+        public float getElevation(final int row, final int col) {
+            return elevations[row * vertexCols + col];
+        }
+
+        // offset in cells of a vertex from the start of the chunk - last one is always at the end
+        private int getCellOffset(final int index, final int cells) {
+            return Math.min(index * step, cells);
+        }
+
+        public float[] getPoints() {
+            return points;
+        }
+
+        public float[] getTexCoords() {
+            return texCoords;
+        }
+
+        public int[] getFaces() {
+            return faces;
+        }
+    }
+
+    /**
+     * Setup for an area - focus is the center of the area.
+     * 
+     * @param service where to get the elevations from
+     * @param minLat southern border
+     * @param maxLat northern border
+     * @param minLon western border
+     * @param maxLon eastern border
+     */
+    public SRTMTerrainMesh(final SRTMElevationService service, final double minLat, final double maxLat, final double minLon, final double maxLon) {
+        elevationService = service;
+        minLatitude = minLat;
+        maxLatitude = maxLat;
+        minLongitude = minLon;
+        maxLongitude = maxLon;
+        focusLatitude = (minLat + maxLat) / 2.0;
+        focusLongitude = (minLon + maxLon) / 2.0;
+    }
+    
+    public SRTMTerrainMesh setFocus(final double latitude, final double longitude) {
+        focusLatitude = latitude;
+        focusLongitude = longitude;
+        return this;
+    }
+    
+    public SRTMTerrainMesh setMaxVertices(final int vertices) {
+        maxVertices = vertices;
+        return this;
+    }
+    
+    /**
+     * Set up the chunks and read the elevations for all of them.
+     * 
+     * @return this for chaining
+     */
+    public SRTMTerrainMesh calculate() {
+        chunks = new Chunk[0];
+        minElevation = Double.NaN;
+        maxElevation = Double.NaN;
+        hasNoData = false;
+        
+        gridSize = getGridSize();
+        if (gridSize == 0) {
+            // no data, no terrain
+            return this;
+        }
+        cellSize = gridSize / 3600.0;
+        
+        // use the grid lines of the data to hit the values exactly
+        northIndex = (int) Math.ceil(maxLatitude / cellSize - EPSILON);
+        final int southIndex = (int) Math.floor(minLatitude / cellSize + EPSILON);
+        westIndex = (int) Math.floor(minLongitude / cellSize + EPSILON);
+        final int eastIndex = (int) Math.ceil(maxLongitude / cellSize - EPSILON);
+        cellRows = Math.max(1, northIndex - southIndex);
+        cellCols = Math.max(1, eastIndex - westIndex);
+        
+        chunkCells = DEFAULT_CHUNK_CELLS;
+        while (Math.max(cellRows, cellCols) > chunkCells * MAX_CHUNKS_PER_SIDE) {
+            chunkCells *= 2;
+        }
+        chunkRows = (cellRows + chunkCells - 1) / chunkCells;
+        chunkCols = (cellCols + chunkCells - 1) / chunkCells;
+        
+        // coarsen until we fit into the budget
+        baseStep = 1;
+        while (baseStep < chunkCells && getTotalVertexCount(baseStep) > maxVertices) {
+            baseStep *= 2;
+        }
+
+        chunks = new Chunk[chunkRows * chunkCols];
+        for (int chunkRow = 0; chunkRow < chunkRows; chunkRow++) {
+            for (int chunkCol = 0; chunkCol < chunkCols; chunkCol++) {
+                chunks[chunkRow * chunkCols + chunkCol] = new Chunk(
+                        chunkRow, chunkCol, 
+                        chunkRow * chunkCells, chunkCol * chunkCells, 
+                        Math.min(chunkCells, cellRows - chunkRow * chunkCells), 
+                        Math.min(chunkCells, cellCols - chunkCol * chunkCells), 
+                        getStep(chunkRow, chunkCol, baseStep));
+            }
+        }
+        
+        runParallel(chunks.length, (index) -> readChunk(chunks[index]));
+        // stitching needs the values of the neighbours - so only after all have been read
+        runParallel(chunks.length, (index) -> stitchChunk(chunks[index]));
+        
+        for (Chunk chunk : chunks) {
+            for (float elevation : chunk.elevations) {
+                if (Float.isNaN(elevation)) {
+                    hasNoData = true;
+                } else {
+                    minElevation = Double.isNaN(minElevation) ? elevation : Math.min(minElevation, elevation);
+                    maxElevation = Double.isNaN(maxElevation) ? elevation : Math.max(maxElevation, elevation);
+                }
+            }
+        }
+        
+        return this;
+    }
+    
+    /**
+     * Create the mesh arrays for all chunks.
+     * 
+     * Texture coordinates map the elevation to the pixel centers of a one row palette image:
+     * min elevation to the first, max elevation to the last color. With a no data color vertices without data 
+     * get the first pixel and the elevations start with the second.
+     * 
+     * @param elevationScaling factor to convert meters to the unit of lat / lon
+     * @param latCenter latitude that becomes z = 0
+     * @param lonCenter longitude that becomes x = 0
+     * @param colorCount number of colors in the palette
+     * @param noDataColor first color of the palette is used for no data
+     * @return this for chaining
+     */
+    public SRTMTerrainMesh buildMeshes(final double elevationScaling, final double latCenter, final double lonCenter, final int colorCount, final boolean noDataColor) {
+        return buildMeshes((value) -> value * elevationScaling, latCenter, lonCenter, colorCount, noDataColor);
+    }
+    
+    /**
+     * Create the mesh arrays for all chunks with any conversion of the elevation - e.g. the one used for the tracks shown on top of the terrain.
+     * 
+     * @param elevationScaler function to convert meters to the unit of lat / lon
+     * @param latCenter latitude that becomes z = 0
+     * @param lonCenter longitude that becomes x = 0
+     * @param colorCount number of colors in the palette
+     * @param noDataColor first color of the palette is used for no data
+     * @return this for chaining
+     */
+    public SRTMTerrainMesh buildMeshes(final DoubleUnaryOperator elevationScaler, final double latCenter, final double lonCenter, final int colorCount, final boolean noDataColor) {
+        runParallel(chunks.length, (index) -> buildMesh(chunks[index], elevationScaler, latCenter, lonCenter, colorCount, noDataColor));
+        return this;
+    }
+    
+    public List<Chunk> getChunks() {
+        return List.of(chunks);
+    }
+    
+    public int getChunkRows() {
+        return chunkRows;
+    }
+    
+    public int getChunkColumns() {
+        return chunkCols;
+    }
+    
+    public int getChunkCells() {
+        return chunkCells;
+    }
+    
+    public int getBaseStep() {
+        return baseStep;
+    }
+    
+    public double getCellSize() {
+        return cellSize;
+    }
+    
+    public int getTotalVertexCount() {
+        int result = 0;
+        for (Chunk chunk : chunks) {
+            result += chunk.getVertexCount();
+        }
+        return result;
+    }
+    
+    public double getMinElevation() {
+        return minElevation;
+    }
+    
+    public double getMaxElevation() {
+        return maxElevation;
+    }
+    
+    public boolean hasNoData() {
+        return hasNoData;
+    }
+    
+    public boolean noElevationData() {
+        return Double.isNaN(minElevation);
+    }
+    
+    /**
+     * Latitude of a vertex of a chunk.
+     * 
+     * @param chunk the chunk
+     * @param row row of the vertex
+     * @return latitude
+     */
+    public double getLatitude(final Chunk chunk, final int row) {
+        // multiply with the arc seconds first to hit tile borders exactly
+        return (northIndex - chunk.firstRow - chunk.getCellOffset(row, chunk.cellRows)) * gridSize / 3600.0;
+    }
+    
+    /**
+     * Longitude of a vertex of a chunk.
+     * 
+     * @param chunk the chunk
+     * @param col column of the vertex
+     * @return longitude
+     */
+    public double getLongitude(final Chunk chunk, final int col) {
+        return (westIndex + chunk.firstCol + chunk.getCellOffset(col, chunk.cellCols)) * gridSize / 3600.0;
+    }
+    
+    private int getGridSize() {
+        // finest data of all tiles touched - check inside each tile to avoid the overlapping borders
+        int result = Integer.MAX_VALUE;
+        for (int latitude = (int) Math.floor(minLatitude); latitude < Math.max(Math.ceil(maxLatitude), Math.floor(minLatitude) + 1); latitude++) {
+            for (int longitude = (int) Math.floor(minLongitude); longitude < Math.max(Math.ceil(maxLongitude), Math.floor(minLongitude) + 1); longitude++) {
+                final int gridSize = elevationService.getGridSizeForCoordinate(latitude + 0.5, longitude + 0.5);
+                if (gridSize > 0) {
+                    result = Math.min(result, gridSize);
+                }
+            }
+        }
+        
+        return (result < Integer.MAX_VALUE) ? result : 0;
+    }
+    
+    private static int getVertexCountForCells(final int cells, final int step) {
+        return (cells + step - 1) / step + 1;
+    }
+    
+    private int getStep(final int chunkRow, final int chunkCol, final int base) {
+        // distance in chunks from the chunk containing the focus
+        final int focusRow = Math.max(0, Math.min(chunkRows - 1, (int) Math.floor((northIndex - focusLatitude / cellSize) / chunkCells)));
+        final int focusCol = Math.max(0, Math.min(chunkCols - 1, (int) Math.floor((focusLongitude / cellSize - westIndex) / chunkCells)));
+        final int distance = Math.max(Math.abs(chunkRow - focusRow), Math.abs(chunkCol - focusCol));
+
+        // double the step for each ring of twice the size
+        int result = base;
+        int ring = FULL_DETAIL_CHUNKS;
+        while (distance >= ring && result < chunkCells) {
+            result *= 2;
+            ring *= 2;
+        }
+        
+        return Math.min(result, chunkCells);
+    }
+    
+    private long getTotalVertexCount(final int base) {
+        long result = 0;
+        for (int chunkRow = 0; chunkRow < chunkRows; chunkRow++) {
+            for (int chunkCol = 0; chunkCol < chunkCols; chunkCol++) {
+                final int step = getStep(chunkRow, chunkCol, base);
+                result += (long) getVertexCountForCells(Math.min(chunkCells, cellRows - chunkRow * chunkCells), step) * 
+                        getVertexCountForCells(Math.min(chunkCells, cellCols - chunkCol * chunkCells), step);
+            }
+        }
+        return result;
+    }
+    
+    private interface IChunkTask {
+        void run(final int index);
+    }
+    
+    private void runParallel(final int count, final IChunkTask task) {
+        final List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            final int index = i;
+            futures.add(executorService.submit(() -> {
+                task.run(index);
+            }));
+        }
+        
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException | ExecutionException ex) {
+                Logger.getLogger(SRTMTerrainMesh.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
+    }
+    
+    private void readChunk(final Chunk chunk) {
+        final int count = chunk.getVertexCount();
+        final double[] latitudes = new double[count];
+        final double[] longitudes = new double[count];
+        final double[] values = new double[count];
+        final boolean[] found = new boolean[count];
+        
+        int index = 0;
+        for (int row = 0; row < chunk.vertexRows; row++) {
+            final double latitude = getLatitude(chunk, row);
+            for (int col = 0; col < chunk.vertexCols; col++) {
+                latitudes[index] = latitude;
+                longitudes[index] = getLongitude(chunk, col);
+                index++;
+            }
+        }
+        
+        int foundCount = elevationService.getElevationsForCoordinates(latitudes, longitudes, values, found);
+        // vertices on the northern / eastern edge of a tile are looked up in the neighbour - which might not be there
+        // try again a tiny bit to the south / west / south west: same grid point, but the other tile
+        for (int[] shift : EDGE_SHIFTS) {
+            if (foundCount == count) {
+                break;
+            }
+            foundCount += readMissing(latitudes, longitudes, values, found, count - foundCount, shift);
+        }
+        
+        for (index = 0; index < count; index++) {
+            chunk.elevations[index] = found[index] ? (float) values[index] : Float.NaN;
+        }
+    }
+    
+    private int readMissing(final double[] latitudes, final double[] longitudes, final double[] values, final boolean[] found, final int missingCount, final int[] shift) {
+        final int[] missing = new int[missingCount];
+        final double[] missingLatitudes = new double[missingCount];
+        final double[] missingLongitudes = new double[missingCount];
+        int missingIndex = 0;
+        for (int index = 0; index < latitudes.length; index++) {
+            if (!found[index]) {
+                missing[missingIndex] = index;
+                missingLatitudes[missingIndex] = latitudes[index] - shift[0] * EDGE_SHIFT * cellSize;
+                missingLongitudes[missingIndex] = longitudes[index] - shift[1] * EDGE_SHIFT * cellSize;
+                missingIndex++;
+            }
+        }
+
+        final double[] missingValues = new double[missingCount];
+        final boolean[] missingFound = new boolean[missingCount];
+        final int result = elevationService.getElevationsForCoordinates(missingLatitudes, missingLongitudes, missingValues, missingFound);
+        for (missingIndex = 0; missingIndex < missingCount; missingIndex++) {
+            if (missingFound[missingIndex]) {
+                values[missing[missingIndex]] = missingValues[missingIndex];
+                found[missing[missingIndex]] = true;
+            }
+        }
+        
+        return result;
+    }
+    
+    private Chunk getNeighbour(final Chunk chunk, final int deltaRow, final int deltaCol) {
+        final int row = chunk.chunkRow + deltaRow;
+        final int col = chunk.chunkCol + deltaCol;
+        if (row < 0 || row >= chunkRows || col < 0 || col >= chunkCols) {
+            return null;
+        }
+        return chunks[row * chunkCols + col];
+    }
+    
+    private void stitchChunk(final Chunk chunk) {
+        // north & south: walk along a row
+        stitchEdge(chunk, getNeighbour(chunk, -1, 0), 0, 1, chunk.vertexCols, chunk.cellCols);
+        stitchEdge(chunk, getNeighbour(chunk, 1, 0), (chunk.vertexRows - 1) * chunk.vertexCols, 1, chunk.vertexCols, chunk.cellCols);
+        // west & east: walk along a column
+        stitchEdge(chunk, getNeighbour(chunk, 0, -1), 0, chunk.vertexCols, chunk.vertexRows, chunk.cellRows);
+        stitchEdge(chunk, getNeighbour(chunk, 0, 1), chunk.vertexCols - 1, chunk.vertexCols, chunk.vertexRows, chunk.cellRows);
+    }
+    
+    private void stitchEdge(final Chunk chunk, final Chunk neighbour, final int start, final int stride, final int vertices, final int cells) {
+        if (neighbour == null || neighbour.step <= chunk.step) {
+            return;
+        }
+        
+        // the vertices of the neighbour are a subset of ours - interpolate the ones in between
+        final int ratio = neighbour.step / chunk.step;
+        for (int i = 0; i < vertices; i++) {
+            final int offset = chunk.getCellOffset(i, cells);
+            final int lowerOffset = (offset / neighbour.step) * neighbour.step;
+            if (offset == lowerOffset || offset == cells) {
+                continue;
+            }
+            final int upperOffset = Math.min(lowerOffset + neighbour.step, cells);
+            
+            final int lower = i - (i % ratio);
+            final int upper = (upperOffset == cells) ? vertices - 1 : lower + ratio;
+            final float lowerValue = chunk.elevations[start + lower * stride];
+            final float upperValue = chunk.elevations[start + upper * stride];
+            if (Float.isNaN(lowerValue) || Float.isNaN(upperValue)) {
+                continue;
+            }
+            
+            final float weight = (float) (offset - lowerOffset) / (upperOffset - lowerOffset);
+            chunk.elevations[start + i * stride] = lowerValue + weight * (upperValue - lowerValue);
+        }
+    }
+    
+    private void buildMesh(final Chunk chunk, final DoubleUnaryOperator elevationScaler, final double latCenter, final double lonCenter, final int colorCount, final boolean noDataColor) {
+        final int count = chunk.getVertexCount();
+        chunk.points = new float[3 * count];
+        chunk.texCoords = new float[2 * count];
+        
+        final int firstColor = noDataColor ? 1 : 0;
+        final int elevationColors = Math.max(1, colorCount - firstColor);
+        final double elevationRange = Math.max(maxElevation - minElevation, EPSILON);
+        
+        int index = 0;
+        for (int row = 0; row < chunk.vertexRows; row++) {
+            final float z = (float) (latCenter - getLatitude(chunk, row));
+            for (int col = 0; col < chunk.vertexCols; col++) {
+                final float elevation = chunk.elevations[index];
+                
+                chunk.points[3 * index] = (float) (getLongitude(chunk, col) - lonCenter);
+                chunk.points[3 * index + 1] = Float.isNaN(elevation) ? 0f : (float) Math.max(0d, elevationScaler.applyAsDouble(elevation));
+                chunk.points[3 * index + 2] = z;
+
+                double color;
+                if (Float.isNaN(elevation)) {
+                    color = 0;
+                } else {
+                    color = firstColor + Math.min(elevationColors - 1, (elevation - minElevation) / elevationRange * elevationColors);
+                }
+                chunk.texCoords[2 * index] = (float) ((Math.floor(color) + 0.5) / colorCount);
+                chunk.texCoords[2 * index + 1] = 0.5f;
+                
+                index++;
+            }
+        }
+        
+        // two triangles per cell - texture coordinates have the same index as the points
+        chunk.faces = new int[(chunk.vertexRows - 1) * (chunk.vertexCols - 1) * 12];
+        index = 0;
+        for (int row = 0; row < chunk.vertexRows - 1; row++) {
+            for (int col = 0; col < chunk.vertexCols - 1; col++) {
+                final int p00 = row * chunk.vertexCols + col;
+                final int p01 = p00 + 1;
+                final int p10 = p00 + chunk.vertexCols;
+                final int p11 = p10 + 1;
+                
+                index = addFace(chunk.faces, index, p00, p10, p11);
+                index = addFace(chunk.faces, index, p11, p01, p00);
+            }
+        }
+    }
+    
+    private static int addFace(final int[] faces, final int index, final int p0, final int p1, final int p2) {
+        int result = index;
+        faces[result++] = p0;
+        faces[result++] = p0;
+        faces[result++] = p1;
+        faces[result++] = p1;
+        faces[result++] = p2;
+        faces[result++] = p2;
+        return result;
+    }
+}
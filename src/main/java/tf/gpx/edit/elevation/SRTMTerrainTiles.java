@@ -0,0 +1,506 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.gpx.edit.elevation;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.imageio.ImageIO;
+import tf.gpx.edit.algorithms.EarthGeometry;
+import tf.gpx.edit.leafletmap.LocalTileServer;
+
+/**
+ * Hillshade, slope and aspect map tiles calculated from the local SRTM data.
+ * 
+ * Tiles use the usual web mercator z/x/y scheme with 256 pixels per side. 
+ * Elevations are looked up for the pixel centers plus a one pixel border 
+ * and the Horn kernel is used to get the gradient for each pixel.
+ * 
+ * Tiles are calculated in parallel and kept in a LRU cache as PNG. 
+ * The terrain of the last tiles is cached as well since the different layers of a tile are usually requested together.
+ * 
+ * Use registerTileProviders() to make the layers available via LocalTileServer.
+ * 
+ * @author thomas
+ */
+public class SRTMTerrainTiles {
+    // this is a singleton for everyones use
+    // http://www.javaworld.com/article/2073352/core-java/simply-singleton.html
+    private final static SRTMTerrainTiles INSTANCE = new SRTMTerrainTiles(null);
+    
+    public enum TerrainLayer {
+        HILLSHADE("srtm-hillshade"),
+        SLOPE("srtm-slope"),
+        ASPECT("srtm-aspect");
+        
+        private final String providerName;
+        
+        private TerrainLayer(final String name) {
+            providerName = name;
+        }
+        
+        public String getProviderName() {
+            return providerName;
+        }
+        
+        public String getURLPattern() {
+            return LocalTileServer.getURLPattern(providerName);
+        }
+    }
+
+    public final static int TILE_SIZE = 256;
+    public final static int MAX_ZOOM = 20;
+    public final static int DEFAULT_TILE_CACHE_SIZE = 512;
+    public final static int DEFAULT_TERRAIN_CACHE_SIZE = 16;
+    
+    // standard light source: from north-west, 45° above the horizon
+    public final static double SUN_AZIMUTH = 315.0;
+    public final static double SUN_ALTITUDE = 45.0;
+    
+    // slope classes as used for avalanche risk maps
+    public final static double[] SLOPE_LIMITS = {27.0, 30.0, 35.0, 40.0};
+    private final static int[] SLOPE_COLORS = {0xA0FFFF00, 0xA0FFA500, 0xA0FF0000, 0xA0A020F0};
+    
+    // aspect is fully colored from this slope on - flat areas don't have a sensible aspect
+    private final static double ASPECT_FULL_SLOPE = 20.0;
+    private final static int ASPECT_ALPHA = 0xA0;
+    
+    private final static int SHADOW_ALPHA = 0xC0;
+    private final static int HIGHLIGHT_ALPHA = 0x60;
+
+    private final static int GRID_SIZE = TILE_SIZE + 2;
+    
+    private final static ExecutorService executorService = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), 
+            (Runnable r) -> {
+                final Thread thread = new Thread(r, "SRTMTerrainTiles");
+                thread.setDaemon(true);
+                return thread;
+            });
+    
+    private final SRTMDataOptions srtmOptions;
+
+    // LRU caches for encoded tiles & terrain
+    private final Map<String, byte[]> tileCache;
+    private final Map<String, TerrainTile> terrainCache;
+    // terrain currently calculated - don't do the same work twice if different layers are requested in parallel
+    private final Map<String, CompletableFuture<TerrainTile>> pendingTerrain = new ConcurrentHashMap<>();
+    
+    private byte[] emptyTile;
+    
+    /**
+     * Elevation, slope, aspect and hillshade for all pixels of a tile.
+     * 
+     * Values are NaN where no elevation data is available; aspect is also NaN for flat pixels.
+     */
+    public static class TerrainTile {
+        private final int zoom;
+        private final int tileX;
+        private final int tileY;
+        private final float[] elevations;
+        private final float[] slopes;
+        private final float[] aspects;
+        private final float[] hillshades;
+        private final boolean hasData;
+        
+        private TerrainTile(final int z, final int x, final int y, final float[] elev, final float[] slope, final float[] aspect, final float[] hillshade, final boolean data) {
+            zoom = z;
+            tileX = x;
+            tileY = y;
+            elevations = elev;
+            slopes = slope;
+            aspects = aspect;
+            hillshades = hillshade;
+            hasData = data;
+        }
+        
+        public int getZoom() {
+            return zoom;
+        }
+        
+        public int getTileX() {
+            return tileX;
+        }
+        
+        public int getTileY() {
+            return tileY;
+        }
+        
+        public boolean hasData() {
+            return hasData;
+        }
+        
+        public double getElevation(final int px, final int py) {
+            return elevations[py * TILE_SIZE + px];
+        }
+        
+        public double getSlope(final int px, final int py) {
+            return slopes[py * TILE_SIZE + px];
+        }
+        
+        public double getAspect(final int px, final int py) {
+            return aspects[py * TILE_SIZE + px];
+        }
+        
+        public double getHillshade(final int px, final int py) {
+            return hillshades[py * TILE_SIZE + px];
+        }
+    }
+    
+    /**
+     * Create tiles for SRTM data with the given options.
+     * 
+     * @param srtmOpts SRTM data to use - if null the current preferences with bilinear interpolation are used
+     */
+    public SRTMTerrainTiles(final SRTMDataOptions srtmOpts) {
+        this(srtmOpts, DEFAULT_TILE_CACHE_SIZE);
+    }
+
+    public SRTMTerrainTiles(final SRTMDataOptions srtmOpts, final int cacheSize) {
+        srtmOptions = srtmOpts;
+        
+        // access ordered maps with eviction of the least recently used entries
+        tileCache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, byte[]> eldest) {
+                return size() > cacheSize;
+            }
+        };
+        terrainCache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, TerrainTile> eldest) {
+                return size() > DEFAULT_TERRAIN_CACHE_SIZE;
+            }
+        };
+    }
+    
+    public static SRTMTerrainTiles getInstance() {
+        return INSTANCE;
+    }
+    
+    /**
+     * Make all terrain layers available via LocalTileServer.
+     */
+    public void registerTileProviders() {
+        for (TerrainLayer layer : TerrainLayer.values()) {
+            LocalTileServer.getInstance().registerTileProvider(layer.getProviderName(), (int zoom, int x, int y) -> {
+                return getTile(layer, zoom, x, y);
+            });
+        }
+    }
+    
+    public static boolean isValidTile(final int zoom, final int x, final int y) {
+        if (zoom < 0 || zoom > MAX_ZOOM) {
+            return false;
+        }
+        final int tileCount = 1 << zoom;
+        return x >= 0 && x < tileCount && y >= 0 && y < tileCount;
+    }
+    
+    /**
+     * PNG for a layer of a tile - from the cache if available.
+     * 
+     * @param layer what to show
+     * @param zoom zoom level
+     * @param x tile column
+     * @param y tile row
+     * @return PNG data - a transparent tile if no SRTM data is available - or null for an invalid tile
+     */
+    public byte[] getTile(final TerrainLayer layer, final int zoom, final int x, final int y) {
+        if (!isValidTile(zoom, x, y)) {
+            return null;
+        }
+        
+        final String key = getTileKey(zoom, x, y);
+        final String layerKey = layer.getProviderName() + "/" + key;
+        synchronized (tileCache) {
+            final byte[] result = tileCache.get(layerKey);
+            if (result != null) {
+                return result;
+            }
+        }
+        
+        final TerrainTile terrain = getTerrainTile(zoom, x, y);
+        final byte[] result;
+        if (terrain.hasData()) {
+            result = encodeTile(getTilePixels(terrain, layer));
+        } else {
+            result = getEmptyTile();
+        }
+        
+        synchronized (tileCache) {
+            tileCache.put(layerKey, result);
+        }
+        return result;
+    }
+    
+    /**
+     * Terrain of a tile - from the cache if available, otherwise calculated in the background.
+     * 
+     * @param zoom zoom level
+     * @param x tile column
+     * @param y tile row
+     * @return the terrain
+     */
+    public TerrainTile getTerrainTile(final int zoom, final int x, final int y) {
+        return getTerrainTileAsync(zoom, x, y).join();
+    }
+    
+    public CompletableFuture<TerrainTile> getTerrainTileAsync(final int zoom, final int x, final int y) {
+        assert isValidTile(zoom, x, y);
+        
+        final String key = getTileKey(zoom, x, y);
+        synchronized (terrainCache) {
+            final TerrainTile result = terrainCache.get(key);
+            if (result != null) {
+                return CompletableFuture.completedFuture(result);
+            }
+        }
+        
+        return pendingTerrain.computeIfAbsent(key, (t) -> {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    final TerrainTile result = calculateTerrainTile(zoom, x, y);
+                    synchronized (terrainCache) {
+                        terrainCache.put(key, result);
+                    }
+                    return result;
+                } finally {
+                    pendingTerrain.remove(key);
+                }
+            }, executorService);
+        });
+    }
+    
+    public void clearCache() {
+        synchronized (tileCache) {
+            tileCache.clear();
+        }
+        synchronized (terrainCache) {
+            terrainCache.clear();
+        }
+    }
+    
+    public int getCacheSize() {
+        synchronized (tileCache) {
+            return tileCache.size();
+        }
+    }
+    
+    private static String getTileKey(final int zoom, final int x, final int y) {
+        return zoom + "/" + x + "/" + y;
+    }
+    
+    private TerrainTile calculateTerrainTile(final int zoom, final int x, final int y) {
+        final ElevationProvider elevationProvider = 
+            new ElevationProviderBuilder(
+                    new ElevationProviderOptions(ElevationProviderOptions.LookUpMode.SRTM_ONLY), 
+                    (srtmOptions != null) ? srtmOptions : new SRTMDataOptions(SRTMDataOptions.SRTMDataAverage.BILINEAR)).build();
+        
+        // pixel centers incl. a border of one pixel for the kernel
+        final double worldSize = TILE_SIZE * Math.pow(2.0, zoom);
+        final double[] latitudes = new double[GRID_SIZE * GRID_SIZE];
+        final double[] longitudes = new double[GRID_SIZE * GRID_SIZE];
+        // meters per pixel - mercator is conformal so its the same in both directions
+        final double[] resolutions = new double[GRID_SIZE];
+        for (int row = 0; row < GRID_SIZE; row++) {
+            final double latitude = getLatitudeForPixel(y * TILE_SIZE + row - 0.5, worldSize);
+            resolutions[row] = 2.0 * Math.PI * EarthGeometry.EarthAverageRadius * Math.cos(Math.toRadians(latitude)) / worldSize;
+
+            for (int col = 0; col < GRID_SIZE; col++) {
+                latitudes[row * GRID_SIZE + col] = latitude;
+                longitudes[row * GRID_SIZE + col] = getLongitudeForPixel(x * TILE_SIZE + col - 0.5, worldSize);
+            }
+        }
+        
+        final double[] elevations = new double[GRID_SIZE * GRID_SIZE];
+        final boolean[] found = new boolean[GRID_SIZE * GRID_SIZE];
+        final int foundCount = elevationProvider.getSRTMElevationsForCoordinates(latitudes, longitudes, elevations, found);
+        for (int i = 0; i < elevations.length; i++) {
+            if (!found[i]) {
+                elevations[i] = Double.NaN;
+            }
+        }
+        
+        final float[] tileElevations = new float[TILE_SIZE * TILE_SIZE];
+        final float[] slopes = new float[TILE_SIZE * TILE_SIZE];
+        final float[] aspects = new float[TILE_SIZE * TILE_SIZE];
+        final float[] hillshades = new float[TILE_SIZE * TILE_SIZE];
+        
+        final double sunZenith = Math.toRadians(90.0 - SUN_ALTITUDE);
+        final double cosZenith = Math.cos(sunZenith);
+        final double sinZenith = Math.sin(sunZenith);
+        final double sunAzimuth = Math.toRadians(SUN_AZIMUTH);
+        
+        boolean hasData = false;
+        for (int row = 0; row < TILE_SIZE; row++) {
+            final double resolution = resolutions[row + 1];
+            for (int col = 0; col < TILE_SIZE; col++) {
+                final int index = row * TILE_SIZE + col;
+                final int center = (row + 1) * GRID_SIZE + col + 1;
+                final double e = elevations[center];
+                
+                tileElevations[index] = (float) e;
+                if (Double.isNaN(e)) {
+                    slopes[index] = Float.NaN;
+                    aspects[index] = Float.NaN;
+                    hillshades[index] = Float.NaN;
+                    continue;
+                }
+                hasData = true;
+                
+                // Horn kernel - missing neighbours are replaced by the center value
+                // a b c
+                // d e f
+                // g h i
+                final double a = getNeighbour(elevations, center - GRID_SIZE - 1, e);
+                final double b = getNeighbour(elevations, center - GRID_SIZE, e);
+                final double c = getNeighbour(elevations, center - GRID_SIZE + 1, e);
+                final double d = getNeighbour(elevations, center - 1, e);
+                final double f = getNeighbour(elevations, center + 1, e);
+                final double g = getNeighbour(elevations, center + GRID_SIZE - 1, e);
+                final double h = getNeighbour(elevations, center + GRID_SIZE, e);
+                final double i = getNeighbour(elevations, center + GRID_SIZE + 1, e);
+                
+                // positive to the east & to the south
+                final double dzdx = ((c + 2.0*f + i) - (a + 2.0*d + g)) / (8.0 * resolution);
+                final double dzdy = ((g + 2.0*h + i) - (a + 2.0*b + c)) / (8.0 * resolution);
+                final double gradient = Math.sqrt(dzdx*dzdx + dzdy*dzdy);
+                
+                final double slope = Math.atan(gradient);
+                slopes[index] = (float) Math.toDegrees(slope);
+                
+                if (gradient > 0.0) {
+                    // direction the slope is facing: downhill is against the gradient
+                    final double aspect = Math.atan2(-dzdx, dzdy);
+                    aspects[index] = (float) ((Math.toDegrees(aspect) + 360.0) % 360.0);
+                    hillshades[index] = (float) Math.max(0.0, cosZenith * Math.cos(slope) + sinZenith * Math.sin(slope) * Math.cos(sunAzimuth - aspect));
+                } else {
+                    aspects[index] = Float.NaN;
+                    hillshades[index] = (float) cosZenith;
+                }
+            }
+        }
+        
+        return new TerrainTile(zoom, x, y, tileElevations, slopes, aspects, hillshades, hasData && foundCount > 0);
+    }
+    
+    private static double getNeighbour(final double[] elevations, final int index, final double center) {
+        final double result = elevations[index];
+        return Double.isNaN(result) ? center : result;
+    }
+    
+    private static double getLongitudeForPixel(final double pixelX, final double worldSize) {
+        double result = pixelX / worldSize * 360.0 - 180.0;
+        // border pixels might be on the other side of the date line
+        if (result < -180.0) {
+            result += 360.0;
+        } else if (result >= 180.0) {
+            result -= 360.0;
+        }
+        return result;
+    }
+    
+    private static double getLatitudeForPixel(final double pixelY, final double worldSize) {
+        return Math.toDegrees(Math.atan(Math.sinh(Math.PI * (1.0 - 2.0 * pixelY / worldSize))));
+    }
+    
+    /**
+     * ARGB pixels for a layer of a tile.
+     * 
+     * @param terrain the terrain of the tile
+     * @param layer what to show
+     * @return pixels row by row
+     */
+    public static int[] getTilePixels(final TerrainTile terrain, final TerrainLayer layer) {
+        final int[] result = new int[TILE_SIZE * TILE_SIZE];
+        
+        final double flatShade = Math.cos(Math.toRadians(90.0 - SUN_ALTITUDE));
+        for (int i = 0; i < result.length; i++) {
+            if (Float.isNaN(terrain.elevations[i])) {
+                continue;
+            }
+
+            switch (layer) {
+                case HILLSHADE -> {
+                    // darken what is in the shade and lighten what faces the sun - flat ground stays as it is
+                    final double delta = terrain.hillshades[i] - flatShade;
+                    if (delta < 0) {
+                        result[i] = ((int) Math.round(Math.min(1.0, -delta / flatShade) * SHADOW_ALPHA) << 24);
+                    } else {
+                        result[i] = ((int) Math.round(Math.min(1.0, delta / (1.0 - flatShade)) * HIGHLIGHT_ALPHA) << 24) | 0x00FFFFFF;
+                    }
+                }
+                case SLOPE -> {
+                    for (int j = SLOPE_LIMITS.length - 1; j >= 0; j--) {
+                        if (terrain.slopes[i] >= SLOPE_LIMITS[j]) {
+                            result[i] = SLOPE_COLORS[j];
+                            break;
+                        }
+                    }
+                }
+                case ASPECT -> {
+                    if (!Float.isNaN(terrain.aspects[i])) {
+                        // hue shows the direction, alpha the steepness
+                        final int alpha = (int) Math.round(Math.min(1.0, terrain.slopes[i] / ASPECT_FULL_SLOPE) * ASPECT_ALPHA);
+                        result[i] = (alpha << 24) | (Color.HSBtoRGB(terrain.aspects[i] / 360f, 0.8f, 1f) & 0x00FFFFFF);
+                    }
+                }
+            }
+        }
+        
+        return result;
+    }
+    
+    private synchronized byte[] getEmptyTile() {
+        if (emptyTile == null) {
+            emptyTile = encodeTile(new int[TILE_SIZE * TILE_SIZE]);
+        }
+        return emptyTile;
+    }
+    
+    private static byte[] encodeTile(final int[] pixels) {
+        final BufferedImage image = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_ARGB);
+        image.setRGB(0, 0, TILE_SIZE, TILE_SIZE, pixels, 0, TILE_SIZE);
+        
+        try (ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+            ImageIO.write(image, "png", out);
+            return out.toByteArray();
+        } catch (IOException ex) {
+            Logger.getLogger(SRTMTerrainTiles.class.getName()).log(Level.SEVERE, null, ex);
+            return new byte[0];
+        }
+    }
+}
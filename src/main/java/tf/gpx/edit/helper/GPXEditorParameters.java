@@ -15,6 +15,7 @@ import org.apache.commons.cli.ParseException;
 import tf.gpx.edit.algorithms.reducer.WaypointReduction;
 import tf.gpx.edit.leafletmap.IGeoCoordinate;
 import tf.gpx.edit.leafletmap.LatLonElev;
+import tf.gpx.edit.viewer.HeatMapTileBuilder;
 
 public class GPXEditorParameters {
     // this is a singleton for everyones use
@@ -34,7 +35,9 @@ public class GPXEditorParameters {
         deleteCount,
         gpxFiles,
         ignoreParams,
-        mapCenter
+        mapCenter,
+        heatMapTiles,
+        heatMapZoom
     };
 
     private boolean mergeFiles = false;
@@ -49,6 +52,9 @@ public class GPXEditorParameters {
     private List<String> gpxFiles = new ArrayList<>();
     private boolean ignoreParams = false;
     private IGeoCoordinate mapCenter = new LatLonElev(48.137154, 11.576124);
+    // TFE, 20261019: heat map tiles for all tracks of all files
+    private boolean heatMapTiles = false;
+    private int heatMapZoom = HeatMapTileBuilder.DEFAULT_MAX_ZOOM;
     
     private List<String> argsList;
     private List<String> optsList;
@@ -117,6 +123,14 @@ public class GPXEditorParameters {
                 GPXEditorParameters.CmdOps.mapCenter.toString(), 
                 true, 
                 "Set initial center of the map");
+        options.addOption(GPXEditorParameters.CmdOps.heatMapTiles.toString(), 
+                GPXEditorParameters.CmdOps.heatMapTiles.toString(), 
+                false, 
+                "Should heat map tiles be created for all tracks - files are not changed");
+        options.addOption(GPXEditorParameters.CmdOps.heatMapZoom.toString(), 
+                GPXEditorParameters.CmdOps.heatMapZoom.toString(), 
+                true, 
+                "Highest zoom level for heat map tiles - <arg> is an integer between 0 and " + HeatMapTileBuilder.MAX_ZOOM);
 
         // lets parse them by code from other people
         CommandLineParser parser = new DefaultParser();
@@ -198,6 +212,16 @@ public class GPXEditorParameters {
                 // System.out.println("Option deleteCount found: " + deleteCount);
             }
             
+            if (command.hasOption(GPXEditorParameters.CmdOps.heatMapTiles.toString())) {
+                heatMapTiles = true;
+                // System.out.println("Option heatMapTiles found");
+            }
+            
+            if (command.hasOption(GPXEditorParameters.CmdOps.heatMapZoom.toString())) {
+                heatMapZoom = Integer.parseInt(command.getOptionValue(GPXEditorParameters.CmdOps.heatMapZoom.toString()));
+                // System.out.println("Option heatMapZoom found: " + heatMapZoom);
+            }
+            
             if (command.hasOption(GPXEditorParameters.CmdOps.gpxFiles.toString())) {
                 value = command.getOptionValue(GPXEditorParameters.CmdOps.gpxFiles.toString());
                 gpxFiles = Arrays.asList(value.split("\\*"));
@@ -218,6 +242,7 @@ public class GPXEditorParameters {
                 fixDistance = Double.MIN_VALUE;
                 deleteEmpty = false;
                 deleteCount = Integer.MIN_VALUE;
+                heatMapTiles = false;
                 gpxFiles = new ArrayList<>();
             }
             
@@ -236,6 +261,11 @@ public class GPXEditorParameters {
                 deleteEmpty = false;
                 help(options);
             }
+            
+            if (heatMapTiles && (heatMapZoom < 0 || heatMapZoom > HeatMapTileBuilder.MAX_ZOOM)) {
+                heatMapTiles = false;
+                help(options);
+            }
 
             if (gpxFiles.isEmpty() && !ignoreParams) {
                 // in case no args passed use any other parameters from commandline as list of files
@@ -251,6 +281,7 @@ public class GPXEditorParameters {
                 fixDistance = Double.MIN_VALUE;
                 deleteEmpty = false;
                 deleteCount = Integer.MIN_VALUE;
+                heatMapTiles = false;
                 help(options);
             }
 
@@ -303,6 +334,14 @@ public class GPXEditorParameters {
         return deleteCount;
     }
 
+    public boolean doHeatMapTiles() {
+        return heatMapTiles;
+    }
+
+    public int getHeatMapZoom() {
+        return heatMapZoom;
+    }
+
     public List<String> getArgsList() {
         return argsList;
     }
@@ -316,6 +355,10 @@ public class GPXEditorParameters {
     }
     
     public boolean doBatch() {
+        return doEditFiles() || doHeatMapTiles();
+    }
+    
+    public boolean doEditFiles() {
         return doMergeFiles() || doMergeTracks() || doReduceTracks() || doFixTracks() || doDeleteEmpty();
     }
     
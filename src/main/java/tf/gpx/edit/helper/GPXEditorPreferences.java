@@ -27,6 +27,7 @@ package tf.gpx.edit.helper;
 
 import eu.hansolo.fx.heatmap.ColorMapping;
 import eu.hansolo.fx.heatmap.OpacityDistribution;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -39,10 +40,13 @@ import tf.gpx.edit.algorithms.EarthGeometry;
 import tf.gpx.edit.algorithms.WaypointMatching;
 import tf.gpx.edit.algorithms.reducer.WaypointReduction;
 import tf.gpx.edit.algorithms.smoother.WaypointSmoothing;
+import tf.gpx.edit.elevation.ElevationCache;
 import tf.gpx.edit.elevation.ElevationProviderOptions;
 import tf.gpx.edit.elevation.SRTMDataOptions;
 import tf.gpx.edit.elevation.SRTMDownloader;
+import tf.gpx.edit.leafletmap.MapTileCache;
 import tf.gpx.edit.main.GPXEditorManager;
+import tf.gpx.edit.panorama.HorizonCache;
 import tf.gpx.edit.values.StatisticsViewer;
 import tf.gpx.edit.viewer.GPXTrackviewer;
 import tf.gpx.edit.viewer.TrackMap;
@@ -72,6 +76,12 @@ public enum GPXEditorPreferences implements IPreferencesStore {
     HEIGHT_ASSIGN_MODE("heightAssignMode", ElevationProviderOptions.AssignMode.ALWAYS.name(), ElevationProviderOptions.AssignMode.class),
     // TFE, 20210107: we now can also use OpenElevationService :-)
     HEIGHT_LOOKUP_MODE("heightLookUpMode", ElevationProviderOptions.LookUpMode.SRTM_FIRST.name(), ElevationProviderOptions.LookUpMode.class),
+    // TFE, 20261019: persistent cache for elevations from OpenElevationService - size 0 disables the cache
+    ELEVATION_CACHE_SIZE("elevationCacheSize", Integer.toString(ElevationCache.DEFAULT_MAX_ENTRIES), Integer.class),
+    // TFE, 20261019: persistent cache for horizons of panoramas - size 0 disables the cache
+    HORIZON_CACHE_SIZE("horizonCacheSize", Integer.toString(HorizonCache.DEFAULT_MAX_ENTRIES), Integer.class),
+    // TFE, 20261019: disk cache for tiles of remote map layers in MB - size 0 disables the cache
+    MAP_TILE_CACHE_SIZE("mapTileCacheSize", Integer.toString(MapTileCache.DEFAULT_MAX_SIZE), Integer.class),
     // TFE, 20200716: API keys are now stored as part of map layer information
     // OPENCYCLEMAP_API_KEY("openCycleMapApiKey", "", String::valueOf),
     ROUTING_API_KEY("routingApiKey", "", String.class),
@@ -136,7 +146,10 @@ public enum GPXEditorPreferences implements IPreferencesStore {
     HAMPEL_THRESHOLD("hampelThreshold", Double.toString(3), Double.class),
     DO_SMOOTHING_FOR_ELEVATION("smoothingElevation", Boolean.toString(false), Boolean.class),
     
-    VALIDATE_XML_FORMAT("validateGPXFormat", Boolean.toString(true), Boolean.class);
+    VALIDATE_XML_FORMAT("validateGPXFormat", Boolean.toString(true), Boolean.class),
+
+    // TFE, 20261019: where to store all our caches
+    CACHE_PATH("cachePath", System.getProperty("user.home") + File.separator + ".GPXEditor", String.class);
     
     // additional preferences not handled here as enums
     // tableview settings: ColumnOrder, ColumnWidth, ColumnVisibility, SortOrder - see tf.helper.javafx.TableViewPreferences
@@ -0,0 +1,227 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.gpx.edit.leafletmap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index of items by their bounding box to find the ones that intersect the current viewport of the map.
+ * 
+ * Bounding boxes are stored in primitive arrays - even for many thousand items a scan is much faster than
+ * any call to javascript.
+ * 
+ * The index also keeps track which items are currently shown so that moving the viewport results in
+ * lists of items to add and to remove.
+ *
+ * @author thomas
+ */
+public class BoundingBoxIndex<T> {
+    private final static int INITIAL_CAPACITY = 64;
+    
+    private final List<T> myItems = new ArrayList<>();
+    private final Map<T, Integer> myPositions = new HashMap<>();
+    private double[] myMinLat = new double[INITIAL_CAPACITY];
+    private double[] myMaxLat = new double[INITIAL_CAPACITY];
+    private double[] myMinLon = new double[INITIAL_CAPACITY];
+    private double[] myMaxLon = new double[INITIAL_CAPACITY];
+    private final BitSet myVisible = new BitSet();
+    
+    /**
+     * Result of a viewport change: items that have come into view and items that have left it.
+     * 
+     * @param <T> type of items
+     */
+    public static class ViewportChange<T> {
+        private final List<T> myAdded = new ArrayList<>();
+        private final List<T> myRemoved = new ArrayList<>();
+        
+        public List<T> getAdded() {
+            return myAdded;
+        }
+        
+        public List<T> getRemoved() {
+            return myRemoved;
+        }
+        
+        public boolean isEmpty() {
+            return myAdded.isEmpty() && myRemoved.isEmpty();
+        }
+    }
+    
+    public void add(final T item, final double minLat, final double maxLat, final double minLon, final double maxLon) {
+        assert !myPositions.containsKey(item) : "Item already in index: " + item;
+        
+        final int index = myItems.size();
+        if (index == myMinLat.length) {
+            final int capacity = 2 * index;
+            myMinLat = Arrays.copyOf(myMinLat, capacity);
+            myMaxLat = Arrays.copyOf(myMaxLat, capacity);
+            myMinLon = Arrays.copyOf(myMinLon, capacity);
+            myMaxLon = Arrays.copyOf(myMaxLon, capacity);
+        }
+        
+        myItems.add(item);
+        myPositions.put(item, index);
+        myMinLat[index] = minLat;
+        myMaxLat[index] = maxLat;
+        myMinLon[index] = minLon;
+        myMaxLon[index] = maxLon;
+    }
+    
+    public void add(final T item, final List<? extends IGeoCoordinate> coordinates) {
+        if (coordinates.isEmpty()) {
+            return;
+        }
+
+        double minLat = Double.MAX_VALUE;
+        double maxLat = -Double.MAX_VALUE;
+        double minLon = Double.MAX_VALUE;
+        double maxLon = -Double.MAX_VALUE;
+        for (IGeoCoordinate coord : coordinates) {
+            minLat = Math.min(minLat, coord.getLatitude());
+            maxLat = Math.max(maxLat, coord.getLatitude());
+            minLon = Math.min(minLon, coord.getLongitude());
+            maxLon = Math.max(maxLon, coord.getLongitude());
+        }
+        
+        add(item, minLat, maxLat, minLon, maxLon);
+    }
+    
+    /**
+     * Removes an item from the index - the last item takes its place.
+     *
+     * @param item item to remove
+     * @return true if the item was in the index
+     */
+    public boolean remove(final T item) {
+        final Integer index = myPositions.remove(item);
+        if (index == null) {
+            return false;
+        }
+        
+        final int last = myItems.size() - 1;
+        if (index != last) {
+            final T lastItem = myItems.get(last);
+            myItems.set(index, lastItem);
+            myPositions.put(lastItem, index);
+            myMinLat[index] = myMinLat[last];
+            myMaxLat[index] = myMaxLat[last];
+            myMinLon[index] = myMinLon[last];
+            myMaxLon[index] = myMaxLon[last];
+            myVisible.set(index, myVisible.get(last));
+        }
+        myItems.remove(last);
+        myVisible.clear(last);
+        
+        return true;
+    }
+    
+    public boolean contains(final T item) {
+        return myPositions.containsKey(item);
+    }
+    
+    public boolean isVisible(final T item) {
+        final Integer index = myPositions.get(item);
+        return (index != null) && myVisible.get(index);
+    }
+    
+    public void clear() {
+        myItems.clear();
+        myPositions.clear();
+        myVisible.clear();
+    }
+    
+    public int size() {
+        return myItems.size();
+    }
+    
+    public int getVisibleCount() {
+        return myVisible.cardinality();
+    }
+    
+    public List<T> getVisible() {
+        final List<T> result = new ArrayList<>();
+        for (int i = myVisible.nextSetBit(0); i >= 0; i = myVisible.nextSetBit(i + 1)) {
+            result.add(myItems.get(i));
+        }
+        return result;
+    }
+    
+    /**
+     * All items whose bounding box intersects the given area.
+     *
+     * @param minLat minimum latitude of area
+     * @param maxLat maximum latitude of area
+     * @param minLon minimum longitude of area
+     * @param maxLon maximum longitude of area
+     * @return intersecting items
+     */
+    public List<T> getIntersecting(final double minLat, final double maxLat, final double minLon, final double maxLon) {
+        final List<T> result = new ArrayList<>();
+        for (int i = 0; i < myItems.size(); i++) {
+            if (intersects(i, minLat, maxLat, minLon, maxLon)) {
+                result.add(myItems.get(i));
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Set the new viewport and find out what needs to be added to / removed from the map.
+     *
+     * @param minLat minimum latitude of viewport
+     * @param maxLat maximum latitude of viewport
+     * @param minLon minimum longitude of viewport
+     * @param maxLon maximum longitude of viewport
+     * @return items to add and to remove
+     */
+    public ViewportChange<T> setViewport(final double minLat, final double maxLat, final double minLon, final double maxLon) {
+        final ViewportChange<T> result = new ViewportChange<>();
+        for (int i = 0; i < myItems.size(); i++) {
+            final boolean intersects = intersects(i, minLat, maxLat, minLon, maxLon);
+            if (intersects && !myVisible.get(i)) {
+                myVisible.set(i);
+                result.myAdded.add(myItems.get(i));
+            } else if (!intersects && myVisible.get(i)) {
+                myVisible.clear(i);
+                result.myRemoved.add(myItems.get(i));
+            }
+        }
+        return result;
+    }
+    
+    private boolean intersects(final int index, final double minLat, final double maxLat, final double minLon, final double maxLon) {
+        // leaflet might show the world more than once - anything goes in that case
+        final boolean allLon = (maxLon - minLon) >= 360.0;
+        return myMinLat[index] <= maxLat && myMaxLat[index] >= minLat && 
+                (allLon || (myMinLon[index] <= maxLon && myMaxLon[index] >= minLon));
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.gpx.edit.leafletmap;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Compact transfer of coordinates to leaflet.
+ * 
+ * Coordinates are written as little endian doubles (lat, lon, lat, lon, ...) and Base64 encoded. 
+ * On the javascript side decodeLatLngs() from TrackTransfer.js turns this back into a Float64Array - 
+ * no formatting of numbers in java and no parsing of huge array literals in javascript.
+ * 
+ * @author thomas
+ */
+public class LatLonEncoder {
+    private final static int BYTES_PER_COORDINATE = 2 * Double.BYTES;
+    
+    private LatLonEncoder() {
+        // only static methods
+    }
+    
+    public static String encode(final List<? extends IGeoCoordinate> coords) {
+        final ByteBuffer buffer = ByteBuffer.allocate(coords.size() * BYTES_PER_COORDINATE).order(ByteOrder.LITTLE_ENDIAN);
+        for (IGeoCoordinate coord : coords) {
+            buffer.putDouble(coord.getLatitude());
+            buffer.putDouble(coord.getLongitude());
+        }
+        return Base64.getEncoder().encodeToString(buffer.array());
+    }
+    
+    public static String encode(final double[] latitudes, final double[] longitudes) {
+        assert latitudes.length == longitudes.length;
+
+        final ByteBuffer buffer = ByteBuffer.allocate(latitudes.length * BYTES_PER_COORDINATE).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < latitudes.length; i++) {
+            buffer.putDouble(latitudes[i]);
+            buffer.putDouble(longitudes[i]);
+        }
+        return Base64.getEncoder().encodeToString(buffer.array());
+    }
+    
+    /**
+     * Inverse of encode() - mainly for testing.
+     * 
+     * @param encoded Base64 string from encode()
+     * @return lat, lon, lat, lon, ...
+     */
+    public static double[] decode(final String encoded) {
+        final ByteBuffer buffer = ByteBuffer.wrap(Base64.getDecoder().decode(encoded)).order(ByteOrder.LITTLE_ENDIAN);
+        final double[] result = new double[buffer.remaining() / Double.BYTES];
+        buffer.asDoubleBuffer().get(result);
+        return result;
+    }
+}
@@ -35,7 +35,6 @@ import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.stream.Collectors;
 import javafx.concurrent.Worker;
 import javafx.scene.layout.StackPane;
 import javafx.scene.web.WebEngine;
@@ -151,6 +150,10 @@ public class LeafletMapView extends StackPane {
         addStyleFromPath(LEAFLET_PATH + "/leaflet/leaflet" + LEAFLET_VERSION + MIN_EXT + ".css");
         addScriptFromPath(LEAFLET_PATH + "/leaflet/leaflet" + LEAFLET_VERSION + MIN_EXT + ".js");
         addScriptFromPath(LEAFLET_PATH + "/leaflet-color-markers/leaflet-color-markers" + MIN_EXT + ".js");
+        // TFE, 20261019: compact transfer of coordinates
+        addScriptFromPath(LEAFLET_PATH + "/TrackTransfer" + MIN_EXT + ".js");
+        // TFE, 20261019: apply markers & tracks in one call
+        addScriptFromPath(LEAFLET_PATH + "/MapScene" + MIN_EXT + ".js");
 
         // collect all required resources for the layers
         final Set<String> jsResources = new HashSet<>();
@@ -305,6 +308,20 @@ public class LeafletMapView extends StackPane {
         execScript(cmdString);
     }
 
+    /**
+     * Gets the current zoom of the map.
+     *
+     * @return zoom level (0 - 19 for OpenStreetMap) - fractional zoom is rounded
+     */
+    public int getZoom() {
+        final Object result = execScript("myMap.getZoom();");
+        if (result instanceof Number) {
+            return (int) Math.round(((Number) result).doubleValue());
+        } else {
+            return 0;
+        }
+    }
+
     /**
      * Sets a marker at the specified geographical position.
      *
@@ -315,7 +332,7 @@ public class LeafletMapView extends StackPane {
      * @return variable name of the created marker
      */
     public String addMarker(final LatLonElev position, final String title, final IMarker marker, final int zIndexOffset) {
-        final String varName = String.format(Locale.US, "marker%d", varNameSuffix++);
+        final String varName = nextVarName("marker");
 
         final String cmdString = 
                 String.format(Locale.US, "var %s = L.marker([%f, %f], {title: '%s', icon: %s, zIndexOffset: %d}).addTo(myMap);", 
@@ -393,14 +410,14 @@ public class LeafletMapView extends StackPane {
             final String opacity, 
             final String linecap, 
             final boolean fitBounds) {
-        final String varName = String.format(Locale.US, "track%d", varNameSuffix++);
+        final String varName = nextVarName("track");
         
-        final String jsPositions = positions.stream().map((t) -> {
-            return String.format(Locale.US, "    [%f, %f]", t.getLatitude(), t.getLongitude());
-        }).collect( Collectors.joining( ", \n" ) );
+        // TFE, 20261019: formatting each coordinate and parsing the result in js takes ages for large tracks
+        // pass them as Base64 encoded doubles instead and decode them in one go
+        final String jsPositions = LatLonEncoder.encode(positions);
 
         String cmdString = 
-                String.format(Locale.US, "var %s = L.polyline([%s], {color: '%s', weight: %s, opacity: %s, lineCap: '%s'}).addTo(myMap);", 
+                String.format(Locale.US, "var %s = L.polyline(decodeLatLngs('%s'), {color: '%s', weight: %s, opacity: %s, lineCap: '%s'}).addTo(myMap);", 
                         varName, jsPositions, color, weight, opacity, linecap);
 //        System.out.println("addTrack: " + cmdString);
         execScript(cmdString);
@@ -418,6 +435,38 @@ public class LeafletMapView extends StackPane {
         return addTrack(positions, color, DEFAULT_TRACK_WEIGHT, DEFAULT_TRACK_OPACITY, DEFAULT_TRACK_LINECAP, fitBounds);
     }
 
+    /**
+     * Creates a new unique variable name for markers, tracks, ...
+     *
+     * @param prefix prefix of the variable name
+     * @return variable name
+     */
+    protected String nextVarName(final String prefix) {
+        return String.format(Locale.US, "%s%d", prefix, varNameSuffix++);
+    }
+    
+    /**
+     * Creates an empty scene to collect markers and tracks that are added to the map in one go.
+     *
+     * @return new scene
+     */
+    public MapSceneBuilder createMapScene() {
+        return new MapSceneBuilder(this::nextVarName);
+    }
+    
+    /**
+     * Adds all icons, markers, tracks and calls of the scene with only one execScript() call.
+     *
+     * @param scene scene to apply
+     */
+    public void applyMapScene(final MapSceneBuilder scene) {
+        if (scene.isEmpty()) {
+            return;
+        }
+//        System.out.println("applyMapScene: " + scene.toScript());
+        execScript(scene.toScript());
+    }
+
     /**
      * Remove all current markers and tracks from the displayed map.
      */
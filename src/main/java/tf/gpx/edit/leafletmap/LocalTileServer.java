@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.gpx.edit.leafletmap;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Minimal http server on the loopback interface to hand over locally created tiles to leaflet.
+ * 
+ * Tile providers are registered under a name and are available as http://127.0.0.1:port/name/{z}/{x}/{y}.png
+ * The server is only started once the first URL is requested.
+ * Since the port is only known at runtime, layer URLs can contain PORT_PLACEHOLDER that gets replaced in resolveURL().
+ * 
+ * @author thomas
+ */
+public class LocalTileServer {
+    // this is a singleton for everyones use
+    // http://www.javaworld.com/article/2073352/core-java/simply-singleton.html
+    private final static LocalTileServer INSTANCE = new LocalTileServer();
+    
+    public final static String PORT_PLACEHOLDER = "{localport}";
+    public final static String URL_PREFIX = "http://127.0.0.1:" + PORT_PLACEHOLDER + "/";
+    public final static String TILE_PATTERN = "/{z}/{x}/{y}.png";
+    
+    private final static Pattern TILE_PATH = Pattern.compile("^/([^/]+)/(\\d+)/(\\d+)/(\\d+)\\.png$");
+    
+    // TFE, 20261019: tiles of remote layers are fetched via MapTileCache - threads might wait for the network
+    private final static ExecutorService executorService = Executors.newFixedThreadPool(
+            Math.max(8, Runtime.getRuntime().availableProcessors()), 
+            (Runnable r) -> {
+                final Thread thread = new Thread(r, "LocalTileServer");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private final Map<String, ITileProvider> tileProviders = new ConcurrentHashMap<>();
+    private HttpServer server;
+    // TFE, 20261019: any free port by default
+    private final int serverPort;
+    
+    private LocalTileServer() {
+        // Exists only to defeat instantiation.
+        this(0);
+    }
+    
+    // for tests only: use a fixed port
+    LocalTileServer(final int port) {
+        serverPort = port;
+    }
+
+    public static LocalTileServer getInstance() {
+        return INSTANCE;
+    }
+    
+    public void registerTileProvider(final String name, final ITileProvider provider) {
+        tileProviders.put(name, provider);
+    }
+    
+    public void unregisterTileProvider(final String name) {
+        tileProviders.remove(name);
+    }
+    
+    /**
+     * URL pattern to be used in a leaflet tile layer - with placeholder for the port.
+     * 
+     * @param name name of the tile provider
+     * @return URL pattern
+     */
+    public static String getURLPattern(final String name) {
+        return URL_PREFIX + name + TILE_PATTERN;
+    }
+    
+    /**
+     * Replace port placeholder with the actual port - starts the server if required.
+     * 
+     * @param url URL that might point to this server
+     * @return URL to be used by leaflet
+     */
+    public String resolveURL(final String url) {
+        if (url == null || !url.contains(PORT_PLACEHOLDER)) {
+            return url;
+        }
+        
+        final int port = getPort();
+        if (port < 0) {
+            return url;
+        }
+        return url.replace(PORT_PLACEHOLDER, Integer.toString(port));
+    }
+    
+    public synchronized int getPort() {
+        if (server == null) {
+            try {
+                // any free port will do - on loopback only, nobody else needs to see us
+                server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), serverPort), 0);
+                server.createContext("/", this::handleRequest);
+                server.setExecutor(executorService);
+                server.start();
+            } catch (IOException ex) {
+                Logger.getLogger(LocalTileServer.class.getName()).log(Level.SEVERE, null, ex);
+                server = null;
+                return -1;
+            }
+        }
+        
+        return server.getAddress().getPort();
+    }
+    
+    /**
+     * Check if the server is up - starts it if required.
+     * 
+     * @return true if layers using this server can be shown
+     */
+    public boolean isAvailable() {
+        return getPort() >= 0;
+    }
+    
+    public synchronized void stop() {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+        }
+    }
+    
+    private void handleRequest(final HttpExchange exchange) throws IOException {
+        try (exchange) {
+            final Matcher matcher = TILE_PATH.matcher(exchange.getRequestURI().getPath());
+            if (!"GET".equals(exchange.getRequestMethod()) || !matcher.matches()) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            
+            final ITileProvider provider = tileProviders.get(matcher.group(1));
+            if (provider == null) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+
+            byte[] tile = null;
+            try {
+                tile = provider.getTile(
+                        Integer.parseInt(matcher.group(2)), 
+                        Integer.parseInt(matcher.group(3)), 
+                        Integer.parseInt(matcher.group(4)));
+            } catch (RuntimeException ex) {
+                Logger.getLogger(LocalTileServer.class.getName()).log(Level.SEVERE, null, ex);
+            }
+            if (tile == null) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+
+            // TFE, 20261019: cached remote tiles might be jpg or webp as well
+            exchange.getResponseHeaders().set("Content-Type", getContentType(tile));
+            // tiles don't change during a session
+            exchange.getResponseHeaders().set("Cache-Control", "max-age=3600");
+            exchange.sendResponseHeaders(200, tile.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(tile);
+            }
+        }
+    }
+    
+    public static String getContentType(final byte[] tile) {
+        if (tile.length >= 3 && (tile[0] & 0xFF) == 0xFF && (tile[1] & 0xFF) == 0xD8 && (tile[2] & 0xFF) == 0xFF) {
+            return "image/jpeg";
+        }
+        if (tile.length >= 12 && tile[0] == 'R' && tile[1] == 'I' && tile[2] == 'F' && tile[3] == 'F' && 
+                tile[8] == 'W' && tile[9] == 'E' && tile[10] == 'B' && tile[11] == 'P') {
+            return "image/webp";
+        }
+        return "image/png";
+    }
+}
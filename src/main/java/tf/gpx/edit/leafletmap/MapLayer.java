@@ -29,7 +29,9 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import org.apache.commons.lang3.RandomStringUtils;
+import tf.gpx.edit.elevation.SRTMTerrainTiles;
 import tf.gpx.edit.helper.GPXEditorPreferences;
+import tf.gpx.edit.viewer.HeatMapTiles;
 
 /**
  * Class for any valid map layers (baselayer and overlay) for leaflet maps.
@@ -104,6 +106,16 @@ public class MapLayer {
             return myJSResource;
         }
         
+        // TFE, 20261019: leaflet asks for tiles of a different zoom level than the map shows, e.g. for 512px tiles
+        public int getZoomOffset() {
+            for (String option : myOptions) {
+                if (option.startsWith("zoomOffset:")) {
+                    return Integer.parseInt(option.substring("zoomOffset:".length()).trim());
+                }
+            }
+            return 0;
+        }
+        
         public String getName() {
             return toString();
         }
@@ -333,14 +345,20 @@ public class MapLayer {
         MapLayerUsage.getInstance().setLayerEnabled(this, enabled);
     }
     
+    // TFE, 20261019: layers served by the local tile server can't be shown if it isn't running
+    public boolean isAvailable() {
+        return !getURL().contains(LocalTileServer.PORT_PLACEHOLDER) || LocalTileServer.getInstance().isAvailable();
+    }
+    
     public String getJSCode() {
         final StringBuilder result = new StringBuilder();
 
         result.append("new ");
         result.append(myTileLayerClass.getTileLayerClass());
         result.append("('");
-        result.append(myURL);
-        result.append(myAPIKey);
+        // TFE, 20261019: tiles might come from our local server with a port only known at runtime
+        // TFE, 20261019: and remote tiles are served from the disk cache via our local server
+        result.append(MapTileCache.getInstance().getURL(this));
         result.append("', {\n");
         
         for (String opt : myTileLayerClass.getOptions()) {
@@ -619,6 +637,56 @@ public class MapLayer {
                     91,
                     TileLayerClass.STANDARD);
     
+    // TFE, 20261019: terrain layers calculated from local SRTM data
+    public static MapLayer SRTM_HILL_SHADING = 
+            new MapLayer(
+                    LayerType.OVERLAY, 
+                    "SRTM Hill Shading", 
+                    SRTMTerrainTiles.TerrainLayer.HILLSHADE.getURLPattern(), 
+                    "", 
+                    8, 
+                    15, 
+                    "Elevation data: SRTM", 
+                    92,
+                    TileLayerClass.STANDARD);
+    
+    public static MapLayer SRTM_SLOPE = 
+            new MapLayer(
+                    LayerType.OVERLAY, 
+                    "SRTM Slope", 
+                    SRTMTerrainTiles.TerrainLayer.SLOPE.getURLPattern(), 
+                    "", 
+                    8, 
+                    15, 
+                    "Elevation data: SRTM", 
+                    93,
+                    TileLayerClass.STANDARD);
+    
+    public static MapLayer SRTM_ASPECT = 
+            new MapLayer(
+                    LayerType.OVERLAY, 
+                    "SRTM Aspect", 
+                    SRTMTerrainTiles.TerrainLayer.ASPECT.getURLPattern(), 
+                    "", 
+                    8, 
+                    15, 
+                    "Elevation data: SRTM", 
+                    94,
+                    TileLayerClass.STANDARD);
+    
+    // TFE, 20261019: heat map of all tracks as created in batch mode
+    public static MapLayer TRACK_HEAT_MAP = 
+            new MapLayer(
+                    LayerType.OVERLAY, 
+                    "Track Heat Map", 
+                    HeatMapTiles.getURLPattern(), 
+                    "", 
+                    0, 
+                    HeatMapTiles.MAX_ZOOM, 
+                    "Heat map: own tracks", 
+                    95,
+                    TileLayerClass.STANDARD);
+    
     public static MapLayer HIKING_TRAILS = 
             new MapLayer(
                     LayerType.OVERLAY, 
@@ -697,6 +765,10 @@ public class MapLayer {
             Arrays.asList(
                     MapLayer.CONTOUR_LINES, 
                     MapLayer.HILL_SHADING, 
+                    MapLayer.SRTM_HILL_SHADING, 
+                    MapLayer.SRTM_SLOPE, 
+                    MapLayer.SRTM_ASPECT, 
+                    MapLayer.TRACK_HEAT_MAP, 
                     MapLayer.HIKING_TRAILS, 
                     MapLayer.CYCLING_TRAILS, 
                     MapLayer.MTB_TRAILS, 
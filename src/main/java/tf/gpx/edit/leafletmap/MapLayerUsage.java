@@ -187,7 +187,8 @@ public class MapLayerUsage implements IPreferencesHolder {
     
     public List<MapLayer> getEnabledSortedBaselayer() {
         return myLayerConfig.keySet().stream().filter((t) -> {
-            return MapLayer.LayerType.BASELAYER.equals(t.getLayerType()) && t.isEnabled();
+            // TFE, 20261019: and only if they can be shown at all
+            return MapLayer.LayerType.BASELAYER.equals(t.getLayerType()) && t.isEnabled() && t.isAvailable();
         }).sorted(Comparator.comparingInt(o -> myLayerConfig.get(o).index)).collect(Collectors.toList());
     }
     
@@ -205,7 +206,8 @@ public class MapLayerUsage implements IPreferencesHolder {
     
     public List<MapLayer> getEnabledSortedOverlays() {
         return myLayerConfig.keySet().stream().filter((t) -> {
-            return MapLayer.LayerType.OVERLAY.equals(t.getLayerType()) && t.isEnabled();
+            // TFE, 20261019: and only if they can be shown at all
+            return MapLayer.LayerType.OVERLAY.equals(t.getLayerType()) && t.isEnabled() && t.isAvailable();
         }).sorted(Comparator.comparingInt(o -> myLayerConfig.get(o).index)).collect(Collectors.toList());
     }
     
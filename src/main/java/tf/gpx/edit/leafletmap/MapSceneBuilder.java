@@ -0,0 +1,294 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.gpx.edit.leafletmap;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.json.JsonWriteFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Collects icons, markers, tracks and the calls to init them into one JSON payload.
+ * 
+ * Each execScript() call has a significant overhead - so instead of several calls per marker / track
+ * the whole scene is applied with one call to applyMapScene() in MapScene.js.
+ * 
+ * Order of execution in javascript: clear, icons, tracks, markers, clusters, calls.
+ * So calls can reference any layer of the scene, e.g. markers can reference their track.
+ *
+ * @author thomas
+ */
+public class MapSceneBuilder {
+    private final static ObjectMapper MAPPER = new ObjectMapper();
+    // escape everything non-ascii to be on the safe side when using the JSON as javascript literal - line separators are not allowed in older js strings
+    private final static ObjectWriter WRITER = MAPPER.writer().with(JsonWriteFeature.ESCAPE_NON_ASCII);
+
+    private final Function<String, String> myVarNameSupplier;
+    
+    private final ArrayNode myIcons = MAPPER.createArrayNode();
+    private final ArrayNode myTracks = MAPPER.createArrayNode();
+    private final ArrayNode myMarkers = MAPPER.createArrayNode();
+    private final ArrayNode myClusters = MAPPER.createArrayNode();
+    private final ArrayNode myCalls = MAPPER.createArrayNode();
+    // layers to keep when clearing the map - null if nothing is to be cleared
+    private ArrayNode myKeepLayers = null;
+    
+    /**
+     * Create a new scene.
+     *
+     * @param varNameSupplier creates unique variable names for a given prefix
+     */
+    public MapSceneBuilder(final Function<String, String> varNameSupplier) {
+        myVarNameSupplier = varNameSupplier;
+    }
+    
+    /**
+     * Removes all markers and tracks from the map - except the given ones - before adding anything new.
+     *
+     * @param keepLayers variable names of the layers to keep
+     * @return this
+     */
+    public MapSceneBuilder clearMarkersAndTracks(final Collection<String> keepLayers) {
+        myKeepLayers = MAPPER.createArrayNode();
+        for (String layer : keepLayers) {
+            myKeepLayers.add(layer);
+        }
+        
+        return this;
+    }
+    
+    /**
+     * Adds a png icon as CustomIcon with the given size.
+     *
+     * @param iconName variable name of the icon
+     * @param iconSize size of the icon, e.g. "24"
+     * @param base64data Base64 encoded png
+     * @return this
+     */
+    public MapSceneBuilder addPNGIcon(final String iconName, final String iconSize, final String base64data) {
+        final ObjectNode icon = myIcons.addObject();
+        icon.put("name", iconName);
+        icon.put("size", iconSize);
+        icon.put("data", base64data);
+        
+        return this;
+    }
+    
+    /**
+     * Adds a marker at the specified geographical position.
+     *
+     * @param position marker position
+     * @param title marker title shown in tooltip - unescaped
+     * @param marker marker to set
+     * @param zIndexOffset zIndexOffset (higher number means on top)
+     * @return variable name of the created marker
+     */
+    public String addMarker(final IGeoCoordinate position, final String title, final IMarker marker, final int zIndexOffset) {
+        final String varName = myVarNameSupplier.apply("marker");
+        
+        final ObjectNode node = myMarkers.addObject();
+        node.put("name", varName);
+        node.put("lat", position.getLatitude());
+        node.put("lng", position.getLongitude());
+        node.put("title", title);
+        node.put("icon", marker.getIconName());
+        node.put("zIndexOffset", zIndexOffset);
+        
+        return varName;
+    }
+    
+    /**
+     * Adds a cluster marker showing the number of waypoints - a click zooms to the bounds of the cluster.
+     *
+     * @param cluster cluster to show
+     * @return variable name of the created marker
+     */
+    public String addCluster(final WaypointClusterIndex.Cluster<?> cluster) {
+        final String varName = myVarNameSupplier.apply("cluster");
+        
+        final ObjectNode node = myClusters.addObject();
+        node.put("name", varName);
+        node.put("lat", cluster.getLatitude());
+        node.put("lng", cluster.getLongitude());
+        node.put("count", cluster.getCount());
+        final ArrayNode bounds = node.putArray("bounds");
+        bounds.add(cluster.getMinLatitude());
+        bounds.add(cluster.getMinLongitude());
+        bounds.add(cluster.getMaxLatitude());
+        bounds.add(cluster.getMaxLongitude());
+        
+        return varName;
+    }
+    
+    /**
+     * Adds a polyline along the specified positions.
+     *
+     * @param positions list of track positions
+     * @param color color of track
+     * @param weight weight of track
+     * @param opacity opacity of track
+     * @param linecap linecap to be used for track
+     * @return variable name of the created track
+     */
+    public String addTrack(
+            final List<? extends IGeoCoordinate> positions, 
+            final String color, 
+            final double weight, 
+            final double opacity, 
+            final String linecap) {
+        final String varName = myVarNameSupplier.apply("track");
+        
+        final ObjectNode node = myTracks.addObject();
+        node.put("name", varName);
+        node.put("latLngs", LatLonEncoder.encode(positions));
+        node.put("color", color);
+        node.put("weight", weight);
+        node.put("opacity", opacity);
+        node.put("lineCap", linecap);
+        
+        return varName;
+    }
+    
+    /**
+     * Replaces the positions of an existing polyline, e.g. for a different level of detail.
+     *
+     * @param layer variable name of the track
+     * @param positions new list of track positions
+     * @return this
+     */
+    public MapSceneBuilder updateTrack(final String layer, final List<? extends IGeoCoordinate> positions) {
+        return addCall(layer, "updateLatLngs", LatLonEncoder.encode(positions));
+    }
+    
+    /**
+     * Removes a marker or track from the map.
+     *
+     * @param layer variable name of the layer
+     * @return this
+     */
+    public MapSceneBuilder removeLayer(final String layer) {
+        return addCall(layer, "removeMapLayer");
+    }
+    
+    /**
+     * Adds a permanent tooltip to a layer, e.g. to show the name of a waypoint.
+     *
+     * @param layer variable name of the layer
+     * @param text tooltip text - unescaped
+     * @param className css class of the tooltip
+     * @return this
+     */
+    public MapSceneBuilder bindPermanentTooltip(final String layer, final String text, final String className) {
+        final ObjectNode node = myCalls.addObject();
+        node.put("layer", layer);
+        node.put("tooltip", text);
+        node.put("className", className);
+        
+        return this;
+    }
+    
+    /**
+     * Adds a call of a global javascript function with the layer name as first argument.
+     * 
+     * Supported argument types are String, Boolean and Number.
+     *
+     * @param layer variable name of the layer
+     * @param function name of the javascript function
+     * @param args further arguments of the function
+     * @return this
+     */
+    public MapSceneBuilder addCall(final String layer, final String function, final Object... args) {
+        final ObjectNode node = myCalls.addObject();
+        node.put("layer", layer);
+        node.put("function", function);
+        final ArrayNode argsNode = node.putArray("args");
+        for (Object arg : args) {
+            if (arg instanceof Boolean) {
+                argsNode.add((Boolean) arg);
+            } else if (arg instanceof Integer || arg instanceof Long) {
+                argsNode.add(((Number) arg).longValue());
+            } else if (arg instanceof Number) {
+                argsNode.add(((Number) arg).doubleValue());
+            } else {
+                argsNode.add(arg != null ? arg.toString() : null);
+            }
+        }
+        
+        return this;
+    }
+    
+    public boolean isEmpty() {
+        return myKeepLayers == null && myIcons.isEmpty() && myTracks.isEmpty() && myMarkers.isEmpty() && myClusters.isEmpty() && myCalls.isEmpty();
+    }
+    
+    public int getTrackCount() {
+        return myTracks.size();
+    }
+    
+    public int getMarkerCount() {
+        return myMarkers.size();
+    }
+    
+    public int getClusterCount() {
+        return myClusters.size();
+    }
+    
+    public String toJSON() {
+        final ObjectNode scene = MAPPER.createObjectNode();
+        if (myKeepLayers != null) {
+            scene.set("keepLayers", myKeepLayers);
+        }
+        scene.set("icons", myIcons);
+        scene.set("tracks", myTracks);
+        scene.set("markers", myMarkers);
+        scene.set("clusters", myClusters);
+        scene.set("calls", myCalls);
+        
+        try {
+            return WRITER.writeValueAsString(scene);
+        } catch (JsonProcessingException ex) {
+            Logger.getLogger(MapSceneBuilder.class.getName()).log(Level.SEVERE, null, ex);
+            return "{}";
+        }
+    }
+    
+    /**
+     * The javascript command to apply the whole scene.
+     * 
+     * @return the command
+     */
+    public String toScript() {
+        return String.format(Locale.US, "applyMapScene(%s);", toJSON());
+    }
+}
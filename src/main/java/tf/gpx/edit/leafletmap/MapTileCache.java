@@ -0,0 +1,743 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.gpx.edit.leafletmap;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import tf.gpx.edit.helper.GPXEditorPreferences;
+
+/**
+ * Disk cache for tiles of remote map layers.
+ * 
+ * Layers are served via LocalTileServer - leaflet gets the URL of the local server and we fetch the tile from the original URL if required.
+ * Tiles are stored per layer as z/x/y.tile files together with the validators of the response (ETag, Last-Modified) and its expiry.
+ * Expired tiles are revalidated with a conditional request; if the remote server isn't available the stale tile is used.
+ * 
+ * The size of the cache on disk is limited. The least recently used tiles are removed first - the last access is kept as modification time of the file.
+ * 
+ * @author thomas
+ */
+public class MapTileCache {
+    public final static String DIRECTORY_NAME = "maptiles";
+    public final static String PROVIDER_PREFIX = "cache-";
+    public final static String TILE_EXTENSION = ".tile";
+    // in MB
+    public final static int DEFAULT_MAX_SIZE = 500;
+    
+    // in case the server doesn't tell us how long a tile is valid
+    public final static Duration DEFAULT_MAX_AGE = Duration.ofDays(7);
+    public final static Duration REQUEST_TIMEOUT = Duration.ofSeconds(20);
+    public final static String USER_AGENT = "GPXEditor";
+    
+    // don't overload the servers - prefetching is for the tracks we're working on, not for whole countries
+    public final static int MAX_PREFETCH_TILES = 2000;
+    public final static int PREFETCH_ZOOM_LEVELS = 3;
+    private final static int PREFETCH_THREADS = 2;
+    
+    private final static int FILE_MAGIC = 0x47505854;
+    private final static int FILE_VERSION = 1;
+    
+    private final static Pattern MAX_AGE = Pattern.compile("max-age=(\\d+)");
+    private final static String[] SUBDOMAINS = {"a", "b", "c"};
+    
+    private final static ExecutorService prefetchService = Executors.newFixedThreadPool(
+            PREFETCH_THREADS, 
+            (Runnable r) -> {
+                final Thread thread = new Thread(r, "MapTileCache");
+                thread.setDaemon(true);
+                return thread;
+            });
+    
+    // this is a singleton for everyones use
+    // http://www.javaworld.com/article/2073352/core-java/simply-singleton.html
+    // needs to be created after the static fields it uses
+    private final static MapTileCache INSTANCE = new MapTileCache(
+            Paths.get(GPXEditorPreferences.CACHE_PATH.getAsString(), MapTileCache.DIRECTORY_NAME),
+            GPXEditorPreferences.MAP_TILE_CACHE_SIZE.getAsType());
+    
+    private final HttpClient client = HttpClient.newBuilder().
+            followRedirects(HttpClient.Redirect.NORMAL).
+            connectTimeout(REQUEST_TIMEOUT).
+            build();
+
+    private final Path cachePath;
+    private final long maxBytes;
+    private LocalTileServer tileServer = LocalTileServer.getInstance();
+    
+    // access ordered index of the tiles on disk with their size
+    private final Map<String, Long> tileIndex = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes = 0;
+    private boolean initDone = false;
+    
+    // tiles currently loaded - don't do the same work twice
+    private final Map<String, CompletableFuture<byte[]>> pendingTiles = new ConcurrentHashMap<>();
+    
+    private final AtomicInteger hitCount = new AtomicInteger(0);
+    private final AtomicInteger missCount = new AtomicInteger(0);
+    private final AtomicInteger revalidatedCount = new AtomicInteger(0);
+    private final AtomicInteger staleCount = new AtomicInteger(0);
+    
+    /**
+     * The tiles of a remote layer, available as ITileProvider for the LocalTileServer.
+     */
+    public class LayerTiles implements ITileProvider {
+        private final String directoryName;
+        private final String urlTemplate;
+        private final int zoomOffset;
+        
+        private LayerTiles(final String name, final String url, final int offset) {
+            directoryName = name;
+            urlTemplate = url;
+            zoomOffset = offset;
+        }
+        
+        public String getDirectoryName() {
+            return directoryName;
+        }
+        
+        /**
+         * Difference between the zoom level of the map and the zoom level of the tiles that leaflet requests.
+         * 
+         * @return zoom offset of the layer
+         */
+        public int getZoomOffset() {
+            return zoomOffset;
+        }
+        
+        public String getURLTemplate() {
+            return urlTemplate;
+        }
+        
+        public String getProviderName() {
+            return PROVIDER_PREFIX + directoryName;
+        }
+        
+        public String getTileURL(final int zoom, final int x, final int y) {
+            return urlTemplate.
+                    replace("{s}", SUBDOMAINS[Math.abs(x + y) % SUBDOMAINS.length]).
+                    replace("{z}", Integer.toString(zoom)).
+                    replace("{x}", Integer.toString(x)).
+                    replace("{y}", Integer.toString(y)).
+                    replace("{r}", "");
+        }
+
+        @Override
+        public byte[] getTile(final int zoom, final int x, final int y) {
+            return MapTileCache.this.getTile(this, zoom, x, y);
+        }
+    }
+    
+    // what we know about a tile on disk
+    private static class CachedTile {
+        private final byte[] data;
+        private final String eTag;
+        private final String lastModified;
+        private final long expires;
+        
+        private CachedTile(final byte[] tileData, final String tag, final String modified, final long expiry) {
+            data = tileData;
+            eTag = tag;
+            lastModified = modified;
+            expires = expiry;
+        }
+        
+        private boolean isExpired() {
+            return System.currentTimeMillis() >= expires;
+        }
+    }
+    
+    /**
+     * Create cache in the given directory.
+     * 
+     * @param path where to store the tiles
+     * @param maxSize max. size in MB - 0 disables the cache
+     */
+    public MapTileCache(final Path path, final int maxSize) {
+        this(path, Math.max(0, maxSize) * 1024L * 1024L);
+    }
+
+    public MapTileCache(final Path path, final long maxSizeBytes) {
+        cachePath = path;
+        maxBytes = Math.max(0, maxSizeBytes);
+    }
+
+    public static MapTileCache getInstance() {
+        return INSTANCE;
+    }
+    
+    public boolean isEnabled() {
+        return maxBytes > 0;
+    }
+    
+    public Path getCachePath() {
+        return cachePath;
+    }
+    
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+    
+    public LocalTileServer getTileServer() {
+        return tileServer;
+    }
+    
+    /**
+     * Use a different server to serve the tiles to leaflet.
+     * 
+     * @param server the server to use
+     * @return this cache
+     */
+    public MapTileCache setTileServer(final LocalTileServer server) {
+        tileServer = server;
+        return this;
+    }
+    
+    /**
+     * Can this layer be served from the cache? Only remote layers with standard z/x/y URLs are supported.
+     * 
+     * @param layer the layer to check
+     * @return true if the layer can be cached
+     */
+    public static boolean isCacheable(final MapLayer layer) {
+        if (!MapLayer.TileLayerClass.STANDARD.equals(layer.getTileLayerClass()) && !MapLayer.TileLayerClass.MAPBOX.equals(layer.getTileLayerClass())) {
+            return false;
+        }
+        return isCacheable(layer.getURL());
+    }
+    
+    public static boolean isCacheable(final String url) {
+        return url != null && 
+                (url.startsWith("http://") || url.startsWith("https://")) && 
+                !url.contains(LocalTileServer.PORT_PLACEHOLDER) && 
+                url.contains("{z}") && url.contains("{x}") && url.contains("{y}");
+    }
+    
+    /**
+     * URL to be used by leaflet for a layer - the local server for all layers that we can cache.
+     * 
+     * @param layer the layer to show
+     * @return URL for leaflet
+     */
+    public String getURL(final MapLayer layer) {
+        if (!isEnabled() || !isCacheable(layer)) {
+            return tileServer.resolveURL(layer.getURL()) + layer.getAPIKey();
+        }
+        
+        return getURL(layer.getName(), layer.getURL() + layer.getAPIKey());
+    }
+    
+    /**
+     * URL of the local server for a remote layer - or the remote URL itself if the local server isn't available.
+     * 
+     * @param name name of the layer
+     * @param urlTemplate URL of the tiles, including any API key
+     * @return URL for leaflet
+     */
+    public String getURL(final String name, final String urlTemplate) {
+        final LayerTiles tiles = getLayerTiles(name, urlTemplate);
+        tileServer.registerTileProvider(tiles.getProviderName(), tiles);
+        final String result = tileServer.resolveURL(LocalTileServer.getURLPattern(tiles.getProviderName()));
+        
+        if (result.contains(LocalTileServer.PORT_PLACEHOLDER)) {
+            // server couldn't be started - better no cache than no map
+            tileServer.unregisterTileProvider(tiles.getProviderName());
+            return urlTemplate;
+        }
+        return result;
+    }
+    
+    /**
+     * Tiles of a layer, as leaflet requests them for the map.
+     * 
+     * @param layer the layer
+     * @return the tiles of the layer
+     */
+    public LayerTiles getLayerTiles(final MapLayer layer) {
+        return getLayerTiles(layer.getName(), layer.getURL() + layer.getAPIKey(), layer.getTileLayerClass().getZoomOffset());
+    }
+    
+    public LayerTiles getLayerTiles(final String name, final String urlTemplate) {
+        return getLayerTiles(name, urlTemplate, 0);
+    }
+    
+    /**
+     * Tiles of a layer. The directory on disk depends on the URL without any API key to survive changes of the key.
+     * 
+     * @param name name of the layer
+     * @param urlTemplate URL of the tiles, including any API key
+     * @param zoomOffset difference between zoom level of the map and of the tiles
+     * @return the tiles of the layer
+     */
+    public LayerTiles getLayerTiles(final String name, final String urlTemplate, final int zoomOffset) {
+        final String baseURL = urlTemplate.split("\\?")[0];
+        final String directoryName = 
+                name.replaceAll("[^A-Za-z0-9]", "") + "_" + 
+                String.format("%08x", baseURL.hashCode());
+        return new LayerTiles(directoryName, urlTemplate, zoomOffset);
+    }
+    
+    /**
+     * Get a tile from disk or from the remote server.
+     * 
+     * @param tiles tiles of a layer
+     * @param zoom zoom level
+     * @param x tile column
+     * @param y tile row
+     * @return tile image or null if the tile isn't available
+     */
+    public byte[] getTile(final LayerTiles tiles, final int zoom, final int x, final int y) {
+        final int tileCount = 1 << Math.min(zoom, 30);
+        if (zoom < 0 || x < 0 || x >= tileCount || y < 0 || y >= tileCount) {
+            return null;
+        }
+        
+        final String key = getTileKey(tiles, zoom, x, y);
+        final CompletableFuture<byte[]> pending = new CompletableFuture<>();
+        final CompletableFuture<byte[]> running = pendingTiles.putIfAbsent(key, pending);
+        if (running != null) {
+            return running.join();
+        }
+        
+        byte[] result = null;
+        try {
+            result = loadTile(tiles, key, zoom, x, y);
+        } finally {
+            pending.complete(result);
+            pendingTiles.remove(key);
+        }
+        return result;
+    }
+    
+    /**
+     * Load all tiles in the given bounds into the cache in the background.
+     * The number of tiles is limited - zoom levels that would exceed MAX_PREFETCH_TILES are skipped.
+     * Zoom levels are the ones of the map - the zoom offset of each layer is applied to get the tiles that leaflet will request.
+     * 
+     * @param tiles tiles of a layer
+     * @param minLat min. latitude of the area
+     * @param maxLat max. latitude of the area
+     * @param minLon min. longitude of the area
+     * @param maxLon max. longitude of the area
+     * @param minZoom lowest zoom level
+     * @param maxZoom highest zoom level
+     * @param progress called with number of tiles done and total number of tiles - might be null
+     * @return number of tiles that are available
+     */
+    public CompletableFuture<Integer> prefetch(
+            final List<LayerTiles> tiles, 
+            final double minLat, final double maxLat, final double minLon, final double maxLon, 
+            final int minZoom, final int maxZoom,
+            final BiConsumer<Integer, Integer> progress) {
+        if (!isEnabled()) {
+            return CompletableFuture.completedFuture(0);
+        }
+        
+        final List<List<int[]>> layerTileNumbers = new ArrayList<>();
+        int totalCount = 0;
+        for (LayerTiles layer : tiles) {
+            final List<int[]> tileNumbers = getTileNumbers(minLat, maxLat, minLon, maxLon, 
+                    minZoom + layer.getZoomOffset(), maxZoom + layer.getZoomOffset(), MAX_PREFETCH_TILES / Math.max(1, tiles.size()));
+            layerTileNumbers.add(tileNumbers);
+            totalCount += tileNumbers.size();
+        }
+        final int total = totalCount;
+        final AtomicInteger done = new AtomicInteger(0);
+        final AtomicInteger available = new AtomicInteger(0);
+        
+        final List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < tiles.size(); i++) {
+            final LayerTiles layer = tiles.get(i);
+            for (int[] tile : layerTileNumbers.get(i)) {
+                futures.add(CompletableFuture.runAsync(() -> {
+                    if (getTile(layer, tile[0], tile[1], tile[2]) != null) {
+                        available.incrementAndGet();
+                    }
+                    final int count = done.incrementAndGet();
+                    if (progress != null) {
+                        progress.accept(count, total);
+                    }
+                }, prefetchService));
+            }
+        }
+        
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).thenApply((t) -> available.get());
+    }
+    
+    /**
+     * All tiles that cover the given bounds, lowest zoom first.
+     * 
+     * @param minLat min. latitude of the area
+     * @param maxLat max. latitude of the area
+     * @param minLon min. longitude of the area
+     * @param maxLon max. longitude of the area
+     * @param minZoom lowest zoom level
+     * @param maxZoom highest zoom level
+     * @param maxTiles max. number of tiles - no further zoom levels once its reached
+     * @return list of zoom, x, y
+     */
+    public static List<int[]> getTileNumbers(
+            final double minLat, final double maxLat, final double minLon, final double maxLon, 
+            final int minZoom, final int maxZoom, final int maxTiles) {
+        final List<int[]> result = new ArrayList<>();
+        
+        for (int zoom = Math.max(0, minZoom); zoom <= maxZoom; zoom++) {
+            final int tileCount = 1 << zoom;
+            final int minX = getTileNumber(WebMercatorProjection.longitudeToX(minLon), tileCount);
+            final int maxX = getTileNumber(WebMercatorProjection.longitudeToX(maxLon), tileCount);
+            // y grows to the south
+            final int minY = getTileNumber(WebMercatorProjection.latitudeToY(maxLat), tileCount);
+            final int maxY = getTileNumber(WebMercatorProjection.latitudeToY(minLat), tileCount);
+            
+            if (result.size() + (long) (maxX - minX + 1) * (maxY - minY + 1) > maxTiles) {
+                break;
+            }
+            for (int x = minX; x <= maxX; x++) {
+                for (int y = minY; y <= maxY; y++) {
+                    result.add(new int[] {zoom, x, y});
+                }
+            }
+        }
+        
+        return result;
+    }
+    
+    public synchronized void clear() {
+        initCache();
+        for (String key : tileIndex.keySet()) {
+            deleteTile(key);
+        }
+        tileIndex.clear();
+        totalBytes = 0;
+        resetStatistics();
+    }
+    
+    public synchronized int size() {
+        initCache();
+        return tileIndex.size();
+    }
+    
+    public synchronized long getTotalBytes() {
+        initCache();
+        return totalBytes;
+    }
+    
+    public boolean containsTile(final LayerTiles tiles, final int zoom, final int x, final int y) {
+        synchronized (this) {
+            initCache();
+            return tileIndex.containsKey(getTileKey(tiles, zoom, x, y));
+        }
+    }
+    
+    public int getHitCount() {
+        return hitCount.get();
+    }
+
+    public int getMissCount() {
+        return missCount.get();
+    }
+
+    public int getRevalidatedCount() {
+        return revalidatedCount.get();
+    }
+
+    public int getStaleCount() {
+        return staleCount.get();
+    }
+    
+    public void resetStatistics() {
+        hitCount.set(0);
+        missCount.set(0);
+        revalidatedCount.set(0);
+        staleCount.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("MapTileCache: %d tiles, %d bytes, %d hits, %d misses, %d revalidated, %d stale", 
+                size(), getTotalBytes(), hitCount.get(), missCount.get(), revalidatedCount.get(), staleCount.get());
+    }
+    
+    private static int getTileNumber(final double world, final int tileCount) {
+        return Math.max(0, Math.min((int) Math.floor(world * tileCount), tileCount - 1));
+    }
+    
+    private static String getTileKey(final LayerTiles tiles, final int zoom, final int x, final int y) {
+        return tiles.getDirectoryName() + "/" + zoom + "/" + x + "/" + y + TILE_EXTENSION;
+    }
+    
+    private byte[] loadTile(final LayerTiles tiles, final String key, final int zoom, final int x, final int y) {
+        final CachedTile cached = isEnabled() ? readTile(key) : null;
+        if (cached != null && !cached.isExpired()) {
+            hitCount.incrementAndGet();
+            touchTile(key);
+            return cached.data;
+        }
+        
+        final HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(tiles.getTileURL(zoom, x, y))).
+                timeout(REQUEST_TIMEOUT).
+                header("User-Agent", USER_AGENT).
+                GET();
+        if (cached != null) {
+            // only send it again if it has changed
+            if (!cached.eTag.isEmpty()) {
+                builder.header("If-None-Match", cached.eTag);
+            }
+            if (!cached.lastModified.isEmpty()) {
+                builder.header("If-Modified-Since", cached.lastModified);
+            }
+        }
+        
+        try {
+            final HttpResponse<byte[]> response = client.send(builder.build(), HttpResponse.BodyHandlers.ofByteArray());
+            
+            if (response.statusCode() == 304 && cached != null) {
+                revalidatedCount.incrementAndGet();
+                // same data, new expiry - and maybe new validators
+                writeTile(key, new CachedTile(
+                        cached.data, 
+                        response.headers().firstValue("ETag").orElse(cached.eTag), 
+                        response.headers().firstValue("Last-Modified").orElse(cached.lastModified), 
+                        getExpiry(response)));
+                return cached.data;
+            }
+            
+            if (response.statusCode() == 200 && response.body().length > 0) {
+                missCount.incrementAndGet();
+                if (isEnabled() && !isNoStore(response)) {
+                    writeTile(key, new CachedTile(
+                            response.body(), 
+                            response.headers().firstValue("ETag").orElse(""), 
+                            response.headers().firstValue("Last-Modified").orElse(""), 
+                            getExpiry(response)));
+                }
+                return response.body();
+            }
+        } catch (IOException | IllegalArgumentException ex) {
+            Logger.getLogger(MapTileCache.class.getName()).log(Level.FINE, null, ex);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        
+        // better an old tile than none at all
+        if (cached != null) {
+            staleCount.incrementAndGet();
+            touchTile(key);
+            return cached.data;
+        }
+        return null;
+    }
+    
+    private static boolean isNoStore(final HttpResponse<?> response) {
+        return response.headers().firstValue("Cache-Control").orElse("").contains("no-store");
+    }
+    
+    private static long getExpiry(final HttpResponse<?> response) {
+        final long now = System.currentTimeMillis();
+        
+        final String cacheControl = response.headers().firstValue("Cache-Control").orElse("");
+        if (cacheControl.contains("no-cache")) {
+            return now;
+        }
+        final Matcher matcher = MAX_AGE.matcher(cacheControl);
+        if (matcher.find()) {
+            return now + 1000L * Long.parseLong(matcher.group(1));
+        }
+        
+        final Optional<String> expires = response.headers().firstValue("Expires");
+        if (expires.isPresent()) {
+            try {
+                return ZonedDateTime.parse(expires.get(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+            } catch (DateTimeParseException ex) {
+                // invalid means already expired
+                return now;
+            }
+        }
+        
+        return now + DEFAULT_MAX_AGE.toMillis();
+    }
+    
+    private CachedTile readTile(final String key) {
+        synchronized (this) {
+            initCache();
+            if (!tileIndex.containsKey(key)) {
+                return null;
+            }
+        }
+        
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cachePath.resolve(key).toFile())))) {
+            if (in.readInt() != FILE_MAGIC || in.readInt() != FILE_VERSION) {
+                return null;
+            }
+            final long expires = in.readLong();
+            final String eTag = in.readUTF();
+            final String lastModified = in.readUTF();
+            final byte[] data = new byte[in.readInt()];
+            in.readFully(data);
+            
+            return new CachedTile(data, eTag, lastModified, expires);
+        } catch (IOException ex) {
+            // removed in the meantime or damaged - lets get it again
+            return null;
+        }
+    }
+    
+    private void writeTile(final String key, final CachedTile tile) {
+        final Path tileFile = cachePath.resolve(key);
+        try {
+            Files.createDirectories(tileFile.getParent());
+            
+            final Path tempFile = Files.createTempFile(tileFile.getParent(), "tile", ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile.toFile())))) {
+                out.writeInt(FILE_MAGIC);
+                out.writeInt(FILE_VERSION);
+                out.writeLong(tile.expires);
+                out.writeUTF(tile.eTag);
+                out.writeUTF(tile.lastModified);
+                out.writeInt(tile.data.length);
+                out.write(tile.data);
+            }
+            Files.move(tempFile, tileFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            
+            addToIndex(key, Files.size(tileFile));
+        } catch (IOException ex) {
+            Logger.getLogger(MapTileCache.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+    
+    private synchronized void addToIndex(final String key, final long size) {
+        final Long oldSize = tileIndex.put(key, size);
+        totalBytes += size - ((oldSize != null) ? oldSize : 0L);
+        
+        // remove least recently used tiles until we fit in again
+        final Iterator<Map.Entry<String, Long>> iterator = tileIndex.entrySet().iterator();
+        while (totalBytes > maxBytes && iterator.hasNext()) {
+            final Map.Entry<String, Long> eldest = iterator.next();
+            if (eldest.getKey().equals(key)) {
+                // never remove what we have just added
+                continue;
+            }
+            totalBytes -= eldest.getValue();
+            deleteTile(eldest.getKey());
+            iterator.remove();
+        }
+    }
+    
+    private void touchTile(final String key) {
+        synchronized (this) {
+            tileIndex.get(key);
+        }
+        try {
+            // so that we know the access order in the next session
+            Files.setLastModifiedTime(cachePath.resolve(key), FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException ex) {
+            // might have been removed in the meantime
+        }
+    }
+    
+    private void deleteTile(final String key) {
+        try {
+            Files.deleteIfExists(cachePath.resolve(key));
+        } catch (IOException ex) {
+            Logger.getLogger(MapTileCache.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+    
+    private void initCache() {
+        if (initDone) {
+            return;
+        }
+        initDone = true;
+        
+        if (!Files.isDirectory(cachePath)) {
+            return;
+        }
+        
+        // oldest first, so that the index is in access order
+        try (Stream<Path> paths = Files.walk(cachePath)) {
+            paths.filter((path) -> path.getFileName().toString().endsWith(TILE_EXTENSION)).
+                    map((path) -> {
+                        try {
+                            return new Object[] {path, Files.getLastModifiedTime(path).toMillis(), Files.size(path)};
+                        } catch (IOException ex) {
+                            return null;
+                        }
+                    }).
+                    filter((t) -> t != null).
+                    sorted(Comparator.comparingLong((t) -> (Long) t[1])).
+                    forEach((t) -> {
+                        tileIndex.put(cachePath.relativize((Path) t[0]).toString().replace('\\', '/'), (Long) t[2]);
+                        totalBytes += (Long) t[2];
+                    });
+        } catch (IOException ex) {
+            Logger.getLogger(MapTileCache.class.getName()).log(Level.SEVERE, null, ex);
+        }
+        
+        // maybe the size has been reduced in the meantime
+        final Iterator<Map.Entry<String, Long>> iterator = tileIndex.entrySet().iterator();
+        while (totalBytes > maxBytes && iterator.hasNext()) {
+            final Map.Entry<String, Long> eldest = iterator.next();
+            totalBytes -= eldest.getValue();
+            deleteTile(eldest.getKey());
+            iterator.remove();
+        }
+    }
+}
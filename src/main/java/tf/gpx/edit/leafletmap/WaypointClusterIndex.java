@@ -0,0 +1,302 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.gpx.edit.leafletmap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Hierarchical grid clustering of waypoints for all zoom levels of the map.
+ * 
+ * Waypoints are sorted by the Z-order (morton code) of their web mercator position on a fine grid. 
+ * With that all waypoints of any grid cell on any zoom level are one consecutive range of the sorted list 
+ * that can be found by binary search. Together with prefix sums of the positions the count and the centroid
+ * of each cell are available without further iteration.
+ * 
+ * So building the index is a sort of the waypoints and a query only depends on the number of cells 
+ * in the viewport - which makes it fast enough for 100k+ waypoints.
+ *
+ * @author thomas
+ */
+public class WaypointClusterIndex<T extends IGeoCoordinate> {
+    // size of the cells on the map in pixel - as for the leaflet.markercluster plugin
+    public final static int CELL_SIZE = 64;
+    // above this zoom all waypoints are shown individually
+    public final static int MAX_CLUSTER_ZOOM = 17;
+
+    // number of bits per axis for the cells of the finest grid
+    private final static int CELL_BITS = MAX_CLUSTER_ZOOM + Integer.numberOfTrailingZeros(WebMercatorProjection.TILE_SIZE / CELL_SIZE);
+    // index of the item is stored in the lower bits of the sort key
+    private final static int INDEX_BITS = 63 - 2 * CELL_BITS;
+    
+    // items, positions & morton codes in sort order
+    private final List<T> myItems;
+    private final long[] myKeys;
+    private final double[] myX;
+    private final double[] myY;
+    // prefix sums of the positions for the centroid of each range
+    private final double[] mySumX;
+    private final double[] mySumY;
+    
+    /**
+     * Cluster of waypoints or a single waypoint on the map.
+     * 
+     * @param <T> type of waypoints
+     */
+    public static class Cluster<T> {
+        private final long myKey;
+        private final int myCount;
+        private final T myItem;
+        private final double myLatitude;
+        private final double myLongitude;
+        private final double myMinLatitude;
+        private final double myMaxLatitude;
+        private final double myMinLongitude;
+        private final double myMaxLongitude;
+        
+        private Cluster(
+                final long key, final int count, final T item, 
+                final double latitude, final double longitude, 
+                final double minLatitude, final double maxLatitude, final double minLongitude, final double maxLongitude) {
+            myKey = key;
+            myCount = count;
+            myItem = item;
+            myLatitude = latitude;
+            myLongitude = longitude;
+            myMinLatitude = minLatitude;
+            myMaxLatitude = maxLatitude;
+            myMinLongitude = minLongitude;
+            myMaxLongitude = maxLongitude;
+        }
+        
+        /**
+         * Unique key of the cluster - stays the same for a single waypoint on all zoom levels.
+         * 
+         * @return the key
+         */
+        public long getKey() {
+            return myKey;
+        }
+
+        public int getCount() {
+            return myCount;
+        }
+        
+        public boolean isLeaf() {
+            return myItem != null;
+        }
+
+        public T getItem() {
+            return myItem;
+        }
+
+        public double getLatitude() {
+            return myLatitude;
+        }
+
+        public double getLongitude() {
+            return myLongitude;
+        }
+
+        public double getMinLatitude() {
+            return myMinLatitude;
+        }
+
+        public double getMaxLatitude() {
+            return myMaxLatitude;
+        }
+
+        public double getMinLongitude() {
+            return myMinLongitude;
+        }
+
+        public double getMaxLongitude() {
+            return myMaxLongitude;
+        }
+    }
+    
+    public WaypointClusterIndex(final List<T> items) {
+        if (items.size() >= (1 << INDEX_BITS)) {
+            throw new IllegalArgumentException("Too many items for clustering: " + items.size());
+        }
+        
+        final int size = items.size();
+        final long[] sortKeys = new long[size];
+        final double[] x = new double[size];
+        final double[] y = new double[size];
+        for (int i = 0; i < size; i++) {
+            final T item = items.get(i);
+            x[i] = longitudeToX(item.getLongitude());
+            y[i] = WebMercatorProjection.latitudeToY(item.getLatitude());
+            sortKeys[i] = (interleave(toCell(x[i], CELL_BITS), toCell(y[i], CELL_BITS)) << INDEX_BITS) | i;
+        }
+        // primitive sort - no boxing of 100k+ keys
+        Arrays.sort(sortKeys);
+        
+        myItems = new ArrayList<>(size);
+        myKeys = new long[size];
+        myX = new double[size];
+        myY = new double[size];
+        mySumX = new double[size + 1];
+        mySumY = new double[size + 1];
+        for (int i = 0; i < size; i++) {
+            final int index = (int) (sortKeys[i] & ((1L << INDEX_BITS) - 1));
+            myItems.add(items.get(index));
+            myKeys[i] = sortKeys[i] >>> INDEX_BITS;
+            myX[i] = x[index];
+            myY[i] = y[index];
+            mySumX[i + 1] = mySumX[i] + x[index];
+            mySumY[i + 1] = mySumY[i] + y[index];
+        }
+    }
+    
+    public int size() {
+        return myItems.size();
+    }
+    
+    /**
+     * Clusters and single waypoints to show for a zoom level and viewport.
+     * 
+     * @param zoom zoom level of the map
+     * @param minLat minimum latitude of the viewport
+     * @param maxLat maximum latitude of the viewport
+     * @param minLon minimum longitude of the viewport
+     * @param maxLon maximum longitude of the viewport
+     * @return list of clusters in the viewport
+     */
+    public List<Cluster<T>> getClusters(final int zoom, final double minLat, final double maxLat, final double minLon, final double maxLon) {
+        final List<Cluster<T>> result = new ArrayList<>();
+        if (myItems.isEmpty()) {
+            return result;
+        }
+        
+        final boolean showLeaves = (zoom > MAX_CLUSTER_ZOOM);
+        final int bits = Math.max(0, Math.min(zoom, MAX_CLUSTER_ZOOM)) + (CELL_BITS - MAX_CLUSTER_ZOOM);
+        final int shift = 2 * (CELL_BITS - bits);
+        
+        // leaflet shows the world more than once
+        final boolean allLongitudes = (maxLon - minLon >= 360.0);
+        final int minCellX = allLongitudes ? 0 : toCell(longitudeToX(minLon), bits);
+        final int maxCellX = allLongitudes ? (1 << bits) - 1 : toCell(longitudeToX(maxLon), bits);
+        // y axis points south
+        final int minCellY = toCell(WebMercatorProjection.latitudeToY(maxLat), bits);
+        final int maxCellY = toCell(WebMercatorProjection.latitudeToY(minLat), bits);
+        
+        final long cellCount = (maxCellX - minCellX + 1L) * (maxCellY - minCellY + 1L);
+        if (cellCount <= myItems.size()) {
+            // look up each cell of the viewport
+            for (int cellY = minCellY; cellY <= maxCellY; cellY++) {
+                for (int cellX = minCellX; cellX <= maxCellX; cellX++) {
+                    final long from = interleave(cellX, cellY) << shift;
+                    final int start = lowerBound(from);
+                    final int end = lowerBound(from + (1L << shift));
+                    if (start < end) {
+                        addCluster(result, start, end, bits, cellX, cellY, showLeaves);
+                    }
+                }
+            }
+        } else {
+            // less waypoints than cells in the viewport - walk through all of them cell by cell
+            int start = 0;
+            while (start < myKeys.length) {
+                final long cellKey = myKeys[start] >>> shift;
+                int end = start + 1;
+                while (end < myKeys.length && (myKeys[end] >>> shift) == cellKey) {
+                    end++;
+                }
+                
+                final int cellX = toCell(myX[start], bits);
+                final int cellY = toCell(myY[start], bits);
+                if (cellX >= minCellX && cellX <= maxCellX && cellY >= minCellY && cellY <= maxCellY) {
+                    addCluster(result, start, end, bits, cellX, cellY, showLeaves);
+                }
+                start = end;
+            }
+        }
+        
+        return result;
+    }
+    
+    private void addCluster(final List<Cluster<T>> result, final int start, final int end, final int bits, final int cellX, final int cellY, final boolean showLeaves) {
+        if (showLeaves || end - start == 1) {
+            for (int i = start; i < end; i++) {
+                final T item = myItems.get(i);
+                // negative keys for single waypoints - independent of the zoom level
+                result.add(new Cluster<>(-(i + 1L), 1, item, 
+                        item.getLatitude(), item.getLongitude(), 
+                        item.getLatitude(), item.getLatitude(), item.getLongitude(), item.getLongitude()));
+            }
+        } else {
+            final int count = end - start;
+            final double cells = 1 << bits;
+            result.add(new Cluster<>(((long) bits << 48) | interleave(cellX, cellY), count, null, 
+                    WebMercatorProjection.yToLatitude((mySumY[end] - mySumY[start]) / count), WebMercatorProjection.xToLongitude((mySumX[end] - mySumX[start]) / count),
+                    WebMercatorProjection.yToLatitude((cellY + 1) / cells), WebMercatorProjection.yToLatitude(cellY / cells), 
+                    WebMercatorProjection.xToLongitude(cellX / cells), WebMercatorProjection.xToLongitude((cellX + 1) / cells)));
+        }
+    }
+    
+    // first position with a key >= the given one
+    private int lowerBound(final long key) {
+        int low = 0;
+        int high = myKeys.length;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (myKeys[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+    
+    private static int toCell(final double value, final int bits) {
+        final int cells = 1 << bits;
+        return Math.max(0, Math.min((int) Math.floor(value * cells), cells - 1));
+    }
+    
+    // spread the lower 32 bits so that there is a zero bit between each of them
+    private static long spread(final int value) {
+        long result = value & 0xFFFFFFFFL;
+        result = (result | (result << 16)) & 0x0000FFFF0000FFFFL;
+        result = (result | (result << 8)) & 0x00FF00FF00FF00FFL;
+        result = (result | (result << 4)) & 0x0F0F0F0F0F0F0F0FL;
+        result = (result | (result << 2)) & 0x3333333333333333L;
+        result = (result | (result << 1)) & 0x5555555555555555L;
+        return result;
+    }
+    
+    private static long interleave(final int x, final int y) {
+        return spread(x) | (spread(y) << 1);
+    }
+    
+    private static double longitudeToX(final double longitude) {
+        // clusters are calculated for one world only
+        return WebMercatorProjection.longitudeToX(Math.max(-180.0, Math.min(longitude, 180.0)));
+    }
+}
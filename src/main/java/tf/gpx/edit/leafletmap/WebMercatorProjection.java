@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.gpx.edit.leafletmap;
+
+/**
+ * Web mercator projection as used by leaflet for the map tiles.
+ * 
+ * World coordinates are in [0, 1] with y pointing south. For a given center & zoom of the map 
+ * world coordinates are converted to pixels of the map pane by a simple scale and offset - so positions 
+ * that don't change can be projected once and then be re-used for each pan & zoom of the map.
+ *
+ * @author thomas
+ */
+public class WebMercatorProjection {
+    public final static int TILE_SIZE = 256;
+    // the world is a square in web mercator
+    public final static double MAX_LATITUDE = 85.0511287798;
+    
+    private final double myScale;
+    private final double myOffsetX;
+    private final double myOffsetY;
+    private final double myWidth;
+    private final double myHeight;
+    
+    /**
+     * Projection for a map pane with the given center and zoom.
+     * 
+     * @param centerLat latitude of the center of the pane
+     * @param centerLon longitude of the center of the pane
+     * @param zoom zoom level of the map
+     * @param width width of the pane in pixels
+     * @param height height of the pane in pixels
+     */
+    public WebMercatorProjection(final double centerLat, final double centerLon, final double zoom, final double width, final double height) {
+        myScale = TILE_SIZE * Math.pow(2.0, zoom);
+        myOffsetX = width / 2.0 - longitudeToX(centerLon) * myScale;
+        myOffsetY = height / 2.0 - latitudeToY(centerLat) * myScale;
+        myWidth = width;
+        myHeight = height;
+    }
+    
+    /**
+     * Projection for a map pane showing the given bounds.
+     * 
+     * @param minLat minimum latitude shown
+     * @param maxLat maximum latitude shown
+     * @param minLon minimum longitude shown
+     * @param maxLon maximum longitude shown
+     * @param zoom zoom level of the map
+     * @param width width of the pane in pixels
+     * @param height height of the pane in pixels
+     * @return the projection
+     */
+    public static WebMercatorProjection forBounds(
+            final double minLat, final double maxLat, final double minLon, final double maxLon, 
+            final double zoom, final double width, final double height) {
+        // the center of the pane is in the middle of the projected bounds - which is not the middle of the latitudes
+        final double centerLat = yToLatitude((latitudeToY(minLat) + latitudeToY(maxLat)) / 2.0);
+        return new WebMercatorProjection(centerLat, (minLon + maxLon) / 2.0, zoom, width, height);
+    }
+    
+    public double getZoom() {
+        return Math.log(myScale / TILE_SIZE) / Math.log(2.0);
+    }
+    
+    public double getPixelX(final double longitude) {
+        return longitudeToX(longitude) * myScale + myOffsetX;
+    }
+    
+    public double getPixelY(final double latitude) {
+        return latitudeToY(latitude) * myScale + myOffsetY;
+    }
+    
+    /**
+     * Convert world coordinates to pixels and keep only the ones that are inside the pane.
+     * 
+     * @param worldX x world coordinates
+     * @param worldY y world coordinates
+     * @param count number of coordinates to convert
+     * @param pixelX pixel x coordinates of the visible positions - at least count long
+     * @param pixelY pixel y coordinates of the visible positions - at least count long
+     * @return number of visible positions
+     */
+    public int toVisiblePixels(final double[] worldX, final double[] worldY, final int count, final double[] pixelX, final double[] pixelY) {
+        int result = 0;
+        for (int i = 0; i < count; i++) {
+            final double x = worldX[i] * myScale + myOffsetX;
+            final double y = worldY[i] * myScale + myOffsetY;
+            if (x >= 0.0 && y >= 0.0 && x <= myWidth && y <= myHeight) {
+                pixelX[result] = x;
+                pixelY[result] = y;
+                result++;
+            }
+        }
+        return result;
+    }
+    
+    // longitudes outside of [-180, 180] are kept since leaflet shows the world more than once
+    public static double longitudeToX(final double longitude) {
+        return (longitude + 180.0) / 360.0;
+    }
+    
+    public static double latitudeToY(final double latitude) {
+        final double sinLat = Math.sin(Math.toRadians(Math.max(-MAX_LATITUDE, Math.min(latitude, MAX_LATITUDE))));
+        return 0.5 - Math.log((1.0 + sinLat) / (1.0 - sinLat)) / (4.0 * Math.PI);
+    }
+    
+    public static double xToLongitude(final double x) {
+        return x * 360.0 - 180.0;
+    }
+    
+    public static double yToLatitude(final double y) {
+        return Math.toDegrees(Math.atan(Math.sinh(Math.PI * (1.0 - 2.0 * y))));
+    }
+}
@@ -34,12 +34,16 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Stream;
 import org.apache.commons.io.FilenameUtils;
 import tf.gpx.edit.actions.MergeDeleteTracksAction;
 import tf.gpx.edit.helper.GPXEditorParameters;
+import tf.gpx.edit.helper.GPXEditorPreferences;
 import tf.gpx.edit.helper.GPXFileHelper;
 import tf.gpx.edit.helper.GPXStructureHelper;
 import tf.gpx.edit.items.GPXFile;
+import tf.gpx.edit.viewer.HeatMapTileBuilder;
+import tf.gpx.edit.viewer.HeatMapTiles;
 import tf.helper.doundo.IDoUndoAction;
 
 /**
@@ -67,6 +71,17 @@ public class GPXEditorBatch extends GPXEditor {
         
         final List<File> gpxFileNames = new ArrayList<>();
         for (String gpxFile : myParameters.getGPXFiles()) {
+            // TFE, 20261019: a directory means all gpx files in it and below - e.g. for a whole library
+            final File gpxDir = new File(gpxFile);
+            if (gpxDir.isDirectory()) {
+                try (Stream<Path> paths = Files.walk(gpxDir.toPath())) {
+                    paths.filter((path) -> isGPXFile(path)).forEach((path) -> gpxFileNames.add(path.toFile()));
+                } catch (IOException ex) {
+                    Logger.getLogger(GPXEditorBatch.class.getName()).log(Level.SEVERE, null, ex);
+                }
+                continue;
+            }
+            
             // could be path + filename -> split first
             final String gpxFileName = FilenameUtils.getName(gpxFile);
             String gpxPathName = FilenameUtils.getFullPath(gpxFile);
@@ -81,7 +96,7 @@ public class GPXEditorBatch extends GPXEditor {
                 final DirectoryStream<Path> dirStream = Files.newDirectoryStream(gpxPath, gpxFileName);
                 dirStream.forEach(path -> {
                     // if really a gpx, than add to file list
-                    if (GPXFileHelper.FileType.GPX.getExtension().equals(FilenameUtils.getExtension(path.getFileName().toString()).toLowerCase())) {
+                    if (isGPXFile(path)) {
                         gpxFileNames.add(path.toFile());
                     }
                 });
@@ -94,46 +109,72 @@ public class GPXEditorBatch extends GPXEditor {
             System.out.println("No files are matching the given parameters");
         } else {
             System.out.println("Processing " + gpxFileNames.size() + " files.");
-            final List<GPXFile> gpxFiles = new ArrayList<>();
-            gpxFileNames.forEach((File gpxFileName) -> gpxFiles.add(new GPXFile(gpxFileName)));
+            // TFE, 20261019: heat map tiles are created by streaming through the files - no need to load them all
+            if (myParameters.doHeatMapTiles()) {
+                createHeatMapTiles(gpxFileNames);
+            }
+            
+            if (myParameters.doEditFiles()) {
+                final List<GPXFile> gpxFiles = new ArrayList<>();
+                gpxFileNames.forEach((File gpxFileName) -> gpxFiles.add(new GPXFile(gpxFileName)));
             
-            // do work in the order the parameters have been given
-            for (String opt : myParameters.getOptsList() ){
-                if(GPXEditorParameters.CmdOps.mergeFiles.toString().equals(opt) && myParameters.doMergeFiles()) {
-                    System.out.println("Merging Files");
-                    final GPXFile mergedGPXFile = GPXStructureHelper.getInstance().mergeGPXFiles(gpxFiles);
+                // do work in the order the parameters have been given
+                for (String opt : myParameters.getOptsList() ){
+                    if(GPXEditorParameters.CmdOps.mergeFiles.toString().equals(opt) && myParameters.doMergeFiles()) {
+                        System.out.println("Merging Files");
+                        final GPXFile mergedGPXFile = GPXStructureHelper.getInstance().mergeGPXFiles(gpxFiles);
                     
-                    // now replace previous file list with single new one
-                    gpxFiles.clear();
-                    gpxFiles.add(mergedGPXFile);
-                }
-                if(GPXEditorParameters.CmdOps.mergeTracks.toString().equals(opt) && myParameters.doMergeTracks()) {
-                    System.out.println("Merging Tracks");
-                    // here we merge all tracks, so both parameters are identical
-                    gpxFiles.forEach((GPXFile gpxFile) -> {
-                            final IDoUndoAction action = new MergeDeleteTracksAction(this, GPXEditor.MergeDeleteItems.MERGE, gpxFile, gpxFile.getGPXTracks());
-                            action.doAction();
-                        });
-                }
-                if(GPXEditorParameters.CmdOps.reduceTracks.toString().equals(opt) && myParameters.doReduceTracks()) {
-                    System.out.println("Reducing Tracks in Files");
-                    GPXStructureHelper.getInstance().reduceGPXMeasurables(gpxFiles, myParameters.getReduceAlgorithm(), myParameters.getReduceEpsilon());
-                }
-                if(GPXEditorParameters.CmdOps.fixTracks.toString().equals(opt) && myParameters.doFixTracks()) {
-                    System.out.println("Fixing Tracks in Files");
-                    GPXStructureHelper.getInstance().fixGPXMeasurables(gpxFiles, myParameters.getFixDistance());
-                }
-                if(GPXEditorParameters.CmdOps.deleteEmpty.toString().equals(opt) && myParameters.doDeleteEmpty()) {
-                    System.out.println("Deleting empty line items in Files");
-                    GPXStructureHelper.getInstance().deleteEmptyGPXTrackSegments(gpxFiles, myParameters.getDeleteCount());
+                        // now replace previous file list with single new one
+                        gpxFiles.clear();
+                        gpxFiles.add(mergedGPXFile);
+                    }
+                    if(GPXEditorParameters.CmdOps.mergeTracks.toString().equals(opt) && myParameters.doMergeTracks()) {
+                        System.out.println("Merging Tracks");
+                        // here we merge all tracks, so both parameters are identical
+                        gpxFiles.forEach((GPXFile gpxFile) -> {
+                                final IDoUndoAction action = new MergeDeleteTracksAction(this, GPXEditor.MergeDeleteItems.MERGE, gpxFile, gpxFile.getGPXTracks());
+                                action.doAction();
+                            });
+                    }
+                    if(GPXEditorParameters.CmdOps.reduceTracks.toString().equals(opt) && myParameters.doReduceTracks()) {
+                        System.out.println("Reducing Tracks in Files");
+                        GPXStructureHelper.getInstance().reduceGPXMeasurables(gpxFiles, myParameters.getReduceAlgorithm(), myParameters.getReduceEpsilon());
+                    }
+                    if(GPXEditorParameters.CmdOps.fixTracks.toString().equals(opt) && myParameters.doFixTracks()) {
+                        System.out.println("Fixing Tracks in Files");
+                        GPXStructureHelper.getInstance().fixGPXMeasurables(gpxFiles, myParameters.getFixDistance());
+                    }
+                    if(GPXEditorParameters.CmdOps.deleteEmpty.toString().equals(opt) && myParameters.doDeleteEmpty()) {
+                        System.out.println("Deleting empty line items in Files");
+                        GPXStructureHelper.getInstance().deleteEmptyGPXTrackSegments(gpxFiles, myParameters.getDeleteCount());
+                    }
                 }
-            }
             
-            // save updated files
-            System.out.println("Saving " + gpxFiles.size() + " files.");
-            gpxFiles.forEach((GPXFile gpxFile) -> GPXFileHelper.getInstance().saveFile(gpxFile, false));
+                // save updated files
+                System.out.println("Saving " + gpxFiles.size() + " files.");
+                gpxFiles.forEach((GPXFile gpxFile) -> GPXFileHelper.getInstance().saveFile(gpxFile, false));
+            }
         }
         
         return true;
     }
+    
+    private static boolean isGPXFile(final Path path) {
+        return GPXFileHelper.FileType.GPX.getExtension().equals(FilenameUtils.getExtension(path.getFileName().toString()).toLowerCase());
+    }
+    
+    private void createHeatMapTiles(final List<File> gpxFileNames) {
+        System.out.println("Creating heat map tiles in " + HeatMapTiles.getDefaultPath());
+        final HeatMapTileBuilder builder = new HeatMapTileBuilder(
+                HeatMapTiles.getDefaultPath(), 
+                myParameters.getHeatMapZoom(), 
+                GPXEditorPreferences.HEATMAP_COLORMAPPING.getAsType());
+
+        for (File gpxFileName : gpxFileNames) {
+            builder.addFile(gpxFileName);
+        }
+        builder.build();
+        
+        System.out.println(builder.toString());
+    }
 }
@@ -0,0 +1,381 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.gpx.edit.panorama;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import tf.gpx.edit.elevation.SRTMDataOptions;
+import tf.gpx.edit.helper.GPXEditorPreferences;
+import tf.gpx.edit.leafletmap.IGeoCoordinate;
+import tf.gpx.edit.leafletmap.LatLonElev;
+import tf.gpx.edit.sun.AzimuthElevationAngle;
+
+/**
+ * Persistent cache for horizons of panoramas.
+ *
+ * The key consists of the location quantized to 1e-4 degrees (approx. 10m), the SRTM data source 
+ * and the angle & distance stepping of the panorama.
+ * Horizons are kept in memory in their binary encoding as LRU map and written to disk as an append-only file of (key, horizon) records.
+ * Once the file contains too many stale records it gets compacted by rewriting the current content.
+ * 
+ * Encoding of a horizon: number of entries followed by azimuth, elevation angle, latitude, longitude & elevation as float for each entry.
+ *
+ * @author thomas
+ */
+public class HorizonCache {
+    // this is a singleton for everyones use
+    // http://www.javaworld.com/article/2073352/core-java/simply-singleton.html
+    private final static HorizonCache INSTANCE = new HorizonCache(
+            Paths.get(GPXEditorPreferences.CACHE_PATH.getAsString(), HorizonCache.CACHE_FILE_NAME),
+            GPXEditorPreferences.HORIZON_CACHE_SIZE.getAsType());
+
+    public final static String CACHE_FILE_NAME = "horizon.cache";
+    public final static int DEFAULT_MAX_ENTRIES = 1000;
+
+    // 1e-4 degree is approx. 10m at the equator - nobody will see a difference in the horizon
+    public final static double QUANTIZATION = 1e4;
+
+    // compact once the file contains twice as many records as the cache can hold
+    private final static int COMPACTION_FACTOR = 2;
+
+    private final static int FILE_MAGIC = 0x47505848;
+    private final static int FILE_VERSION = 1;
+    // more than enough for a horizon with 1 degree stepping - anything larger is a broken file
+    private final static int MAX_RECORD_SIZE = 1024 * 1024;
+
+    private final Path cacheFile;
+    private final int maxEntries;
+
+    private final Map<String, byte[]> horizonStore;
+    // number of records in the cache file - to decide when to compact
+    private long fileRecords = 0;
+
+    private long hitCount = 0;
+    private long missCount = 0;
+
+    private boolean initDone = false;
+
+    public HorizonCache(final Path file, final int maxSize) {
+        cacheFile = file;
+        maxEntries = Math.max(0, maxSize);
+
+        // access ordered map with eviction of the least recently used entries
+        horizonStore = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, byte[]> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    public static HorizonCache getInstance() {
+        return INSTANCE;
+    }
+
+    public boolean isEnabled() {
+        return maxEntries > 0;
+    }
+
+    public Path getCacheFile() {
+        return cacheFile;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public static String getKeyForPanorama(final Panorama panorama) {
+        final IGeoCoordinate location = panorama.getLocation();
+        final SRTMDataOptions srtmOptions = panorama.getSRTMDataOptions();
+        
+        return Math.round(location.getLatitude() * QUANTIZATION) + ";" + 
+                Math.round(location.getLongitude() * QUANTIZATION) + ";" + 
+                srtmOptions.getSRTMDataPath() + ";" + 
+                srtmOptions.getSRTMDataAverage().name() + ";" + 
+                panorama.getDistanceFrom() + ";" + 
+                panorama.getDistanceTo() + ";" + 
+                panorama.getDistanceStepping() + ";" + 
+                panorama.getAngleFrom() + ";" + 
+                panorama.getAngleTo() + ";" + 
+                panorama.getAngleStepping();
+    }
+
+    public synchronized Horizon getHorizon(final Panorama panorama) {
+        return getHorizon(getKeyForPanorama(panorama));
+    }
+
+    public synchronized Horizon getHorizon(final String key) {
+        if (!isEnabled()) {
+            return null;
+        }
+        initCache();
+
+        final byte[] data = horizonStore.get(key);
+        if (data != null) {
+            hitCount++;
+            return decodeHorizon(data);
+        } else {
+            missCount++;
+            return null;
+        }
+    }
+
+    public synchronized void putHorizon(final Panorama panorama, final Horizon horizon) {
+        putHorizon(getKeyForPanorama(panorama), horizon);
+    }
+
+    /**
+     * Add horizon to the cache and append it to the cache file.
+     *
+     * @param key key of the panorama
+     * @param horizon horizon to store
+     */
+    public synchronized void putHorizon(final String key, final Horizon horizon) {
+        if (!isEnabled() || horizon == null) {
+            return;
+        }
+        initCache();
+
+        final byte[] data = encodeHorizon(horizon);
+        horizonStore.put(key, data);
+
+        if (fileRecords + 1 > COMPACTION_FACTOR * maxEntries) {
+            compact();
+        } else {
+            appendToFile(key, data);
+        }
+    }
+
+    /**
+     * Rewrite cache file with the current content of the cache.
+     * Records are written from least to most recently used so that reading them back keeps the LRU order.
+     */
+    public synchronized void compact() {
+        if (!isEnabled()) {
+            return;
+        }
+        initCache();
+
+        try {
+            Files.createDirectories(cacheFile.toAbsolutePath().getParent());
+
+            final Path tempFile = Files.createTempFile(cacheFile.toAbsolutePath().getParent(), CACHE_FILE_NAME, ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile.toFile())))) {
+                writeHeader(out);
+                for (Map.Entry<String, byte[]> entry : horizonStore.entrySet()) {
+                    writeRecord(out, entry.getKey(), entry.getValue());
+                }
+            }
+            Files.move(tempFile, cacheFile, StandardCopyOption.REPLACE_EXISTING);
+
+            fileRecords = horizonStore.size();
+        } catch (IOException ex) {
+            Logger.getLogger(HorizonCache.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+
+    public synchronized void clear() {
+        horizonStore.clear();
+        fileRecords = 0;
+        resetStatistics();
+
+        try {
+            Files.deleteIfExists(cacheFile);
+        } catch (IOException ex) {
+            Logger.getLogger(HorizonCache.class.getName()).log(Level.SEVERE, null, ex);
+        }
+        // nothing left to read
+        initDone = true;
+    }
+
+    public synchronized int size() {
+        initCache();
+        return horizonStore.size();
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized void resetStatistics() {
+        hitCount = 0;
+        missCount = 0;
+    }
+
+    public synchronized long getFileRecords() {
+        initCache();
+        return fileRecords;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("HorizonCache: %d entries, %d hits, %d misses", horizonStore.size(), hitCount, missCount);
+    }
+
+    protected static byte[] encodeHorizon(final Horizon horizon) {
+        final ByteArrayOutputStream result = new ByteArrayOutputStream(4 + horizon.size() * 5 * Float.BYTES);
+        
+        try (DataOutputStream out = new DataOutputStream(result)) {
+            out.writeInt(horizon.size());
+            for (Map.Entry<AzimuthElevationAngle, IGeoCoordinate> entry : horizon.entrySet()) {
+                out.writeFloat((float) entry.getKey().getAzimuth());
+                out.writeFloat((float) entry.getKey().getElevation());
+                out.writeFloat(entry.getValue().getLatitude().floatValue());
+                out.writeFloat(entry.getValue().getLongitude().floatValue());
+                out.writeFloat(entry.getValue().getElevation().floatValue());
+            }
+        } catch (IOException ex) {
+            Logger.getLogger(HorizonCache.class.getName()).log(Level.SEVERE, null, ex);
+        }
+        
+        return result.toByteArray();
+    }
+
+    protected static Horizon decodeHorizon(final byte[] data) {
+        final Horizon result = new Horizon();
+        
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+            final int size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                final double azimuth = in.readFloat();
+                final double elevationAngle = in.readFloat();
+                final double latitude = in.readFloat();
+                final double longitude = in.readFloat();
+                final double elevation = in.readFloat();
+                
+                result.put(AzimuthElevationAngle.of(azimuth, elevationAngle), new LatLonElev(latitude, longitude, elevation));
+            }
+        } catch (IOException ex) {
+            Logger.getLogger(HorizonCache.class.getName()).log(Level.SEVERE, null, ex);
+        }
+        
+        return result;
+    }
+
+    private void initCache() {
+        if (initDone) {
+            return;
+        }
+        initDone = true;
+
+        final File file = cacheFile.toFile();
+        if (!file.exists() || !file.isFile() || !file.canRead()) {
+            return;
+        }
+
+        boolean validFile = true;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != FILE_MAGIC || in.readInt() != FILE_VERSION) {
+                validFile = false;
+            } else {
+                // read until we run out of complete records - a crash while appending might have left a partial one
+                while (true) {
+                    final String key = in.readUTF();
+                    final int length = in.readInt();
+                    if (length < 0 || length > MAX_RECORD_SIZE) {
+                        validFile = false;
+                        break;
+                    }
+                    final byte[] data = new byte[length];
+                    in.readFully(data);
+
+                    horizonStore.put(key, data);
+                    fileRecords++;
+                }
+            }
+        } catch (EOFException ex) {
+            // done reading
+        } catch (IOException ex) {
+            Logger.getLogger(HorizonCache.class.getName()).log(Level.SEVERE, null, ex);
+        }
+
+        if (!validFile) {
+            Logger.getLogger(HorizonCache.class.getName()).log(Level.WARNING, "Ignoring invalid horizon cache file: {0}", cacheFile);
+            horizonStore.clear();
+            fileRecords = 0;
+            try {
+                Files.deleteIfExists(cacheFile);
+            } catch (IOException ex) {
+                Logger.getLogger(HorizonCache.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        } else if (fileRecords > COMPACTION_FACTOR * maxEntries) {
+            compact();
+        }
+    }
+
+    private void appendToFile(final String key, final byte[] data) {
+        try {
+            final boolean newFile = !cacheFile.toFile().exists();
+            if (newFile) {
+                Files.createDirectories(cacheFile.toAbsolutePath().getParent());
+            }
+
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(cacheFile.toFile(), true)))) {
+                if (newFile) {
+                    writeHeader(out);
+                    fileRecords = 0;
+                }
+                writeRecord(out, key, data);
+            }
+
+            fileRecords++;
+        } catch (IOException ex) {
+            Logger.getLogger(HorizonCache.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+
+    private static void writeHeader(final DataOutputStream out) throws IOException {
+        out.writeInt(FILE_MAGIC);
+        out.writeInt(FILE_VERSION);
+    }
+
+    private static void writeRecord(final DataOutputStream out, final String key, final byte[] data) throws IOException {
+        out.writeUTF(key);
+        out.writeInt(data.length);
+        out.write(data);
+    }
+}
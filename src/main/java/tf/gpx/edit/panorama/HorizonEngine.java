@@ -0,0 +1,281 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.gpx.edit.panorama;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.apache.commons.collections4.map.LinkedMap;
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.commons.math3.util.FastMath;
+import tf.gpx.edit.algorithms.EarthGeometry;
+import tf.gpx.edit.elevation.ElevationProvider;
+import tf.gpx.edit.elevation.SRTMDataPyramid;
+import tf.gpx.edit.leafletmap.IGeoCoordinate;
+import tf.gpx.edit.leafletmap.LatLonElev;
+import tf.gpx.edit.sun.AzimuthElevationAngle;
+
+/**
+ * Calculate the horizon of a panorama without calculating the whole panorama.
+ * 
+ * Each azimuth is a ray that is marched from the location outwards - rays are processed in parallel.
+ * Per ray only primitive values are kept and each sample needs exactly one elevation lookup.
+ * 
+ * A ray is stopped once nothing farther away can be seen above the current max elevation angle:
+ * the max elevation of the area seen from the next distance gives an upper bound for all remaining samples.
+ * 
+ * The result is the same as the horizon from the full panorama: for the same elevation angle the point farther away wins.
+ * 
+ * @author thomas
+ */
+class HorizonEngine {
+    private final static ExecutorService executorService = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), 
+            (Runnable r) -> {
+                final Thread thread = new Thread(r, "HorizonEngine");
+                thread.setDaemon(true);
+                return thread;
+            });
+    
+    // distance algorithms might use a slightly different earth radius than destinationPoint - stay on the safe side
+    private final static double DISTANCE_SAFETY_FACTOR = 0.98;
+    // some extra space around the area covered by the panorama
+    private final static double AREA_SAFETY_FACTOR = 1.01;
+    
+    private final IGeoCoordinate location;
+    private final ElevationProvider elevationService;
+    
+    // nearest distance first
+    private final double[] distances;
+    private final double[] groundResolutions;
+    private final int[] angles;
+    private final int[] saveAngles;
+    private final BooleanSupplier cancelled;
+
+    // results per ray
+    private final double[] rayElevationAngles;
+    private final double[] rayLatitudes;
+    private final double[] rayLongitudes;
+    private final double[] rayElevations;
+    private final int[] rayDistanceIndices;
+    private final boolean[] rayFoundData;
+    
+    private boolean noElevationData = true;
+    private int sampleCount = 0;
+    
+    /**
+     * Set up the engine.
+     * 
+     * @param loc location with elevation set
+     * @param service elevation provider to use
+     * @param dists distances to check - nearest first
+     * @param resolutions ground resolutions for the distances
+     * @param angs azimuth angles for the rays
+     * @param saveAngs azimuth angles to use in the horizon - e.g. mapped to 0 - 360
+     * @param cancel check whether the calculation should be stopped
+     */
+    HorizonEngine(
+            final IGeoCoordinate loc, 
+            final ElevationProvider service, 
+            final double[] dists, 
+            final double[] resolutions, 
+            final int[] angs, 
+            final int[] saveAngs, 
+            final BooleanSupplier cancel) {
+        assert dists.length == resolutions.length;
+        assert angs.length == saveAngs.length;
+
+        location = loc;
+        elevationService = service;
+        distances = dists;
+        groundResolutions = resolutions;
+        angles = angs;
+        saveAngles = saveAngs;
+        cancelled = cancel;
+        
+        rayElevationAngles = new double[angles.length];
+        rayLatitudes = new double[angles.length];
+        rayLongitudes = new double[angles.length];
+        rayElevations = new double[angles.length];
+        rayDistanceIndices = new int[angles.length];
+        rayFoundData = new boolean[angles.length];
+    }
+    
+    public Horizon calcHorizon() {
+        final Horizon result = new Horizon();
+        if (angles.length == 0 || distances.length == 0) {
+            return result;
+        }
+        
+        final double maxElevationDiff = getMaxElevation() - location.getElevation();
+        
+        // split rays into chunks for the available threads
+        final int chunkCount = Math.min(angles.length, Runtime.getRuntime().availableProcessors());
+        final List<Future<Integer>> futures = new ArrayList<>();
+        for (int chunk = 0; chunk < chunkCount; chunk++) {
+            final int from = chunk * angles.length / chunkCount;
+            final int to = (chunk + 1) * angles.length / chunkCount;
+            futures.add(executorService.submit(() -> {
+                return calcRays(from, to, maxElevationDiff);
+            }));
+        }
+        
+        sampleCount = 0;
+        for (Future<Integer> future : futures) {
+            try {
+                sampleCount += future.get();
+            } catch (InterruptedException | ExecutionException ex) {
+                Logger.getLogger(HorizonEngine.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
+        
+        noElevationData = true;
+        // same azimuth might be used by more than one ray (e.g. 0 and 360) - best one wins
+        final Map<Integer, Integer> bestRays = new LinkedMap<>();
+        for (int ray = 0; ray < angles.length; ray++) {
+            if (rayFoundData[ray]) {
+                noElevationData = false;
+            }
+
+            final Integer bestRay = bestRays.get(saveAngles[ray]);
+            if (bestRay == null || 
+                    rayElevationAngles[bestRay] < rayElevationAngles[ray] ||
+                    (rayElevationAngles[bestRay] == rayElevationAngles[ray] && rayDistanceIndices[bestRay] < rayDistanceIndices[ray])) {
+                bestRays.put(saveAngles[ray], ray);
+            }
+        }
+        
+        for (Map.Entry<Integer, Integer> entry : bestRays.entrySet()) {
+            final int ray = entry.getValue();
+            result.put(
+                    AzimuthElevationAngle.of(entry.getKey() * 1.0, rayElevationAngles[ray]), 
+                    new LatLonElev(rayLatitudes[ray], rayLongitudes[ray], rayElevations[ray]));
+        }
+        
+        return result;
+    }
+    
+    private int calcRays(final int from, final int to, final double maxElevationDiff) {
+        int result = 0;
+
+        // re-used for all samples of all rays
+        final double[] latLon = new double[2];
+        final LatLonElev target = new LatLonElev(location.getLatitude(), location.getLongitude());
+        
+        for (int ray = from; ray < to; ray++) {
+            if (cancelled.getAsBoolean()) {
+                break;
+            }
+            result += calcRay(ray, maxElevationDiff, latLon, target);
+        }
+        
+        return result;
+    }
+    
+    private int calcRay(final int ray, final double maxElevationDiff, final double[] latLon, final LatLonElev target) {
+        double bestElevationAngle = -Double.MAX_VALUE;
+        boolean foundData = false;
+        
+        int i = 0;
+        while (i < distances.length) {
+            // the point where looking at
+            EarthGeometry.destinationPoint(location.getLatitude(), location.getLongitude(), distances[i], angles[ray], latLon);
+            target.setLatitude(latLon[0]);
+            target.setLongitude(latLon[1]);
+
+            final Pair<Boolean, Double> elevation = elevationService.getElevationForCoordinate(target, groundResolutions[i], SRTMDataPyramid.Statistic.MAX);
+            target.setElevation(elevation.getRight());
+            if (elevation.getLeft()) {
+                foundData = true;
+            }
+            
+            // the angle we're looking up / down
+            final double elevationAngle = EarthGeometry.elevationAngle(location, target);
+            // same angle farther away wins
+            if (elevationAngle >= bestElevationAngle) {
+                bestElevationAngle = elevationAngle;
+                rayElevationAngles[ray] = elevationAngle;
+                rayLatitudes[ray] = latLon[0];
+                rayLongitudes[ray] = latLon[1];
+                rayElevations[ray] = elevation.getRight();
+                rayDistanceIndices[ray] = i;
+            }
+            i++;
+            
+            // can anything farther away be seen above what we have?
+            if (i < distances.length && getMaxElevationAngle(maxElevationDiff, distances[i]) < bestElevationAngle) {
+                break;
+            }
+        }
+        rayFoundData[ray] = foundData;
+        
+        return i;
+    }
+    
+    private static double getMaxElevationAngle(final double maxElevationDiff, final double distance) {
+        if (maxElevationDiff <= 0.0) {
+            // nothing higher than we are
+            return 0.0;
+        }
+        return FastMath.toDegrees(FastMath.atan(maxElevationDiff / (DISTANCE_SAFETY_FACTOR * distance)));
+    }
+    
+    private double getMaxElevation() {
+        // area covered by the farthest distance
+        final double maxDistance = distances[distances.length - 1];
+        final double deltaLatitude = FastMath.toDegrees(maxDistance / EarthGeometry.EarthAverageRadius) * AREA_SAFETY_FACTOR;
+        final double maxAbsLatitude = Math.abs(location.getLatitude()) + deltaLatitude;
+        if (maxAbsLatitude >= 90.0) {
+            // too close to the poles, no bound possible
+            return Double.POSITIVE_INFINITY;
+        }
+        final double deltaLongitude = deltaLatitude / FastMath.cos(FastMath.toRadians(maxAbsLatitude));
+        
+        return elevationService.getMaxElevationForArea(
+                location.getLatitude() - deltaLatitude, location.getLongitude() - deltaLongitude, 
+                location.getLatitude() + deltaLatitude, location.getLongitude() + deltaLongitude);
+    }
+    
+    public boolean noElevationData() {
+        return noElevationData;
+    }
+    
+    /**
+     * Number of samples looked up in the last calculation - to see what early termination saves.
+     * 
+     * @return number of samples
+     */
+    public int getSampleCount() {
+        return sampleCount;
+    }
+}
@@ -38,6 +38,7 @@ import tf.gpx.edit.elevation.ElevationProvider;
 import tf.gpx.edit.elevation.ElevationProviderBuilder;
 import tf.gpx.edit.elevation.ElevationProviderOptions;
 import tf.gpx.edit.elevation.SRTMDataOptions;
+import tf.gpx.edit.elevation.SRTMDataPyramid;
 import tf.gpx.edit.leafletmap.IGeoCoordinate;
 import tf.gpx.edit.leafletmap.LatLonElev;
 import tf.gpx.edit.sun.AzimuthElevationAngle;
@@ -80,10 +81,12 @@ public class Panorama {
     private int angleTo;
     private int angleStepping;
     
-    private final ElevationProvider elevationService = 
-            new ElevationProviderBuilder(
-                    new ElevationProviderOptions(ElevationProviderOptions.LookUpMode.SRTM_ONLY), 
-                    new SRTMDataOptions(SRTMDataOptions.SRTMDataAverage.NEAREST_ONLY)).build();
+    private ElevationProvider elevationService;
+    private SRTMDataOptions srtmOptions;
+    // TFE, 20261019: no need to calculate the same horizon again and again
+    private HorizonCache horizonCache = HorizonCache.getInstance();
+    // TFE, 20261019: coarse horizons of progressive passes aren't worth a place in the cache
+    private boolean storeHorizon = true;
 
     private SortedMap<Double, List<Pair<Double, IGeoCoordinate>>> panoramaLocations = null;
     private SortedMap<Double, List<Pair<AzimuthElevationAngle, IGeoCoordinate>>> panoramaViewingAngles = null;
@@ -96,6 +99,16 @@ public class Panorama {
     
     private boolean noElevationData = false;
     
+    // TFE, 20261019: allow to stop lengthy calculations if nobody is interested anymore
+    private volatile boolean cancelled = false;
+    
+    // distances from farest to nearest with the ground resolution to use
+    private int[] distances = null;
+    private double[] groundResolutions = null;
+    // angles to look at and the angles to store results under
+    private int[] angles = null;
+    private int[] saveAngles = null;
+    
     private Panorama() {
     }
 
@@ -105,7 +118,16 @@ public class Panorama {
     }
 
     public Panorama(final IGeoCoordinate loc, final int dFrom, final int dTo, final int dStep, final int aFrom, final int aTo, final int aStep) {
+        this(loc, dFrom, dTo, dStep, aFrom, aTo, aStep, new SRTMDataOptions(SRTMDataOptions.SRTMDataAverage.NEAREST_ONLY));
+    }
+
+    public Panorama(final IGeoCoordinate loc, final int dFrom, final int dTo, final int dStep, final int aFrom, final int aTo, final int aStep, final SRTMDataOptions srtmOpts) {
         // your wish is my command
+        srtmOptions = srtmOpts;
+        elevationService = 
+            new ElevationProviderBuilder(
+                    new ElevationProviderOptions(ElevationProviderOptions.LookUpMode.SRTM_ONLY), 
+                    srtmOptions).build();
         location = loc;
         distanceFrom = dFrom;
         distanceTo = dTo;
@@ -131,71 +153,143 @@ public class Panorama {
         location.setElevation(elevationService.getElevationForCoordinate(location).getRight());
     }
     
-    private void calcLocations() {
-        // we want farest away circle first
-        panoramaLocations = new TreeMap<>(Collections.reverseOrder());
-        noElevationData = true;
+    // TFE, 20261019: distances & angles are also needed for the horizon engine - calculate them once
+    private void calcDistancesAndAngles() {
+        if (distances != null) {
+            return;
+        }
         
 //        System.out.println("distanceTo: " + distanceTo + ", distanceFrom: " + distanceFrom + ", distanceStepping: " + distanceStepping);
         // lets go backwards to avoid re-sorting on put
+        final List<Integer> distanceList = new ArrayList<>();
+        final List<Double> resolutionList = new ArrayList<>();
         // TFE, 20230321: support for shorter steps closer to location
         int realStepping = distanceStepping;
         for (int distance = distanceTo; distance >= distanceFrom; distance = distance - realStepping) {
 //            System.out.println("distance: " + distance);
-            final List<Pair<Double, IGeoCoordinate>> angleLatLonElevs = new ArrayList<>();
+            distanceList.add(distance);
+            // TFE, 20261019: far away we can't resolve details smaller than our stepping anyways
+            // so use coarser srtm data for it - max value to not loose any peaks on the horizon
+            resolutionList.add(Math.min(realStepping, distance * Math.toRadians(Math.abs(angleStepping))));
+            
+            // TFE, 20230321: support for shorter steps closer to location
+            if (distance <= distanceFrom + SHORT_STEPS * distanceStepping / DISTANCE_SHORT_STEP_DIVISOR) {
+                realStepping = distanceStepping / DISTANCE_SHORT_STEP_DIVISOR;
+            }
+//            System.out.println("distance: " + distance + ", realStepping: " + realStepping);
+        }
+        distances = new int[distanceList.size()];
+        groundResolutions = new double[resolutionList.size()];
+        for (int i = 0; i < distances.length; i++) {
+            distances[i] = distanceList.get(i);
+            groundResolutions[i] = resolutionList.get(i);
+        }
 
-            // tricky with this modulo 360 DEG... especially when going down
-            // so lets do it this way:
-            // start with "from"
-            // if positive steps: add as long as we're below "to" (increment "to" by 360 if smaler "from")
-            // if negative steps: subtract as long as we're above "to" (decrement "to" by 360 if greater "from")
-            // so we can simply go the correct number of steps in the given direction without any further logic
-            int angleToMOD360 = angleTo;
-            if (angleStepping > 0) {
-                if (angleToMOD360 < angleFrom) {
-                    angleToMOD360 += 360;
-                }
-            } else {
-                if (angleToMOD360 > angleFrom) {
-                    angleToMOD360 -= 360;
-                }
+        // tricky with this modulo 360 DEG... especially when going down
+        // so lets do it this way:
+        // start with "from"
+        // if positive steps: add as long as we're below "to" (increment "to" by 360 if smaler "from")
+        // if negative steps: subtract as long as we're above "to" (decrement "to" by 360 if greater "from")
+        // so we can simply go the correct number of steps in the given direction without any further logic
+        int angleToMOD360 = angleTo;
+        if (angleStepping > 0) {
+            if (angleToMOD360 < angleFrom) {
+                angleToMOD360 += 360;
+            }
+        } else {
+            if (angleToMOD360 > angleFrom) {
+                angleToMOD360 -= 360;
+            }
+        }
+        final int steps = Math.abs(Math.abs(angleToMOD360 - angleFrom) / angleStepping);
+        angles = new int[steps + 1];
+        saveAngles = new int[steps + 1];
+        int angle = angleFrom;
+        for (int j = 0; j <= steps; j++) {
+//            System.out.println("angle: " + angle);
+            angles[j] = angle;
+            
+            // and now match back to the angle we want to save things under...
+            int saveAngle = angle % 360;
+            if (saveAngle < 0) {
+                saveAngle += 360;
+            }
+            saveAngles[j] = saveAngle;
+
+            angle = angle + angleStepping;
+        }
+    }
+    
+    private void calcLocations() {
+        calcDistancesAndAngles();
+
+        // we want farest away circle first
+        panoramaLocations = new TreeMap<>(Collections.reverseOrder());
+        noElevationData = true;
+        
+        for (int i = 0; i < distances.length; i++) {
+            if (cancelled) {
+                break;
             }
-            final int steps = Math.abs(Math.abs(angleToMOD360 - angleFrom) / angleStepping);
-            int angle = angleFrom;
-            for (int j = 0; j <= steps; j++) {
-//                System.out.println("angle: " + angle);
+            final int distance = distances[i];
+            final List<Pair<Double, IGeoCoordinate>> angleLatLonElevs = new ArrayList<>();
+
+            for (int j = 0; j < angles.length; j++) {
                 // the point where looking at
-                final LatLonElev target = ObjectsHelper.uncheckedCast(EarthGeometry.destinationPoint(location, distance, angle));
-                final Pair<Boolean, Double> elevation = elevationService.getElevationForCoordinate(target);
-                target.setElevation(elevationService.getElevationForCoordinate(target).getRight());
+                final LatLonElev target = ObjectsHelper.uncheckedCast(EarthGeometry.destinationPoint(location, distance, angles[j]));
+                final Pair<Boolean, Double> elevation = elevationService.getElevationForCoordinate(target, groundResolutions[i], SRTMDataPyramid.Statistic.MAX);
+                target.setElevation(elevation.getRight());
                 
                 if (noElevationData && elevation.getLeft()) {
                     noElevationData = false;
                 }
                 
-                // and now match back to the angle we want to save things under...
-                int saveAngle = angle % 360;
-                if (saveAngle < 0) {
-                    saveAngle += 360;
-                }
-                angleLatLonElevs.add(Pair.of(saveAngle*1.0, target));
-
-                angle = angle + angleStepping;
+                angleLatLonElevs.add(Pair.of(saveAngles[j]*1.0, target));
             }
             
             panoramaLocations.put(distance * 1.0, angleLatLonElevs);
-            
-            // TFE, 20230321: support for shorter steps closer to location
-            if (distance <= distanceFrom + SHORT_STEPS * distanceStepping / DISTANCE_SHORT_STEP_DIVISOR) {
-                realStepping = distanceStepping / DISTANCE_SHORT_STEP_DIVISOR;
+        }
+    }
+    
+    private void calcHorizon() {
+        // TFE, 20261019: we might have been here before
+        if (horizonCache != null) {
+            final Horizon cachedHorizon = horizonCache.getHorizon(this);
+            if (cachedHorizon != null) {
+                horizon = cachedHorizon;
+                if (panoramaLocations == null) {
+                    // only horizons with data are cached
+                    noElevationData = false;
+                }
+                return;
             }
-//            System.out.println("distance: " + distance + ", realStepping: " + realStepping);
+        }
+
+        calcDistancesAndAngles();
+        
+        // horizon engine wants nearest distance first
+        final double[] rayDistances = new double[distances.length];
+        final double[] rayResolutions = new double[distances.length];
+        for (int i = 0; i < distances.length; i++) {
+            rayDistances[i] = distances[distances.length - 1 - i];
+            rayResolutions[i] = groundResolutions[distances.length - 1 - i];
+        }
+        
+        final HorizonEngine engine = new HorizonEngine(location, elevationService, rayDistances, rayResolutions, angles, saveAngles, this::isCancelled);
+        horizon = engine.calcHorizon();
+        if (panoramaLocations == null) {
+            noElevationData = engine.noElevationData();
+        }
+        
+        // no data might mean that the srtm files simply aren't there yet - so don't remember that
+        if (horizonCache != null && storeHorizon && !cancelled && !engine.noElevationData()) {
+            horizonCache.putHorizon(this, horizon);
         }
     }
     
     private void calcViewingAngles() {
         panoramaViewingAngles = new TreeMap<>(Collections.reverseOrder());
-        horizon = new Horizon();
+        final Horizon fullHorizon = new Horizon();
         // easier to work with this structure...
         final Map<Double, Pair<Double, IGeoCoordinate>> helper = new LinkedMap<>();
 
@@ -238,13 +332,52 @@ public class Panorama {
 
         // and now convert helper to final map
         for (Map.Entry<Double, Pair<Double, IGeoCoordinate>> entry : helper.entrySet()) {
-            horizon.put(AzimuthElevationAngle.of(entry.getKey(), entry.getValue().getLeft()), entry.getValue().getRight());
+            fullHorizon.put(AzimuthElevationAngle.of(entry.getKey(), entry.getValue().getLeft()), entry.getValue().getRight());
+        }
+        // TFE, 20261019: keep what the horizon engine might already have calculated - its the same anyways
+        if (horizon == null) {
+            horizon = fullHorizon;
         }
     }
+    
     public IGeoCoordinate getLocation() {
         return location;
     }
 
+    public SRTMDataOptions getSRTMDataOptions() {
+        return srtmOptions;
+    }
+
+    public HorizonCache getHorizonCache() {
+        return horizonCache;
+    }
+
+    /**
+     * Use a different cache for horizons - or null for none.
+     * 
+     * @param cache the cache to use
+     * @return this panorama
+     */
+    public Panorama setHorizonCache(final HorizonCache cache) {
+        horizonCache = cache;
+        return this;
+    }
+
+    public boolean isStoreHorizon() {
+        return storeHorizon;
+    }
+
+    /**
+     * Should a calculated horizon be added to the cache? It is still looked up there in any case.
+     * 
+     * @param store false for horizons that nobody will ask for again
+     * @return this panorama
+     */
+    public Panorama setStoreHorizon(final boolean store) {
+        storeHorizon = store;
+        return this;
+    }
+
     public int getDistanceFrom() {
         return distanceFrom;
     }
@@ -287,20 +420,55 @@ public class Panorama {
     
     public Horizon getHorizon() {
         if (horizon == null) {
-            // calculate the individual viewing angles
-            calcViewingAngles();
+            // TFE, 20261019: no need for the full panorama - the horizon engine is much faster
+            calcHorizon();
         }
         return horizon;
     }
 
+    /**
+     * Stop any running calculation as soon as possible.
+     * 
+     * Results of a cancelled panorama are incomplete and shouldn't be used anymore.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
     public boolean noElevationData() {
         return noElevationData;
     }
 
+    /**
+     * Has the full panorama been calculated?
+     * 
+     * The horizon alone doesn't need it - getPanoramaViewingAngles() does the expensive calculation.
+     * 
+     * @return true if the viewing angles are available
+     */
+    public boolean hasPanoramaViewingAngles() {
+        return panoramaViewingAngles != null;
+    }
+
+    /**
+     * Lowest viewing angle of the full panorama.
+     * 
+     * @return min. elevation angle or null if getPanoramaViewingAngles() hasn't been called so far
+     */
     public AzimuthElevationAngle getMinElevationAngle() {
+        // TFE, 20261019: horizon might have been calculated without the full panorama - don't do it behind the back of the caller
         return minElevationAngle;
     }
 
+    /**
+     * Highest viewing angle of the full panorama.
+     * 
+     * @return max. elevation angle or null if getPanoramaViewingAngles() hasn't been called so far
+     */
     public AzimuthElevationAngle getMaxElevationAngle() {
         return maxElevationAngle;
     }
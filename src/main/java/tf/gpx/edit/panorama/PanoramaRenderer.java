@@ -0,0 +1,597 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.gpx.edit.panorama;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import org.apache.commons.lang3.tuple.Pair;
+import tf.gpx.edit.leafletmap.IGeoCoordinate;
+import tf.gpx.edit.sun.AzimuthElevationAngle;
+
+/**
+ * Rasterize a panorama into an ARGB pixel array - to be shown via a PixelBuffer.
+ * 
+ * The distance rings of the panorama are held in primitive arrays and rendered from near to far.
+ * A per column skyline works as z-buffer: each ring only fills the pixels above what nearer rings have covered
+ * and draws its ridge line only where it is visible. The ring of each pixel is kept as well,
+ * so tooltips can be found with a lookup instead of creating them for all points in advance.
+ * 
+ * Sun paths are drawn into the sky only - they are "behind" all terrain.
+ * 
+ * Rendering is done on a worker thread; only the last request is rendered if they come in faster than we can render.
+ * 
+ * @author thomas
+ */
+public class PanoramaRenderer {
+    public final static int NO_RING = -1;
+    
+    // all colors are ARGB - opaque or fully transparent, so premultiplied is the same
+    public final static int SKY_COLOR = 0x00000000;
+    public final static int RIDGE_COLOR = 0xFF696969;
+    public final static int HORIZON_COLOR = 0xFF8285D2;
+    // from far to near
+    public final static int[] RING_COLORS = {0xFF0C11E6, 0xFF3A40DE, 0xFF3B40DA, 0xFF4D51D9, 0xFF8285D2, 0xFFA7A6CE, 0xFFBCBECD, 0xFFC6C7C9};
+    
+    private final static int SUNPATH_WIDTH = 2;
+
+    private final static ExecutorService executorService = Executors.newSingleThreadExecutor(
+            (Runnable r) -> {
+                final Thread thread = new Thread(r, "PanoramaRenderer");
+                thread.setDaemon(true);
+                return thread;
+            });
+    
+    private final AtomicLong lastRequest = new AtomicLong(0);
+    
+    private volatile RingData ringData = new RingData(0, 0);
+    private volatile List<SunPath> sunPaths = new ArrayList<>();
+    private volatile boolean sunPathsVisible = false;
+    
+    // keep some frames for reuse - we don't want to allocate megabytes for each mouse move
+    private final List<Frame> framePool = new ArrayList<>();
+    
+    /**
+     * The rings in primitive arrays, ordered from near to far. Values of a ring are sorted by azimuth in [0, 360).
+     */
+    private static class RingData {
+        private final int[] ringStart;
+        // NaN for the horizon - there is no single distance
+        private final double[] ringDistance;
+        private final int[] ringColor;
+        private final double[] azimuths;
+        private final double[] angles;
+        private final double[] elevations;
+        
+        private RingData(final int ringCount, final int valueCount) {
+            ringStart = new int[ringCount + 1];
+            ringDistance = new double[ringCount];
+            ringColor = new int[ringCount];
+            azimuths = new double[valueCount];
+            angles = new double[valueCount];
+            elevations = new double[valueCount];
+        }
+        
+        private int getRingCount() {
+            return ringDistance.length;
+        }
+        
+        // linear interpolation between the neighbours of an azimuth - across 360 as well
+        private double interpolate(final int ring, final double[] values, final double azimuth) {
+            final int from = ringStart[ring];
+            final int to = ringStart[ring + 1];
+            final int count = to - from;
+            if (count == 0) {
+                return Double.NaN;
+            }
+            if (count == 1) {
+                return values[from];
+            }
+            
+            final double normAzimuth = normalize(azimuth);
+            int index = Arrays.binarySearch(azimuths, from, to, normAzimuth);
+            if (index >= 0) {
+                return values[index];
+            }
+            index = -index - 1;
+
+            final int upper = (index < to) ? index : from;
+            final int lower = (index > from) ? index - 1 : to - 1;
+            double upperAzimuth = azimuths[upper];
+            double lowerAzimuth = azimuths[lower];
+            if (upperAzimuth < normAzimuth) {
+                upperAzimuth += 360.0;
+            }
+            if (lowerAzimuth > normAzimuth) {
+                lowerAzimuth -= 360.0;
+            }
+            final double weight = (upperAzimuth > lowerAzimuth) ? (normAzimuth - lowerAzimuth) / (upperAzimuth - lowerAzimuth) : 0.0;
+            return values[lower] + weight * (values[upper] - values[lower]);
+        }
+    }
+    
+    private static class SunPath {
+        private final double[] azimuths;
+        private final double[] angles;
+        private final int color;
+        
+        private SunPath(final double[] azis, final double[] angs, final int col) {
+            azimuths = azis;
+            angles = angs;
+            color = col;
+        }
+    }
+    
+    /**
+     * Result of a rendering: pixels, ring of each pixel and the view they have been rendered for.
+     */
+    public static class Frame {
+        private final int width;
+        private final int height;
+        private final int[] pixels;
+        private final int[] rings;
+        private final int[] skyline;
+        
+        private double minAzimuth;
+        private double maxAzimuth;
+        private double minAngle;
+        private double maxAngle;
+        private RingData ringData;
+        
+        private Frame(final int w, final int h) {
+            width = w;
+            height = h;
+            pixels = new int[w * h];
+            rings = new int[w * h];
+            skyline = new int[w];
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        public int[] getPixels() {
+            return pixels;
+        }
+        
+        public double getAzimuth(final double x) {
+            return minAzimuth + x / width * (maxAzimuth - minAzimuth);
+        }
+        
+        public double getAngle(final double y) {
+            return maxAngle - y / height * (maxAngle - minAngle);
+        }
+        
+        private double getX(final double azimuth) {
+            return (azimuth - minAzimuth) / (maxAzimuth - minAzimuth) * width;
+        }
+        
+        private double getY(final double angle) {
+            return (maxAngle - angle) / (maxAngle - minAngle) * height;
+        }
+
+        /**
+         * Which ring is shown at a pixel.
+         * 
+         * @param x x of the pixel
+         * @param y y of the pixel
+         * @return index of the ring, NO_RING for sky or outside of the frame
+         */
+        public int getRing(final int x, final int y) {
+            if (x < 0 || x >= width || y < 0 || y >= height) {
+                return NO_RING;
+            }
+            return rings[y * width + x];
+        }
+        
+        /**
+         * Text for the terrain shown at a pixel - only calculated when asked for.
+         * 
+         * @param x x of the pixel
+         * @param y y of the pixel
+         * @return text or null for sky
+         */
+        public String getTooltip(final int x, final int y) {
+            final int ring = getRing(x, y);
+            if (ring == NO_RING) {
+                return null;
+            }
+            
+            final double elevation = ringData.interpolate(ring, ringData.elevations, getAzimuth(x + 0.5));
+            if (Double.isNaN(ringData.ringDistance[ring])) {
+                return String.format("Elev. %.1fm", elevation);
+            } else {
+                return String.format("Dist: %.1fkm", ringData.ringDistance[ring] / 1000) + "\n" + String.format("Elev. %.1fm", elevation);
+            }
+        }
+    }
+    
+    /**
+     * Use all rings of a panorama - rings that are completely hidden by nearer ones are skipped.
+     * 
+     * @param panorama the panorama to render
+     */
+    public void setPanorama(final Panorama panorama) {
+        // viewing angles are sorted from far to near
+        final List<Map.Entry<Double, List<Pair<AzimuthElevationAngle, IGeoCoordinate>>>> rings = new ArrayList<>(panorama.getPanoramaViewingAngles().entrySet());
+        
+        // check which rings are actually visible
+        // go from front to back and check if above horizon (that we also build up this way...)
+        final Set<Integer> invisibleRings = new HashSet<>();
+        final Map<Double, Double> visibleMap = new HashMap<>();
+        for (int i = rings.size() - 1; i >= 0; i--) {
+            boolean visible = false;
+            for (Pair<AzimuthElevationAngle, IGeoCoordinate> coord : rings.get(i).getValue()) {
+                final Double azimuth = coord.getLeft().getAzimuth();
+                final Double maxAngle = visibleMap.get(azimuth);
+                if (maxAngle == null || coord.getLeft().getElevation() > maxAngle) {
+                    // new highest elevation for this azimuth
+                    visibleMap.put(azimuth, coord.getLeft().getElevation());
+                    visible = true;
+                }
+            }
+            if (!visible) {
+                invisibleRings.add(i);
+            }
+        }
+        
+        int valueCount = 0;
+        final List<Integer> visibleRings = new ArrayList<>();
+        for (int i = 0; i < rings.size(); i++) {
+            if (!invisibleRings.contains(i)) {
+                visibleRings.add(i);
+                valueCount += rings.get(i).getValue().size();
+            }
+        }
+        
+        final int[] colors = getRingColors(visibleRings.size());
+        
+        final RingData data = new RingData(visibleRings.size(), valueCount);
+        // store from near to far
+        int start = 0;
+        for (int ring = 0; ring < visibleRings.size(); ring++) {
+            final int farIndex = visibleRings.size() - 1 - ring;
+            final Map.Entry<Double, List<Pair<AzimuthElevationAngle, IGeoCoordinate>>> entry = rings.get(visibleRings.get(farIndex));
+
+            data.ringStart[ring] = start;
+            data.ringDistance[ring] = entry.getKey();
+            data.ringColor[ring] = colors[farIndex];
+            for (Pair<AzimuthElevationAngle, IGeoCoordinate> coord : entry.getValue()) {
+                data.azimuths[start] = normalize(coord.getLeft().getAzimuth());
+                data.angles[start] = coord.getLeft().getElevation();
+                data.elevations[start] = coord.getRight().getElevation();
+                start++;
+            }
+            sortRing(data, data.ringStart[ring], start);
+        }
+        data.ringStart[visibleRings.size()] = start;
+        
+        ringData = data;
+    }
+    
+    /**
+     * Use only the horizon - e.g. while the panorama is still being calculated.
+     * 
+     * @param horizon the horizon to render
+     */
+    public void setHorizon(final Horizon horizon) {
+        final RingData data = new RingData(1, horizon.size());
+        
+        int index = 0;
+        for (Map.Entry<AzimuthElevationAngle, IGeoCoordinate> entry : horizon.entrySet()) {
+            data.azimuths[index] = normalize(entry.getKey().getAzimuth());
+            data.angles[index] = entry.getKey().getElevation();
+            data.elevations[index] = entry.getValue().getElevation();
+            index++;
+        }
+        data.ringStart[1] = index;
+        data.ringDistance[0] = Double.NaN;
+        data.ringColor[0] = HORIZON_COLOR;
+        sortRing(data, 0, index);
+        
+        ringData = data;
+    }
+    
+    public int getRingCount() {
+        return ringData.getRingCount();
+    }
+    
+    public void addSunPath(final double[] azimuths, final double[] angles, final int color) {
+        assert azimuths.length == angles.length;
+        
+        final List<SunPath> newPaths = new ArrayList<>(sunPaths);
+        newPaths.add(new SunPath(Arrays.copyOf(azimuths, azimuths.length), Arrays.copyOf(angles, angles.length), color));
+        sunPaths = newPaths;
+    }
+    
+    public void clearSunPaths() {
+        sunPaths = new ArrayList<>();
+        sunPathsVisible = false;
+    }
+    
+    public boolean hasSunPaths() {
+        return !sunPaths.isEmpty();
+    }
+    
+    public boolean isSunPathsVisible() {
+        return sunPathsVisible;
+    }
+    
+    public void setSunPathsVisible(final boolean visible) {
+        sunPathsVisible = visible;
+    }
+
+    /**
+     * Render on the worker thread. If new requests come in before this one has been started it is skipped.
+     * 
+     * @param minAzimuth azimuth at the left border, may be larger than 360
+     * @param maxAzimuth azimuth at the right border
+     * @param minAngle elevation angle at the bottom
+     * @param maxAngle elevation angle at the top
+     * @param width width in pixels
+     * @param height height in pixels
+     * @param callback gets the frame - called on the worker thread
+     */
+    public void renderAsync(
+            final double minAzimuth, final double maxAzimuth, final double minAngle, final double maxAngle, 
+            final int width, final int height, 
+            final Consumer<Frame> callback) {
+        final long request = lastRequest.incrementAndGet();
+        
+        executorService.submit(() -> {
+            if (request != lastRequest.get()) {
+                // someone was faster
+                return;
+            }
+            final Frame frame = render(minAzimuth, maxAzimuth, minAngle, maxAngle, width, height);
+            if (request != lastRequest.get()) {
+                recycle(frame);
+                return;
+            }
+            callback.accept(frame);
+        });
+    }
+    
+    /**
+     * Cancel all requests that haven't been started yet.
+     */
+    public void cancel() {
+        lastRequest.incrementAndGet();
+    }
+    
+    /**
+     * Hand back a frame that isn't shown anymore.
+     * 
+     * @param frame frame to reuse
+     */
+    public void recycle(final Frame frame) {
+        if (frame == null) {
+            return;
+        }
+        synchronized (framePool) {
+            // one for the screen, one to render into
+            if (framePool.size() < 2) {
+                framePool.add(frame);
+            }
+        }
+    }
+    
+    /**
+     * Render synchronously.
+     * 
+     * @param minAzimuth azimuth at the left border, may be larger than 360
+     * @param maxAzimuth azimuth at the right border
+     * @param minAngle elevation angle at the bottom
+     * @param maxAngle elevation angle at the top
+     * @param width width in pixels
+     * @param height height in pixels
+     * @return the frame
+     */
+    public Frame render(final double minAzimuth, final double maxAzimuth, final double minAngle, final double maxAngle, final int width, final int height) {
+        final Frame frame = getFrame(Math.max(1, width), Math.max(1, height));
+        final RingData data = ringData;
+        frame.minAzimuth = minAzimuth;
+        frame.maxAzimuth = maxAzimuth;
+        frame.minAngle = minAngle;
+        frame.maxAngle = maxAngle;
+        frame.ringData = data;
+
+        Arrays.fill(frame.pixels, SKY_COLOR);
+        Arrays.fill(frame.rings, NO_RING);
+        // nothing covered so far
+        Arrays.fill(frame.skyline, frame.height);
+        
+        for (int ring = 0; ring < data.getRingCount(); ring++) {
+            renderRing(frame, data, ring);
+        }
+        
+        if (sunPathsVisible) {
+            for (SunPath path : sunPaths) {
+                // paths are given in [0, 360) - we show up to 720
+                for (double offset = 0; offset <= 360; offset += 360) {
+                    renderSunPath(frame, path, offset);
+                }
+            }
+        }
+        
+        return frame;
+    }
+    
+    private Frame getFrame(final int width, final int height) {
+        synchronized (framePool) {
+            for (Frame frame : framePool) {
+                if (frame.width == width && frame.height == height) {
+                    framePool.remove(frame);
+                    return frame;
+                }
+            }
+            // wrong size - won't be needed anymore
+            framePool.clear();
+        }
+        return new Frame(width, height);
+    }
+    
+    private static void renderRing(final Frame frame, final RingData data, final int ring) {
+        final int width = frame.width;
+        final int color = data.ringColor[ring];
+        
+        int lastRidge = Integer.MIN_VALUE;
+        for (int x = 0; x < width; x++) {
+            final double angle = data.interpolate(ring, data.angles, frame.getAzimuth(x + 0.5));
+            if (Double.isNaN(angle)) {
+                continue;
+            }
+            
+            final int ridge = (int) Math.floor(frame.getY(angle));
+            final int skyline = frame.skyline[x];
+
+            // connect to the ridge of the last column to avoid gaps on steep slopes
+            int lineFrom = ridge;
+            int lineTo = ridge;
+            if (lastRidge != Integer.MIN_VALUE) {
+                if (lastRidge > ridge + 1) {
+                    lineTo = lastRidge - 1;
+                } else if (lastRidge < ridge - 1) {
+                    lineFrom = lastRidge + 1;
+                }
+            }
+            lastRidge = ridge;
+            
+            if (lineFrom >= skyline) {
+                // hidden by nearer rings
+                continue;
+            }
+            
+            int offset = Math.max(0, lineFrom) * width + x;
+            for (int y = Math.max(0, lineFrom); y < skyline; y++) {
+                frame.pixels[offset] = (y > lineTo) ? color : RIDGE_COLOR;
+                frame.rings[offset] = ring;
+                offset += width;
+            }
+            frame.skyline[x] = Math.max(0, lineFrom);
+        }
+    }
+    
+    private static void renderSunPath(final Frame frame, final SunPath path, final double offset) {
+        for (int i = 1; i < path.azimuths.length; i++) {
+            final double x0 = frame.getX(path.azimuths[i - 1] + offset);
+            final double y0 = frame.getY(path.angles[i - 1]);
+            final double x1 = frame.getX(path.azimuths[i] + offset);
+            final double y1 = frame.getY(path.angles[i]);
+            
+            if (Math.max(x0, x1) < 0 || Math.min(x0, x1) >= frame.width) {
+                continue;
+            }
+            
+            // simple DDA - only paint the sky
+            final int steps = (int) Math.ceil(Math.max(Math.abs(x1 - x0), Math.abs(y1 - y0))) + 1;
+            for (int step = 0; step <= steps; step++) {
+                final int x = (int) Math.floor(x0 + (x1 - x0) * step / steps);
+                final int y = (int) Math.floor(y0 + (y1 - y0) * step / steps);
+                for (int dy = 0; dy < SUNPATH_WIDTH; dy++) {
+                    final int py = y + dy;
+                    if (x >= 0 && x < frame.width && py >= 0 && py < frame.height && py < frame.skyline[x]) {
+                        frame.pixels[py * frame.width + x] = path.color;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Colors from far to near - not linear: in the distance colors change more slowly than close by.
+     * 
+     * @param ringCount number of rings
+     * @return colors from far to near
+     */
+    private static int[] getRingColors(final int ringCount) {
+        final int colorSteps = RING_COLORS.length;
+        final int[] result = new int[ringCount];
+        
+        // every n-th step we change the color
+        final double colorChange = ringCount / colorSteps;
+        // not really every n-th step... initially less often, finally more often
+        final int[] colorChangeAt = new int[colorSteps];
+        for (int i = 0; i < colorSteps; i++) {
+            // TFE, 20230321: closer slices nearby, larger steps in the distance - so we need to vary more strongly
+            final double scaleFact = 1.5 - 1.0 / (colorSteps-1) * i;
+            colorChangeAt[i] = (int) (scaleFact * colorChange);
+        }
+        
+        int seriesColor = 0;
+        int count = 0;
+        for (int ring = 0; ring < ringCount; ring++) {
+            count++;
+            if (count >= colorChangeAt[seriesColor]) {
+                count = 0;
+                // due to rounding to int we can run over the number of colors...
+                seriesColor = Math.min(seriesColor+1, colorSteps-1);
+            }
+            result[ring] = RING_COLORS[seriesColor];
+        }
+        
+        return result;
+    }
+    
+    private static double normalize(final double azimuth) {
+        double result = azimuth % 360.0;
+        if (result < 0) {
+            result += 360.0;
+        }
+        return result;
+    }
+    
+    private static void sortRing(final RingData data, final int from, final int to) {
+        // insertion sort - values come mostly sorted already
+        for (int i = from + 1; i < to; i++) {
+            final double azimuth = data.azimuths[i];
+            final double angle = data.angles[i];
+            final double elevation = data.elevations[i];
+            int j = i - 1;
+            while (j >= from && data.azimuths[j] > azimuth) {
+                data.azimuths[j + 1] = data.azimuths[j];
+                data.angles[j + 1] = data.angles[j];
+                data.elevations[j + 1] = data.elevations[j];
+                j--;
+            }
+            data.azimuths[j + 1] = azimuth;
+            data.angles[j + 1] = angle;
+            data.elevations[j + 1] = elevation;
+        }
+    }
+}
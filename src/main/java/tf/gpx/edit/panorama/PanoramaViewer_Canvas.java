@@ -26,30 +26,30 @@
 package tf.gpx.edit.panorama;
 
 import eu.hansolo.fx.charts.*;
-import eu.hansolo.fx.charts.data.XYChartItem;
-import eu.hansolo.fx.charts.series.XYSeries;
-import eu.hansolo.fx.charts.series.XYSeriesBuilder;
+import java.nio.IntBuffer;
 import java.time.ZonedDateTime;
 import java.time.temporal.ChronoField;
 import java.util.*;
+import javafx.application.Platform;
 import javafx.geometry.Orientation;
 import javafx.geometry.Point2D;
 import javafx.geometry.Pos;
-import javafx.scene.Group;
 import javafx.scene.Scene;
 import javafx.scene.control.Label;
+import javafx.scene.control.Tooltip;
 import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
+import javafx.scene.image.PixelBuffer;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
 import javafx.scene.layout.AnchorPane;
 import javafx.scene.layout.StackPane;
-import javafx.scene.paint.Color;
-import javafx.scene.paint.Paint;
 import javafx.stage.Modality;
 import javafx.stage.Screen;
 import javafx.stage.Stage;
 import javafx.util.StringConverter;
 import jfxtras.styles.jmetro.JMetro;
 import jfxtras.styles.jmetro.Style;
-import org.apache.commons.lang3.tuple.Pair;
 import tf.gpx.edit.helper.LatLonHelper;
 import tf.gpx.edit.helper.TimeZoneProvider;
 import tf.gpx.edit.leafletmap.IGeoCoordinate;
@@ -83,23 +83,26 @@ public class PanoramaViewer_Canvas {
     
     private final static double SCALE_FACT = 1.1;
 
-    private final static int COLOR_STEPS = 8; // we have 8 color steps defined in CSS
+    private final static double AXIS_WIDTH = 30d;
+    
+    // sun path colors as ARGB
+    private final static int SUNPATH_TODAY_COLOR = 0xFFFFFF00;
+    private final static int SUNPATH_SUMMER_COLOR = 0xFF008000;
+    private final static int SUNPATH_WINTER_COLOR = 0xFF0000FF;
 
-    // switched to https://stackoverflow.com/a/33736255 for an area chart that colors to the lower axis
-//    private final AreaChart<Number, Number> elevationChart = new SmoothFilledAreaChart<>(new NumberAxis(), new NumberAxis());
-    private XYChart<XYChartItem> elevationChart;
+    // TFE, 20261019: panorama & sun paths are rendered into an image in the background
+    // no more XYChart with series & items & tooltips for each point
     private Axis xAxisElev;
     private Axis yAxisElev;
-    private final List<XYSeries> elevationChartData = new ArrayList<>();
-//    private final LineChart<Number, Number> sunPathChart = new LineChart<>(new NumberAxis(), new NumberAxis());
     private final Label elevationChartLabel = new Label();
-    private XYChart<XYChartItem> sunPathChart;
-    private Axis xAxisSun;
-    private Axis yAxisSun;
-    private final List<XYSeries> sunPathChartData = new ArrayList<>();
     private final Label sunPathLabel = new Label();
-    // toFront() and toBack() only work within the same group...
-    private final Group chartGroup = new Group();
+    private final PanoramaRenderer renderer = new PanoramaRenderer();
+    private final AnchorPane panoramaPane = new AnchorPane();
+    private final ImageView panoramaView = new ImageView();
+    private PixelBuffer<IntBuffer> pixelBuffer;
+    // the frame that is currently shown - for the tooltips
+    private PanoramaRenderer.Frame shownFrame;
+    private final Tooltip panoramaTooltip = new Tooltip();
     private final StackPane pane = new StackPane();
     private final Scene scene;
     private final Stage stage = new Stage();
@@ -116,6 +119,10 @@ public class PanoramaViewer_Canvas {
     private double mouseOldY;
     
     private Panorama panorama;
+    // TFE, 20261019: calculate in the background from coarse to fine
+    private ProgressivePanorama progressivePanorama;
+    private double minElevationAngle;
+    private double maxElevationAngle;
     
     private IGeoCoordinate location;
     private TimeZone timeZone = null;
@@ -133,6 +140,10 @@ public class PanoramaViewer_Canvas {
         stage.setTitle("GPX Editor - Panorama");
         stage.getIcons().add(new Image(PanoramaViewer_Canvas.class.getResourceAsStream("/GPXEditorManager.png")));
         stage.setScene(scene);
+        // no need to continue calculating once we're gone
+        stage.setOnHiding((t) -> {
+            cancelPanorama();
+        });
         
         initialize();
     }
@@ -149,7 +160,6 @@ public class PanoramaViewer_Canvas {
     private void initialize() {
         // linechart can only be created with a pane and a series...
         // so we create the constant axis here and use them later on in showData()
-        final Double AXIS_WIDTH = 30d;
         final Double AXIS_FONTSIZE = 12d;
 
         xAxisElev = AxisBuilder.create(Orientation.HORIZONTAL, Position.BOTTOM)
@@ -220,43 +230,26 @@ public class PanoramaViewer_Canvas {
         AnchorPane.setBottomAnchor(yAxisElev, AXIS_WIDTH);
         AnchorPane.setLeftAnchor(yAxisElev, 0d);
 
-        xAxisSun = AxisBuilder.create(Orientation.HORIZONTAL, Position.BOTTOM)
-                .autoScale(false)
-                .type(AxisType.LINEAR)
-                .minorTickMarksVisible(false)
-                .mediumTickMarksVisible(false)
-                .majorTickMarksVisible(false)
-                .tickLabelFontSize(AXIS_FONTSIZE)
-                .autoFontSize(false)
-                .tickLabelsVisible(false)
-                .minHeight(AXIS_WIDTH)
-                .title("")
-                .build();
-        AnchorPane.setBottomAnchor(xAxisSun, 0d);
-        AnchorPane.setLeftAnchor(xAxisSun, AXIS_WIDTH);
-        AnchorPane.setRightAnchor(xAxisSun, AXIS_WIDTH);
+        // image is placed exactly over the range of the x axis
+        AnchorPane.setTopAnchor(panoramaView, 0d);
+        AnchorPane.setLeftAnchor(panoramaView, AXIS_WIDTH);
+        panoramaPane.getChildren().addAll(panoramaView, xAxisElev, yAxisElev);
+        panoramaPane.minHeightProperty().bind(pane.heightProperty());
+        panoramaPane.prefHeightProperty().bind(pane.heightProperty());
+        panoramaPane.maxHeightProperty().bind(pane.heightProperty());
+        panoramaPane.minWidthProperty().bind(pane.widthProperty());
+        panoramaPane.prefWidthProperty().bind(pane.widthProperty());
+        panoramaPane.maxWidthProperty().bind(pane.widthProperty());
+
+        // any change of the view needs a new image
+        xAxisElev.minValueProperty().addListener((ov, oldValue, newValue) -> renderPanorama());
+        xAxisElev.maxValueProperty().addListener((ov, oldValue, newValue) -> renderPanorama());
+        yAxisElev.minValueProperty().addListener((ov, oldValue, newValue) -> renderPanorama());
+        yAxisElev.maxValueProperty().addListener((ov, oldValue, newValue) -> renderPanorama());
+        pane.widthProperty().addListener((ov, oldValue, newValue) -> renderPanorama());
+        pane.heightProperty().addListener((ov, oldValue, newValue) -> renderPanorama());
         
-        yAxisSun = AxisBuilder.create(Orientation.VERTICAL, Position.LEFT)
-                .autoScale(false)
-                .type(AxisType.LINEAR)
-                .minorTickMarksVisible(false)
-                .mediumTickMarksVisible(false)
-                .majorTickMarksVisible(false)
-                .tickLabelFontSize(AXIS_FONTSIZE)
-                .autoFontSize(false)
-                .tickLabelsVisible(false)
-                .minWidth(1.5*AXIS_WIDTH)
-                .title("")
-                .build();
-        AnchorPane.setTopAnchor(yAxisSun, 0d);
-        AnchorPane.setBottomAnchor(yAxisSun, AXIS_WIDTH);
-        AnchorPane.setLeftAnchor(yAxisSun, 0d);
-
-        // one set to rule them all...
-        xAxisSun.minValueProperty().bind(xAxisElev.minValueProperty());
-        xAxisSun.maxValueProperty().bind(xAxisElev.maxValueProperty());
-        yAxisSun.minValueProperty().bind(yAxisElev.minValueProperty());
-        yAxisSun.maxValueProperty().bind(yAxisElev.maxValueProperty());
+        initMouseHandlers();
         
         pane.getStyleClass().add("horizon-pane");
         
@@ -265,13 +258,19 @@ public class PanoramaViewer_Canvas {
             int lowerBound = 0;
             switch (t.getCode()) {
                 case ESCAPE -> stage.close();
-                case C, R -> setAxes();
+                case C, R -> {
+                    if (panorama != null) {
+                        setAxes();
+                    }
+                }
                 case N -> lowerBound = 360 - 180;
                 case S -> lowerBound = 180 - 180;
                 case E -> lowerBound = 90+360 - 180;
                 case W -> lowerBound = 270 - 180;
                 case P -> {
-                    showHideSunPath();
+                    if (panorama != null) {
+                        showHideSunPath();
+                    }
                     lowerBound = 180 - 180;
                 }
             }
@@ -303,215 +302,11 @@ public class PanoramaViewer_Canvas {
 
         pane.getChildren().addAll(elevationChartLabel, sunPathLabel, noElevationDataLabel);
 
-        // everything else needs to be done once data series are available
-        // eu.hansolo.fx.charts.XYChart doesn't have constructors with series data
-    }
-    
-    @SuppressWarnings("unchecked")
-    private XYChart initializeChart(final List<XYSeries> chartData, final Axis xAxis, final Axis yAxis) {
-        return new XYChart<>(new XYPane(chartData), xAxis, yAxis);
+        // everything else needs to be done once data is available
     }
     
-    private void setAxes() {
-        // initially we want SOUTH centered
-        xAxisElev.setMinMax(0d, 360d);
-
-        // y-axis needs to be set - x is fixed
-        // match min to next 5-value
-        double minValue;
-        if (panorama.getMinElevationAngle().getElevation() > 0) {
-            minValue = 5.0*Math.round(Math.floor(panorama.getMinElevationAngle().getElevation()*0.9)/5.0);
-        } else {
-            minValue = 5.0*Math.round(Math.floor(panorama.getMinElevationAngle().getElevation()*1.1)/5.0);
-        }
-        // max shouldn't be smaller than MIN_VERT_ANGLE
-        double maxValue;
-        if (panorama.getMaxElevationAngle().getElevation() > 0) {
-            maxValue = Math.max(MIN_VERT_ANGLE, Math.floor(panorama.getMaxElevationAngle().getElevation()*1.1) + 1);
-        } else {
-            maxValue = Math.max(MIN_VERT_ANGLE, Math.floor(panorama.getMaxElevationAngle().getElevation()*0.9) + 1);
-        }
-        yAxisElev.setMinMax(minValue, maxValue);
-    }
-
-    public void showPanorama(final IGeoCoordinate loc) {
-        location = loc;
-        // TFE, 20220303: timezone is location dependent...
-        // TFE, 20230321: only calculate if needed!
-        timeZone = null;
-
-        // get the whole set of LatLonElev around our location
-        panorama = new Panorama(
-                location, 
-                Panorama.DISTANCE_FROM, Panorama.DISTANCE_TO, Panorama.DISTANCE_STEP, 
-                Panorama.ANGEL_FROM, Panorama.ANGEL_TO, Panorama.ANGEL_STEP);
-
-        showData();
-        
-        stage.show();
-    }
-    
-    private void showData() {
-        // performance... every change to chart triggers reapplyCSS()
-        pane.getChildren().remove(chartGroup);
-
-        // and now draw from outer to inner and from darker to brighter color
-        // see Horizon_PodTriglavom.jpg for expected result
-        calcViewingAngles();
-        drawPanorama();
-        setAxes();
-
-        // we didn't have any data - lets alert the user
-        noElevationDataLabel.setVisible(panorama.noElevationData());
-        
-        pane.getChildren().add(chartGroup);
-    }
-
-    @SuppressWarnings("unchecked")
-    private void calcViewingAngles() {
-        elevationChartData.clear();
-        // we also clear sun path data here so we know if we should get it on first showing
-        sunPathChartData.clear();
-        sunPathLabel.setVisible(false);
-        
-        // fill basic list and create series only after we have checked for invisible data...
-        final List<List<XYChartItem>> dataSetList = new ArrayList<>();
-
-        double lastValue = Double.MAX_VALUE;
-        for (Map.Entry<Double, List<Pair<AzimuthElevationAngle, IGeoCoordinate>>> elevationList : panorama.getPanoramaViewingAngles().entrySet()) {
-            assert elevationList.getKey() < lastValue;
-            final Double distance = elevationList.getKey();
-            
-            final List<XYChartItem> dataSet = new ArrayList<>();
-            // every slice is a new series
-            for (Pair<AzimuthElevationAngle, IGeoCoordinate> coord : elevationList.getValue()) {
-                // the angle we're looking up / down
-                double azimuthAngle = coord.getLeft().getAzimuth();
-                final double elevationAngle = coord.getLeft().getElevation();
-                
-                // need to set tooltip here right away
-                XYChartItem data = new XYChartItem(azimuthAngle, elevationAngle, "",
-                        String.format("Dist: %.1fkm", distance / 1000) + "\n" + String.format("Elev. %.1fm", coord.getRight().getElevation()));
-                dataSet.add(data);
-                
-                // add data > 360 as well to have it available for dragging
-                azimuthAngle += 360;
-                data = new XYChartItem(azimuthAngle, elevationAngle, "",
-                        String.format("Dist: %.1fkm", distance / 1000) + "\n" + String.format("Elev. %.1fm", coord.getRight().getElevation()));
-                dataSet.add(data);
-            }
-            // sort data since we added stuff before & after
-            Collections.sort(dataSet, Comparator.comparingDouble(d -> d.getX()));
-            
-            dataSetList.add(dataSet);
-
-            lastValue = elevationList.getKey();
-        }
-        
-        // check which points are actually visible
-        // go from front to back and check if above horizon (that we also build up this way...)
-        final Set<List<XYChartItem>> invisibleSeries = new HashSet<>();
-        final Map<Double, Double> visibleMap = new TreeMap<>();
-        for(int i = dataSetList.size() - 1; i >= 0; i--) {
-            final List<XYChartItem> dataSet = dataSetList.get(i);
-            
-            final Set<XYChartItem> invisibleData = new HashSet<>();
-            for (XYChartItem data : dataSet) {
-                if (!visibleMap.containsKey(data.getX()) || data.getY() > visibleMap.get(data.getX())) {
-                    // new highest elevation for this azimuth
-                    visibleMap.put(data.getX(), data.getY());
-                } else {
-//                    // point not visible!
-////                    System.out.println("Datapoint not visible: " + data);
-                    invisibleData.add(data);
-                    // TFE, 20220904: remove tooltip since not visible - saves time & resources
-                    data.setTooltipText("");
-                }
-            }
-            
-            if (dataSet.size() == invisibleData.size()) {
-                // we don't need the whole set...
-                invisibleSeries.add(dataSetList.get(i));
-            }
-        }
-        dataSetList.removeAll(invisibleSeries);
-        
-        // now we are left with only the datasets that are actually visible
-        // time to build XYChart.Series
-        int seriesColor = 0;
-        // every n-th step we change the color
-        double colorChange = dataSetList.size() / COLOR_STEPS;
-        // not really every n-th step... initially less often, finally more often
-        // such that on COLOR_STEPS / 2 we use the average value and anything between 1.8 - 0.4 otherwise
-        final Map<Integer, Integer> colorChangeMap = new HashMap<>();
-        for (int i = 0; i < COLOR_STEPS; i++) {
-            // we scale with anything between 2 and 1/2
-            // TFE, 20230321: closer slices nearby, larger steps in the distance - so we need to vary more strongly
-            final double scaleFact = 1.5 - 1.0 / (COLOR_STEPS-1) * i;
-//            final double scaleFact = 1;
-//            System.out.println("i: " + i + ", scaleFact: " + scaleFact);
-            colorChangeMap.put(i, (int) (scaleFact * colorChange));
-        }
-
-        // performance: add everything to the chart in one go...
-        final List<XYSeries> seriesSet = new ArrayList<>();
-
-        int count = 0;
-        for (List<XYChartItem> dataSet : dataSetList) {
-            // there is surely some clever way to do this... autoincrement?
-            count++;
-            if (count >= colorChangeMap.get(seriesColor)) {
-                count = 0;
-                // due to rounding to int we can run over the number of colors...
-                seriesColor = Math.min(seriesColor+1, COLOR_STEPS-1);
-            }
-
-            final XYSeries series = XYSeriesBuilder.create()
-                    .items(dataSet)
-                    .chartType(ChartType.SMOOTH_AREA)
-                    .symbolsVisible(true)
-                    .symbolSize(4)
-                    .symbolStroke(Color.valueOf("696969"))
-                    .stroke(Paint.valueOf("696969"))
-                    .strokeWidth(1)
-                    .build();
-            
-            // surely, some clever way with enum would help here...
-            switch (seriesColor) {
-                case 0 -> series.setFill(Color.web("#0C11E6"));
-                case 1 -> series.setFill(Color.web("#3A40DE"));
-                case 2 -> series.setFill(Color.web("#3B40DA"));
-                case 3 -> series.setFill(Color.web("#4D51D9"));
-                case 4 -> series.setFill(Color.web("#8285D2"));
-                case 5 -> series.setFill(Color.web("#A7A6CE"));
-                case 6 -> series.setFill(Color.web("#BCBECD"));
-                case 7 -> series.setFill(Color.web("#C6C7C9"));
-            }
-
-            seriesSet.add(series);
-        }
-        
-        elevationChartData.addAll(seriesSet);
-    }
-
-    @SuppressWarnings("unchecked")
-    private void drawPanorama() {
-        chartGroup.getChildren().clear();
-
-        // create charts from data
-        elevationChart = initializeChart(elevationChartData, xAxisElev, yAxisElev);
-        
-        // there is no common ancestor of area and line chart that implements createSymbols...
-        elevationChart.toFront();
-        
-        elevationChart.minHeightProperty().bind(pane.heightProperty());
-        elevationChart.prefHeightProperty().bind(pane.heightProperty());
-        elevationChart.maxHeightProperty().bind(pane.heightProperty());
-        elevationChart.minWidthProperty().bind(pane.widthProperty());
-        elevationChart.prefWidthProperty().bind(pane.widthProperty());
-        elevationChart.maxWidthProperty().bind(pane.widthProperty());
-        
-        elevationChart.setOnMouseDragged((e) -> {
+    private void initMouseHandlers() {
+        panoramaPane.setOnMouseDragged((e) -> {
             mouseOldX = mousePosX;
             mouseOldY = mousePosY;
             mousePosX = e.getSceneX();
@@ -540,18 +335,36 @@ public class PanoramaViewer_Canvas {
                         Math.max(MIN_HOR_ANGLE, xAxisElev.getMinValue() - mouseDeltaX),
                         Math.min(MAX_HOR_ANGLE, xAxisElev.getMaxValue() - mouseDeltaX));
             }
+            panoramaTooltip.hide();
 
             e.consume();
         });
         
-        elevationChart.setOnMouseMoved((e) -> {
+        panoramaPane.setOnMouseMoved((e) -> {
             // only called when not in dragged since we also have setOnMouseDragged
             mousePosX = e.getSceneX();
             mousePosY = e.getSceneY();
+            
+            // TFE, 20261019: find the tooltip only for the pixel we're on
+            String tooltip = null;
+            if (shownFrame != null) {
+                final Point2D imagePos = panoramaView.sceneToLocal(mousePosX, mousePosY);
+                tooltip = shownFrame.getTooltip((int) Math.floor(imagePos.getX()), (int) Math.floor(imagePos.getY()));
+            }
+            if (tooltip != null) {
+                panoramaTooltip.setText(tooltip);
+                panoramaTooltip.show(panoramaView, e.getScreenX() + 10, e.getScreenY() + 10);
+            } else {
+                panoramaTooltip.hide();
+            }
+        });
+        
+        panoramaPane.setOnMouseExited((e) -> {
+            panoramaTooltip.hide();
         });
         
         // add vertical zoom on mouse wheel
-        elevationChart.setOnScroll((t) -> {
+        panoramaPane.setOnScroll((t) -> {
             double scaleFact = SCALE_FACT;
             double scrollDelta = 0d;
 
@@ -592,20 +405,148 @@ public class PanoramaViewer_Canvas {
                 // zoom - and keep center
                 xAxisElev.setMinMax(Math.max(MIN_HOR_ANGLE, center - halfwidth), Math.min(MAX_HOR_ANGLE, center + halfwidth));
             }
-            
+            panoramaTooltip.hide();
         });
+    }
+    
+    private void setAxes() {
+        // initially we want SOUTH centered
+        xAxisElev.setMinMax(0d, 360d);
 
-        chartGroup.getChildren().add(elevationChart);
+        // y-axis needs to be set - x is fixed
+        // match min to next 5-value
+        double minValue;
+        if (minElevationAngle > 0) {
+            minValue = 5.0*Math.round(Math.floor(minElevationAngle*0.9)/5.0);
+        } else {
+            minValue = 5.0*Math.round(Math.floor(minElevationAngle*1.1)/5.0);
+        }
+        // max shouldn't be smaller than MIN_VERT_ANGLE
+        double maxValue;
+        if (maxElevationAngle > 0) {
+            maxValue = Math.max(MIN_VERT_ANGLE, Math.floor(maxElevationAngle*1.1) + 1);
+        } else {
+            maxValue = Math.max(MIN_VERT_ANGLE, Math.floor(maxElevationAngle*0.9) + 1);
+        }
+        yAxisElev.setMinMax(minValue, maxValue);
+    }
+
+    public void showPanorama(final IGeoCoordinate loc) {
+        location = loc;
+        // TFE, 20220303: timezone is location dependent...
+        // TFE, 20230321: only calculate if needed!
+        timeZone = null;
+
+        // TFE, 20261019: get the whole set of LatLonElev around our location in the background
+        // first coarse horizons to have something to show quickly, full panorama at the end
+        cancelPanorama();
+        panorama = null;
+        pane.getChildren().remove(panoramaPane);
+        noElevationDataLabel.setVisible(false);
+
+        progressivePanorama = new ProgressivePanorama(location);
+        progressivePanorama.start((t, lastPass) -> {
+            panorama = t;
+            if (lastPass) {
+                showData();
+            } else {
+                showHorizon();
+            }
+        });
+        
+        stage.show();
     }
     
+    private void cancelPanorama() {
+        if (progressivePanorama != null) {
+            progressivePanorama.cancel();
+            progressivePanorama = null;
+        }
+    }
+    
+    private void showHorizon() {
+        renderer.setHorizon(panorama.getHorizon());
+        // we also clear sun path data here so we know if we should get it on first showing
+        renderer.clearSunPaths();
+        sunPathLabel.setVisible(false);
+
+        minElevationAngle = panorama.getHorizon().getMinElevation();
+        maxElevationAngle = panorama.getHorizon().getMaxElevation();
+        showImage();
+    }
+    
+    private void showData() {
+        // and now draw from outer to inner and from darker to brighter color
+        // see Horizon_PodTriglavom.jpg for expected result
+        renderer.setPanorama(panorama);
+        // we also clear sun path data here so we know if we should get it on first showing
+        renderer.clearSunPaths();
+        sunPathLabel.setVisible(false);
+
+        // TFE, 20261019: min / max are only known once the full panorama has been calculated
+        panorama.getPanoramaViewingAngles();
+        minElevationAngle = panorama.getMinElevationAngle().getElevation();
+        maxElevationAngle = panorama.getMaxElevationAngle().getElevation();
+        showImage();
+    }
+    
+    private void showImage() {
+        if (!pane.getChildren().contains(panoramaPane)) {
+            pane.getChildren().add(panoramaPane);
+            panoramaPane.toBack();
+        }
+        setAxes();
+        // axes might not have changed...
+        renderPanorama();
+
+        // we didn't have any data - lets alert the user
+        noElevationDataLabel.setVisible(panorama.noElevationData());
+    }
+    
+    private void renderPanorama() {
+        if (panorama == null) {
+            return;
+        }
+        
+        // image covers the range of the axes
+        final int width = (int) Math.floor(pane.getWidth() - 2 * AXIS_WIDTH);
+        final int height = (int) Math.floor(pane.getHeight() - AXIS_WIDTH);
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+        
+        renderer.renderAsync(
+                xAxisElev.getMinValue(), xAxisElev.getMaxValue(), yAxisElev.getMinValue(), yAxisElev.getMaxValue(), 
+                width, height, 
+                (frame) -> Platform.runLater(() -> showFrame(frame)));
+    }
+    
+    private void showFrame(final PanoramaRenderer.Frame frame) {
+        if (pixelBuffer == null || pixelBuffer.getWidth() != frame.getWidth() || pixelBuffer.getHeight() != frame.getHeight()) {
+            pixelBuffer = new PixelBuffer<>(frame.getWidth(), frame.getHeight(), IntBuffer.allocate(frame.getWidth() * frame.getHeight()), PixelFormat.getIntArgbPreInstance());
+            panoramaView.setImage(new WritableImage(pixelBuffer));
+        }
+        
+        // only copy & swap here - all the work has been done in the background
+        pixelBuffer.updateBuffer((t) -> {
+            final IntBuffer buffer = t.getBuffer();
+            buffer.clear();
+            buffer.put(frame.getPixels());
+            buffer.rewind();
+            return null;
+        });
+        
+        renderer.recycle(shownFrame);
+        shownFrame = frame;
+    }
+
     private void showHideSunPath() {
-        if (sunPathChart != null && sunPathChart.isVisible()) {
-            sunPathChart.setVisible(false);
-            sunPathChart.setDisable(true);
+        if (renderer.isSunPathsVisible()) {
+            renderer.setSunPathsVisible(false);
 
             sunPathLabel.setVisible(false);
         } else {
-            if (sunPathChartData.isEmpty()) {
+            if (!renderer.hasSunPaths()) {
                 if (timeZone == null) {
                     timeZone = TimeZoneProvider.getInstance().getTimeZone(location);
 //                    System.out.println("Setting TimeZone to " + timeZone.getDisplayName());
@@ -638,21 +579,17 @@ public class PanoramaViewer_Canvas {
                 drawSunPath();
             }
 
-            sunPathChart.setVisible(true);
-            sunPathChart.setDisable(false);
+            renderer.setSunPathsVisible(true);
 
             // and also a label with all the vailable data...
             sunPathLabel.setText(SunPathForSpecialsDates.TODAY + "\n\n" + SunPathForSpecialsDates.SUMMER + "\n\n" + SunPathForSpecialsDates.WINTER);
             sunPathLabel.toFront();
             sunPathLabel.setVisible(true);
         }
+        renderPanorama();
     }
     
-    @SuppressWarnings("unchecked")
     private void drawSunPath() {
-        // performance: add everything to the chart in one go...
-        final List<XYSeries> seriesSet = new ArrayList<>();
-
         for (final SunPathForSpecialsDates pathForDate : SunPathForSpecialsDates.values()) {
 //            System.out.println(pathForDate);
             final SunPathForDay path = pathForDate.getPath();
@@ -662,13 +599,7 @@ public class PanoramaViewer_Canvas {
                 continue;
             }
             
-            // dataset for sunpath values
-            final List<XYChartItem> dataSet1 = new ArrayList<>();
-            XYChartItem data1;
-
-            // dataset for shifted values
-            final List<XYChartItem> dataSet2 = new ArrayList<>();
-            XYChartItem data2;
+            final List<AzimuthElevationAngle> pathValues = new ArrayList<>();
 
             // that is the range we're interested in... save some data points :-)
             final GregorianCalendar realSunrise = path.getFirstSunriseAboveHorizon();
@@ -687,87 +618,40 @@ public class PanoramaViewer_Canvas {
                     break;
                 }
                 
-                if (dataSet1.isEmpty() && lastPathValue != null) {
+                if (pathValues.isEmpty() && lastPathValue != null) {
                     // lets add the last value to the path to make sure it starts at the horizon
-                    data1 = new XYChartItem(lastPathValue.getValue().getAzimuth(), lastPathValue.getValue().getElevation());
-                    dataSet1.add(data1);
-                    
-                    data2 = new XYChartItem(lastPathValue.getValue().getAzimuth() + 360, lastPathValue.getValue().getElevation());
-                    dataSet2.add(data2);
+                    pathValues.add(lastPathValue.getValue());
                 }
 
-                data1 = new XYChartItem(pathValue.getValue().getAzimuth(), pathValue.getValue().getElevation());
-                dataSet1.add(data1);
-
-                data2 = new XYChartItem(pathValue.getValue().getAzimuth() + 360, pathValue.getValue().getElevation());
-                dataSet2.add(data2);
+                pathValues.add(pathValue.getValue());
 
                 lastPathValue = pathValue;
             }
             
             // add point below horizon as well
             if (lastPathValue != null) {
-                // lets add the last value to the path to make sure it starts at the horizon
-                data1 = new XYChartItem(lastPathValue.getValue().getAzimuth(), lastPathValue.getValue().getElevation());
-                dataSet1.add(data1);
-
-                // lets add the last value to the path to make sure it starts at the horizon
-                data2 = new XYChartItem(lastPathValue.getValue().getAzimuth() + 360, lastPathValue.getValue().getElevation());
-                dataSet2.add(data2);
+                pathValues.add(lastPathValue.getValue());
             }
             
-            // now do the costly operation and create a series
-            final XYSeries series1 = XYSeriesBuilder.create()
-                    .items(dataSet1)
-                    .chartType(ChartType.SMOOTH_AREA)
-                    .symbolsVisible(false)
-                    .strokeWidth(2)
-                    .build();
-            
-            final XYSeries series2 = XYSeriesBuilder.create()
-                    .items(dataSet2)
-                    .chartType(ChartType.SMOOTH_AREA)
-                    .symbolsVisible(false)
-                    .strokeWidth(2)
-                    .build();
+            // renderer adds the values > 360 itself
+            final double[] azimuths = new double[pathValues.size()];
+            final double[] angles = new double[pathValues.size()];
+            for (int i = 0; i < pathValues.size(); i++) {
+                azimuths[i] = pathValues.get(i).getAzimuth();
+                angles[i] = pathValues.get(i).getElevation();
+            }
 
             switch (pathForDate) {
                 case TODAY:
-                    series1.setStroke(Paint.valueOf("yellow"));
-                    series2.setStroke(Paint.valueOf("yellow"));
+                    renderer.addSunPath(azimuths, angles, SUNPATH_TODAY_COLOR);
                     break;
                 case SUMMER:
-                    series1.setStroke(Paint.valueOf("green"));
-                    series2.setStroke(Paint.valueOf("green"));
+                    renderer.addSunPath(azimuths, angles, SUNPATH_SUMMER_COLOR);
                     break;
                 case WINTER:
-                    series1.setStroke(Paint.valueOf("blue"));
-                    series2.setStroke(Paint.valueOf("blue"));
+                    renderer.addSunPath(azimuths, angles, SUNPATH_WINTER_COLOR);
                     break;
             }
-
-            seriesSet.add(series1);
-            seriesSet.add(series2);
         }
-        
-        sunPathChartData.addAll(seriesSet);
-
-        // create charts from data
-        sunPathChart = initializeChart(sunPathChartData, xAxisSun, yAxisSun);
-        sunPathChart.setMouseTransparent(true);
-        sunPathChart.setVisible(false);
-        sunPathChart.setDisable(true);
-        
-        // one chart to rule them all...
-        sunPathChart.minHeightProperty().bind(elevationChart.heightProperty());
-        sunPathChart.prefHeightProperty().bind(elevationChart.heightProperty());
-        sunPathChart.maxHeightProperty().bind(elevationChart.heightProperty());
-        sunPathChart.minWidthProperty().bind(elevationChart.widthProperty());
-        sunPathChart.prefWidthProperty().bind(elevationChart.widthProperty());
-        sunPathChart.maxWidthProperty().bind(elevationChart.widthProperty());
-
-        chartGroup.getChildren().add(sunPathChart);
-        // lets have the chart in the back to avoid length calculation of visible stretches of the suns path...
-        sunPathChart.toBack();
     }
 }
@@ -127,6 +127,10 @@ public class PanoramaViewer_Chart {
     boolean dragActive = false;
     
     private Panorama panorama;
+    // TFE, 20261019: calculate in the background from coarse to fine
+    private ProgressivePanorama progressivePanorama;
+    private double minElevationAngle;
+    private double maxElevationAngle;
     
     private IGeoCoordinate location;
     private TimeZone timeZone;
@@ -140,6 +144,10 @@ public class PanoramaViewer_Chart {
 
 //        stage.initModality(Modality.APPLICATION_MODAL); 
         stage.setScene(scene);
+        // no need to continue calculating once we're gone
+        stage.setOnHiding((t) -> {
+            cancelPanorama();
+        });
 
         xAxisElev = (NumberAxis) elevationChart.getXAxis();
         yAxisElev = (NumberAxis) elevationChart.getYAxis();
@@ -290,7 +298,9 @@ public class PanoramaViewer_Chart {
                     stage.close();
                     break;
                 case C, R:
-                    setAxes();
+                    if (panorama != null) {
+                        setAxes();
+                    }
                     break;
                 case N:
                     lowerBound = 360 - 180;
@@ -305,7 +315,9 @@ public class PanoramaViewer_Chart {
                     lowerBound = 270 - 180;
                     break;
                 case P:
-                    showHideSunPath();
+                    if (panorama != null) {
+                        showHideSunPath();
+                    }
                     lowerBound = 180 - 180;
                     break;
             }
@@ -370,17 +382,79 @@ public class PanoramaViewer_Chart {
         timeZone = TimeZoneProvider.getInstance().getTimeZone(loc);
 //        System.out.println("Setting TimeZone to " + timeZone.getDisplayName());
 
-        // get the whole set of LatLonElev around our location
-        panorama = new Panorama(loc);
-//        System.out.println("showHorizon: after getPanoramaView() " + Instant.now());
+        // TFE, 20261019: get the whole set of LatLonElev around our location in the background
+        // first coarse horizons to have something to show quickly, full panorama at the end
+        cancelPanorama();
+        panorama = null;
+        pane.getChildren().remove(chartGroup);
+        noElevationDataLabel.setVisible(false);
 
-        showData();
-//        System.out.println("showHorizon: after showData() " + Instant.now());
+        progressivePanorama = new ProgressivePanorama(loc);
+        progressivePanorama.start((t, lastPass) -> {
+            panorama = t;
+            if (lastPass) {
+                showData();
+//                System.out.println("showHorizon: after showData() " + Instant.now());
+            } else {
+                showHorizon();
+            }
+        });
         
         stage.show();
 //        System.out.println("showHorizon: end  " + Instant.now());
     }
     
+    private void cancelPanorama() {
+        if (progressivePanorama != null) {
+            progressivePanorama.cancel();
+            progressivePanorama = null;
+        }
+    }
+    
+    private void showHorizon() {
+        // performance... every chqange to chart triggers reapplyCSS()
+        pane.getChildren().remove(chartGroup);
+
+        drawHorizonAngles();
+        minElevationAngle = panorama.getHorizon().getMinElevation();
+        maxElevationAngle = panorama.getHorizon().getMaxElevation();
+        setAxes();
+
+        // hide sun path intially
+        sunPathChart.setVisible(false);
+        sunPathChart.setDisable(true);
+
+        for (XYChart.Series<Number, Number> series : elevationChart.getData()) {
+            series.getNode().getStyleClass().add(series.getName());
+        }
+
+        // we didn't have any data - lets alert the user
+        noElevationDataLabel.setVisible(panorama.noElevationData());
+        
+        pane.getChildren().add(chartGroup);
+    }
+
+    private void drawHorizonAngles() {
+        elevationChart.getData().clear();
+        // we also clear sun path data here so we know if we should get it on first showing
+        sunPathChart.getData().clear();
+        sunPathLabel.setVisible(false);
+        
+        final List<XYChart.Data<Number, Number>> dataSet = new ArrayList<>();
+        for (Map.Entry<AzimuthElevationAngle, IGeoCoordinate> entry : panorama.getHorizon().entrySet()) {
+            dataSet.add(new XYChart.Data<>(entry.getKey().getAzimuth(), entry.getKey().getElevation()));
+            // add data > 360 as well to have it available for dragging
+            dataSet.add(new XYChart.Data<>(entry.getKey().getAzimuth() + 360, entry.getKey().getElevation()));
+        }
+        Collections.sort(dataSet, Comparator.comparingDouble(d -> d.getXValue().doubleValue()));
+
+        final XYChart.Series<Number, Number> series = new XYChart.Series<>();
+        series.getData().addAll(dataSet);
+        series.setName(COLOR_STYLE_CLASS_PREFIX + (COLOR_STEPS / 2));
+        
+        elevationChart.getData().add(series);
+    }
+    
     private void showData() {
         // performance... every chqange to chart triggers reapplyCSS()
         pane.getChildren().remove(chartGroup);
@@ -388,6 +462,8 @@ public class PanoramaViewer_Chart {
         // and now draw from outer to inner and from darker to brighter color
         // see Horizon_PodTriglavom.jpg for expected result
         drawViewingAngles();
+        minElevationAngle = panorama.getMinElevationAngle().getElevation();
+        maxElevationAngle = panorama.getMaxElevationAngle().getElevation();
         setAxes();
 
         // hide sun path intially
@@ -562,16 +638,16 @@ public class PanoramaViewer_Chart {
 
         // y-axis needs to be set - x is fixed
         // match min to next 5-value
-        if (panorama.getMinElevationAngle().getElevation() > 0) {
-            yAxisElev.setLowerBound(5.0*Math.round(Math.floor(panorama.getMinElevationAngle().getElevation()*0.9)/5.0));
+        if (minElevationAngle > 0) {
+            yAxisElev.setLowerBound(5.0*Math.round(Math.floor(minElevationAngle*0.9)/5.0));
         } else {
-            yAxisElev.setLowerBound(5.0*Math.round(Math.floor(panorama.getMinElevationAngle().getElevation()*1.1)/5.0));
+            yAxisElev.setLowerBound(5.0*Math.round(Math.floor(minElevationAngle*1.1)/5.0));
         }
         // max shouldn't be smaller than MIN_VERT_ANGLE
-        if (panorama.getMaxElevationAngle().getElevation() > 0) {
-            yAxisElev.setUpperBound(Math.max(MIN_VERT_ANGLE, Math.floor(panorama.getMaxElevationAngle().getElevation()*1.1) + 1));
+        if (maxElevationAngle > 0) {
+            yAxisElev.setUpperBound(Math.max(MIN_VERT_ANGLE, Math.floor(maxElevationAngle*1.1) + 1));
         } else {
-            yAxisElev.setUpperBound(Math.max(MIN_VERT_ANGLE, Math.floor(panorama.getMaxElevationAngle().getElevation()*0.9) + 1));
+            yAxisElev.setUpperBound(Math.max(MIN_VERT_ANGLE, Math.floor(maxElevationAngle*0.9) + 1));
         }
     }
     
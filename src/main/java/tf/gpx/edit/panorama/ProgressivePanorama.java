@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.gpx.edit.panorama;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javafx.application.Platform;
+import tf.gpx.edit.elevation.SRTMDataOptions;
+import tf.gpx.edit.leafletmap.IGeoCoordinate;
+
+/**
+ * Calculate a panorama in passes from coarse to fine.
+ * 
+ * The first passes use larger angle and distance steppings and only calculate the horizon - 
+ * so that there is something to show right away. The last pass calculates the full panorama as requested.
+ * 
+ * Every pass is handed over to a consumer once done - by default on the FX application thread.
+ * A calculation can be cancelled, e.g. if the user has moved on to another location.
+ * 
+ * @author thomas
+ */
+public class ProgressivePanorama {
+    // steppings of the passes are multiplied by these factors - last one should be 1 for the full panorama
+    public final static int[] PASS_FACTORS = {4, 2, 1};
+    
+    // one calculation at a time - a new one is only started if the previous one has been cancelled anyways
+    private final static ExecutorService executorService = Executors.newSingleThreadExecutor((Runnable r) -> {
+        final Thread thread = new Thread(r, "ProgressivePanorama");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public interface IPassConsumer {
+        /**
+         * A pass has been completed.
+         * 
+         * @param panorama panorama of the pass - for all but the last pass only the horizon has been calculated
+         * @param lastPass is this the full panorama?
+         */
+        void passDone(final Panorama panorama, final boolean lastPass);
+    }
+    
+    private final IGeoCoordinate location;
+    private final int distanceFrom;
+    private final int distanceTo;
+    private final int distanceStepping;
+    private final int angleFrom;
+    private final int angleTo;
+    private final int angleStepping;
+    private final SRTMDataOptions srtmOptions;
+    private final Executor consumerExecutor;
+    
+    private volatile boolean cancelled = false;
+    private volatile Panorama currentPanorama = null;
+    
+    public ProgressivePanorama(final IGeoCoordinate loc) {
+        this(loc, 
+                Panorama.DISTANCE_FROM, Panorama.DISTANCE_TO, Panorama.DISTANCE_STEP, 
+                Panorama.ANGEL_FROM, Panorama.ANGEL_TO, Panorama.ANGEL_STEP, 
+                new SRTMDataOptions(SRTMDataOptions.SRTMDataAverage.NEAREST_ONLY), Platform::runLater);
+    }
+    
+    public ProgressivePanorama(
+            final IGeoCoordinate loc, 
+            final int dFrom, final int dTo, final int dStep, 
+            final int aFrom, final int aTo, final int aStep, 
+            final SRTMDataOptions srtmOpts, final Executor executor) {
+        location = loc;
+        distanceFrom = dFrom;
+        distanceTo = dTo;
+        distanceStepping = dStep;
+        angleFrom = aFrom;
+        angleTo = aTo;
+        angleStepping = aStep;
+        srtmOptions = srtmOpts;
+        consumerExecutor = executor;
+    }
+    
+    /**
+     * Start the calculation in the background.
+     * 
+     * @param consumer gets called after each pass
+     * @return future to wait for the calculation
+     */
+    public Future<?> start(final IPassConsumer consumer) {
+        return executorService.submit(() -> {
+            try {
+                calcPasses(consumer);
+            } catch (Exception ex) {
+                Logger.getLogger(ProgressivePanorama.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        });
+    }
+    
+    private void calcPasses(final IPassConsumer consumer) {
+        for (int i = 0; i < PASS_FACTORS.length; i++) {
+            if (cancelled) {
+                return;
+            }
+            
+            final boolean lastPass = (i == PASS_FACTORS.length - 1);
+            final int factor = PASS_FACTORS[i];
+            final Panorama panorama = new Panorama(
+                    location, 
+                    distanceFrom, distanceTo, distanceStepping * factor, 
+                    angleFrom, angleTo, angleStepping * factor, 
+                    srtmOptions).setStoreHorizon(lastPass);
+            currentPanorama = panorama;
+            if (cancelled) {
+                panorama.cancel();
+                return;
+            }
+
+            panorama.getHorizon();
+            if (lastPass) {
+                // viewers need all the viewing angles - better calculate them here than on the FX thread
+                panorama.getPanoramaViewingAngles();
+            }
+            
+            if (cancelled) {
+                return;
+            }
+            consumerExecutor.execute(() -> {
+                // might have been cancelled while waiting for our turn
+                if (!cancelled) {
+                    consumer.passDone(panorama, lastPass);
+                }
+            });
+        }
+    }
+    
+    /**
+     * Stop the calculation - no further passes will be handed over.
+     */
+    public void cancel() {
+        cancelled = true;
+        
+        final Panorama panorama = currentPanorama;
+        if (panorama != null) {
+            panorama.cancel();
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+    
+    public IGeoCoordinate getLocation() {
+        return location;
+    }
+}
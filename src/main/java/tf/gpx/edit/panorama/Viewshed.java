@@ -0,0 +1,478 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.gpx.edit.panorama;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.apache.commons.math3.util.FastMath;
+import tf.gpx.edit.algorithms.EarthGeometry;
+import tf.gpx.edit.elevation.ElevationProvider;
+import tf.gpx.edit.elevation.ElevationProviderBuilder;
+import tf.gpx.edit.elevation.ElevationProviderOptions;
+import tf.gpx.edit.elevation.SRTMDataOptions;
+import tf.gpx.edit.leafletmap.IGeoCoordinate;
+import tf.gpx.edit.leafletmap.LatLonElev;
+
+/**
+ * Calculate which terrain cells around an observer are visible - the viewshed.
+ * 
+ * The terrain is read into a lat / lon raster with the grid size of the SRTM data at the observer.
+ * Visibility is calculated R2-style: a ray is marched from the observer to every cell on the border of the raster
+ * and every cell passed by a ray is checked against the max slope seen so far on that ray.
+ * Earth curvature and standard refraction are taken into account.
+ * 
+ * The border is split into sectors that are calculated in parallel. 
+ * Rays only ever mark cells as visible, so sectors can share the result raster.
+ * 
+ * @author thomas
+ */
+public class Viewshed {
+    public final static double DEFAULT_RADIUS = 20000.0;
+    // eyes of the observer above ground
+    public final static double DEFAULT_OBSERVER_HEIGHT = 1.7;
+    public final static double DEFAULT_TARGET_HEIGHT = 0.0;
+    // standard coefficient of refraction - lets us see a bit beyond the geometric horizon
+    public final static double REFRACTION_COEFFICIENT = 0.13;
+    
+    // values of the visibility raster
+    public final static byte OUTSIDE = 0;
+    public final static byte HIDDEN = 1;
+    public final static byte VISIBLE = 2;
+    
+    // keep the raster at a reasonable size - cells get coarser for large radius
+    private final static int MAX_CELLS_PER_RADIUS = 2000;
+    private final static int SECTORS_PER_THREAD = 4;
+    
+    private final static ExecutorService executorService = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), 
+            (Runnable r) -> {
+                final Thread thread = new Thread(r, "Viewshed");
+                thread.setDaemon(true);
+                return thread;
+            });
+    
+    private final IGeoCoordinate observer;
+    private final double radius;
+    private final double observerHeight;
+    private final double targetHeight;
+    private final ElevationProvider elevationService;
+    
+    // raster geometry: observer is at the center cell
+    private double cellSize;
+    private double cellHeight;
+    private double cellWidth;
+    private int rowRadius;
+    private int colRadius;
+    private int rows;
+    private int cols;
+    private double observerElevation;
+    
+    // row 0 is the northern border, NaN for no data
+    private float[] elevations;
+    private byte[] visibility;
+    
+    private boolean noElevationData = true;
+    private volatile boolean cancelled = false;
+
+    public Viewshed(final IGeoCoordinate loc) {
+        this(loc, DEFAULT_RADIUS);
+    }
+    
+    public Viewshed(final IGeoCoordinate loc, final double rad) {
+        this(loc, rad, DEFAULT_OBSERVER_HEIGHT, DEFAULT_TARGET_HEIGHT, new SRTMDataOptions(SRTMDataOptions.SRTMDataAverage.NEAREST_ONLY));
+    }
+    
+    /**
+     * Setup for an observer.
+     * 
+     * @param loc location of the observer - elevation is taken from the SRTM data
+     * @param rad radius of the viewshed in meters
+     * @param obsHeight height of the observer above ground
+     * @param tarHeight height of the targets above ground
+     * @param srtmOpts SRTM data to use
+     */
+    public Viewshed(final IGeoCoordinate loc, final double rad, final double obsHeight, final double tarHeight, final SRTMDataOptions srtmOpts) {
+        observer = new LatLonElev(loc.getLatitude(), loc.getLongitude());
+        radius = rad;
+        observerHeight = obsHeight;
+        targetHeight = tarHeight;
+        
+        elevationService = 
+            new ElevationProviderBuilder(
+                    new ElevationProviderOptions(ElevationProviderOptions.LookUpMode.SRTM_ONLY), 
+                    srtmOpts).build();
+    }
+    
+    /**
+     * Read the terrain and calculate the visibility for all cells.
+     * 
+     * @return this for chaining
+     */
+    public Viewshed calculate() {
+        noElevationData = true;
+        elevations = new float[0];
+        visibility = new byte[0];
+        rows = 0;
+        cols = 0;
+
+        final int gridSize = elevationService.getSRTMGridSizeForCoordinate(observer);
+        if (gridSize == 0) {
+            // no data, no viewshed
+            return this;
+        }
+        
+        cellSize = gridSize / 3600.0;
+        cellHeight = cellSize * EarthGeometry.LengthOfADegree;
+        cellWidth = cellHeight * FastMath.cos(FastMath.toRadians(observer.getLatitude()));
+        
+        final int maxCells = (int) FastMath.ceil(radius / Math.min(cellHeight, cellWidth));
+        if (maxCells > MAX_CELLS_PER_RADIUS) {
+            final int factor = (int) FastMath.ceil((1.0 * maxCells) / MAX_CELLS_PER_RADIUS);
+            cellSize *= factor;
+            cellHeight *= factor;
+            cellWidth *= factor;
+        }
+        rowRadius = Math.max(1, (int) FastMath.ceil(radius / cellHeight));
+        colRadius = Math.max(1, (int) FastMath.ceil(radius / cellWidth));
+        rows = 2 * rowRadius + 1;
+        cols = 2 * colRadius + 1;
+        
+        elevations = new float[rows * cols];
+        visibility = new byte[rows * cols];
+
+        runParallel(rows, (from, to) -> readRows(from, to));
+        
+        final float centerElevation = elevations[rowRadius * cols + colRadius];
+        if (cancelled || Float.isNaN(centerElevation)) {
+            return this;
+        }
+        noElevationData = false;
+        observer.setElevation((double) centerElevation);
+        observerElevation = centerElevation + observerHeight;
+        visibility[rowRadius * cols + colRadius] = VISIBLE;
+
+        // walk around the border clockwise, starting in the north west
+        final int borderCells = 2 * (rows - 1) + 2 * (cols - 1);
+        runParallel(borderCells, (from, to) -> calcRays(from, to));
+
+        return this;
+    }
+    
+    private interface IChunk {
+        void run(final int from, final int to);
+    }
+    
+    private void runParallel(final int count, final IChunk chunk) {
+        final int chunkCount = Math.min(count, Runtime.getRuntime().availableProcessors() * SECTORS_PER_THREAD);
+        final List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < chunkCount; i++) {
+            final int from = i * count / chunkCount;
+            final int to = (i + 1) * count / chunkCount;
+            futures.add(executorService.submit(() -> {
+                chunk.run(from, to);
+            }));
+        }
+        
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException | ExecutionException ex) {
+                Logger.getLogger(Viewshed.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
+    }
+    
+    private void readRows(final int from, final int to) {
+        // re-used for all rows
+        final double[] latitudes = new double[cols];
+        final double[] longitudes = new double[cols];
+        final double[] rowElevations = new double[cols];
+        final boolean[] found = new boolean[cols];
+        for (int col = 0; col < cols; col++) {
+            longitudes[col] = getLongitude(col);
+        }
+        
+        for (int row = from; row < to; row++) {
+            if (cancelled) {
+                break;
+            }
+
+            Arrays.fill(latitudes, getLatitude(row));
+            elevationService.getSRTMElevationsForCoordinates(latitudes, longitudes, rowElevations, found);
+            
+            final int offset = row * cols;
+            for (int col = 0; col < cols; col++) {
+                if (found[col]) {
+                    elevations[offset + col] = (float) rowElevations[col];
+                    if (getDistance(row, col) <= radius) {
+                        // until a ray sees it
+                        visibility[offset + col] = HIDDEN;
+                    }
+                } else {
+                    elevations[offset + col] = Float.NaN;
+                }
+            }
+        }
+    }
+    
+    private void calcRays(final int from, final int to) {
+        for (int border = from; border < to; border++) {
+            if (cancelled) {
+                break;
+            }
+            
+            // border index to cell: north edge, east edge, south edge, west edge
+            int row;
+            int col;
+            if (border < cols - 1) {
+                row = 0;
+                col = border;
+            } else if (border < cols - 1 + rows - 1) {
+                row = border - (cols - 1);
+                col = cols - 1;
+            } else if (border < 2 * (cols - 1) + rows - 1) {
+                row = rows - 1;
+                col = (cols - 1) - (border - (cols - 1) - (rows - 1));
+            } else {
+                row = (rows - 1) - (border - 2 * (cols - 1) - (rows - 1));
+                col = 0;
+            }
+            
+            calcRay(row, col);
+        }
+    }
+    
+    private void calcRay(final int targetRow, final int targetCol) {
+        final int deltaRow = targetRow - rowRadius;
+        final int deltaCol = targetCol - colRadius;
+        final int steps = Math.max(Math.abs(deltaRow), Math.abs(deltaCol));
+        
+        double maxSlope = Double.NEGATIVE_INFINITY;
+        for (int step = 1; step <= steps; step++) {
+            final int row = rowRadius + (int) FastMath.round((1.0 * deltaRow * step) / steps);
+            final int col = colRadius + (int) FastMath.round((1.0 * deltaCol * step) / steps);
+            
+            final double distance = getDistance(row, col);
+            if (distance > radius) {
+                break;
+            }
+            
+            final int index = row * cols + col;
+            final float elevation = elevations[index];
+            if (Float.isNaN(elevation)) {
+                continue;
+            }
+            
+            final double height = getCorrectedHeight(elevation, distance) - observerElevation;
+            if ((height + targetHeight) / distance >= maxSlope) {
+                visibility[index] = VISIBLE;
+            }
+            maxSlope = Math.max(maxSlope, height / distance);
+        }
+    }
+    
+    /**
+     * Check visibility of a single target by marching the ray from the observer to it.
+     * 
+     * @param target location to check - its elevation is taken from the terrain
+     * @return true if the target is within radius and visible
+     */
+    public boolean isVisible(final IGeoCoordinate target) {
+        if (noElevationData) {
+            return false;
+        }
+
+        final double targetRow = rowRadius + (observer.getLatitude() - target.getLatitude()) / cellSize;
+        final double targetCol = colRadius + (target.getLongitude() - observer.getLongitude()) / cellSize;
+        final int row = (int) FastMath.round(targetRow);
+        final int col = (int) FastMath.round(targetCol);
+        if (row < 0 || row >= rows || col < 0 || col >= cols) {
+            return false;
+        }
+        if (row == rowRadius && col == colRadius) {
+            return true;
+        }
+        
+        final double targetDistance = getDistance(targetRow, targetCol);
+        final float targetElevation = elevations[row * cols + col];
+        if (targetDistance > radius || Float.isNaN(targetElevation)) {
+            return false;
+        }
+        
+        final double deltaRow = targetRow - rowRadius;
+        final double deltaCol = targetCol - colRadius;
+        final int steps = (int) FastMath.ceil(Math.max(Math.abs(deltaRow), Math.abs(deltaCol)));
+        
+        double maxSlope = Double.NEGATIVE_INFINITY;
+        for (int step = 1; step < steps; step++) {
+            final int stepRow = rowRadius + (int) FastMath.round(deltaRow * step / steps);
+            final int stepCol = colRadius + (int) FastMath.round(deltaCol * step / steps);
+            if (stepRow == row && stepCol == col) {
+                break;
+            }
+
+            final float elevation = elevations[stepRow * cols + stepCol];
+            if (Float.isNaN(elevation)) {
+                continue;
+            }
+            
+            final double distance = getDistance(stepRow, stepCol);
+            maxSlope = Math.max(maxSlope, (getCorrectedHeight(elevation, distance) - observerElevation) / distance);
+        }
+        
+        return (getCorrectedHeight(targetElevation, targetDistance) + targetHeight - observerElevation) / targetDistance >= maxSlope;
+    }
+    
+    /**
+     * Check visibility of a list of targets, e.g. all waypoints of the loaded tracks.
+     * 
+     * @param targets locations to check
+     * @return visibility flags in the order of the targets
+     */
+    public boolean[] getVisibility(final List<? extends IGeoCoordinate> targets) {
+        final boolean[] result = new boolean[targets.size()];
+        if (noElevationData || targets.isEmpty()) {
+            return result;
+        }
+        
+        runParallel(targets.size(), (from, to) -> {
+            for (int i = from; i < to; i++) {
+                result[i] = isVisible(targets.get(i));
+            }
+        });
+        
+        return result;
+    }
+    
+    private double getDistance(final double row, final double col) {
+        return FastMath.hypot((row - rowRadius) * cellHeight, (col - colRadius) * cellWidth);
+    }
+    
+    private static double getCorrectedHeight(final double elevation, final double distance) {
+        // earth drops away from us - refraction bends the line of sight a bit back
+        return elevation - distance * distance / (2.0 * EarthGeometry.EarthAverageRadius) * (1.0 - REFRACTION_COEFFICIENT);
+    }
+    
+    public void cancel() {
+        cancelled = true;
+    }
+    
+    public boolean isCancelled() {
+        return cancelled;
+    }
+    
+    public boolean noElevationData() {
+        return noElevationData;
+    }
+
+    public IGeoCoordinate getObserver() {
+        return observer;
+    }
+
+    public double getRadius() {
+        return radius;
+    }
+
+    public double getObserverHeight() {
+        return observerHeight;
+    }
+
+    public double getTargetHeight() {
+        return targetHeight;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getColumns() {
+        return cols;
+    }
+
+    /**
+     * Size of a raster cell.
+     * 
+     * @return cell size in degrees
+     */
+    public double getCellSize() {
+        return cellSize;
+    }
+    
+    public double getLatitude(final int row) {
+        return observer.getLatitude() + (rowRadius - row) * cellSize;
+    }
+    
+    public double getLongitude(final int col) {
+        return observer.getLongitude() + (col - colRadius) * cellSize;
+    }
+    
+    // bounds of the raster - cells are centered at their coordinates
+    public double getNorth() {
+        return getLatitude(0) + cellSize / 2.0;
+    }
+    
+    public double getSouth() {
+        return getLatitude(rows - 1) - cellSize / 2.0;
+    }
+    
+    public double getWest() {
+        return getLongitude(0) - cellSize / 2.0;
+    }
+    
+    public double getEast() {
+        return getLongitude(cols - 1) + cellSize / 2.0;
+    }
+    
+    public byte getVisibility(final int row, final int col) {
+        return visibility[row * cols + col];
+    }
+
+    /**
+     * Visibility of all cells row by row, starting in the north west.
+     * 
+     * @return raster of OUTSIDE, HIDDEN and VISIBLE values
+     */
+    public byte[] getVisibility() {
+        return visibility;
+    }
+    
+    public int getVisibleCount() {
+        int result = 0;
+        for (byte value : visibility) {
+            if (value == VISIBLE) {
+                result++;
+            }
+        }
+        return result;
+    }
+}
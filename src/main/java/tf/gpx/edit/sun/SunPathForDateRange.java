@@ -0,0 +1,338 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.gpx.edit.sun;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.temporal.ChronoField;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalField;
+import java.util.ArrayList;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import tf.gpx.edit.leafletmap.IGeoCoordinate;
+import tf.gpx.edit.panorama.Horizon;
+
+/**
+ * Calculate sunrise / sunset against a horizon for all days of a date range, e.g. a whole year.
+ * 
+ * The horizon doesn't change over the days - so it is calculated once by the caller and 
+ * shared by all days. Days are independent from each other and calculated in parallel.
+ * The per day work is the same as for SunPathForDay - so any speedup only comes from 
+ * the number of available cores.
+ * 
+ * Results are kept in a compact table of primitive arrays (epoch millis / seconds) - 
+ * not as a list of SunPathForDay with all their sun path maps.
+ * 
+ * @author thomas
+ */
+public class SunPathForDateRange {
+    // value for "no such time" in the table, e.g. no sunrise during polar night
+    public final static long NO_TIME = Long.MIN_VALUE;
+    
+    private static final TemporalField DEFAULT_INTERVAL_TYPE = ChronoField.MINUTE_OF_DAY;
+    private static final int DEFAULT_INTERVAL = 2;
+
+    // days are independent - use all cores
+    private final static ExecutorService executorService = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), (Runnable r) -> {
+        final Thread thread = new Thread(r, "SunPathForDateRange");
+        thread.setDaemon(true);
+        return thread;
+    });
+    
+    private final IGeoCoordinate location;
+    private final Horizon horizon;
+    private final LocalDate startDate;
+    private final ZoneId zoneId;
+    private final Double deltaT;
+    private final TemporalField intervalType;
+    private final int interval;
+    private final int dayCount;
+
+    // the table: one entry per day
+    private final long[] sunrise;
+    private final long[] sunset;
+    private final long[] sunAboveHorizon;
+    private final long[] sunBelowHorizon;
+    private final long[] daylightSeconds;
+    private final long[] sunlightSeconds;
+    private final boolean[] sunNeverRises;
+    private final boolean[] sunNeverSets;
+    private final boolean[] sunNeverShows;
+    
+    private boolean calcDone = false;
+
+    public SunPathForDateRange(final IGeoCoordinate loc, final Horizon hor, final LocalDate start, final LocalDate end) {
+        this(loc, hor, start, end, ZoneId.systemDefault(), null, DEFAULT_INTERVAL_TYPE, DEFAULT_INTERVAL);
+    }
+
+    public SunPathForDateRange(final IGeoCoordinate loc, final Horizon hor, final LocalDate start, final LocalDate end, final ZoneId zone) {
+        this(loc, hor, start, end, zone, null, DEFAULT_INTERVAL_TYPE, DEFAULT_INTERVAL);
+    }
+
+    /**
+     * Setup for a date range.
+     * 
+     * @param loc location of the observer
+     * @param hor horizon to check against - null for sunrise / sunset without horizon
+     * @param start first day of the range
+     * @param end last day of the range (inclusive)
+     * @param zone time zone of the days
+     * @param delT delta T to use for all days - null to estimate per year
+     * @param interType interval type for the sun path
+     * @param inter interval for the sun path
+     */
+    public SunPathForDateRange(
+            final IGeoCoordinate loc, final Horizon hor, 
+            final LocalDate start, final LocalDate end, final ZoneId zone, 
+            final Double delT, final TemporalField interType, final int inter) {
+        location = loc;
+        horizon = hor;
+        startDate = start;
+        zoneId = zone;
+        deltaT = delT;
+        intervalType = interType;
+        interval = inter;
+        
+        dayCount = (int) Math.max(0, ChronoUnit.DAYS.between(start, end) + 1);
+
+        sunrise = new long[dayCount];
+        sunset = new long[dayCount];
+        sunAboveHorizon = new long[dayCount];
+        sunBelowHorizon = new long[dayCount];
+        daylightSeconds = new long[dayCount];
+        sunlightSeconds = new long[dayCount];
+        sunNeverRises = new boolean[dayCount];
+        sunNeverSets = new boolean[dayCount];
+        sunNeverShows = new boolean[dayCount];
+    }
+    
+    public static SunPathForDateRange forYear(final IGeoCoordinate loc, final Horizon hor, final int year) {
+        return new SunPathForDateRange(loc, hor, LocalDate.of(year, 1, 1), LocalDate.of(year, 12, 31));
+    }
+    
+    /**
+     * Calculate all days in parallel.
+     * 
+     * @return this for chaining
+     */
+    public SunPathForDateRange calculate() {
+        if (calcDone) {
+            return this;
+        }
+        
+        final List<Callable<Void>> tasks = new ArrayList<>();
+        for (int i = 0; i < dayCount; i++) {
+            final int day = i;
+            tasks.add(() -> {
+                calcDay(day);
+                return null;
+            });
+        }
+
+        try {
+            final List<Future<Void>> futures = executorService.invokeAll(tasks);
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+            calcDone = true;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            Logger.getLogger(SunPathForDateRange.class.getName()).log(Level.SEVERE, null, ex);
+        } catch (ExecutionException ex) {
+            Logger.getLogger(SunPathForDateRange.class.getName()).log(Level.SEVERE, null, ex);
+        }
+        
+        return this;
+    }
+    
+    /**
+     * Calculate the sun path of a single day of the range - same as you would do without the range.
+     * 
+     * @param day index of the day in the range
+     * @return sun path for the day
+     */
+    public SunPathForDay getSunPathForDay(final int day) {
+        final SunPathForDay result = 
+                new SunPathForDay(GregorianCalendar.from(getDate(day).atStartOfDay(zoneId)), location, deltaT, intervalType, interval);
+        if (horizon != null) {
+            result.calcSunriseSunsetForHorizon(horizon);
+        }
+        return result;
+    }
+    
+    private void calcDay(final int day) {
+        final SunPathForDay sunPath = getSunPathForDay(day);
+        
+        sunrise[day] = toMillis(sunPath.getSunrise());
+        sunset[day] = toMillis(sunPath.getSunset());
+        sunAboveHorizon[day] = toMillis(sunPath.getFirstSunriseAboveHorizon());
+        sunBelowHorizon[day] = toMillis(sunPath.getLastSunsetBelowHorizon());
+        sunNeverRises[day] = sunPath.sunNeverRises();
+        sunNeverSets[day] = sunPath.sunNeverSets();
+        sunNeverShows[day] = sunPath.sunNeverShows();
+        
+        final long dayStart = getDate(day).atStartOfDay(zoneId).toInstant().toEpochMilli();
+        final long dayEnd = getDate(day).plusDays(1).atStartOfDay(zoneId).toInstant().toEpochMilli();
+
+        if (sunPath.sunNeverRises()) {
+            daylightSeconds[day] = 0;
+        } else if (sunPath.sunNeverSets()) {
+            daylightSeconds[day] = (dayEnd - dayStart) / 1000;
+        } else {
+            daylightSeconds[day] = (sunset[day] - sunrise[day]) / 1000;
+        }
+        
+        // TFE, 20261019: without a horizon sunlight is daylight - the sun path maps only hold placeholders
+        if (horizon == null) {
+            sunlightSeconds[day] = daylightSeconds[day];
+        } else if (sunPath.sunNeverShows()) {
+            sunlightSeconds[day] = 0;
+        } else {
+            sunlightSeconds[day] = sumSunlight(sunPath.getSunriseAboveHorizon(), sunPath.getSunsetBelowHorizon(), dayStart, dayEnd) / 1000;
+        }
+    }
+    
+    private static long sumSunlight(
+            final SortedMap<GregorianCalendar, ?> above, final SortedMap<GregorianCalendar, ?> below, 
+            final long dayStart, final long dayEnd) {
+        if (above.isEmpty() && below.isEmpty()) {
+            // sun is up all day and the horizon never hides it
+            return dayEnd - dayStart;
+        }
+        
+        // walk both lists in sync: each above is followed by the next below (if any)
+        long result = 0;
+        final List<GregorianCalendar> aboveTimes = new ArrayList<>(above.keySet());
+        final List<GregorianCalendar> belowTimes = new ArrayList<>(below.keySet());
+        int belowIndex = 0;
+
+        // sun might already be up at the beginning of a polar day
+        if (aboveTimes.isEmpty() || (!belowTimes.isEmpty() && belowTimes.get(0).before(aboveTimes.get(0)))) {
+            result += belowTimes.get(0).getTimeInMillis() - dayStart;
+            belowIndex++;
+        }
+        for (GregorianCalendar aboveTime : aboveTimes) {
+            while (belowIndex < belowTimes.size() && belowTimes.get(belowIndex).before(aboveTime)) {
+                belowIndex++;
+            }
+            if (belowIndex < belowTimes.size()) {
+                result += belowTimes.get(belowIndex).getTimeInMillis() - aboveTime.getTimeInMillis();
+                belowIndex++;
+            } else {
+                // sun doesn't go below again today
+                result += dayEnd - aboveTime.getTimeInMillis();
+            }
+        }
+        
+        return result;
+    }
+    
+    private static long toMillis(final GregorianCalendar time) {
+        return (time != null) ? time.getTimeInMillis() : NO_TIME;
+    }
+    
+    public boolean isCalculated() {
+        return calcDone;
+    }
+
+    public IGeoCoordinate getLocation() {
+        return location;
+    }
+
+    public Horizon getHorizon() {
+        return horizon;
+    }
+
+    public ZoneId getZoneId() {
+        return zoneId;
+    }
+
+    public int getDayCount() {
+        return dayCount;
+    }
+
+    public LocalDate getDate(final int day) {
+        return startDate.plusDays(day);
+    }
+
+    public long getSunrise(final int day) {
+        return sunrise[day];
+    }
+
+    public long getSunset(final int day) {
+        return sunset[day];
+    }
+
+    public long getFirstSunriseAboveHorizon(final int day) {
+        return sunAboveHorizon[day];
+    }
+
+    public long getLastSunsetBelowHorizon(final int day) {
+        return sunBelowHorizon[day];
+    }
+
+    public boolean sunNeverRises(final int day) {
+        return sunNeverRises[day];
+    }
+
+    public boolean sunNeverSets(final int day) {
+        return sunNeverSets[day];
+    }
+
+    public boolean sunNeverShows(final int day) {
+        return sunNeverShows[day];
+    }
+
+    /**
+     * Time between sunrise and sunset - without any horizon.
+     * 
+     * @param day index of the day in the range
+     * @return length of daylight
+     */
+    public Duration getDaylight(final int day) {
+        return Duration.ofSeconds(daylightSeconds[day]);
+    }
+
+    /**
+     * Sum of all times where the sun is above the horizon.
+     * 
+     * @param day index of the day in the range
+     * @return length of sunlight
+     */
+    public Duration getSunlight(final int day) {
+        return Duration.ofSeconds(sunlightSeconds[day]);
+    }
+}
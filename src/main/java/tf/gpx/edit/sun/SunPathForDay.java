@@ -321,6 +321,7 @@ public class SunPathForDay {
         }
 
         // this will take some time...
+        // TFE, 20261019: ... unless we have been here before - panorama uses the HorizonCache
         final Panorama panorama = new Panorama(location, Panorama.DISTANCE_FROM, Panorama.DISTANCE_TO, Panorama.DISTANCE_STEP, minAzimuth, maxAzimuth, angleStepping);
         calcSunriseSunsetForHorizon(panorama.getHorizon(), true);
     }
@@ -423,21 +424,54 @@ public class SunPathForDay {
                     }
                 }
                 // now shift by i-1, if any
-                if (i > 0) {
-                    List<AzimuthElevationAngle> toBeMoved = new ArrayList<>(extendedHorizon.subList(0, i-1));
-                    extendedHorizon.removeAll(extendedHorizon.subList(0, i-1));
-                    extendedHorizon.addAll(toBeMoved);
+                // TFE, 20261019: rotate instead of removeAll - horizon angles are unique anyways
+                if (i > 1) {
+                    Collections.rotate(extendedHorizon, -(i-1));
                 }
             }
         }
         
         final List<Map.Entry<GregorianCalendar, AzimuthElevationAngle>> mapEntries = new ArrayList<>(sunPath.entrySet());
 
+        // TFE, 20261019: index horizon & sun path by azimuth in primitive arrays
+        // continuous azimuth is used for interpolation, the walking key for comparison in the direction of the sun path
+        final int horSize = extendedHorizon.size();
+        final double[] horAzimuth = new double[horSize];
+        final double[] horElevation = new double[horSize];
+        final double[] horKey = new double[horSize];
+        boolean horSorted = true;
+        for (int i = 0; i < horSize; i++) {
+            final AzimuthElevationAngle angle = extendedHorizon.get(i);
+            horAzimuth[i] = continuousAzimuth(angle.getAzimuth());
+            horElevation[i] = angle.getElevation();
+            horKey[i] = walkingKey(angle.getAzimuth());
+            if (i > 0 && horKey[i] < horKey[i-1]) {
+                horSorted = false;
+            }
+        }
+        final int pathSize = mapEntries.size();
+        final double[] pathAzimuth = new double[pathSize];
+        final double[] pathElevation = new double[pathSize];
+        final double[] pathKey = new double[pathSize];
+        for (int i = 0; i < pathSize; i++) {
+            final AzimuthElevationAngle angle = mapEntries.get(i).getValue();
+            pathAzimuth[i] = continuousAzimuth(angle.getAzimuth());
+            pathElevation[i] = angle.getElevation();
+            pathKey[i] = walkingKey(angle.getAzimuth());
+        }
+
+        // horizon elements before the start of the sun path don't contribute anything
+        // for a sorted horizon we can jump right to the first one that does
+        int horStart = 0;
+        if (horSorted) {
+            horStart = firstIndexAbove(horKey, pathKey[0]);
+        }
+        
         // control points for linear interpolation
-        AzimuthElevationAngle p0 = extendedHorizon.get(0);
-        AzimuthElevationAngle p1 = extendedHorizon.get(0);
-        Map.Entry<GregorianCalendar, AzimuthElevationAngle> m0 = mapEntries.get(0);
-        Map.Entry<GregorianCalendar, AzimuthElevationAngle> m1 = mapEntries.get(0);
+        int p1 = Math.max(horStart-1, 0);
+        int p0 = p1;
+        int m1 = 0;
+        int m0 = 0;
         
         // map to collect all new sunpath points we find
         final Map<GregorianCalendar, AzimuthElevationAngle> addSunPath = new TreeMap<>();
@@ -449,68 +483,55 @@ public class SunPathForDay {
         boolean wasAbove = false;
         boolean wasBelow = false;
         // this is true for both sunpath orientations, since we have ordered horizon accordingly
-        for (int horElem = 0; horElem < extendedHorizon.size(); horElem++) {
-//            System.out.println("horElem:  " + horElem + ", azimuth: " + p1.getAzimuth());
+        for (int horElem = horStart; horElem < horSize; horElem++) {
             // use last values if available, essentially shift things downwards
             p0 = p1;
-            p1 = extendedHorizon.get(horElem);
+            p1 = horElem;
 
             // iterate two independent lists with different step size... a bit tricky
-            // compare of azimuth is different for sunpath orientations - so lets do it in a specialized function
-            while (keepGoingOnSunPath(p1.getAzimuth(), mapEntries.get(pathElem).getValue().getAzimuth())) {
-//                System.out.println("pathElem: " + pathElem + ", azimuth: " + m1.getValue().getAzimuth());
-
+            // merge pass: move along the sun path until we're past the current horizon element
+            while (horKey[p1] > pathKey[pathElem]) {
                 m0 = m1;
-                m1 = mapEntries.get(pathElem);
+                m1 = pathElem;
 
                 // get interpolated horizon for this azimuth
-                final AzimuthElevationAngle angle =  m1.getValue();
-                final Pair<AzimuthElevationAngle, AzimuthElevationAngle> interpol = linearInterpolAzimuthElevation(p0, p1, angle);
-                final AzimuthElevationAngle interHorizon = interpol.getLeft();
-                
-                assert angle.getAzimuth() == interHorizon.getAzimuth();
+                final double t = (pathAzimuth[m1] - horAzimuth[p0]) / (horAzimuth[p1] - horAzimuth[p0]);
+                final double interElevation = horElevation[p0] + t * (horElevation[p1] - horElevation[p0]);
                 
-//                System.out.println("  sunpath angle: " + angle.getElevation() + ", horizon angle: " + interHorizon.getElevation());
-
-                Boolean above = ((angle.getElevation() > interHorizon.getElevation()) && (angle.getElevation() > 0));
-//                System.out.println("  above: " + above + ", lastAbove: " + lastAbove);
+                Boolean above = ((pathElevation[m1] > interElevation) && (pathElevation[m1] > 0));
                 if (above) {
                     wasAbove = true;
                 } else {
                     wasBelow = true;
                 }
-                if (above && (lastAbove == null || !lastAbove)) {
+                if (above && (lastAbove == null || !lastAbove) || !above && lastAbove != null && lastAbove) {
                     // add this value also to sunpath for the interpolated time
-                    final Pair<GregorianCalendar, AzimuthElevationAngle> interPath = linearInterpolSunPath(m0, m1, interHorizon);
-                    addSunPath.put(interPath.getKey(), interPath.getValue());
-
-                    // TODO: interpolate between coordinates as well - but how?
-                    // first step: make sure to use the nearest neighbour used in interpolation
-                    sunAboveHorizon.put(interPath.getKey(), Pair.of(interpol.getRight(), horizon.get(interpol.getRight())));
-                }
-                
-                if (!above && lastAbove != null && lastAbove) {
-                    //  add this value also to sunpath for the interpolated time
-                    final Pair<GregorianCalendar, AzimuthElevationAngle> interPath = linearInterpolSunPath(m0, m1, interHorizon);
+                    final AzimuthElevationAngle interHorizon = AzimuthElevationAngle.of(mapEntries.get(m1).getValue().getAzimuth(), interElevation);
+                    final Pair<GregorianCalendar, AzimuthElevationAngle> interPath = linearInterpolSunPath(mapEntries.get(m0), mapEntries.get(m1), interHorizon);
                     addSunPath.put(interPath.getKey(), interPath.getValue());
 
-                    // sun has set - but might not be the last occasion
                     // TODO: interpolate between coordinates as well - but how?
                     // first step: make sure to use the nearest neighbour used in interpolation
-                    sunBelowHorizon.put(interPath.getKey(), Pair.of(interpol.getRight(), horizon.get(interpol.getRight())));
+                    final AzimuthElevationAngle nearest = (t < 0.5) ? extendedHorizon.get(p0) : extendedHorizon.get(p1);
+                    if (above) {
+                        sunAboveHorizon.put(interPath.getKey(), Pair.of(nearest, horizon.get(nearest)));
+                    } else {
+                        // sun has set - but might not be the last occasion
+                        sunBelowHorizon.put(interPath.getKey(), Pair.of(nearest, horizon.get(nearest)));
+                    }
                 }
                 
                 // try the next sunpath element
                 pathElem++;
                 lastAbove = above;
                 
-                if (pathElem == mapEntries.size()) {
+                if (pathElem == pathSize) {
                     // we have reached the "normal" sunset
                     break;
                 }
             }
 
-            if (pathElem == mapEntries.size()) {
+            if (pathElem == pathSize) {
                 // we have reached the "normal" sunset
                 break;
             }
@@ -526,11 +547,12 @@ public class SunPathForDay {
         sunNeverHides = !wasBelow;
         
         // housekeeping: make sure dates from different source are consistent
-        if (sunrise.after(getFirstSunriseAboveHorizon())) {
+        // TFE, 20261019: no sunrise / sunset during polar days
+        if (sunrise != null && sunrise.after(getFirstSunriseAboveHorizon())) {
             System.err.println("calcSunriseSunsetForHorizon found earlier sunrise");
             sunrise = getFirstSunriseAboveHorizon();
         }
-        if (sunset.before(getLastSunsetBelowHorizon())) {
+        if (sunset != null && sunset.before(getLastSunsetBelowHorizon())) {
             System.err.println("calcSunriseSunsetForHorizon found later sunset");
             sunset = getLastSunsetBelowHorizon();
         }
@@ -544,30 +566,30 @@ public class SunPathForDay {
             return azimuth;
         }
     }
-    private boolean keepGoingOnSunPath(final double horAzimuth, final double pathAzimuth) {
+    // TFE, 20261019: azimuth mapped such that it increases along the sun path for both orientations
+    private double walkingKey(final double azimuth) {
         if (sunTransitsSouth) {
-            return continuousAzimuth(horAzimuth) > continuousAzimuth(pathAzimuth);
+            return continuousAzimuth(azimuth);
         } else {
-            return continuousAzimuth(horAzimuth) < continuousAzimuth(pathAzimuth);
+            return -continuousAzimuth(azimuth);
         }
     }
     
-    private Pair<AzimuthElevationAngle, AzimuthElevationAngle> linearInterpolAzimuthElevation(
-            final AzimuthElevationAngle p0, 
-            final AzimuthElevationAngle p1,
-            final AzimuthElevationAngle angle) { 
-        // map to the continuous version of the azimuth to cover the jump in azimuth
-        final double t = (continuousAzimuth(angle.getAzimuth()) - continuousAzimuth(p0.getAzimuth())) / 
-                (continuousAzimuth(p1.getAzimuth()) - continuousAzimuth(p0.getAzimuth()));
-        final AzimuthElevationAngle result = AzimuthElevationAngle.of(angle.getAzimuth(), p0.getElevation() + t * (p1.getElevation() - p0.getElevation()));
-        
-        // return both the interpolated result AND the nearest neighbour
-        if (t < 0.5) {
-            return Pair.of(result, p0);
-        } else {
-            return Pair.of(result, p1);
+    // binary search for the first element with key > value
+    private static int firstIndexAbove(final double[] keys, final double value) {
+        int low = 0;
+        int high = keys.length;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (keys[mid] > value) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
         }
+        return low;
     }
+    
     private Pair<GregorianCalendar, AzimuthElevationAngle> linearInterpolSunPath(
             final Map.Entry<GregorianCalendar, AzimuthElevationAngle> m0, 
             final Map.Entry<GregorianCalendar, AzimuthElevationAngle> m1,
@@ -27,6 +27,7 @@ package tf.gpx.edit.viewer;
 
 import java.util.List;
 import javafx.application.Platform;
+import tf.gpx.edit.elevation.SRTMDataPrefetcher;
 import tf.gpx.edit.items.GPXLineItem;
 import tf.gpx.edit.items.GPXMeasurable;
 import tf.gpx.edit.items.GPXWaypoint;
@@ -84,6 +85,9 @@ public class GPXTrackviewer implements IPreferencesHolder {
             ChartsPane.getInstance().setGPXWaypoints(lineItems, doFitBounds);
             ChartsPane.getInstance().clearSelectedGPXWaypoints();
         });
+        
+        // TFE, 20261019: load elevation data for the selected items in the background
+        SRTMDataPrefetcher.getInstance().prefetchForMeasurables(lineItems);
     }
 
     public void updateGPXWaypoints(final List<GPXWaypoint> gpxWaypoints) {
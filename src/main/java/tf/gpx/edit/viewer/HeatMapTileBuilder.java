@@ -0,0 +1,563 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.gpx.edit.viewer;
+
+import eu.hansolo.fx.heatmap.ColorMapping;
+import eu.hansolo.fx.heatmap.KernelDensityRenderer;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.imageio.ImageIO;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import org.apache.commons.io.FileUtils;
+import tf.gpx.edit.leafletmap.WebMercatorProjection;
+
+/**
+ * Batch job to create heat map tiles for all tracks of a GPX library.
+ * 
+ * Tracks are rasterized as lines into the pixels of the highest zoom level. 
+ * Pixels are stored as morton code (z-order) in a fixed size buffer that gets sorted and written to a temp file once its full.
+ * The sorted runs are merged in the end - since all tiles of all zoom levels are contiguous in morton order
+ * the merged pixels can be aggregated into one tile per zoom level at a time.
+ * 
+ * So memory is bounded by the buffer size and the number of zoom levels - independent of the number of points.
+ * Tiles are encoded and written in parallel with a limited number of tiles waiting for it.
+ * 
+ * Files are read with a streaming XML parser, only the track points are used.
+ * 
+ * @author thomas
+ */
+public class HeatMapTileBuilder {
+    public final static int TILE_SIZE = WebMercatorProjection.TILE_SIZE;
+    public final static int DEFAULT_MAX_ZOOM = 16;
+    // morton code of pixels needs to fit into a long
+    public final static int MAX_ZOOM = 18;
+    // 4M pixels = 32MB
+    public final static int DEFAULT_BUFFER_SIZE = 1 << 22;
+    
+    // number of track passes that show with full brightness
+    public final static double SATURATION_PASSES = 32.0;
+    // single passes should still be visible
+    private final static int MIN_ALPHA = 96;
+    
+    // don't draw lines over gaps in the recording, e.g. tunnels, flights, ...
+    public final static int MAX_GAP_PIXELS = 512;
+    
+    // don't open too many files at once when merging
+    private final static int MAX_MERGE_RUNS = 64;
+    private final static int IO_BUFFER_SIZE = 1 << 16;
+    
+    private final static int MAX_PENDING_TILES = 4 * Runtime.getRuntime().availableProcessors();
+    private final static ExecutorService executorService = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), 
+            (Runnable r) -> {
+                final Thread thread = new Thread(r, "HeatMapTileBuilder");
+                thread.setDaemon(true);
+                return thread;
+            });
+    
+    private final static String TRACK_POINT = "trkpt";
+    private final static String TRACK_SEGMENT = "trkseg";
+    private final static String LATITUDE = "lat";
+    private final static String LONGITUDE = "lon";
+    
+    private final Path targetPath;
+    private final int maxZoom;
+    private final int[] colors;
+    private final double worldSize;
+    
+    private final long[] pixelBuffer;
+    private int bufferCount = 0;
+    private final List<Path> runs = new ArrayList<>();
+    private Path tempPath;
+    
+    // last pixel of the current segment
+    private boolean inSegment = false;
+    private long lastX;
+    private long lastY;
+    
+    private int fileCount = 0;
+    private long pointCount = 0;
+    private long pixelCount = 0;
+    private int runCount = 0;
+    private final AtomicInteger tileCount = new AtomicInteger(0);
+    
+    // tiles being written in the background & what went wrong there
+    private final Semaphore pendingTiles = new Semaphore(MAX_PENDING_TILES);
+    private final AtomicReference<IOException> writeError = new AtomicReference<>();
+    
+    // what we need to know to pass a merged pixel to the writer
+    private interface PixelConsumer {
+        void accept(final long key, final int count) throws IOException;
+    }
+
+    // sorted run of (key, count) pairs on disk
+    private static class RunReader implements Comparable<RunReader> {
+        private final DataInputStream input;
+        private long key;
+        private int count;
+        
+        private RunReader(final Path run) throws IOException {
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(run.toFile()), IO_BUFFER_SIZE));
+        }
+        
+        private boolean next() throws IOException {
+            try {
+                key = input.readLong();
+                count = input.readInt();
+                return true;
+            } catch (EOFException ex) {
+                input.close();
+                return false;
+            }
+        }
+
+        @Override
+        public int compareTo(final RunReader other) {
+            return Long.compare(key, other.key);
+        }
+    }
+    
+    // counts of the tile we are currently working on for one zoom level
+    private class ZoomLevel {
+        private final int zoom;
+        private final int shift;
+        private final int[] counts = new int[TILE_SIZE * TILE_SIZE];
+        private long tileKey = -1;
+        private boolean hasData = false;
+        
+        private ZoomLevel(final int z) {
+            zoom = z;
+            shift = maxZoom - z;
+        }
+        
+        private void add(final long key, final long x, final long y, final int count) throws IOException {
+            // tiles of a zoom level are the upper bits of the morton code
+            final long newTileKey = key >>> (2 * (shift + 8));
+            if (newTileKey != tileKey) {
+                flush();
+                tileKey = newTileKey;
+            }
+            
+            final int px = (int) ((x >>> shift) & (TILE_SIZE - 1));
+            final int py = (int) ((y >>> shift) & (TILE_SIZE - 1));
+            counts[py * TILE_SIZE + px] += count;
+            hasData = true;
+        }
+        
+        private void flush() throws IOException {
+            if (!hasData) {
+                return;
+            }
+            
+            writeTile(zoom, deinterleave(tileKey), deinterleave(tileKey >>> 1), counts, shift);
+            Arrays.fill(counts, 0);
+            hasData = false;
+        }
+    }
+    
+    public HeatMapTileBuilder(final Path target, final int zoom, final ColorMapping colorMapping) {
+        this(target, zoom, colorMapping, DEFAULT_BUFFER_SIZE);
+    }
+
+    public HeatMapTileBuilder(final Path target, final int zoom, final ColorMapping colorMapping, final int bufferSize) {
+        targetPath = target;
+        maxZoom = Math.max(0, Math.min(zoom, MAX_ZOOM));
+        colors = KernelDensityRenderer.getColorTable(colorMapping);
+        worldSize = TILE_SIZE * (double) (1L << maxZoom);
+        pixelBuffer = new long[Math.max(1, bufferSize)];
+    }
+    
+    public Path getTargetPath() {
+        return targetPath;
+    }
+    
+    public int getMaxZoom() {
+        return maxZoom;
+    }
+
+    public int getFileCount() {
+        return fileCount;
+    }
+
+    public long getPointCount() {
+        return pointCount;
+    }
+
+    public long getPixelCount() {
+        return pixelCount;
+    }
+
+    public int getRunCount() {
+        return runCount;
+    }
+
+    public int getTileCount() {
+        return tileCount.get();
+    }
+    
+    /**
+     * Read all track points of a GPX file without keeping the file in memory.
+     * 
+     * @param gpxFile file to read
+     * @return true if the file could be read
+     */
+    public boolean addFile(final File gpxFile) {
+        final XMLInputFactory factory = XMLInputFactory.newInstance();
+        // we only need the data - and nobody should be able to make us load anything else
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        
+        boolean result = true;
+        try (InputStream input = new BufferedInputStream(new FileInputStream(gpxFile), IO_BUFFER_SIZE)) {
+            final XMLStreamReader reader = factory.createXMLStreamReader(input);
+            try {
+                while (reader.hasNext()) {
+                    final int event = reader.next();
+                    if (event == XMLStreamConstants.START_ELEMENT && TRACK_POINT.equals(reader.getLocalName())) {
+                        final String lat = reader.getAttributeValue(null, LATITUDE);
+                        final String lon = reader.getAttributeValue(null, LONGITUDE);
+                        if (lat != null && lon != null) {
+                            addPoint(Double.parseDouble(lat), Double.parseDouble(lon));
+                        }
+                    } else if (event == XMLStreamConstants.END_ELEMENT && TRACK_SEGMENT.equals(reader.getLocalName())) {
+                        endSegment();
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+            fileCount++;
+        } catch (IOException | XMLStreamException | NumberFormatException ex) {
+            Logger.getLogger(HeatMapTileBuilder.class.getName()).log(Level.SEVERE, "Error reading " + gpxFile, ex);
+            result = false;
+        }
+        // whatever happened, the next file starts a new track
+        endSegment();
+        
+        return result;
+    }
+    
+    /**
+     * Add the next point of the current track segment.
+     * 
+     * @param latitude latitude of the point
+     * @param longitude longitude of the point
+     */
+    public void addPoint(final double latitude, final double longitude) {
+        pointCount++;
+        
+        final long x = toPixel(WebMercatorProjection.longitudeToX(longitude));
+        final long y = toPixel(WebMercatorProjection.latitudeToY(latitude));
+        
+        if (!inSegment || Math.abs(x - lastX) > MAX_GAP_PIXELS || Math.abs(y - lastY) > MAX_GAP_PIXELS) {
+            addPixel(x, y);
+        } else {
+            addLine(lastX, lastY, x, y);
+        }
+        
+        inSegment = true;
+        lastX = x;
+        lastY = y;
+    }
+    
+    public void endSegment() {
+        inSegment = false;
+    }
+    
+    /**
+     * Merge everything added so far and write the tiles of all zoom levels. 
+     * Tiles of a previous run in the target directory are removed.
+     * 
+     * @return true if all tiles have been written
+     */
+    public boolean build() {
+        boolean result = true;
+        try {
+            spill();
+            
+            if (targetPath.toFile().exists()) {
+                FileUtils.deleteDirectory(targetPath.toFile());
+            }
+            Files.createDirectories(targetPath);
+            
+            // reduce the number of runs until we can merge them all at once
+            while (runs.size() > MAX_MERGE_RUNS) {
+                final List<Path> merged = new ArrayList<>();
+                for (int i = 0; i < runs.size(); i += MAX_MERGE_RUNS) {
+                    final List<Path> group = runs.subList(i, Math.min(i + MAX_MERGE_RUNS, runs.size()));
+                    final Path run = Files.createTempFile(tempPath, "run", ".bin");
+                    try (DataOutputStream output = openRun(run)) {
+                        merge(group, (key, count) -> {
+                            output.writeLong(key);
+                            output.writeInt(count);
+                        });
+                    }
+                    for (Path path : group) {
+                        Files.delete(path);
+                    }
+                    merged.add(run);
+                }
+                runs.clear();
+                runs.addAll(merged);
+            }
+            
+            final ZoomLevel[] zoomLevels = new ZoomLevel[maxZoom + 1];
+            for (int zoom = 0; zoom <= maxZoom; zoom++) {
+                zoomLevels[zoom] = new ZoomLevel(zoom);
+            }
+            merge(runs, (key, count) -> {
+                final long x = deinterleave(key);
+                final long y = deinterleave(key >>> 1);
+                for (ZoomLevel zoomLevel : zoomLevels) {
+                    zoomLevel.add(key, x, y, count);
+                }
+            });
+            for (ZoomLevel zoomLevel : zoomLevels) {
+                zoomLevel.flush();
+            }
+            
+            // wait for all tiles to be written
+            pendingTiles.acquireUninterruptibly(MAX_PENDING_TILES);
+            pendingTiles.release(MAX_PENDING_TILES);
+            if (writeError.get() != null) {
+                throw writeError.getAndSet(null);
+            }
+        } catch (IOException ex) {
+            Logger.getLogger(HeatMapTileBuilder.class.getName()).log(Level.SEVERE, null, ex);
+            result = false;
+        } finally {
+            runs.clear();
+            if (tempPath != null) {
+                FileUtils.deleteQuietly(tempPath.toFile());
+                tempPath = null;
+            }
+        }
+        
+        return result;
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("HeatMapTileBuilder: %d files, %d points, %d pixels, %d runs, %d tiles", fileCount, pointCount, pixelCount, runCount, tileCount.get());
+    }
+    
+    private long toPixel(final double world) {
+        return Math.max(0, Math.min((long) Math.floor(world * worldSize), (long) worldSize - 1));
+    }
+    
+    private void addLine(final long x0, final long y0, final long x1, final long y1) {
+        // Bresenham - without the first pixel that has been added with the previous point
+        final long dx = Math.abs(x1 - x0);
+        final long dy = -Math.abs(y1 - y0);
+        final long sx = x0 < x1 ? 1 : -1;
+        final long sy = y0 < y1 ? 1 : -1;
+        long error = dx + dy;
+        long x = x0;
+        long y = y0;
+        
+        while (x != x1 || y != y1) {
+            final long error2 = 2 * error;
+            if (error2 >= dy) {
+                error += dy;
+                x += sx;
+            }
+            if (error2 <= dx) {
+                error += dx;
+                y += sy;
+            }
+            addPixel(x, y);
+        }
+    }
+    
+    private void addPixel(final long x, final long y) {
+        if (bufferCount == pixelBuffer.length) {
+            try {
+                spill();
+            } catch (IOException ex) {
+                Logger.getLogger(HeatMapTileBuilder.class.getName()).log(Level.SEVERE, null, ex);
+                // nothing we can do - start over with an empty buffer
+                bufferCount = 0;
+            }
+        }
+        pixelBuffer[bufferCount++] = interleave(x) | (interleave(y) << 1);
+        pixelCount++;
+    }
+    
+    // sort buffer and write it as run of (key, count) pairs
+    private void spill() throws IOException {
+        if (bufferCount == 0) {
+            return;
+        }
+        if (tempPath == null) {
+            tempPath = Files.createTempDirectory("HeatMapTiles");
+        }
+        
+        Arrays.parallelSort(pixelBuffer, 0, bufferCount);
+        
+        final Path run = Files.createTempFile(tempPath, "run", ".bin");
+        try (DataOutputStream output = openRun(run)) {
+            long key = pixelBuffer[0];
+            int count = 0;
+            for (int i = 0; i < bufferCount; i++) {
+                if (pixelBuffer[i] != key) {
+                    output.writeLong(key);
+                    output.writeInt(count);
+                    key = pixelBuffer[i];
+                    count = 0;
+                }
+                count++;
+            }
+            output.writeLong(key);
+            output.writeInt(count);
+        }
+        runs.add(run);
+        runCount++;
+        bufferCount = 0;
+    }
+    
+    private static DataOutputStream openRun(final Path run) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run.toFile()), IO_BUFFER_SIZE));
+    }
+    
+    // k-way merge of sorted runs - equal keys are combined
+    private static void merge(final List<Path> runs, final PixelConsumer consumer) throws IOException {
+        final PriorityQueue<RunReader> queue = new PriorityQueue<>();
+        try {
+            for (Path run : runs) {
+                final RunReader reader = new RunReader(run);
+                if (reader.next()) {
+                    queue.add(reader);
+                }
+            }
+
+            boolean hasPixel = false;
+            long key = 0;
+            int count = 0;
+            while (!queue.isEmpty()) {
+                final RunReader reader = queue.poll();
+                if (hasPixel && reader.key != key) {
+                    consumer.accept(key, count);
+                    count = 0;
+                }
+                hasPixel = true;
+                key = reader.key;
+                count += reader.count;
+
+                if (reader.next()) {
+                    queue.add(reader);
+                }
+            }
+            if (hasPixel) {
+                consumer.accept(key, count);
+            }
+        } finally {
+            for (RunReader reader : queue) {
+                reader.input.close();
+            }
+        }
+    }
+    
+    private void writeTile(final int zoom, final long x, final long y, final int[] counts, final int shift) throws IOException {
+        // a track crossing a pixel of a lower zoom level touches approx. 2^shift pixels of the highest zoom level
+        final double passScale = 1.0 / (1L << shift);
+        final double logSaturation = Math.log1p(SATURATION_PASSES);
+
+        final BufferedImage image = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_ARGB);
+        // no need to go through setRGB() for each pixel
+        final int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        for (int i = 0; i < pixels.length; i++) {
+            if (counts[i] == 0) {
+                continue;
+            }
+            final double brightness = Math.min(1.0, Math.log1p(counts[i] * passScale) / logSaturation);
+            final int alpha = MIN_ALPHA + (int) Math.round((255 - MIN_ALPHA) * brightness);
+            pixels[i] = (alpha << 24) | (colors[(int) Math.round(brightness * 255)] & 0x00FFFFFF);
+        }
+        
+        // encoding takes much longer than everything else
+        final File tileFile = HeatMapTiles.getTileFile(targetPath, zoom, (int) x, (int) y);
+        pendingTiles.acquireUninterruptibly();
+        executorService.submit(() -> {
+            try {
+                Files.createDirectories(tileFile.toPath().getParent());
+                ImageIO.write(image, "png", tileFile);
+                tileCount.incrementAndGet();
+            } catch (IOException ex) {
+                writeError.compareAndSet(null, ex);
+            } finally {
+                pendingTiles.release();
+            }
+        });
+    }
+    
+    // spread the lower 32 bits to the even bits
+    private static long interleave(final long value) {
+        long result = value & 0xFFFFFFFFL;
+        result = (result | (result << 16)) & 0x0000FFFF0000FFFFL;
+        result = (result | (result << 8)) & 0x00FF00FF00FF00FFL;
+        result = (result | (result << 4)) & 0x0F0F0F0F0F0F0F0FL;
+        result = (result | (result << 2)) & 0x3333333333333333L;
+        result = (result | (result << 1)) & 0x5555555555555555L;
+        return result;
+    }
+    
+    // collect the even bits
+    private static long deinterleave(final long value) {
+        long result = value & 0x5555555555555555L;
+        result = (result | (result >>> 1)) & 0x3333333333333333L;
+        result = (result | (result >>> 2)) & 0x0F0F0F0F0F0F0F0FL;
+        result = (result | (result >>> 4)) & 0x00FF00FF00FF00FFL;
+        result = (result | (result >>> 8)) & 0x0000FFFF0000FFFFL;
+        result = (result | (result >>> 16)) & 0x00000000FFFFFFFFL;
+        return result;
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.gpx.edit.viewer;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.imageio.ImageIO;
+import tf.gpx.edit.helper.GPXEditorPreferences;
+import tf.gpx.edit.leafletmap.ITileProvider;
+import tf.gpx.edit.leafletmap.LocalTileServer;
+
+/**
+ * Heat map tiles of the GPX library as created by HeatMapTileBuilder.
+ * 
+ * Tiles are read from disk as z/x/y.png. For zoom levels above the highest one on disk the tile is cut out of its ancestor and scaled up.
+ * Where there is no tile an empty one is returned to keep leaflet happy.
+ * 
+ * Use registerTileProvider() to make the layer available via LocalTileServer.
+ * 
+ * @author thomas
+ */
+public class HeatMapTiles implements ITileProvider {
+    // this is a singleton for everyones use
+    // http://www.javaworld.com/article/2073352/core-java/simply-singleton.html
+    private final static HeatMapTiles INSTANCE = new HeatMapTiles(getDefaultPath());
+    
+    public final static String PROVIDER_NAME = "heatmap";
+    public final static String DIRECTORY_NAME = "heatmaptiles";
+    public final static int TILE_SIZE = HeatMapTileBuilder.TILE_SIZE;
+    public final static int MAX_ZOOM = 20;
+    public final static int DEFAULT_TILE_CACHE_SIZE = 256;
+    
+    private final Path tilePath;
+    // highest zoom level on disk - determined on first use
+    private int pyramidZoom = -1;
+    
+    // LRU cache for tiles
+    private final Map<String, byte[]> tileCache;
+    
+    private byte[] emptyTile;
+    
+    public HeatMapTiles(final Path path) {
+        tilePath = path;
+        
+        // access ordered map with eviction of the least recently used entries
+        tileCache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, byte[]> eldest) {
+                return size() > DEFAULT_TILE_CACHE_SIZE;
+            }
+        };
+    }
+
+    public static HeatMapTiles getInstance() {
+        return INSTANCE;
+    }
+    
+    public static Path getDefaultPath() {
+        return Paths.get(GPXEditorPreferences.CACHE_PATH.getAsString(), DIRECTORY_NAME);
+    }
+    
+    public static String getURLPattern() {
+        return LocalTileServer.getURLPattern(PROVIDER_NAME);
+    }
+    
+    public static File getTileFile(final Path path, final int zoom, final int x, final int y) {
+        return path.resolve(Integer.toString(zoom)).resolve(Integer.toString(x)).resolve(y + ".png").toFile();
+    }
+    
+    public Path getTilePath() {
+        return tilePath;
+    }
+    
+    public void registerTileProvider() {
+        LocalTileServer.getInstance().registerTileProvider(PROVIDER_NAME, this);
+    }
+    
+    /**
+     * Forget what we know about the tiles on disk, e.g. after they have been re-created.
+     */
+    public synchronized void reset() {
+        pyramidZoom = -1;
+        synchronized (tileCache) {
+            tileCache.clear();
+        }
+    }
+    
+    /**
+     * Highest zoom level available on disk.
+     * 
+     * @return zoom level or -1 if there are no tiles
+     */
+    public synchronized int getPyramidZoom() {
+        if (pyramidZoom < 0) {
+            final File[] zoomDirs = tilePath.toFile().listFiles(File::isDirectory);
+            if (zoomDirs != null) {
+                for (File zoomDir : zoomDirs) {
+                    try {
+                        pyramidZoom = Math.max(pyramidZoom, Integer.parseInt(zoomDir.getName()));
+                    } catch (NumberFormatException ex) {
+                        // not one of ours
+                    }
+                }
+            }
+        }
+        return pyramidZoom;
+    }
+
+    @Override
+    public byte[] getTile(final int zoom, final int x, final int y) {
+        if (zoom < 0 || zoom > MAX_ZOOM) {
+            return null;
+        }
+        final int tileCount = 1 << zoom;
+        if (x < 0 || x >= tileCount || y < 0 || y >= tileCount) {
+            return null;
+        }
+        
+        final String key = zoom + "/" + x + "/" + y;
+        synchronized (tileCache) {
+            final byte[] result = tileCache.get(key);
+            if (result != null) {
+                return result;
+            }
+        }
+
+        byte[] result = null;
+        final int maxZoom = getPyramidZoom();
+        if (maxZoom >= 0) {
+            if (zoom <= maxZoom) {
+                result = readTile(zoom, x, y);
+            } else {
+                result = scaleTile(zoom - maxZoom, x, y);
+            }
+        }
+        if (result == null) {
+            result = getEmptyTile();
+        }
+
+        synchronized (tileCache) {
+            tileCache.put(key, result);
+        }
+        return result;
+    }
+    
+    private byte[] readTile(final int zoom, final int x, final int y) {
+        final File tileFile = getTileFile(tilePath, zoom, x, y);
+        if (!tileFile.isFile()) {
+            return null;
+        }
+        
+        try {
+            return Files.readAllBytes(tileFile.toPath());
+        } catch (IOException ex) {
+            Logger.getLogger(HeatMapTiles.class.getName()).log(Level.SEVERE, null, ex);
+            return null;
+        }
+    }
+    
+    // cut the part of the tile out of its ancestor on the highest zoom level
+    private byte[] scaleTile(final int deltaZoom, final int x, final int y) {
+        final int size = TILE_SIZE >> deltaZoom;
+        if (size == 0) {
+            return null;
+        }
+        
+        final File tileFile = getTileFile(tilePath, getPyramidZoom(), x >> deltaZoom, y >> deltaZoom);
+        if (!tileFile.isFile()) {
+            return null;
+        }
+        
+        try {
+            final BufferedImage ancestor = ImageIO.read(tileFile);
+            if (ancestor == null) {
+                return null;
+            }
+            final int mask = (1 << deltaZoom) - 1;
+            final int offsetX = (x & mask) * size;
+            final int offsetY = (y & mask) * size;
+            
+            final BufferedImage image = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_ARGB);
+            final Graphics2D graphics = image.createGraphics();
+            // keep the pixels sharp - like leaflet does
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+            graphics.drawImage(ancestor, 0, 0, TILE_SIZE, TILE_SIZE, offsetX, offsetY, offsetX + size, offsetY + size, null);
+            graphics.dispose();
+            
+            return encodeTile(image);
+        } catch (IOException ex) {
+            Logger.getLogger(HeatMapTiles.class.getName()).log(Level.SEVERE, null, ex);
+            return null;
+        }
+    }
+    
+    private synchronized byte[] getEmptyTile() {
+        if (emptyTile == null) {
+            emptyTile = encodeTile(new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_ARGB));
+        }
+        return emptyTile;
+    }
+    
+    private static byte[] encodeTile(final BufferedImage image) {
+        try (ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+            ImageIO.write(image, "png", out);
+            return out.toByteArray();
+        } catch (IOException ex) {
+            Logger.getLogger(HeatMapTiles.class.getName()).log(Level.SEVERE, null, ex);
+            return new byte[0];
+        }
+    }
+}
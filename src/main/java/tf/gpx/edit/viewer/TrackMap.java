@@ -27,7 +27,9 @@ package tf.gpx.edit.viewer;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import java.awt.image.BufferedImage;
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
@@ -40,14 +42,17 @@ import java.net.URLEncoder;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Base64;
 import java.util.GregorianCalendar;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.IllegalFormatException;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
@@ -74,6 +79,7 @@ import javafx.scene.layout.Pane;
 import javafx.scene.robot.Robot;
 import javafx.scene.shape.Rectangle;
 import javafx.scene.web.WebEvent;
+import javax.imageio.ImageIO;
 import netscape.javascript.JSObject;
 import org.apache.commons.collections4.BidiMap;
 import org.apache.commons.collections4.CollectionUtils;
@@ -81,10 +87,13 @@ import org.apache.commons.collections4.bidimap.DualHashBidiMap;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.commons.text.StringEscapeUtils;
 import org.controlsfx.control.PopOver;
+import tf.gpx.edit.algorithms.reducer.ZoomLevelReducer;
 import tf.gpx.edit.elevation.AssignElevation;
 import tf.gpx.edit.elevation.ElevationProviderBuilder;
 import tf.gpx.edit.elevation.ElevationProviderOptions;
 import tf.gpx.edit.elevation.IElevationProvider;
+import tf.gpx.edit.elevation.SRTMDataPrefetcher;
+import tf.gpx.edit.elevation.SRTMTerrainTiles;
 import tf.gpx.edit.extension.LineStyle;
 import tf.gpx.edit.helper.GPXEditorParameters;
 import tf.gpx.edit.helper.GPXEditorPreferences;
@@ -100,6 +109,7 @@ import tf.gpx.edit.items.GPXRoute;
 import tf.gpx.edit.items.GPXTrack;
 import tf.gpx.edit.items.GPXTrackSegment;
 import tf.gpx.edit.items.GPXWaypoint;
+import tf.gpx.edit.leafletmap.BoundingBoxIndex;
 import tf.gpx.edit.leafletmap.ColorMarker;
 import tf.gpx.edit.leafletmap.ControlPosition;
 import tf.gpx.edit.leafletmap.IGeoCoordinate;
@@ -108,10 +118,16 @@ import tf.gpx.edit.leafletmap.LatLonElev;
 import tf.gpx.edit.leafletmap.LeafletMapView;
 import tf.gpx.edit.leafletmap.MapConfig;
 import tf.gpx.edit.leafletmap.MapLayer;
+import tf.gpx.edit.leafletmap.MapTileCache;
 import tf.gpx.edit.leafletmap.MapLayerUsage;
+import tf.gpx.edit.leafletmap.MapSceneBuilder;
 import tf.gpx.edit.leafletmap.ScaleControlConfig;
+import tf.gpx.edit.leafletmap.WaypointClusterIndex;
+import tf.gpx.edit.leafletmap.WebMercatorProjection;
 import tf.gpx.edit.leafletmap.ZoomControlConfig;
 import tf.gpx.edit.main.GPXEditor;
+import tf.gpx.edit.main.StatusBar;
+import tf.gpx.edit.panorama.Viewshed;
 import tf.gpx.edit.sun.SunPathForDay;
 import tf.gpx.edit.sun.SunPathForSpecialsDates;
 import tf.gpx.edit.viewer.MarkerManager.SpecialMarker;
@@ -274,6 +290,78 @@ public class TrackMap extends LeafletMapView implements IPreferencesHolder {
         CIRCLEMARKER
     }
     
+    // TFE, 20261019: file waypoint, track segment or route that is shown on the map while it intersects the viewport
+    private class MapItem {
+        // file waypoint, track segment or route - key in the registry of map items
+        private final GPXLineItem lineItem;
+        // waypoints of the file waypoint, track segment or route - routes can change while being edited
+        private List<GPXWaypoint> gpxWaypoints;
+        private final GPXTrackSegment gpxTrackSegment;
+        // ratio of waypoints to show for routes - track segments use the level of detail of the current zoom
+        private final double ratio;
+        // TFE, 20261019: what has been drawn - a different shape needs new layers, a different style only an update of them
+        private final long shape;
+        private String style;
+        // everything that has been added to the map for this item
+        private final List<String> layers = new ArrayList<>();
+        
+        public MapItem(final GPXLineItem item, final List<GPXWaypoint> waypoints, final double waypointRatio) {
+            lineItem = item;
+            gpxWaypoints = waypoints;
+            ratio = waypointRatio;
+            
+            if (!waypoints.isEmpty() && waypoints.get(0).isGPXTrackWaypoint()) {
+                gpxTrackSegment = (GPXTrackSegment) waypoints.get(0).getParent();
+            } else {
+                gpxTrackSegment = null;
+            }
+            
+            shape = getShape();
+            style = getStyle();
+        }
+        
+        public boolean isTrackSegment() {
+            return gpxTrackSegment != null;
+        }
+        
+        private long getShape() {
+            final boolean showTrackSymbols = GPXEditorPreferences.SHOW_TRACK_SYMBOLS.getAsType();
+
+            long result = ZoomLevelReducer.getFingerprint(gpxWaypoints);
+            // track segments use the level of detail of the current zoom
+            result = 31 * result + Double.doubleToLongBits(isTrackSegment() ? 0.0 : ratio);
+            result = 31 * result + (showTrackSymbols ? 1 : 0);
+            if (!gpxWaypoints.isEmpty() && gpxWaypoints.get(0).isGPXFileWaypoint()) {
+                final GPXWaypoint gpxWaypoint = gpxWaypoints.get(0);
+                result = 31 * result + Objects.hash(
+                        gpxWaypoint.getTooltip(), 
+                        MarkerManager.getInstance().getMarkerForWaypoint(gpxWaypoint).getIconName());
+            }
+            return result;
+        }
+        
+        private String getStyle() {
+            final LineStyle lineStyle;
+            final String name;
+            if (isTrackSegment()) {
+                lineStyle = gpxTrackSegment.getParent().getLineStyle();
+                name = gpxTrackSegment.getParent().getName();
+            } else if (lineItem.isGPXRoute()) {
+                lineStyle = ((GPXRoute) lineItem).getLineStyle();
+                name = lineItem.getName();
+            } else {
+                // file waypoints are redrawn if anything has changed
+                return "";
+            }
+            
+            return lineStyle.getColor().getJSColor() + "|" + 
+                    lineStyle.getWidth() + "|" + 
+                    lineStyle.getOpacity() + "|" + 
+                    lineStyle.getLinecap() + "|" + 
+                    name;
+        }
+    }
+    
     // TFE; 20220309: store stuff in properties instead of userdata for context menu
     private enum KnowProperties {
         LATLON,
@@ -293,6 +381,10 @@ public class TrackMap extends LeafletMapView implements IPreferencesHolder {
     private final static String NOT_SHOWN = "Not shown";
     private final static String TRACKPOINT_MARKER = "Trackpoint";
     private final static String ROUTEPOINT_MARKER = "Routepoint";
+    // TFE, 20261019: show items up to half a viewport outside - avoids flickering when moving the map just a bit
+    private final static double VIEWPORT_PADDING = 0.5;
+    // TFE, 20261019: show file waypoints as clusters from this number on - otherwise POI files freeze the map
+    private final static int MIN_WAYPOINTS_TO_CLUSTER = 1000;
     
     // pane on top of LeafletMapView to draw selection rectangle
     private Pane myMapPane;
@@ -311,16 +403,35 @@ public class TrackMap extends LeafletMapView implements IPreferencesHolder {
     private final BidiMap<String, GPXWaypoint> trackWaypoints = new DualHashBidiMap<>();
     private final BidiMap<String, GPXRoute> routes = new DualHashBidiMap<>();
     private final BidiMap<String, GPXWaypoint> routeWaypoints = new DualHashBidiMap<>();
+    // TFE, 20261019: zoom level the tracks have been reduced for & counter for marker names of track & route waypoints
+    private int lodZoom = -1;
+    private int waypointMarkerCount = 0;
+    // TFE, 20261019: only items in the (padded) viewport are shown on the map
+    private final BoundingBoxIndex<MapItem> mapItems = new BoundingBoxIndex<>();
+    // TFE, 20261019: everything shown on the map by its file waypoint, track segment or route - to apply only the differences on the next update
+    private final Map<GPXLineItem, MapItem> mapItemRegistry = new HashMap<>();
+    // TFE, 20261019: clusters & single file waypoints currently shown from the cluster index
+    private WaypointClusterIndex<GPXWaypoint> clusterIndex = null;
+    private long clusterFingerprint = 0;
+    private final BidiMap<String, Long> clusters = new DualHashBidiMap<>();
+    // TFE, 20261019: world coordinates of all track waypoints for the heat map - null if they need to be re-calculated
+    private double[] heatMapX = null;
+    private double[] heatMapY = null;
 
     // store start/end fileWaypointsCount of trackSegments and routes + markers as apache bidirectional map
     private final BidiMap<String, GPXWaypoint> markers = new DualHashBidiMap<>();
     
+    // TFE, 20261019: viewshed currently calculated / shown
+    private Viewshed currentViewshed = null;
+    
     // TFE, 20210820: keep track of map images that we have visited so far
     private final List<MapImage> mapImages = new ArrayList<>();
     private final PopOver mapImagePopOver = new PopOver();
     private Integer currentMapImageId = null;
 
     private BoundingBox mapBounds;
+    // TFE, 20261019: bounds of the selected line items - to prefetch map tiles
+    private double[] selectionBounds = null;
     private JSObject window;
     // need to have instance variable for the jscallback to avoid garbage collection...
     // https://stackoverflow.com/a/41908133
@@ -364,6 +475,11 @@ public class TrackMap extends LeafletMapView implements IPreferencesHolder {
     }
     
     public void initMap() {
+        // TFE, 20261019: terrain layers are served from our local tile server
+        SRTMTerrainTiles.getInstance().registerTileProviders();
+        // TFE, 20261019: and so is the heat map of all tracks
+        HeatMapTiles.getInstance().registerTileProvider();
+
         final MapConfig myMapConfig = new MapConfig(
 //                new ArrayList<>(Arrays.asList(MapLayerUsage.getInstance().getEnabledSortedBaselayer().get(0))),
 //                new ArrayList<>(Arrays.asList(MapLayerUsage.getInstance().getEnabledSortedOverlays().get(0))),
@@ -528,6 +644,9 @@ public class TrackMap extends LeafletMapView implements IPreferencesHolder {
                 addScriptFromPath(LEAFLET_PATH + "/SunriseSunset" + MIN_EXT + ".js");
                 addStyleFromPath(LEAFLET_PATH + "/SunriseSunset" + MIN_EXT + ".css");
 
+                // TFE, 20261019: support for viewshed overlay
+                addScriptFromPath(LEAFLET_PATH + "/Viewshed" + MIN_EXT + ".js");
+
                 // TFE, 20230201: show / hide timezones overlay
                 addScriptFromPath(LEAFLET_PATH + "/timezones/L.timezones" + MIN_EXT + ".js");
                 addScriptFromPath(LEAFLET_PATH + "/Timezones" + MIN_EXT + ".js");
@@ -1048,7 +1167,27 @@ public class TrackMap extends LeafletMapView implements IPreferencesHolder {
             }
         });
         
-        contextMenu.getItems().addAll(showCord, editWaypoint, addWaypoint, addRoute, separator, searchPoints, gotoCoordinate, showHorizon, showSunriseSunset);
+        // TFE, 20261019: show what can be seen from here
+        final MenuItem showViewshed = new MenuItem("Show Viewshed");
+        showViewshed.setOnAction((event) -> {
+            assert (contextMenu.getProperties().get(KnowProperties.LATLON) != null);
+            LatLonElev curLocation = ObjectsHelper.uncheckedCast(contextMenu.getProperties().get(KnowProperties.LATLON));
+
+            final GPXWaypoint curWaypoint = ObjectsHelper.uncheckedCast(contextMenu.getProperties().get(KnowProperties.WAYPOINT));
+            if (curWaypoint != null) {
+                curLocation = new LatLonElev(curWaypoint.getLatitude(), curWaypoint.getLongitude(), curWaypoint.getElevation());
+            }
+
+            showViewshed(curLocation);
+        });
+        
+        // TFE, 20261019: load map tiles for the selected tracks into the disk cache - e.g. before going offline
+        final MenuItem prefetchTiles = new MenuItem("Prefetch Map Tiles");
+        prefetchTiles.setOnAction((event) -> {
+            prefetchMapTiles();
+        });
+        
+        contextMenu.getItems().addAll(showCord, editWaypoint, addWaypoint, addRoute, separator, searchPoints, gotoCoordinate, showHorizon, showSunriseSunset, showViewshed, prefetchTiles);
 
 //        // tricky: setOnShowing isn't useful here since its not called for two subsequent right mouse clicks...
         contextMenu.anchorXProperty().addListener((ObservableValue<? extends Number> observable, Number oldValue, Number newValue) -> {
@@ -1221,28 +1360,44 @@ public class TrackMap extends LeafletMapView implements IPreferencesHolder {
             return;
         }
 
-        // forget the past...
-        fileWaypoints.clear();
-        selectedWaypoints.clear();
-        trackSegments.clear();
-        trackWaypoints.clear();
-        routes.clear();
-        routeWaypoints.clear();
         if (!isLoaded) {
+            // forget the past...
+            clearMapItems();
             System.err.println("Mama, we need task handling!");
             return;
         }
+        
+        // TFE, 20191230: avoid mess up when metadata is selected - nothing  todo after clearing
+        final boolean showNothing = CollectionUtils.isEmpty(myGPXLineItems) || myGPXLineItems.get(0).isGPXMetadata();
+
         setVisible(false);
-        clearMarkersAndTracks();
+        // TFE, 20261019: keep what is already shown - only the differences to the new line items are applied later on
+        clearSomeSelectedGPXWaypoints(selectedWaypoints);
+        if (showNothing) {
+            clearMapItems();
+            clearMarkersAndTracks();
+        } else {
+            // anything not belonging to a map item has to go, e.g. new waypoints & routes added via the context menu
+            final Set<String> keepLayers = new HashSet<>();
+            for (MapItem mapItem : mapItemRegistry.values()) {
+                keepLayers.addAll(mapItem.layers);
+            }
+            keepLayers.addAll(clusters.keySet());
+            fileWaypoints.keySet().retainAll(keepLayers);
+            trackSegments.keySet().retainAll(keepLayers);
+            routes.keySet().retainAll(keepLayers);
+            markers.keySet().retainAll(keepLayers);
+            applyMapScene(createMapScene().clearMarkersAndTracks(keepLayers));
+        }
         execScript("clearSearchResults();");
         execScript("stopRouting(false);");
+        clearViewshed();
         // for use with Leaflet.Draw
 //        execScript("clearEditable();");
         execScript("destroyPlayback();");
         setVisible(true);
 
-        // TFE, 20191230: avoid mess up when metadata is selected - nothing  todo after clearing
-        if (CollectionUtils.isEmpty(myGPXLineItems) || myGPXLineItems.get(0).isGPXMetadata()) {
+        if (showNothing) {
             // nothing more todo...
             return;
         }
@@ -1301,7 +1456,8 @@ public class TrackMap extends LeafletMapView implements IPreferencesHolder {
 
             // TFE, 20200206: in case we have only file waypointsToShow we need to include them in calculation of bounds - e.g. for new, empty tracksegment
             // TFE, 20221105: if we click on a file we want to see the whole thing and not only the waypoints from trackes & routes
-            final double[] bounds = showWaypoints(masterList, waypointCount, alwayShowFileWaypoints && !(fileWaypointCount == waypointCount) && !fileIsShown);
+            final double[] bounds = showWaypoints(masterList, waypointCount, alwayShowFileWaypoints && !(fileWaypointCount == waypointCount) && !fileIsShown, doFitBounds);
+            selectionBounds = (bounds[4] > 0d && waypointCount > 0) ? bounds : null;
 
             // TFE, 20190822: setMapBounds fails for no waypointsToShow...
             if (bounds[4] > 0d && waypointCount > 0) {
@@ -1314,7 +1470,11 @@ public class TrackMap extends LeafletMapView implements IPreferencesHolder {
     //        System.out.println("setGPXWaypoints End:  " + Instant.now());
         });
     }
-    private double[] showWaypoints(final List<List<GPXWaypoint>> masterList, final int waypointCount, final boolean ignoreFileWayPointsInBounds) {
+    private double[] showWaypoints(
+            final List<List<GPXWaypoint>> masterList, 
+            final int waypointCount, 
+            final boolean ignoreFileWayPointsInBounds, 
+            final boolean doFitBounds) {
         // TFE, 20180516: ignore fileWaypointsCount in count of wwaypoints to show. Otherwise no trackSegments getAsString shown if already enough waypointsToShow...
         // file fileWaypointsCount don't count into MAX_WAYPOINTS
         //final long fileWaypointsCount = lineItem.getCombinedGPXWaypoints(GPXLineItem.GPXLineItemType.GPXFile).size();
@@ -1330,74 +1490,153 @@ public class TrackMap extends LeafletMapView implements IPreferencesHolder {
         // TODO: switch to standard Bounds3D
         double[] bounds = {Double.MAX_VALUE, -Double.MAX_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE, 0d};
         
-        int count = 0, i = 0;
+        // TFE, 20261019: collect everything in an index by bounding box - only what intersects the viewport gets shown
+        // and compare with what is already on the map - only the differences are applied
+        final MapSceneBuilder scene = createMapScene();
+        final Map<GPXLineItem, MapItem> newRegistry = new HashMap<>();
+        List<GPXWaypoint> clusterWaypoints = null;
         for (List<GPXWaypoint> gpxWaypoints : masterList) {
-            final List<LatLonElev> waypointsToShow = new ArrayList<>();
-            LatLonElev firstLatLong = null;
-            LatLonElev lastLatLong = null;
-
-            for (GPXWaypoint gpxWaypoint : gpxWaypoints) {
-                final LatLonElev latLong = new LatLonElev(gpxWaypoint.getLatitude(), gpxWaypoint.getLongitude());
-                // TFE, 20180818: don't count file waypointsToShow in bounds if they're only shown "additionally"
-                if (!gpxWaypoint.isGPXFileWaypoint() || !ignoreFileWayPointsInBounds) {
-                    bounds = extendBounds(bounds, latLong);
-                }
-
-                if (gpxWaypoint.isGPXFileWaypoint()) {
-                    // we show all file waypointsToShow
-                    // TFE, 20180520 - with their correct marker!
-                    // and description - if any
-                    final String waypoint = addMarkerAndCallback(
-                            gpxWaypoint, 
-                            gpxWaypoint.getTooltip(), 
-                            MarkerManager.getInstance().getMarkerForWaypoint(gpxWaypoint), 
-                            MarkerType.MARKER,
-                            0, 
-                            true);
-                    fileWaypoints.put(waypoint, gpxWaypoint);
-                    
-                    bounds[4] = 1d;
-                } else {
-                    // we only show a subset of other waypointsToShow - up to MAX_WAYPOINTS
-                    i++;    
-                    if (i * ratio >= count) {
-                        waypointsToShow.add(latLong);
-                        // set counter for markers as initial marker name
-                        if (gpxWaypoint.isGPXTrackWaypoint()) {
-                            gpxWaypoint.setMarker(TRACKPOINT_MARKER + i);
-                            trackWaypoints.put(gpxWaypoint.getMarker(), gpxWaypoint);
-                        } else if (gpxWaypoint.isGPXRouteWaypoint()) {
-                            gpxWaypoint.setMarker(ROUTEPOINT_MARKER + i);
-                            routeWaypoints.put(gpxWaypoint.getMarker(), gpxWaypoint);
-                        }
-                        count++;
+            if (gpxWaypoints.isEmpty()) {
+                continue;
+            }
+            
+            if (gpxWaypoints.get(0).isGPXFileWaypoint()) {
+                for (GPXWaypoint gpxWaypoint : gpxWaypoints) {
+                    // TFE, 20180818: don't count file waypointsToShow in bounds if they're only shown "additionally"
+                    if (!ignoreFileWayPointsInBounds) {
+                        bounds = extendBounds(bounds, gpxWaypoint);
                     }
-
-                    if (firstLatLong == null) {
-                        firstLatLong = latLong;
+                    
+                    // we show all file waypointsToShow - each on its own since they can be anywhere
+                    // TFE, 20261019: unless there are too many of them
+                    if (gpxWaypoints.size() < MIN_WAYPOINTS_TO_CLUSTER) {
+                        registerMapItem(scene, newRegistry, new MapItem(gpxWaypoint, Arrays.asList(gpxWaypoint), 1.0));
                     }
-                    lastLatLong = latLong;
                 }
-            }
-            
-            // only relevant for non file waypointsToShow
-            if (!waypointsToShow.isEmpty()) {
-                // TFE, 20180402: always add first & last point to list
-                if (!waypointsToShow.contains(firstLatLong)) {
-                    waypointsToShow.add(0, firstLatLong);
+                if (gpxWaypoints.size() >= MIN_WAYPOINTS_TO_CLUSTER) {
+                    clusterWaypoints = gpxWaypoints;
                 }
-                if (!waypointsToShow.contains(lastLatLong)) {
-                    waypointsToShow.add(lastLatLong);
+            } else {
+                for (GPXWaypoint gpxWaypoint : gpxWaypoints) {
+                    bounds = extendBounds(bounds, gpxWaypoint);
                 }
-                
-                showWaypointsOnMap(waypointsToShow, gpxWaypoints);
-                bounds[4] = 1d;
+
+                // we only show a subset of other waypointsToShow - up to MAX_WAYPOINTS
+                // TFE, 20261019: track segments are reduced depending on the zoom level, routes are edited vertex by vertex, so they keep using a simple ratio
+                registerMapItem(scene, newRegistry, new MapItem((GPXLineItem) gpxWaypoints.get(0).getParent(), gpxWaypoints, ratio));
+            }
+            bounds[4] = 1d;
+        }
+        
+        // whatever isn't shown anymore needs to go
+        for (MapItem mapItem : mapItemRegistry.values()) {
+            if (!newRegistry.containsKey(mapItem.lineItem)) {
+                hideMapItem(scene, mapItem);
+                mapItems.remove(mapItem);
             }
         }
+        mapItemRegistry.clear();
+        mapItemRegistry.putAll(newRegistry);
+        heatMapX = null;
+        setClusterWaypoints(scene, clusterWaypoints);
+        
+        // map will show the whole thing if we fit bounds - otherwise we stay where we are
+        if (doFitBounds && bounds[4] > 0d) {
+            updateMapItems(scene, bounds[0], bounds[1], bounds[2], bounds[3]);
+        } else {
+            updateMapItems(scene, mapBounds.getMinX(), mapBounds.getMaxX(), mapBounds.getMinY(), mapBounds.getMaxY());
+        }
+        applyMapScene(scene);
                 
         return bounds;
     }
-    private double[] extendBounds(final double[] bounds, final LatLonElev latLong) {
+    /**
+     * Re-use the map item already shown for the same line item if its shape hasn't changed.
+     * 
+     * Otherwise the new map item replaces the old one and is shown once it intersects the viewport.
+     */
+    private void registerMapItem(final MapSceneBuilder scene, final Map<GPXLineItem, MapItem> newRegistry, final MapItem newItem) {
+        if (newRegistry.containsKey(newItem.lineItem)) {
+            // e.g. a file and one of its tracks are selected
+            return;
+        }
+        
+        final MapItem oldItem = mapItemRegistry.get(newItem.lineItem);
+        if (oldItem != null && oldItem.shape == newItem.shape) {
+            oldItem.gpxWaypoints = newItem.gpxWaypoints;
+            if (!oldItem.style.equals(newItem.style)) {
+                oldItem.style = newItem.style;
+                restyleMapItem(scene, oldItem);
+            }
+            newRegistry.put(oldItem.lineItem, oldItem);
+        } else {
+            if (oldItem != null) {
+                hideMapItem(scene, oldItem);
+                mapItems.remove(oldItem);
+            }
+            mapItems.add(newItem, newItem.gpxWaypoints);
+            newRegistry.put(newItem.lineItem, newItem);
+        }
+    }
+    private void restyleMapItem(final MapSceneBuilder scene, final MapItem mapItem) {
+        final String layer;
+        final LineStyle lineStyle;
+        if (mapItem.isTrackSegment()) {
+            layer = trackSegments.getKey(mapItem.gpxTrackSegment);
+            lineStyle = mapItem.gpxTrackSegment.getParent().getLineStyle();
+        } else if (mapItem.lineItem.isGPXRoute()) {
+            layer = routes.getKey((GPXRoute) mapItem.lineItem);
+            lineStyle = ((GPXRoute) mapItem.lineItem).getLineStyle();
+        } else {
+            return;
+        }
+        
+        // not shown at the moment - will get the new style once it is
+        if (layer == null) {
+            return;
+        }
+        
+        scene.addCall(layer, "updateMarkerStyle", 
+                lineStyle.getColor().getJSColor(), 
+                String.valueOf(lineStyle.getWidth()), 
+                lineStyle.getOpacity().toString(), 
+                lineStyle.getLinecap().toString());
+        scene.addCall(layer, "addNameToLayer", 
+                mapItem.isTrackSegment() ? mapItem.gpxTrackSegment.getParent().getName() : mapItem.lineItem.getName());
+    }
+    private void clearMapItems() {
+        fileWaypoints.clear();
+        selectedWaypoints.clear();
+        trackSegments.clear();
+        trackWaypoints.clear();
+        routes.clear();
+        routeWaypoints.clear();
+        markers.clear();
+        mapItems.clear();
+        mapItemRegistry.clear();
+        clusters.clear();
+        clusterIndex = null;
+        heatMapX = null;
+    }
+    private static Boolean[] getKeepForRatio(final int size, final double ratio) {
+        final Boolean[] keep = new Boolean[size];
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            keep[i] = ((i + 1) * ratio >= count);
+            if (keep[i]) {
+                count++;
+            }
+        }
+        
+        // TFE, 20180402: always add first & last point to list
+        if (size > 0) {
+            keep[0] = true;
+            keep[size-1] = true;
+        }
+        
+        return keep;
+    }
+    private double[] extendBounds(final double[] bounds, final IGeoCoordinate latLong) {
         assert bounds.length == 5;
         
         bounds[0] = Math.min(bounds[0], latLong.getLatitude());
@@ -1409,7 +1648,8 @@ public class TrackMap extends LeafletMapView implements IPreferencesHolder {
 
         return bounds;
     }
-    private void showWaypointsOnMap(final List<LatLonElev> waypoints, final List<GPXWaypoint> gpxWaypoints) {
+    private void showWaypointsOnMap(final MapSceneBuilder scene, final MapItem mapItem, final List<LatLonElev> waypoints) {
+        final List<GPXWaypoint> gpxWaypoints = mapItem.gpxWaypoints;
         if (!waypoints.isEmpty()) {
 
             LatLonElev point = waypoints.get(0);
@@ -1417,27 +1657,236 @@ public class TrackMap extends LeafletMapView implements IPreferencesHolder {
             
             if (GPXEditorPreferences.SHOW_TRACK_SYMBOLS.getAsType()) {
                 // show start & end markers
-                String marker = addMarkerAndCallback(gpxpoint, "", ColorMarker.GREEN_MARKER, MarkerType.MARKER, 1000, false);
+                String marker = addMarkerAndCallback(scene, gpxpoint, "", ColorMarker.GREEN_MARKER, MarkerType.MARKER, 1000, false);
                 markers.put(marker, gpxpoint);
+                mapItem.layers.add(marker);
 
                 point = waypoints.get(waypoints.size()-1);
                 gpxpoint = gpxWaypoints.get(gpxWaypoints.size()-1);
-                marker = addMarkerAndCallback(gpxpoint, "", ColorMarker.RED_MARKER, MarkerType.MARKER, 2000, false);
+                marker = addMarkerAndCallback(scene, gpxpoint, "", ColorMarker.RED_MARKER, MarkerType.MARKER, 2000, false);
                 markers.put(marker, gpxpoint);
+                mapItem.layers.add(marker);
             }
             
             if (gpxpoint.isGPXTrackWaypoint()) {
                 // show track
                 final GPXTrackSegment gpxTrackSegment = (GPXTrackSegment) gpxpoint.getParent();
-                final String track = addTrackAndCallback(waypoints, gpxTrackSegment.getParent().getName(), gpxTrackSegment.getParent().getLineStyle());
+                final String track = addTrackAndCallback(scene, waypoints, gpxTrackSegment.getParent().getName(), gpxTrackSegment.getParent().getLineStyle());
                 trackSegments.put(track, gpxTrackSegment);
+                mapItem.layers.add(track);
             } else if (gpxpoint.isGPXRouteWaypoint()) {
                 final GPXRoute gpxRoute = (GPXRoute) gpxpoint.getParent();
-                final String route = addTrackAndCallback(waypoints, gpxRoute.getName(), gpxRoute.getLineStyle());
-                execScript("makeEditable(\"" + route + "\");");
+                final String route = addTrackAndCallback(scene, waypoints, gpxRoute.getName(), gpxRoute.getLineStyle());
+                scene.addCall(route, "makeEditable");
                 routes.put(route, gpxRoute);
+                mapItem.layers.add(route);
+            }
+        }
+    }
+    
+    /**
+     * Add what has come into view to the map and remove what has left it.
+     * 
+     * Track segments that remain on the map are updated if the level of detail has changed.
+     */
+    private void updateMapItems(final MapSceneBuilder scene, final double minLat, final double maxLat, final double minLon, final double maxLon) {
+        final double latPadding = (maxLat - minLat) * VIEWPORT_PADDING;
+        final double lonPadding = (maxLon - minLon) * VIEWPORT_PADDING;
+        final BoundingBoxIndex.ViewportChange<MapItem> change = 
+                mapItems.setViewport(minLat - latPadding, maxLat + latPadding, minLon - lonPadding, maxLon + lonPadding);
+        
+        for (MapItem mapItem : change.getRemoved()) {
+            hideMapItem(scene, mapItem);
+        }
+        
+        // level of detail depends on the zoom and on the number of visible track segments
+        final List<MapItem> visibleItems = mapItems.getVisible();
+        final List<GPXTrackSegment> gpxTrackSegments = new ArrayList<>();
+        for (MapItem mapItem : visibleItems) {
+            if (mapItem.isTrackSegment()) {
+                gpxTrackSegments.add(mapItem.gpxTrackSegment);
             }
         }
+        final int newLodZoom = ZoomLevelReducer.getInstance().getZoomForLimit(
+                gpxTrackSegments, getZoom(), GPXEditorPreferences.MAX_WAYPOINTS_TO_SHOW.getAsType());
+        if (newLodZoom != lodZoom) {
+            lodZoom = newLodZoom;
+
+            // replace the coordinates of the existing polylines - that keeps all callbacks in place
+            final Set<MapItem> addedItems = new HashSet<>(change.getAdded());
+            for (MapItem mapItem : visibleItems) {
+                if (mapItem.isTrackSegment() && !mapItem.layers.isEmpty() && !addedItems.contains(mapItem)) {
+                    final String track = trackSegments.getKey(mapItem.gpxTrackSegment);
+                    if (track != null) {
+                        scene.updateTrack(track, getWaypointsToShow(mapItem));
+                    }
+                }
+            }
+        }
+        
+        for (MapItem mapItem : change.getAdded()) {
+            showMapItem(scene, mapItem);
+        }
+        
+        updateClusters(scene, minLat - latPadding, maxLat + latPadding, minLon - lonPadding, maxLon + lonPadding);
+    }
+    
+    /**
+     * Set the file waypoints to be shown as clusters - or null if none.
+     * 
+     * The cluster index is only re-built if the waypoints have changed.
+     */
+    private void setClusterWaypoints(final MapSceneBuilder scene, final List<GPXWaypoint> gpxWaypoints) {
+        final long fingerprint = (gpxWaypoints != null) ? ZoomLevelReducer.getFingerprint(gpxWaypoints) : 0;
+        if (gpxWaypoints != null && clusterIndex != null && fingerprint == clusterFingerprint) {
+            return;
+        }
+        
+        for (String layer : clusters.keySet()) {
+            scene.removeLayer(layer);
+            fileWaypoints.remove(layer);
+        }
+        clusters.clear();
+        
+        clusterIndex = (gpxWaypoints != null) ? new WaypointClusterIndex<>(gpxWaypoints) : null;
+        clusterFingerprint = fingerprint;
+    }
+    
+    /**
+     * Show the clusters of file waypoints for the current zoom in the viewport.
+     * 
+     * Clusters and waypoints that are already shown stay on the map.
+     */
+    private void updateClusters(final MapSceneBuilder scene, final double minLat, final double maxLat, final double minLon, final double maxLon) {
+        if (clusterIndex == null) {
+            return;
+        }
+        
+        final List<WaypointClusterIndex.Cluster<GPXWaypoint>> newClusters = clusterIndex.getClusters(getZoom(), minLat, maxLat, minLon, maxLon);
+        final Set<Long> newKeys = new HashSet<>();
+        for (WaypointClusterIndex.Cluster<GPXWaypoint> cluster : newClusters) {
+            newKeys.add(cluster.getKey());
+        }
+        
+        final List<String> oldLayers = new ArrayList<>();
+        for (Map.Entry<String, Long> entry : clusters.entrySet()) {
+            if (!newKeys.contains(entry.getValue())) {
+                oldLayers.add(entry.getKey());
+            }
+        }
+        for (String layer : oldLayers) {
+            scene.removeLayer(layer);
+            fileWaypoints.remove(layer);
+            clusters.remove(layer);
+        }
+        
+        for (WaypointClusterIndex.Cluster<GPXWaypoint> cluster : newClusters) {
+            if (clusters.containsValue(cluster.getKey())) {
+                continue;
+            }
+            
+            final String layer;
+            if (cluster.isLeaf()) {
+                final GPXWaypoint gpxWaypoint = cluster.getItem();
+                layer = addMarkerAndCallback(
+                        scene,
+                        gpxWaypoint, 
+                        gpxWaypoint.getTooltip(), 
+                        MarkerManager.getInstance().getMarkerForWaypoint(gpxWaypoint), 
+                        MarkerType.MARKER,
+                        0, 
+                        true);
+                fileWaypoints.put(layer, gpxWaypoint);
+            } else {
+                layer = scene.addCluster(cluster);
+            }
+            clusters.put(layer, cluster.getKey());
+        }
+    }
+    
+    private void showMapItem(final MapSceneBuilder scene, final MapItem mapItem) {
+        if (mapItem.gpxWaypoints.isEmpty()) {
+            // e.g. all route points have been deleted
+            return;
+        }
+        final GPXWaypoint gpxWaypoint = mapItem.gpxWaypoints.get(0);
+
+        if (gpxWaypoint.isGPXFileWaypoint()) {
+            // TFE, 20180520 - with their correct marker!
+            // and description - if any
+            final String waypoint = addMarkerAndCallback(
+                    scene,
+                    gpxWaypoint, 
+                    gpxWaypoint.getTooltip(), 
+                    MarkerManager.getInstance().getMarkerForWaypoint(gpxWaypoint), 
+                    MarkerType.MARKER,
+                    0, 
+                    true);
+            fileWaypoints.put(waypoint, gpxWaypoint);
+            mapItem.layers.add(waypoint);
+        } else {
+            showWaypointsOnMap(scene, mapItem, getWaypointsToShow(mapItem));
+        }
+    }
+    
+    private void hideMapItem(final MapSceneBuilder scene, final MapItem mapItem) {
+        for (String layer : mapItem.layers) {
+            scene.removeLayer(layer);
+            
+            fileWaypoints.remove(layer);
+            markers.remove(layer);
+            trackSegments.remove(layer);
+            routes.remove(layer);
+        }
+        mapItem.layers.clear();
+        
+        // start & end markers of routes are replaced when editing the route
+        if (!mapItem.gpxWaypoints.isEmpty()) {
+            for (GPXWaypoint gpxWaypoint : Arrays.asList(mapItem.gpxWaypoints.get(0), mapItem.gpxWaypoints.get(mapItem.gpxWaypoints.size()-1))) {
+                final String marker = markers.removeValue(gpxWaypoint);
+                if (marker != null) {
+                    scene.removeLayer(marker);
+                }
+            }
+        }
+        
+        for (GPXWaypoint gpxWaypoint : mapItem.gpxWaypoints) {
+            // selected waypoints stay since their marker is shown anyways
+            if (!selectedWaypoints.containsValue(gpxWaypoint)) {
+                trackWaypoints.removeValue(gpxWaypoint);
+                routeWaypoints.removeValue(gpxWaypoint);
+            }
+        }
+    }
+    
+    private List<LatLonElev> getWaypointsToShow(final MapItem mapItem) {
+        final List<GPXWaypoint> gpxWaypoints = mapItem.gpxWaypoints;
+        final List<LatLonElev> result = new ArrayList<>();
+        
+        final Boolean[] keep;
+        if (mapItem.isTrackSegment()) {
+            keep = ZoomLevelReducer.getInstance().apply(mapItem.gpxTrackSegment, lodZoom);
+        } else {
+            keep = getKeepForRatio(gpxWaypoints.size(), mapItem.ratio);
+        }
+        
+        for (int i = 0; i < gpxWaypoints.size(); i++) {
+            final GPXWaypoint gpxWaypoint = gpxWaypoints.get(i);
+            final BidiMap<String, GPXWaypoint> shownWaypoints = gpxWaypoint.isGPXTrackWaypoint() ? trackWaypoints : routeWaypoints;
+            if (keep[i]) {
+                result.add(new LatLonElev(gpxWaypoint.getLatitude(), gpxWaypoint.getLongitude()));
+                // set counter for markers as initial marker name
+                if (!shownWaypoints.containsValue(gpxWaypoint)) {
+                    waypointMarkerCount++;
+                    gpxWaypoint.setMarker((gpxWaypoint.isGPXTrackWaypoint() ? TRACKPOINT_MARKER : ROUTEPOINT_MARKER) + waypointMarkerCount);
+                    shownWaypoints.put(gpxWaypoint.getMarker(), gpxWaypoint);
+                }
+            } else if (shownWaypoints.containsValue(gpxWaypoint) && !selectedWaypoints.containsValue(gpxWaypoint)) {
+                shownWaypoints.removeValue(gpxWaypoint);
+            }
+        }
+        
+        return result;
     }
     
     public void updateGPXWaypoints(final List<GPXWaypoint> gpxWaypoints) {
@@ -1508,9 +1957,15 @@ public class TrackMap extends LeafletMapView implements IPreferencesHolder {
             String waypoint;
 
             if (gpxWaypoint.isGPXFileWaypoint()) {
-                // updated current marker instead of adding new one on top of the old
-                waypoint = fileWaypoints.getKey(gpxWaypoint);
-                execScript("highlightMarker(\"" + waypoint + "\");");
+                // TFE, 20261019: file waypoints might be hidden in a cluster or outside of the viewport
+                if (fileWaypoints.containsValue(gpxWaypoint)) {
+                    // updated current marker instead of adding new one on top of the old
+                    waypoint = fileWaypoints.getKey(gpxWaypoint);
+                    execScript("highlightMarker(\"" + waypoint + "\");");
+                } else {
+                    notShownCount++;
+                    waypoint = NOT_SHOWN + notShownCount;
+                }
             } else if (trackWaypoints.containsValue(gpxWaypoint) || routeWaypoints.containsValue(gpxWaypoint) || highlightIfHidden) {
                 // only show selected waypoint if already shown
                 if (!useLineMarker) {
@@ -1603,7 +2058,9 @@ public class TrackMap extends LeafletMapView implements IPreferencesHolder {
         for (String waypoint : waypoints.keySet()) {
             final GPXWaypoint gpxWaypoint = waypoints.get(waypoint);
             if (gpxWaypoint.isGPXFileWaypoint()) {
-                execScript("unlightMarker(\"" + waypoint + "\");");
+                if (!waypoint.startsWith(NOT_SHOWN)) {
+                    execScript("unlightMarker(\"" + waypoint + "\");");
+                }
             } else {
                 // TFE, 20180409: only remove waypointsToShow that have actually been added
                 if (!waypoint.startsWith(NOT_SHOWN)) {
@@ -1696,18 +2153,24 @@ public class TrackMap extends LeafletMapView implements IPreferencesHolder {
             i++;
         }
 
+        // TFE, 20261019: start & end markers are part of the map item of the route
+        final MapItem mapItem = mapItemRegistry.get(gpxRoute);
+        final List<String> itemLayers = (mapItem != null) ? mapItem.layers : new ArrayList<>();
+
         final List<GPXWaypoint> oldGPXWaypoints = gpxRoute.getGPXWaypoints();
         if (!oldGPXWaypoints.isEmpty()) {
             // remove old start / end markers
             GPXWaypoint gpxWaypoint = oldGPXWaypoints.get(0);
             String gpxMarker = markers.removeValue(gpxWaypoint);
             removeMarker(gpxMarker);
+            itemLayers.remove(gpxMarker);
             
             // we have start & end markers
             if (oldGPXWaypoints.size() > 1) {
                 gpxWaypoint = oldGPXWaypoints.get(oldGPXWaypoints.size()-1);
                 gpxMarker = markers.removeValue(gpxWaypoint);
                 removeMarker(gpxMarker);
+                itemLayers.remove(gpxMarker);
             }
         }
         
@@ -1724,12 +2187,14 @@ public class TrackMap extends LeafletMapView implements IPreferencesHolder {
             GPXWaypoint gpxWaypoint = newGPXWaypoints.get(0);
             String temp = addMarkerAndCallback(gpxWaypoint, "", ColorMarker.GREEN_MARKER, MarkerType.MARKER, 1000, false);
             markers.put(temp, gpxWaypoint);
+            itemLayers.add(temp);
 
             // we have start & end point
             if (newGPXWaypoints.size() > 1) {
                 gpxWaypoint = newGPXWaypoints.get(newGPXWaypoints.size()-1);
                 temp = addMarkerAndCallback(gpxWaypoint, "", ColorMarker.RED_MARKER, MarkerType.MARKER, 2000, false);
                 markers.put(temp, gpxWaypoint);
+                itemLayers.add(temp);
             }
         }
 
@@ -1826,6 +2291,21 @@ public class TrackMap extends LeafletMapView implements IPreferencesHolder {
             final MarkerType markerType, 
             final int zIndex, 
             final boolean interactive) {
+        // TFE, 20261019: a single marker is a scene of its own
+        final MapSceneBuilder scene = createMapScene();
+        final String layer = addMarkerAndCallback(scene, gpxWaypoint, pointTitle, marker, markerType, zIndex, interactive);
+        applyMapScene(scene);
+        
+        return layer;
+    }
+    private String addMarkerAndCallback(
+            final MapSceneBuilder scene, 
+            final GPXWaypoint gpxWaypoint, 
+            final String pointTitle, 
+            final IMarker marker, 
+            final MarkerType markerType, 
+            final int zIndex, 
+            final boolean interactive) {
         final LatLonElev point = new LatLonElev(gpxWaypoint.getLatitude(), gpxWaypoint.getLongitude());
         
         // TFE, 20180513: if waypoint has a name, add it to the pop-up
@@ -1839,7 +2319,7 @@ public class TrackMap extends LeafletMapView implements IPreferencesHolder {
         // make sure the icon has been loaded and added in js
         if (marker instanceof MarkerIcon && !((MarkerIcon) marker).getAvailableInLeaflet()) {
             final MarkerIcon markerIcon = (MarkerIcon) marker;
-            addPNGIcon(markerIcon.getIconName(), MarkerManager.DEFAULT_ICON_SIZE, MarkerManager.getInstance().getIcon(markerIcon.getIconName()));
+            scene.addPNGIcon(markerIcon.getIconName(), MarkerManager.DEFAULT_ICON_SIZE, MarkerManager.getInstance().getIcon(markerIcon.getIconName()));
             markerIcon.setAvailableInLeaflet(true);
         }
         
@@ -1849,7 +2329,8 @@ public class TrackMap extends LeafletMapView implements IPreferencesHolder {
         if (MarkerType.CIRCLEMARKER.equals(markerType)) {
             layer = addCircleMarker(point, StringEscapeUtils.escapeEcmaScript(markerTitle), marker, zIndex);
         } else {
-            layer = addMarker(point, StringEscapeUtils.escapeEcmaScript(markerTitle), marker, zIndex);
+            // TFE, 20261019: scene takes care of escaping
+            layer = scene.addMarker(point, markerTitle, marker, zIndex);
         }
         
         // TFE, 20210104: performance - combind all args into only one call to execScript()
@@ -1866,7 +2347,7 @@ public class TrackMap extends LeafletMapView implements IPreferencesHolder {
                 lineParm = trackSegments.getKey(parent);
             }
         }
-        execScript("initCallback(\"" + layer + "\", " + latParm + ", " + lngParm + ", \"" + lineParm + "\");");
+        scene.addCall(layer, "initCallback", latParm, lngParm, lineParm);
 
 //            execScript("addMouseOverToLayer(\"" + layer + "\");");
 //            if (interactive) {
@@ -1885,15 +2366,10 @@ public class TrackMap extends LeafletMapView implements IPreferencesHolder {
                 gpxWaypoint.getName() != null && !gpxWaypoint.getName().isEmpty()) {
             // add name as permanent tooltip
             // https://leafletjs.com/reference-1.0.3.html#layer-bindtooltip
-            final String cmdString = 
-                    String.format(Locale.US, "%s.bindTooltip('%s', {permanent: true, direction: 'right', className: 'waypoint-name'});", 
-                            layer, StringEscapeUtils.escapeEcmaScript(gpxWaypoint.getName()));
+            scene.bindPermanentTooltip(layer, gpxWaypoint.getName(), "waypoint-name");
 
             // TODO: some clever logic in the case of too many tooltips
             // https://stackoverflow.com/questions/42364619/hide-tooltip-in-leaflet-for-a-zoom-range
-
-    //        System.out.println("addMarker: " + cmdString);
-            execScript(cmdString);
         }
 
         return layer;
@@ -1911,17 +2387,17 @@ public class TrackMap extends LeafletMapView implements IPreferencesHolder {
         return varName;
     }
 
-    private String addTrackAndCallback(final List<LatLonElev> waypoints, final String trackName, final LineStyle linestyle) {
-        final String layer = addTrack(
+    private String addTrackAndCallback(final MapSceneBuilder scene, final List<LatLonElev> waypoints, final String trackName, final LineStyle linestyle) {
+        final String layer = scene.addTrack(
                 waypoints, 
                 linestyle.getColor().getJSColor(), 
-                String.valueOf(linestyle.getWidth()), 
-                linestyle.getOpacity().toString(), 
-                linestyle.getLinecap().toString(), 
-                false);
+                linestyle.getWidth(), 
+                linestyle.getOpacity(), 
+                linestyle.getLinecap().toString());
         
         // reduce number of calls to execScript()
-        execScript("addClickToLayer(\"" + layer + "\", 0.0, 0.0);" + "\n" + "addNameToLayer(\"" + layer + "\", \"" + StringEscapeUtils.escapeEcmaScript(trackName) + "\");");
+        scene.addCall(layer, "addClickToLayer", 0.0, 0.0);
+        scene.addCall(layer, "addNameToLayer", trackName);
         return layer;
     }
     
@@ -1954,6 +2430,98 @@ public class TrackMap extends LeafletMapView implements IPreferencesHolder {
         updateMarker(layer, point, StringEscapeUtils.escapeEcmaScript(markerTitle), marker);
     }
     
+    /**
+     * Calculate the viewshed for a location in the background and show it as overlay.
+     * 
+     * All waypoints of the shown items that can be seen are marked as well.
+     * 
+     * @param location location of the observer
+     */
+    public void showViewshed(final IGeoCoordinate location) {
+        clearViewshed();
+        
+        final Viewshed viewshed = new Viewshed(location);
+        currentViewshed = viewshed;
+
+        final List<GPXWaypoint> gpxWaypoints = new ArrayList<>();
+        if (!CollectionUtils.isEmpty(myGPXLineItems)) {
+            final Set<GPXWaypoint> uniqueWaypoints = new LinkedHashSet<>();
+            for (GPXMeasurable lineItem : myGPXLineItems) {
+                uniqueWaypoints.addAll(lineItem.getCombinedGPXWaypoints(null));
+            }
+            gpxWaypoints.addAll(uniqueWaypoints);
+        }
+        
+        CompletableFuture.runAsync(() -> {
+            viewshed.calculate();
+            final boolean[] visibility = viewshed.getVisibility(gpxWaypoints);
+            
+            if (viewshed.isCancelled()) {
+                return;
+            }
+            final String image = getViewshedImage(viewshed);
+            final List<IGeoCoordinate> visibleWaypoints = new ArrayList<>();
+            for (int i = 0; i < visibility.length; i++) {
+                if (visibility[i]) {
+                    visibleWaypoints.add(gpxWaypoints.get(i));
+                }
+            }
+            
+            Platform.runLater(() -> {
+                if (viewshed != currentViewshed) {
+                    // someone else has been here in the meantime
+                    return;
+                }
+                if (viewshed.noElevationData()) {
+                    execScript("setViewshedPopup([" + location.getLatitude() + ", " + location.getLongitude() + "], \'No elevation data found.\');");
+                    return;
+                }
+                
+                execScript("showViewshed(\"" + image + "\", " + 
+                        viewshed.getSouth() + ", " + viewshed.getWest() + ", " + viewshed.getNorth() + ", " + viewshed.getEast() + ", " + 
+                        transformToJavascriptArray(visibleWaypoints) + ");");
+                if (!gpxWaypoints.isEmpty()) {
+                    execScript("setViewshedPopup([" + location.getLatitude() + ", " + location.getLongitude() + "], \'" + 
+                            visibleWaypoints.size() + " of " + gpxWaypoints.size() + " waypoints visible\');");
+                }
+            });
+        });
+    }
+    
+    public void clearViewshed() {
+        if (currentViewshed != null) {
+            currentViewshed.cancel();
+            currentViewshed = null;
+        }
+        execScript("clearViewshed();");
+    }
+    
+    private static String getViewshedImage(final Viewshed viewshed) {
+        // one pixel per cell: visible cells transparent green, hidden ones transparent grey
+        final int visibleColor = 0x8000C000;
+        final int hiddenColor = 0x60404040;
+
+        final BufferedImage image = new BufferedImage(viewshed.getColumns(), viewshed.getRows(), BufferedImage.TYPE_INT_ARGB);
+        final byte[] visibility = viewshed.getVisibility();
+        final int[] pixels = new int[visibility.length];
+        for (int i = 0; i < visibility.length; i++) {
+            switch (visibility[i]) {
+                case Viewshed.VISIBLE -> pixels[i] = visibleColor;
+                case Viewshed.HIDDEN -> pixels[i] = hiddenColor;
+                default -> pixels[i] = 0;
+            }
+        }
+        image.setRGB(0, 0, viewshed.getColumns(), viewshed.getRows(), pixels, 0, viewshed.getColumns());
+        
+        try (ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+            ImageIO.write(image, "png", out);
+            return "data:image/png;base64," + Base64.getEncoder().encodeToString(out.toByteArray());
+        } catch (IOException ex) {
+            Logger.getLogger(TrackMap.class.getName()).log(Level.SEVERE, null, ex);
+            return "";
+        }
+    }
+    
     public IGeoCoordinate getMapCenter() {
         return new LatLonElev(mapBounds.getCenterX(), mapBounds.getCenterY());
     }
@@ -1966,33 +2534,39 @@ public class TrackMap extends LeafletMapView implements IPreferencesHolder {
         execScript("setHeatMapButtonState(\"" + state.toString() + "\");");
     }
     private void updateHeatMapPane() {
-//        System.out.println("trackWaypoints: " + trackWaypoints.size());
-        final List<IGeoCoordinate> trackLatLongs = trackWaypoints.values().stream().map((t) -> {
-            return new LatLonElev(t.getLatitude(), t.getLongitude());
-        }).collect(Collectors.toList());
-
-        final String points = (String) execScript("getPointsForLatLngs(" + transformToJavascriptArray(trackLatLongs) + ");");
-        final List<Point2D> point2Ds = new ArrayList<>();
-        // parse point string back into Point2Ds
-        int i = 0;
-        for (String pointsstring : points.split(" - ")) {
-            final String[] temp = pointsstring.split(", ");
-            assert temp.length == 2;
-
-            final Double x = Double.parseDouble(temp[0].substring(2));
-            final Double y = Double.parseDouble(temp[1].substring(2));
-            // only add visible points
-            if (x >= 0 && y >= 0 && x <= myMapPane.getWidth() && y <= myMapPane.getHeight()) {
-//                System.out.println("Point added: " + x + ", " + y + ", latlon: " + trackLatLongs.get(i));
-                point2Ds.add(new Point2D(x, y));
-            } else {
-//                System.out.println("Point skipped: " + x + ", " + y + ", latlon: " + trackLatLongs.get(i));
+        // TFE, 20261019: project in java instead of sending all coordinates to javascript and parsing the result
+        // world coordinates only change with the waypoints - pan & zoom is then only scale & offset
+        if (heatMapX == null) {
+            int count = 0;
+            for (MapItem mapItem : mapItemRegistry.values()) {
+                if (mapItem.isTrackSegment()) {
+                    count += mapItem.gpxWaypoints.size();
+                }
+            }
+            
+            heatMapX = new double[count];
+            heatMapY = new double[count];
+            int i = 0;
+            for (MapItem mapItem : mapItemRegistry.values()) {
+                if (mapItem.isTrackSegment()) {
+                    for (GPXWaypoint gpxWaypoint : mapItem.gpxWaypoints) {
+                        heatMapX[i] = WebMercatorProjection.longitudeToX(gpxWaypoint.getLongitude());
+                        heatMapY[i] = WebMercatorProjection.latitudeToY(gpxWaypoint.getLatitude());
+                        i++;
+                    }
+                }
             }
-            i++;
         }
+        
+        final WebMercatorProjection projection = WebMercatorProjection.forBounds(
+                mapBounds.getMinX(), mapBounds.getMaxX(), mapBounds.getMinY(), mapBounds.getMaxY(), 
+                getZoom(), myMapPane.getWidth(), myMapPane.getHeight());
+        final double[] pixelX = new double[heatMapX.length];
+        final double[] pixelY = new double[heatMapY.length];
+        final int count = projection.toVisiblePixels(heatMapX, heatMapY, heatMapX.length, pixelX, pixelY);
 
         HeatMapPane.getInstance().clearHeatMap();
-        HeatMapPane.getInstance().addEvents(point2Ds);
+        HeatMapPane.getInstance().addEvents(pixelX, pixelY, count);
     }
     
     public void initPictureIcons() {
@@ -2065,6 +2639,68 @@ public class TrackMap extends LeafletMapView implements IPreferencesHolder {
         return geojson;
     }
     
+    /**
+     * Load the tiles of the current base layer and its visible overlays into the disk cache.
+     * Covers the bounds of the selected line items (or the visible part of the map) from the current zoom level to PREFETCH_ZOOM_LEVELS more.
+     */
+    public void prefetchMapTiles() {
+        if (!MapTileCache.getInstance().isEnabled()) {
+            return;
+        }
+
+        final double[] bounds;
+        if (selectionBounds != null) {
+            bounds = selectionBounds;
+        } else if (mapBounds != null) {
+            bounds = new double[] {mapBounds.getMinX(), mapBounds.getMaxX(), mapBounds.getMinY(), mapBounds.getMaxY()};
+        } else {
+            return;
+        }
+        
+        final String baseKey = getCurrentBaselayer();
+        final Optional<MapLayer> baseLayer = getBaselayer().stream().filter((t) -> t.getKey().equals(baseKey)).findFirst();
+        if (baseLayer.isEmpty()) {
+            return;
+        }
+        
+        final List<MapLayer> layers = new ArrayList<>();
+        layers.add(baseLayer.get());
+        final Map<String, Boolean> overlayValues = getOverlaysForBaselayer(baseLayer.get());
+        for (MapLayer overlay : MapLayerUsage.getInstance().getOverlayConfiguration(baseLayer.get()).keySet()) {
+            if (Boolean.TRUE.equals(overlayValues.get(overlay.getName()))) {
+                layers.add(overlay);
+            }
+        }
+        
+        final List<MapTileCache.LayerTiles> layerTiles = new ArrayList<>();
+        int maxZoom = getZoom() + MapTileCache.PREFETCH_ZOOM_LEVELS;
+        for (MapLayer layer : layers) {
+            if (MapTileCache.isCacheable(layer)) {
+                // TFE, 20261019: with the tile size & zoom offset leaflet uses for the layer
+                layerTiles.add(MapTileCache.getInstance().getLayerTiles(layer));
+                maxZoom = Math.min(maxZoom, layer.getMaxZoom());
+            }
+        }
+        if (layerTiles.isEmpty()) {
+            return;
+        }
+        
+        StatusBar.getInstance().setTaskText("Prefetching map tiles");
+        MapTileCache.getInstance().prefetch(layerTiles, bounds[0], bounds[1], bounds[2], bounds[3], getZoom(), maxZoom, 
+                (done, total) -> {
+                    Platform.runLater(() -> {
+                        StatusBar.getInstance().setTaskProgress(1.0 * done / total);
+                    });
+                }).
+                thenAccept((count) -> {
+                    Platform.runLater(() -> {
+                        StatusBar.getInstance().clearTaskText();
+                        StatusBar.getInstance().setTaskProgress(0.0);
+                        StatusBar.getInstance().setStatusText(count + " map tiles available offline");
+                    });
+                });
+    }
+    
     // TFE, 20200622: store & load of preferences has been moved to MapLayerUsage
     // we only have the methods to access the leafletview
     public String getCurrentBaselayer() {
@@ -2212,6 +2848,14 @@ public class TrackMap extends LeafletMapView implements IPreferencesHolder {
 
     protected void mapViewChanged(final BoundingBox newBoundingBox) {
         mapBounds = newBoundingBox;
+        
+        // TFE, 20261019: show what is in the viewport - with the level of detail for the new zoom
+        if (isLoaded) {
+            final MapSceneBuilder scene = createMapScene();
+            updateMapItems(scene, mapBounds.getMinX(), mapBounds.getMaxX(), mapBounds.getMinY(), mapBounds.getMaxY());
+            applyMapScene(scene);
+        }
+
         HeatMapPane.getInstance().restore();
         if (HeatMapPane.getInstance().isVisible()) {
             updateHeatMapPane();
@@ -2221,6 +2865,9 @@ public class TrackMap extends LeafletMapView implements IPreferencesHolder {
         // TFE, 20210820: look for new pictures in bounding box - and remove current popover - if visible
         hidePicturePopup(currentMapImageId);
         getPicturesInBoundingBox();
+        
+        // TFE, 20261019: load elevation data for the visible area in the background
+        SRTMDataPrefetcher.getInstance().prefetchForBoundingBox(mapBounds);
     }
     
     protected void mapViewChanging(final BoundingBox newBoundingBox) {
@@ -298,21 +298,6 @@ function getPointForLatLng(lat, lng) {
     var point = myMap.latLngToContainerPoint(latlng);
     return [point.x, point.y];
 }
-function getPointsForLatLngs(latLngs) {
-    var points = [];
-
-    var arrayLength = latLngs.length;
-    for (var i = 0; i < arrayLength; i++) {
-        var latlng = latLngs[i];
-//        jscallback.log('latlng: ' + latlng + ", lat: " + latlng[0] + ", lng: " + latlng[1]);
-        
-        var point = getPointForLatLng(latlng[0], latlng[1]);
-//        jscallback.log('point: ' + point + ", [0]: " + point[0] + ", [1]: " + point[1]);
-        points.push(L.point(point[0], point[1]));
-    }
-
-    return pointsToString(points);
-}
 /*
  * JSON.stringify doesn't work on LatLngs...
  */
@@ -336,21 +321,6 @@ function coordsToString(coords) {
     }
     return coordsString;
 }
-function pointsToString(points) {
-    var pointString = "";
-    
-    var arrayLength = points.length;
-    for (var i = 0; i < arrayLength; i++) {
-        var point = points[i];
-        
-        pointString = pointString + "x:" + point.x + ", y:" + point.y;
-        
-        if (i < arrayLength-1) {
-            pointString = pointString + " - "
-        }
-    }
-    return pointString;
-}
 
 /*
  * search and add results to marker layer
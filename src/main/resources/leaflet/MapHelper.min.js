@@ -6,7 +6,7 @@ function startDragMarker(a,b,c){if(""!==a){a=b.getLatLngs();b=c.getLatLng();c.po
 function trackCursor(a,b,c,d){c.setLatLng(d.latlng);doDragMarker(a,b,c)}
 function makeDraggable(a,b,c,d){var e=window[a],f=window[d];if(a.startsWith("circleMarker")){var g=trackCursor.bind(null,d,f,e);e.on("mousedown",function(){myMap.dragging.disable();myMap.on("mousemove",g);startDragMarker(d,f,e)});e.on("mouseup",function(){myMap.dragging.enable();myMap.off("mousemove",g);endDragMarker(a,b,c,d,f,e)})}else e.on("dragstart",function(h){startDragMarker(d,f,e)}),e.on("drag",function(h){doDragMarker(d,f,e)}),e.on("dragend",function(h){endDragMarker(a,b,c,d,f,e)}),e.dragging.enable()}
 function setTitle(a,b){a=window[a];a._icon?a._icon.title=b:a.options.title=b}function getLatLngForPoint(a,b){a=L.point(a,b);a=myMap.containerPointToLatLng(a);return[a.lat,a.lng]}function getLatLngForRect(a,b,c,d){return getLatLngForPoint(a,b).concat(getLatLngForPoint(c,d))}function getPointForLatLng(a,b){a=L.latLng(a,b);a=myMap.latLngToContainerPoint(a);return[a.x,a.y]}
-function getPointsForLatLngs(a){for(var b=[],c=a.length,d=0;d<c;d++){var e=a[d];e=getPointForLatLng(e[0],e[1]);b.push(L.point(e[0],e[1]))}return pointsToString(b)}function coordsToString(a){for(var b="",c=a.length,d=0;d<c;d++){var e=a[d];b="undefined"!==typeof e.lat?b+"lat:"+e.lat+", lon:"+e.lng:b+"lat:"+e[0]+", lon:"+e[1];d<c-1&&(b+=" - ")}return b}function pointsToString(a){for(var b="",c=a.length,d=0;d<c;d++){var e=a[d];b=b+"x:"+e.x+", y:"+e.y;d<c-1&&(b+=" - ")}return b}
+function coordsToString(a){for(var b="",c=a.length,d=0;d<c;d++){var e=a[d];b="undefined"!==typeof e.lat?b+"lat:"+e.lat+", lon:"+e.lng:b+"lat:"+e[0]+", lon:"+e[1];d<c-1&&(b+=" - ")}return b}
 function registerMarker(a){a=a.target;var b=a.getLatLng();jscallback.registerMarker(JSON.stringify(a.properties),b.lat,b.lng)}function deregisterMarker(a){a=a.target;var b=a.getLatLng();jscallback.deregisterMarker(JSON.stringify(a.properties),b.lat,b.lng)}var searchResultsLayer=L.layerGroup().addTo(myMap),searchResults,searchCount;function clearSearchResults(){searchResultsLayer.clearLayers();searchResults=[];searchCount=0}clearSearchResults();
 function removeSearchResult(a){a in searchResults&&searchResultsLayer.removeLayer(searchResults[a])}
 function showSearchResults(a,b,c){b=JSON.parse(b);c=window[c];if(b.hasOwnProperty("elements")&&0<b.elements.length)for(var d in b.elements){var e=(new L.marker([b.elements[d].lat,b.elements[d].lon],{icon:c})).addTo(searchResultsLayer);e.properties={};e.properties.SearchItem=a;e.on("mouseover",registerMarker);e.on("mouseout",deregisterMarker);var f=getTitleFromTags(e,b.elements[d]);0<f.length&&(e._icon?e._icon.title=f:e.options.title=f);e.properties.MarkerCount=searchCount;searchResults.push(e);searchCount++}}
@@ -0,0 +1,121 @@
+/* 
+ *  Copyright (c) 2014ff Thomas Feuster
+ *  All rights reserved.
+ *  
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. The name of the author may not be used to endorse or promote products
+ *     derived from this software without specific prior written permission.
+ *  
+ *  THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ *  IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ *  OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ *  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ *  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ *  NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ *  DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ *  THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ *  THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+// apply a whole scene of icons, tracks, markers and calls in one go
+// see MapSceneBuilder.java
+function applyMapScene(scene) {
+    var i;
+    
+    if (scene.hasOwnProperty('keepLayers')) {
+        clearMarkersAndTracksExcept(scene.keepLayers);
+    }
+
+    for (i = 0; i < scene.icons.length; i++) {
+        var icon = scene.icons[i];
+        window[icon.name] = new window['CustomIcon' + icon.size]({iconUrl: 'data:image/png;base64,' + icon.data});
+    }
+
+    // tracks first since markers might be attached to them
+    for (i = 0; i < scene.tracks.length; i++) {
+        var track = scene.tracks[i];
+        window[track.name] = L.polyline(decodeLatLngs(track.latLngs), 
+            {color: track.color, weight: track.weight, opacity: track.opacity, lineCap: track.lineCap}).addTo(myMap);
+    }
+
+    for (i = 0; i < scene.markers.length; i++) {
+        var marker = scene.markers[i];
+        window[marker.name] = L.marker([marker.lat, marker.lng], 
+            {title: marker.title, icon: window[marker.icon], zIndexOffset: marker.zIndexOffset}).addTo(myMap);
+    }
+
+    for (i = 0; i < scene.clusters.length; i++) {
+        addClusterMarker(scene.clusters[i]);
+    }
+
+    for (i = 0; i < scene.calls.length; i++) {
+        var call = scene.calls[i];
+        if (call.hasOwnProperty('tooltip')) {
+            window[call.layer].bindTooltip(call.tooltip, {permanent: true, direction: 'right', className: call.className});
+        } else {
+            window[call.function].apply(null, [call.layer].concat(call.args));
+        }
+    }
+}
+
+// replace coordinates of an existing polyline
+function updateLatLngs(layer, encoded) {
+    window[layer].setLatLngs(decodeLatLngs(encoded));
+}
+
+// remove marker or track and forget about it
+function removeMapLayer(layer) {
+    var mapLayer = window[layer];
+    if (typeof mapLayer !== 'undefined') {
+        if (typeof mapLayer.editEnabled === 'function' && mapLayer.editEnabled()) {
+            mapLayer.disableEdit();
+        }
+        myMap.removeLayer(mapLayer);
+        window[layer] = undefined;
+    }
+}
+
+// remove all markers & tracks - except the ones that are still needed
+function clearMarkersAndTracksExcept(layers) {
+    var keep = new Set();
+    for (var i = 0; i < layers.length; i++) {
+        if (typeof window[layers[i]] !== 'undefined') {
+            keep.add(window[layers[i]]);
+        }
+    }
+    
+    myMap.eachLayer(function(layer) {
+        if ((layer instanceof L.Marker || layer instanceof L.Path) && !keep.has(layer)) {
+            myMap.removeLayer(layer);
+        }
+    });
+}
+
+// cluster of waypoints calculated in WaypointClusterIndex.java - looks like the ones of leaflet.markercluster
+function addClusterMarker(cluster) {
+    var size = ' marker-cluster-';
+    if (cluster.count < 10) {
+        size += 'small';
+    } else if (cluster.count < 100) {
+        size += 'medium';
+    } else {
+        size += 'large';
+    }
+    
+    var marker = L.marker([cluster.lat, cluster.lng], {
+        icon: new L.DivIcon({html: '<div><span>' + cluster.count + '</span></div>', className: 'marker-cluster' + size, iconSize: new L.Point(40, 40)}),
+        title: cluster.count + ' waypoints'
+    }).addTo(myMap);
+    marker.on('click', function() {
+        myMap.fitBounds([[cluster.bounds[0], cluster.bounds[1]], [cluster.bounds[2], cluster.bounds[3]]]);
+    });
+
+    window[cluster.name] = marker;
+}
@@ -0,0 +1 @@
+function applyMapScene(a){var b;a.hasOwnProperty("keepLayers")&&clearMarkersAndTracksExcept(a.keepLayers);for(b=0;b<a.icons.length;b++){var c=a.icons[b];window[c.name]=new window["CustomIcon"+c.size]({iconUrl:"data:image/png;base64,"+c.data})}for(b=0;b<a.tracks.length;b++)c=a.tracks[b],window[c.name]=L.polyline(decodeLatLngs(c.latLngs),{color:c.color,weight:c.weight,opacity:c.opacity,lineCap:c.lineCap}).addTo(myMap);for(b=0;b<a.markers.length;b++)c=a.markers[b],window[c.name]=L.marker([c.lat,c.lng],{title:c.title,icon:window[c.icon],zIndexOffset:c.zIndexOffset}).addTo(myMap);for(b=0;b<a.clusters.length;b++)addClusterMarker(a.clusters[b]);for(b=0;b<a.calls.length;b++)c=a.calls[b],c.hasOwnProperty("tooltip")?window[c.layer].bindTooltip(c.tooltip,{permanent:!0,direction:"right",className:c.className}):window[c["function"]].apply(null,[c.layer].concat(c.args))};function updateLatLngs(a,b){window[a].setLatLngs(decodeLatLngs(b))};function removeMapLayer(a){var b=window[a];"undefined"!==typeof b&&("function"===typeof b.editEnabled&&b.editEnabled()&&b.disableEdit(),myMap.removeLayer(b),window[a]=void 0)};function clearMarkersAndTracksExcept(a){for(var b=new Set,c=0;c<a.length;c++)"undefined"!==typeof window[a[c]]&&b.add(window[a[c]]);myMap.eachLayer(function(d){!(d instanceof L.Marker||d instanceof L.Path)||b.has(d)||myMap.removeLayer(d)})};function addClusterMarker(a){var b=" marker-cluster-";b=10>a.count?b+"small":100>a.count?b+"medium":b+"large";b=L.marker([a.lat,a.lng],{icon:new L.DivIcon({html:"<div><span>"+a.count+"</span></div>",className:"marker-cluster"+b,iconSize:new L.Point(40,40)}),title:a.count+" waypoints"}).addTo(myMap);b.on("click",function(){myMap.fitBounds([[a.bounds[0],a.bounds[1]],[a.bounds[2],a.bounds[3]]])});window[a.name]=b};
@@ -0,0 +1 @@
+function decodeLatLngs(a){a=atob(a);for(var b=new Uint8Array(a.length),c=0;c<a.length;c++)b[c]=a.charCodeAt(c);a=new Float64Array(b.buffer);b=Array(a.length/2);for(c=0;c<b.length;c++)b[c]=[a[2*c],a[2*c+1]];return b};
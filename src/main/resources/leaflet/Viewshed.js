@@ -0,0 +1,85 @@
+/* 
+ *  Copyright (c) 2014ff Thomas Feuster
+ *  All rights reserved.
+ *  
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. The name of the author may not be used to endorse or promote products
+ *     derived from this software without specific prior written permission.
+ *  
+ *  THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ *  IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ *  OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ *  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ *  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ *  NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ *  DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ *  THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ *  THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+var viewshedOverlay;
+var viewshedWaypoints;
+var viewshedPopup;
+
+function showViewshed(image, south, west, north, east, latLngs) {
+    clearViewshed();
+    
+    // one pixel per cell of the viewshed raster
+    viewshedOverlay = L.imageOverlay(image, [[south, west], [north, east]], {
+        opacity: 1,
+        interactive: false,
+        className: "viewshed-overlay"
+    });
+    viewshedOverlay.addTo(myMap);
+    
+    // can be many - let the canvas do the work
+    var renderer = L.canvas();
+    viewshedWaypoints = L.layerGroup();
+    for (var i = 0; i < latLngs.length; i++) {
+        L.circleMarker(latLngs[i], {
+            renderer: renderer,
+            radius: 3,
+            color: 'darkgreen',
+            fillColor: 'lime',
+            fillOpacity: 1,
+            weight: 1,
+            interactive: false
+        }).addTo(viewshedWaypoints);
+    }
+    viewshedWaypoints.addTo(myMap);
+    
+    myMap.fitBounds([[south, west], [north, east]]);
+}
+
+function setViewshedPopup(latLng, text) {
+    viewshedPopup = L.popup({
+            closeButton: false,
+            autoClose: true,
+            offset: [0, -10]
+        })
+	.setLatLng(latLng)
+	.setContent('<p>' + text + '</p>')
+	.openOn(myMap);    
+}
+
+function clearViewshed() {
+    if (viewshedOverlay) {
+        myMap.removeLayer(viewshedOverlay);
+        viewshedOverlay = null;
+    }
+    if (viewshedWaypoints) {
+        myMap.removeLayer(viewshedWaypoints);
+        viewshedWaypoints = null;
+    }
+    if (viewshedPopup) {
+        myMap.closePopup(viewshedPopup);
+        viewshedPopup = null;
+    }
+}
@@ -0,0 +1,2 @@
+var viewshedOverlay,viewshedWaypoints,viewshedPopup;function showViewshed(a,b,c,d,e,f){clearViewshed();viewshedOverlay=L.imageOverlay(a,[[b,c],[d,e]],{opacity:1,interactive:!1,className:"viewshed-overlay"});viewshedOverlay.addTo(myMap);var g=L.canvas();viewshedWaypoints=L.layerGroup();for(var h=0;h<f.length;h++)L.circleMarker(f[h],{renderer:g,radius:3,color:"darkgreen",fillColor:"lime",fillOpacity:1,weight:1,interactive:!1}).addTo(viewshedWaypoints);viewshedWaypoints.addTo(myMap);myMap.fitBounds([[b,c],[d,e]])}
+function setViewshedPopup(a,b){viewshedPopup=L.popup({closeButton:!1,autoClose:!0,offset:[0,-10]}).setLatLng(a).setContent("<p>"+b+"</p>").openOn(myMap)}function clearViewshed(){viewshedOverlay&&(myMap.removeLayer(viewshedOverlay),viewshedOverlay=null);viewshedWaypoints&&(myMap.removeLayer(viewshedWaypoints),viewshedWaypoints=null);viewshedPopup&&(myMap.closePopup(viewshedPopup),viewshedPopup=null)}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.gpx.edit.algorithms.reducer;
+
+import java.io.File;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import tf.gpx.edit.items.GPXFile;
+import tf.gpx.edit.items.GPXTrack;
+import tf.gpx.edit.items.GPXTrackSegment;
+
+/**
+ * Test level of detail of tracks for the different zoom levels of the map.
+ *
+ * @author thomas
+ */
+public class TestZoomLevelReducer {
+    private List<GPXTrackSegment> segments;
+    
+    @BeforeEach
+    public void setUp() {
+        ZoomLevelReducer.getInstance().clear();
+
+        final GPXFile gpxfile = new GPXFile(new File("src/test/resources/testalgorithms.gpx"));
+        segments = new ArrayList<>();
+        for (GPXTrack track : gpxfile.getGPXTracks()) {
+            segments.addAll(track.getGPXTrackSegments());
+        }
+    }
+    
+    @Test
+    public void testMetersPerPixel() {
+        Assertions.assertEquals(156543.03, ZoomLevelReducer.getMetersPerPixel(0, 0.0), 0.01);
+        Assertions.assertEquals(156543.03 / 2.0, ZoomLevelReducer.getMetersPerPixel(1, 0.0), 0.01);
+        // pixels get smaller towards the poles
+        Assertions.assertEquals(ZoomLevelReducer.getMetersPerPixel(10, 0.0) / 2.0, ZoomLevelReducer.getMetersPerPixel(10, 60.0), 0.01);
+        
+        Assertions.assertEquals(ZoomLevelReducer.MIN_ZOOM, ZoomLevelReducer.clampZoom(-3));
+        Assertions.assertEquals(ZoomLevelReducer.MAX_ZOOM, ZoomLevelReducer.clampZoom(25));
+    }
+    
+    @Test
+    public void testLevelOfDetail() {
+        for (GPXTrackSegment segment : segments) {
+            final int size = segment.getGPXWaypoints().size();
+
+            int lastCount = 0;
+            for (int zoom = ZoomLevelReducer.MIN_ZOOM; zoom <= ZoomLevelReducer.MAX_ZOOM; zoom++) {
+                final Boolean[] keep = ZoomLevelReducer.getInstance().apply(segment, zoom);
+                Assertions.assertEquals(size, keep.length);
+                // start & end are always shown
+                Assertions.assertTrue(keep[0]);
+                Assertions.assertTrue(keep[size-1]);
+                
+                // more details when zooming in
+                final int count = ZoomLevelReducer.countKeep(keep);
+                Assertions.assertTrue(count >= lastCount);
+                lastCount = count;
+            }
+            
+            // overview of the whole area: only a handful of points
+            Assertions.assertTrue(ZoomLevelReducer.countKeep(ZoomLevelReducer.getInstance().apply(segment, 5)) <= Math.max(3, size / 10));
+        }
+    }
+    
+    @Test
+    public void testCache() {
+        final GPXTrackSegment segment = segments.get(0);
+        
+        Instant startTime = Instant.now();
+        final Boolean[] keep1 = ZoomLevelReducer.getInstance().apply(segment, 14);
+        final Duration firstDuration = Duration.between(startTime, Instant.now());
+        
+        startTime = Instant.now();
+        final Boolean[] keep2 = ZoomLevelReducer.getInstance().apply(segment, 14);
+        final Duration secondDuration = Duration.between(startTime, Instant.now());
+        System.out.println(String.format("ZoomLevelReducer: first call %d ms, cached call %d ms", firstDuration.toMillis(), secondDuration.toMillis()));
+        
+        Assertions.assertSame(keep1, keep2);
+        Assertions.assertNotSame(keep1, ZoomLevelReducer.getInstance().apply(segment, 13));
+        
+        // move a waypoint - cache needs to be invalidated
+        segment.getGPXWaypoints().get(10).setLatitude(segment.getGPXWaypoints().get(10).getLatitude() + 0.01);
+        final Boolean[] keep3 = ZoomLevelReducer.getInstance().apply(segment, 14);
+        Assertions.assertNotSame(keep1, keep3);
+        // that is a huge jump that needs to be shown
+        Assertions.assertTrue(keep3[10]);
+    }
+    
+    @Test
+    public void testZoomForLimit() {
+        int count16 = 0;
+        for (GPXTrackSegment segment : segments) {
+            count16 += ZoomLevelReducer.countKeep(ZoomLevelReducer.getInstance().apply(segment, 16));
+        }
+
+        // enough points allowed: zoom is kept
+        Assertions.assertEquals(16, ZoomLevelReducer.getInstance().getZoomForLimit(segments, 16, count16));
+        
+        // not enough points allowed: zoom out until it fits
+        final int zoom = ZoomLevelReducer.getInstance().getZoomForLimit(segments, 16, count16 / 4);
+        Assertions.assertTrue(zoom < 16);
+        int count = 0;
+        for (GPXTrackSegment segment : segments) {
+            count += ZoomLevelReducer.countKeep(ZoomLevelReducer.getInstance().apply(segment, zoom));
+        }
+        Assertions.assertTrue(count <= count16 / 4);
+        
+        // and we can't get below zoom 0
+        Assertions.assertEquals(ZoomLevelReducer.MIN_ZOOM, ZoomLevelReducer.getInstance().getZoomForLimit(segments, 16, 0));
+    }
+}
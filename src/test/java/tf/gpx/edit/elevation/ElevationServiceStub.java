@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.gpx.edit.elevation;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Local stand-in for the openrouteservice elevation endpoints.
+ *
+ * Returns 100 * latitude as elevation for every coordinate. Can be told to be slow
+ * or to fail with a given status or an invalid response for the first n requests.
+ *
+ * @author thomas
+ */
+public class ElevationServiceStub {
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final AtomicInteger requestCount = new AtomicInteger(0);
+    private final AtomicInteger coordinateCount = new AtomicInteger(0);
+    private final AtomicInteger activeRequests = new AtomicInteger(0);
+    private final AtomicInteger maxActiveRequests = new AtomicInteger(0);
+    private final AtomicInteger failuresLeft = new AtomicInteger(0);
+    private final AtomicInteger invalidResponsesLeft = new AtomicInteger(0);
+
+    private volatile int failureStatus = 429;
+    private volatile long responseDelay = 0;
+
+    public ElevationServiceStub() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(executor);
+        server.createContext("/elevation/line", (t) -> {
+            handleRequest(t, true);
+        });
+        server.createContext("/elevation/point", (t) -> {
+            handleRequest(t, false);
+        });
+        server.start();
+    }
+
+    public String getServiceURL() {
+        return "http://localhost:" + server.getAddress().getPort() + "/elevation";
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    public void reset() {
+        requestCount.set(0);
+        coordinateCount.set(0);
+        maxActiveRequests.set(0);
+        failuresLeft.set(0);
+        invalidResponsesLeft.set(0);
+        responseDelay = 0;
+    }
+
+    public void setResponseDelay(final long delay) {
+        responseDelay = delay;
+    }
+
+    public void setFailures(final int count, final int status) {
+        failuresLeft.set(count);
+        failureStatus = status;
+    }
+
+    public void setInvalidResponses(final int count) {
+        invalidResponsesLeft.set(count);
+    }
+
+    public int getRequestCount() {
+        return requestCount.get();
+    }
+
+    public int getCoordinateCount() {
+        return coordinateCount.get();
+    }
+
+    public int getMaxActiveRequests() {
+        return maxActiveRequests.get();
+    }
+
+    public static double getElevation(final double latitude) {
+        return 100.0 * latitude;
+    }
+
+    private void handleRequest(final HttpExchange exchange, final boolean isLine) throws IOException {
+        requestCount.incrementAndGet();
+        final int active = activeRequests.incrementAndGet();
+        maxActiveRequests.accumulateAndGet(active, Math::max);
+
+        try {
+            final String request = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+
+            if (responseDelay > 0) {
+                try {
+                    Thread.sleep(responseDelay);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            if (failuresLeft.getAndDecrement() > 0) {
+                writeResponse(exchange, failureStatus, "{\"error\":\"try again later\"}");
+                return;
+            }
+
+            final JsonNode geometry = objectMapper.readTree(request).get("geometry");
+            if (invalidResponsesLeft.getAndDecrement() > 0) {
+                // point without coordinates or one point too many for a line
+                if (isLine) {
+                    final StringBuilder response = new StringBuilder();
+                    response.append("{\"geometry\":{\"type\":\"LineString\",\"coordinates\":[");
+                    for (int i = 0; i < geometry.size(); i++) {
+                        response.append(coordinateResponse(geometry.get(i))).append(",");
+                    }
+                    response.append(coordinateResponse(geometry.get(0))).append("]}}");
+                    writeResponse(exchange, 200, response.toString());
+                } else {
+                    writeResponse(exchange, 200, "{\"geometry\":{\"type\":\"Point\"}}");
+                }
+                return;
+            }
+            final StringBuilder response = new StringBuilder();
+            if (isLine) {
+                response.append("{\"geometry\":{\"type\":\"LineString\",\"coordinates\":[");
+                for (int i = 0; i < geometry.size(); i++) {
+                    if (i > 0) {
+                        response.append(",");
+                    }
+                    response.append(coordinateResponse(geometry.get(i)));
+                }
+                response.append("]}}");
+                coordinateCount.addAndGet(geometry.size());
+            } else {
+                response.append("{\"geometry\":{\"type\":\"Point\",\"coordinates\":").append(coordinateResponse(geometry)).append("}}");
+                coordinateCount.incrementAndGet();
+            }
+            writeResponse(exchange, 200, response.toString());
+        } finally {
+            activeRequests.decrementAndGet();
+        }
+    }
+
+    private static String coordinateResponse(final JsonNode coord) {
+        final double lon = coord.get(0).asDouble();
+        final double lat = coord.get(1).asDouble();
+        return "[" + lon + "," + lat + "," + getElevation(lat) + "]";
+    }
+
+    private static void writeResponse(final HttpExchange exchange, final int status, final String response) throws IOException {
+        final byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+}
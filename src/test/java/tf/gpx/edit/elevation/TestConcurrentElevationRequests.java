@@ -0,0 +1,248 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.gpx.edit.elevation;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import tf.gpx.edit.leafletmap.LatLonElev;
+
+/**
+ * Test parallel requests, retries and coalescing of OpenElevationService against a local stand-in.
+ *
+ * @author thomas
+ */
+public class TestConcurrentElevationRequests {
+    private static ElevationServiceStub server;
+
+    @BeforeAll
+    public static void setUpClass() throws IOException {
+        server = new ElevationServiceStub();
+    }
+
+    @AfterAll
+    public static void tearDownClass() {
+        server.stop();
+    }
+
+    @BeforeEach
+    public void setUp() {
+        server.reset();
+    }
+
+    private OpenElevationService getService(final int maxConcurrentRequests) {
+        final ElevationProviderOptions elevOptions =
+                new ElevationProviderOptions(ElevationProviderOptions.LookUpMode.SRTM_NONE).
+                        setElevationServiceURL(server.getServiceURL()).
+                        setMaxConcurrentRequests(maxConcurrentRequests).
+                        setRetryBackoffMillis(10);
+        return new OpenElevationService(elevOptions, new SRTMDataOptions());
+    }
+
+    private List<LatLonElev> getCoordinates(final int count) {
+        final List<LatLonElev> result = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            result.add(new LatLonElev(45.0 + i * 0.0001, 11.0 + i * 0.0001));
+        }
+        return result;
+    }
+
+    private void checkElevations(final List<LatLonElev> coords, final List<Pair<Boolean, Double>> elevations) {
+        Assertions.assertEquals(coords.size(), elevations.size());
+        for (int i = 0; i < coords.size(); i++) {
+            Assertions.assertTrue(elevations.get(i).getLeft());
+            Assertions.assertEquals(ElevationServiceStub.getElevation(coords.get(i).getLatitude()), elevations.get(i).getRight(), 0.01);
+        }
+    }
+
+    @Test
+    public void testParallelChunks() {
+        final int chunkCount = 8;
+        final long delay = 200;
+        server.setResponseDelay(delay);
+
+        final OpenElevationService service = getService(4);
+        final List<LatLonElev> coords = getCoordinates(chunkCount * 1000);
+
+        final Instant startTime = Instant.now();
+        final List<Pair<Boolean, Double>> elevations = service.getElevationsForCoordinates(coords);
+        final Duration duration = Duration.between(startTime, Instant.now());
+        System.out.println("Duration " + chunkCount + " chunks: " + duration.toMillis() + " ms, max parallel requests: " + server.getMaxActiveRequests());
+
+        checkElevations(coords, elevations);
+        Assertions.assertEquals(chunkCount, server.getRequestCount());
+
+        // never more than allowed - but more than one at a time
+        Assertions.assertTrue(server.getMaxActiveRequests() <= 4);
+        Assertions.assertTrue(server.getMaxActiveRequests() > 1);
+        Assertions.assertTrue(duration.toMillis() < chunkCount * delay);
+
+        // latency is reported for each chunk
+        final List<Long> latencies = service.getChunkLatencies();
+        Assertions.assertEquals(chunkCount, latencies.size());
+        for (Long latency : latencies) {
+            Assertions.assertNotNull(latency);
+            Assertions.assertTrue(latency >= delay);
+        }
+    }
+
+    @Test
+    public void testSequentialChunks() {
+        final OpenElevationService service = getService(1);
+        final List<LatLonElev> coords = getCoordinates(3500);
+
+        checkElevations(coords, service.getElevationsForCoordinates(coords));
+        Assertions.assertEquals(4, server.getRequestCount());
+        Assertions.assertEquals(1, server.getMaxActiveRequests());
+    }
+
+    @Test
+    public void testCoalescing() {
+        final OpenElevationService service = getService(4);
+
+        // each coordinate three times - spread over three chunks
+        final List<LatLonElev> uniqueCoords = getCoordinates(1000);
+        final List<LatLonElev> coords = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            for (LatLonElev coord : uniqueCoords) {
+                coords.add(new LatLonElev(coord.getLatitude(), coord.getLongitude()));
+            }
+        }
+
+        checkElevations(coords, service.getElevationsForCoordinates(coords));
+        Assertions.assertEquals(1, server.getRequestCount());
+        Assertions.assertEquals(uniqueCoords.size(), server.getCoordinateCount());
+
+        // single distinct point uses the point service
+        server.reset();
+        final List<LatLonElev> sameCoords = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            sameCoords.add(new LatLonElev(46.0, 12.0));
+        }
+        checkElevations(sameCoords, service.getElevationsForCoordinates(sameCoords));
+        Assertions.assertEquals(1, server.getRequestCount());
+        Assertions.assertEquals(1, server.getCoordinateCount());
+    }
+
+    @Test
+    public void testRetry() {
+        final OpenElevationService service = getService(4);
+        final List<LatLonElev> coords = getCoordinates(10);
+
+        // too many requests
+        server.setFailures(2, 429);
+        checkElevations(coords, service.getElevationsForCoordinates(coords));
+        Assertions.assertEquals(3, server.getRequestCount());
+
+        // server hickup
+        server.reset();
+        server.setFailures(3, 503);
+        checkElevations(coords, service.getElevationsForCoordinates(coords));
+        Assertions.assertEquals(4, server.getRequestCount());
+
+        // no retry for bad requests
+        server.reset();
+        server.setFailures(1, 400);
+        List<Pair<Boolean, Double>> elevations = service.getElevationsForCoordinates(coords);
+        Assertions.assertEquals(1, server.getRequestCount());
+        Assertions.assertEquals(coords.size(), elevations.size());
+        for (Pair<Boolean, Double> elevation : elevations) {
+            Assertions.assertFalse(elevation.getLeft());
+        }
+
+        // and at some point we give up
+        server.reset();
+        server.setFailures(100, 503);
+        elevations = service.getElevationsForCoordinates(coords);
+        Assertions.assertEquals(6, server.getRequestCount());
+        for (Pair<Boolean, Double> elevation : elevations) {
+            Assertions.assertFalse(elevation.getLeft());
+        }
+    }
+
+    @Test
+    public void testInvalidChunk() {
+        final OpenElevationService service = getService(1);
+        final List<LatLonElev> coords = getCoordinates(3000);
+
+        // first chunk can't be used - the others are fine
+        server.setInvalidResponses(1);
+        final List<Pair<Boolean, Double>> elevations = service.getElevationsForCoordinates(coords);
+        Assertions.assertEquals(3, server.getRequestCount());
+        Assertions.assertEquals(coords.size(), elevations.size());
+        for (int i = 0; i < 1000; i++) {
+            Assertions.assertFalse(elevations.get(i).getLeft());
+        }
+        checkElevations(coords.subList(1000, coords.size()), elevations.subList(1000, elevations.size()));
+
+        // same for the point service
+        server.reset();
+        server.setInvalidResponses(1);
+        final List<Pair<Boolean, Double>> pointElevations = service.getElevationsForCoordinates(getCoordinates(1));
+        Assertions.assertEquals(1, pointElevations.size());
+        Assertions.assertFalse(pointElevations.get(0).getLeft());
+    }
+
+    @Test
+    public void testConcurrentCalls() throws Exception {
+        server.setResponseDelay(50);
+        final OpenElevationService service = getService(4);
+        final List<LatLonElev> coords1 = getCoordinates(3000);
+        final List<LatLonElev> coords2 = getCoordinates(5000);
+
+        final List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+        final List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            final List<LatLonElev> coords = (i % 2 == 0) ? coords1 : coords2;
+            threads.add(new Thread(() -> {
+                try {
+                    for (int j = 0; j < 3; j++) {
+                        checkElevations(coords, service.getElevationsForCoordinates(coords));
+                        final int latencyCount = service.getChunkLatencies().size();
+                        Assertions.assertTrue(latencyCount == 3 || latencyCount == 5);
+                    }
+                } catch (Throwable ex) {
+                    errors.add(ex);
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Assertions.assertTrue(errors.isEmpty(), errors.toString());
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.gpx.edit.elevation;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import tf.gpx.edit.leafletmap.LatLonElev;
+
+/**
+ * Test the persistent elevation cache - standalone and as part of the ElevationProvider.
+ *
+ * A local http server is used as stand-in for OpenElevationService.
+ *
+ * @author thomas
+ */
+public class TestElevationCache {
+    private static Path testpath;
+    private static ElevationServiceStub server;
+
+    @BeforeAll
+    public static void setUpClass() throws IOException {
+        testpath = Files.createTempDirectory("TestGPXEditor");
+        server = new ElevationServiceStub();
+    }
+
+    @AfterAll
+    public static void tearDownClass() throws IOException {
+        server.stop();
+        // delete temp directory + files
+        FileUtils.deleteDirectory(testpath.toFile());
+    }
+
+    @BeforeEach
+    public void setUp() {
+        server.reset();
+    }
+
+    private List<LatLonElev> getCoordinates(final int count, final double offset) {
+        final List<LatLonElev> result = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            result.add(new LatLonElev(offset + i * 0.001, 11.0 + i * 0.001));
+        }
+        return result;
+    }
+
+    private List<Pair<Boolean, Double>> getElevations(final List<LatLonElev> coords) {
+        final List<Pair<Boolean, Double>> result = new ArrayList<>();
+        for (LatLonElev coord : coords) {
+            result.add(Pair.of(true, ElevationServiceStub.getElevation(coord.getLatitude())));
+        }
+        return result;
+    }
+
+    @Test
+    public void testQuantization() {
+        // same key for anything closer than 1e-5 degrees
+        Assertions.assertEquals(ElevationCache.getKeyForCoordinate(47.123451, 11.543211), ElevationCache.getKeyForCoordinate(47.123449, 11.543209));
+        Assertions.assertNotEquals(ElevationCache.getKeyForCoordinate(47.12345, 11.54321), ElevationCache.getKeyForCoordinate(47.12346, 11.54321));
+        Assertions.assertNotEquals(ElevationCache.getKeyForCoordinate(47.12345, 11.54321), ElevationCache.getKeyForCoordinate(47.12345, 11.54322));
+
+        // all four hemispheres are different
+        Assertions.assertNotEquals(ElevationCache.getKeyForCoordinate(47.12345, 11.54321), ElevationCache.getKeyForCoordinate(-47.12345, 11.54321));
+        Assertions.assertNotEquals(ElevationCache.getKeyForCoordinate(47.12345, 11.54321), ElevationCache.getKeyForCoordinate(47.12345, -11.54321));
+        Assertions.assertNotEquals(ElevationCache.getKeyForCoordinate(-47.12345, 11.54321), ElevationCache.getKeyForCoordinate(-47.12345, -11.54321));
+    }
+
+    @Test
+    public void testPersistence() {
+        final Path cacheFile = testpath.resolve("persistence.cache");
+
+        final List<LatLonElev> coords = getCoordinates(100, 45.0);
+        final ElevationCache cache = new ElevationCache(cacheFile, 1000);
+        cache.putElevationsForCoordinates(coords, getElevations(coords));
+        Assertions.assertEquals(100, cache.size());
+        Assertions.assertTrue(cacheFile.toFile().exists());
+
+        // a new instance has to read everything from disk
+        final ElevationCache newCache = new ElevationCache(cacheFile, 1000);
+        Assertions.assertEquals(100, newCache.size());
+        for (LatLonElev coord : coords) {
+            final Pair<Boolean, Double> elevation = newCache.getElevationForCoordinate(coord);
+            Assertions.assertTrue(elevation.getLeft());
+            Assertions.assertEquals(ElevationServiceStub.getElevation(coord.getLatitude()), elevation.getRight(), 0.01);
+        }
+        Assertions.assertFalse(newCache.getElevationForCoordinate(10.0, 10.0).getLeft());
+
+        Assertions.assertEquals(100, newCache.getHitCount());
+        Assertions.assertEquals(1, newCache.getMissCount());
+        Assertions.assertEquals(100.0 / 101.0, newCache.getHitRate(), 0.0001);
+
+        // don't store what hasn't been found
+        final List<LatLonElev> missing = getCoordinates(10, -45.0);
+        final List<Pair<Boolean, Double>> noElevations = new ArrayList<>();
+        for (int i = 0; i < missing.size(); i++) {
+            noElevations.add(Pair.of(false, IElevationProvider.NO_ELEVATION));
+        }
+        newCache.putElevationsForCoordinates(missing, noElevations);
+        Assertions.assertEquals(100, newCache.size());
+
+        newCache.clear();
+        Assertions.assertEquals(0, newCache.size());
+        Assertions.assertFalse(cacheFile.toFile().exists());
+    }
+
+    @Test
+    public void testSizeLimitAndCompaction() {
+        final Path cacheFile = testpath.resolve("compaction.cache");
+        final int maxEntries = 50;
+
+        final ElevationCache cache = new ElevationCache(cacheFile, maxEntries);
+        final List<LatLonElev> allCoords = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            final List<LatLonElev> coords = getCoordinates(20, 10.0 * i);
+            allCoords.addAll(coords);
+            cache.putElevationsForCoordinates(coords, getElevations(coords));
+
+            Assertions.assertTrue(cache.size() <= maxEntries);
+            Assertions.assertTrue(cache.getFileRecords() <= 2 * maxEntries);
+        }
+        Assertions.assertEquals(maxEntries, cache.size());
+
+        // least recently used entries are gone, latest ones are still there
+        Assertions.assertFalse(cache.getElevationForCoordinate(allCoords.get(0)).getLeft());
+        Assertions.assertTrue(cache.getElevationForCoordinate(allCoords.get(allCoords.size()-1)).getLeft());
+
+        cache.compact();
+        Assertions.assertEquals(maxEntries, cache.getFileRecords());
+        Assertions.assertEquals(8 + maxEntries * (8 + 4), cacheFile.toFile().length());
+
+        // and the same after reading from disk
+        final ElevationCache newCache = new ElevationCache(cacheFile, maxEntries);
+        Assertions.assertEquals(maxEntries, newCache.size());
+        Assertions.assertTrue(newCache.getElevationForCoordinate(allCoords.get(allCoords.size()-1)).getLeft());
+
+        // size 0 disables the cache
+        final ElevationCache noCache = new ElevationCache(testpath.resolve("disabled.cache"), 0);
+        Assertions.assertFalse(noCache.isEnabled());
+        noCache.putElevationsForCoordinates(allCoords, getElevations(allCoords));
+        Assertions.assertEquals(0, noCache.size());
+        Assertions.assertFalse(testpath.resolve("disabled.cache").toFile().exists());
+    }
+
+    @Test
+    public void testInvalidFile() throws IOException {
+        final Path cacheFile = testpath.resolve("invalid.cache");
+        Files.writeString(cacheFile, "This is not a cache file");
+
+        final ElevationCache cache = new ElevationCache(cacheFile, 100);
+        Assertions.assertEquals(0, cache.size());
+        Assertions.assertFalse(cacheFile.toFile().exists());
+
+        final List<LatLonElev> coords = getCoordinates(10, 45.0);
+        cache.putElevationsForCoordinates(coords, getElevations(coords));
+        Assertions.assertEquals(10, new ElevationCache(cacheFile, 100).size());
+    }
+
+    @Test
+    public void testElevationProviderWithCache() {
+        final ElevationCache cache = new ElevationCache(testpath.resolve("provider.cache"), 10000);
+        final ElevationProviderOptions elevOptions =
+                new ElevationProviderOptions(ElevationProviderOptions.LookUpMode.SRTM_NONE).
+                        setElevationServiceURL(server.getServiceURL()).
+                        setElevationCache(cache);
+        final IElevationProvider elevation = new ElevationProviderBuilder(elevOptions, new SRTMDataOptions()).build();
+
+        final List<LatLonElev> coords = getCoordinates(1500, 45.0);
+
+        // first time: everything from the remote service in 2 chunks
+        List<Pair<Boolean, Double>> elevations = elevation.getElevationsForCoordinates(coords);
+        Assertions.assertEquals(coords.size(), elevations.size());
+        for (int i = 0; i < coords.size(); i++) {
+            Assertions.assertTrue(elevations.get(i).getLeft());
+            Assertions.assertEquals(ElevationServiceStub.getElevation(coords.get(i).getLatitude()), elevations.get(i).getRight(), 0.01);
+        }
+        Assertions.assertEquals(2, server.getRequestCount());
+        Assertions.assertEquals(coords.size(), server.getCoordinateCount());
+        Assertions.assertEquals(coords.size(), cache.size());
+        Assertions.assertEquals(0.0, cache.getHitRate(), 0.0001);
+
+        // second time: nothing from the remote service
+        elevations = elevation.getElevationsForCoordinates(coords);
+        for (int i = 0; i < coords.size(); i++) {
+            Assertions.assertTrue(elevations.get(i).getLeft());
+            Assertions.assertEquals(ElevationServiceStub.getElevation(coords.get(i).getLatitude()), elevations.get(i).getRight(), 0.01);
+        }
+        Assertions.assertEquals(2, server.getRequestCount());
+        Assertions.assertEquals(0.5, cache.getHitRate(), 0.0001);
+
+        // mixed: only the new coordinate is requested
+        final List<LatLonElev> mixedCoords = new ArrayList<>(coords.subList(0, 10));
+        mixedCoords.add(new LatLonElev(-33.0, -70.0));
+        elevations = elevation.getElevationsForCoordinates(mixedCoords);
+        Assertions.assertEquals(3, server.getRequestCount());
+        Assertions.assertEquals(coords.size() + 1, server.getCoordinateCount());
+        Assertions.assertEquals(-3300.0, elevations.get(10).getRight(), 0.01);
+
+        // and everything is still there in the next session
+        Assertions.assertEquals(coords.size() + 1, new ElevationCache(testpath.resolve("provider.cache"), 10000).size());
+    }
+}
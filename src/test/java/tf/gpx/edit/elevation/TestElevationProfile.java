@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.gpx.edit.elevation;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import tf.gpx.edit.algorithms.EarthGeometry;
+import tf.gpx.edit.leafletmap.LatLonElev;
+
+/**
+ * Test sampling of elevation profiles along polylines.
+ *
+ * @author thomas
+ */
+public class TestElevationProfile {
+    private final static SRTMDataOptions SRTM_OPTIONS = new SRTMDataOptions(SRTMDataOptions.SRTMDataAverage.BILINEAR, "src/test/resources");
+    
+    // Paradise @ Mount Rainier up to the summit
+    private final static LatLonElev PARADISE = new LatLonElev(46.786, -121.735);
+    private final static LatLonElev CAMP_MUIR = new LatLonElev(46.8356, -121.7325);
+    private final static LatLonElev SUMMIT = new LatLonElev(46.8529, -121.7604);
+    
+    @Test
+    public void testSampling() {
+        final List<LatLonElev> polyline = Arrays.asList(PARADISE, CAMP_MUIR, SUMMIT);
+        final ElevationProfile profile = new ElevationProfile(polyline, ElevationProfile.DEFAULT_SPACING, SRTM_OPTIONS).calculate();
+        
+        final double length = EarthGeometry.distance2D(PARADISE.getLatitude(), PARADISE.getLongitude(), CAMP_MUIR.getLatitude(), CAMP_MUIR.getLongitude()) + 
+                EarthGeometry.distance2D(CAMP_MUIR.getLatitude(), CAMP_MUIR.getLongitude(), SUMMIT.getLatitude(), SUMMIT.getLongitude());
+        Assertions.assertEquals(length, profile.getLength(), 0.01);
+        
+        // samples every 10m plus the end point
+        final int sampleCount = profile.getSampleCount();
+        Assertions.assertEquals((int) Math.floor(length / ElevationProfile.DEFAULT_SPACING) + 2, sampleCount);
+        Assertions.assertEquals(sampleCount, profile.getFoundCount());
+        Assertions.assertFalse(profile.noElevationData());
+        
+        final double[] distances = profile.getDistances();
+        final double[] latitudes = profile.getLatitudes();
+        final double[] longitudes = profile.getLongitudes();
+        Assertions.assertEquals(0.0, distances[0]);
+        Assertions.assertEquals(PARADISE.getLatitude(), latitudes[0], 1e-9);
+        Assertions.assertEquals(PARADISE.getLongitude(), longitudes[0], 1e-9);
+        Assertions.assertEquals(length, distances[sampleCount-1], 0.01);
+        Assertions.assertEquals(SUMMIT.getLatitude(), latitudes[sampleCount-1], 1e-9);
+        Assertions.assertEquals(SUMMIT.getLongitude(), longitudes[sampleCount-1], 1e-9);
+        
+        // samples are really spaced as requested
+        for (int i = 1; i < sampleCount - 1; i++) {
+            Assertions.assertEquals(ElevationProfile.DEFAULT_SPACING, distances[i] - distances[i-1], 1e-6);
+            Assertions.assertEquals(ElevationProfile.DEFAULT_SPACING, 
+                    EarthGeometry.distance2D(latitudes[i-1], longitudes[i-1], latitudes[i], longitudes[i]), 0.1);
+        }
+        
+        // from approx. 1650m up to more than 4300m
+        final double[] elevations = profile.getElevations();
+        Assertions.assertEquals(1650.0, elevations[0], 50.0);
+        Assertions.assertTrue(profile.getMaxElevation() > 4300.0);
+        Assertions.assertEquals(elevations[0], profile.getMinElevation(), 50.0);
+        Assertions.assertTrue(profile.getCumulativeAscent() >= profile.getMaxElevation() - elevations[0]);
+        Assertions.assertEquals(elevations[sampleCount-1] - elevations[0], profile.getCumulativeAscent() - profile.getCumulativeDescent(), 0.01);
+        
+        // the same as a single lookup
+        final ElevationProvider provider = new ElevationProviderBuilder(new ElevationProviderOptions(ElevationProviderOptions.LookUpMode.SRTM_ONLY), SRTM_OPTIONS).build();
+        for (int i = 0; i < sampleCount; i += 97) {
+            Assertions.assertEquals(provider.getElevationForCoordinate(new LatLonElev(latitudes[i], longitudes[i])).getRight(), elevations[i], 0.01);
+        }
+    }
+    
+    @Test
+    public void testSpecialCases() {
+        // nothing
+        ElevationProfile profile = new ElevationProfile(new ArrayList<LatLonElev>(), ElevationProfile.DEFAULT_SPACING, SRTM_OPTIONS).calculate();
+        Assertions.assertEquals(0, profile.getSampleCount());
+        Assertions.assertEquals(0.0, profile.getLength());
+        Assertions.assertTrue(profile.noElevationData());
+        
+        // single point
+        profile = new ElevationProfile(Arrays.asList(PARADISE), ElevationProfile.DEFAULT_SPACING, SRTM_OPTIONS).calculate();
+        Assertions.assertEquals(1, profile.getSampleCount());
+        Assertions.assertEquals(0.0, profile.getCumulativeAscent());
+        Assertions.assertEquals(profile.getMinElevation(), profile.getMaxElevation());
+        
+        // same point twice and length being a multiple of the spacing
+        final double[] latLon = new double[2];
+        EarthGeometry.destinationPoint(PARADISE.getLatitude(), PARADISE.getLongitude(), 100.0, 90.0, latLon);
+        profile = new ElevationProfile(
+                new double[] {PARADISE.getLatitude(), PARADISE.getLatitude(), latLon[0]}, 
+                new double[] {PARADISE.getLongitude(), PARADISE.getLongitude(), latLon[1]}, 
+                20.0, SRTM_OPTIONS).calculate();
+        Assertions.assertEquals(100.0, profile.getLength(), 0.001);
+        Assertions.assertEquals(6, profile.getSampleCount());
+        Assertions.assertEquals(100.0, profile.getDistances()[5], 0.001);
+
+        // no data
+        profile = new ElevationProfile(Arrays.asList(new LatLonElev(0.5, 0.5), new LatLonElev(0.51, 0.51)), ElevationProfile.DEFAULT_SPACING, SRTM_OPTIONS).calculate();
+        Assertions.assertTrue(profile.getSampleCount() > 100);
+        Assertions.assertTrue(profile.noElevationData());
+        Assertions.assertEquals(IElevationProvider.NO_ELEVATION, profile.getElevations()[0]);
+        Assertions.assertEquals(IElevationProvider.NO_ELEVATION, profile.getMaxElevation());
+        
+        Assertions.assertThrows(IllegalArgumentException.class, () -> {
+            new ElevationProfile(Arrays.asList(PARADISE), 0.0, SRTM_OPTIONS);
+        });
+    }
+    
+    @Test
+    public void testPerformance() {
+        // zig zag route of approx. 100km with a point every 500m
+        final int pointCount = 200;
+        final double[] lats = new double[pointCount];
+        final double[] lons = new double[pointCount];
+        final double[] latLon = {46.1, -121.5};
+        for (int i = 0; i < pointCount; i++) {
+            lats[i] = latLon[0];
+            lons[i] = latLon[1];
+            EarthGeometry.destinationPoint(latLon[0], latLon[1], 500.0, 45.0 + 270.0 * (i % 2), latLon);
+        }
+        
+        // warm up
+        new ElevationProfile(lats, lons, ElevationProfile.DEFAULT_SPACING, SRTM_OPTIONS).calculate();
+
+        final int runs = 10;
+        final long[] times = new long[runs];
+        ElevationProfile profile = null;
+        for (int i = 0; i < runs; i++) {
+            final Instant startTime = Instant.now();
+            profile = new ElevationProfile(lats, lons, ElevationProfile.DEFAULT_SPACING, SRTM_OPTIONS).calculate();
+            times[i] = Duration.between(startTime, Instant.now()).toNanos();
+        }
+        Arrays.sort(times);
+        System.out.println(String.format("Elevation profile with %d samples: median %.1f ms", profile.getSampleCount(), times[runs / 2] / 1e6));
+        
+        Assertions.assertTrue(profile.getSampleCount() > 9900);
+        Assertions.assertEquals(profile.getSampleCount(), profile.getFoundCount());
+    }
+}
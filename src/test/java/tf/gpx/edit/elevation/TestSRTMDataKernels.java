@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.gpx.edit.elevation;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test the interpolation kernels against the expectations of TestSRTM in all four hemispheres.
+ * 
+ * @author thomas
+ */
+public class TestSRTMDataKernels {
+    private final static SRTMDataHelper.SRTMDataType DATA_TYPE = SRTMDataHelper.SRTMDataType.SRTM3;
+    private final static double TILE_DIST = 1.0 / (DATA_TYPE.getDataCount() - 1);
+    // offset from corners in tiles is 0,1% of tile size
+    private final static double DELTA = TILE_DIST / 1000.0;
+    private final static double MAX_VALUE = DATA_TYPE.getDataCount() - 1.0;
+    
+    // lower left corners of the test tiles
+    private final static int[][] TILES = {{45, 10}, {45, -11}, {-46, 10}, {-46, -11}};
+
+    private SRTMData getTestData(final int latitude, final int longitude) {
+        final String name = SRTMDataHelper.getNameForCoordinate(latitude + 0.5, longitude + 0.5);
+        
+        // same values as TestSRTMDataReader: row + col
+        final SRTMData result = new SRTMData(name, name, DATA_TYPE);
+        for (int row = 0; row < DATA_TYPE.getDataCount(); row++) { 
+            for (int col = 0; col < DATA_TYPE.getDataCount(); col++) { 
+                result.setValue(row, col, (short) (row + col)); 
+            } 
+        }
+        return result;
+    }
+    
+    private void checkValues(final SRTMData data, final SRTMDataOptions.SRTMDataAverage averageMode, final double[] latitudes, final double[] longitudes, final double[] expected, final double delta) {
+        final double[] elevations = new double[latitudes.length];
+        final boolean[] found = new boolean[latitudes.length];
+        
+        Assertions.assertEquals(latitudes.length, data.getValuesForCoordinates(latitudes, longitudes, 0, latitudes.length, averageMode, elevations, found));
+        
+        for (int i = 0; i < latitudes.length; i++) {
+            Assertions.assertTrue(found[i]);
+            Assertions.assertEquals(expected[i], elevations[i], delta, data.getKey().getKey() + ", " + averageMode + ", " + i);
+            
+            // single lookup gives the same
+            final Pair<Boolean, Double> single = data.getValueForCoordinate(latitudes[i], longitudes[i], averageMode);
+            Assertions.assertTrue(single.getLeft());
+            Assertions.assertEquals(elevations[i], single.getRight(), 0.0);
+        }
+    }
+
+    @Test
+    public void testCorners() {
+        for (int[] tile : TILES) {
+            final SRTMData data = getTestData(tile[0], tile[1]);
+
+            // lower left, lower right, upper left, upper right, center
+            final double[] latitudes = {tile[0] + DELTA, tile[0] + DELTA, tile[0] + 1 - DELTA, tile[0] + 1 - DELTA, tile[0] + 0.5};
+            final double[] longitudes = {tile[1] + DELTA, tile[1] + 1 - DELTA, tile[1] + DELTA, tile[1] + 1 - DELTA, tile[1] + 0.5};
+            final double[] expected = {MAX_VALUE, 2 * MAX_VALUE, 0.0, MAX_VALUE, MAX_VALUE};
+            
+            for (SRTMDataOptions.SRTMDataAverage averageMode : SRTMDataOptions.SRTMDataAverage.values()) {
+                checkValues(data, averageMode, latitudes, longitudes, expected, 0.01);
+            }
+        }
+    }
+
+    @Test
+    public void testBetweenGridPoints() {
+        for (int[] tile : TILES) {
+            final SRTMData data = getTestData(tile[0], tile[1]);
+
+            // between two columns, between two rows, between four grid points
+            final double[] latitudes = {tile[0] + 0.5, tile[0] + 0.5 + TILE_DIST / 2.0, tile[0] + 0.5 + TILE_DIST / 2.0};
+            final double[] longitudes = {tile[1] + 0.5 + TILE_DIST / 2.0, tile[1] + 0.5, tile[1] + 0.5 + TILE_DIST / 2.0};
+            final double[] expected = {MAX_VALUE + 0.5, MAX_VALUE - 0.5, MAX_VALUE};
+
+            checkValues(data, SRTMDataOptions.SRTMDataAverage.AVERAGE_NEIGHBOURS, latitudes, longitudes, expected, DELTA);
+            // data is linear - so proper interpolation must give the same
+            checkValues(data, SRTMDataOptions.SRTMDataAverage.BILINEAR, latitudes, longitudes, expected, DELTA);
+            checkValues(data, SRTMDataOptions.SRTMDataAverage.BICUBIC, latitudes, longitudes, expected, DELTA);
+        }
+    }
+    
+    @Test
+    public void testInterpolation() {
+        final SRTMData data = getTestData(45, 10);
+        
+        // anywhere in the tile: row + col as double - row counts from north, col from west
+        final int count = 1000;
+        final double[] latitudes = new double[count];
+        final double[] longitudes = new double[count];
+        final double[] expected = new double[count];
+        for (int i = 0; i < count; i++) {
+            latitudes[i] = 45.0 + DELTA + (i * 0.618034) % (1.0 - 2 * DELTA);
+            longitudes[i] = 10.0 + DELTA + (i * 0.414214) % (1.0 - 2 * DELTA);
+            expected[i] = (46.0 - latitudes[i]) * MAX_VALUE + (longitudes[i] - 10.0) * MAX_VALUE;
+        }
+        
+        checkValues(data, SRTMDataOptions.SRTMDataAverage.BILINEAR, latitudes, longitudes, expected, 1e-6);
+        checkValues(data, SRTMDataOptions.SRTMDataAverage.BICUBIC, latitudes, longitudes, expected, 1e-6);
+        // nearest is at most half a grid step away in each direction
+        checkValues(data, SRTMDataOptions.SRTMDataAverage.NEAREST_ONLY, latitudes, longitudes, expected, 1.0);
+    }
+    
+    @Test
+    public void testOtherTile() {
+        final SRTMData data = getTestData(45, 10);
+        
+        final double[] latitudes = {45.5, 46.5, 45.5, -45.5};
+        final double[] longitudes = {10.5, 10.5, -10.5, 10.5};
+        final double[] elevations = new double[latitudes.length];
+        final boolean[] found = new boolean[latitudes.length];
+        
+        Assertions.assertEquals(1, data.getValuesForCoordinates(latitudes, longitudes, 0, latitudes.length, SRTMDataOptions.SRTMDataAverage.BILINEAR, elevations, found));
+        Assertions.assertTrue(found[0]);
+        Assertions.assertFalse(found[1]);
+        Assertions.assertFalse(found[2]);
+        Assertions.assertFalse(found[3]);
+        Assertions.assertEquals(IElevationProvider.NO_ELEVATION, elevations[1], 0.0);
+    }
+    
+    @Test
+    public void testVoids() {
+        final SRTMData data = getTestData(45, 10);
+        data.setValue(600, 601, Short.MIN_VALUE);
+
+        final double[] latitudes = {45.5, 45.5, 45.5 + DELTA};
+        final double[] longitudes = {10.5 + TILE_DIST, 10.5 + TILE_DIST / 2.0, 10.5 + TILE_DIST / 2.0};
+        final double[] elevations = new double[latitudes.length];
+        final boolean[] found = new boolean[latitudes.length];
+        
+        // nearest hits the hole
+        data.getValuesForCoordinates(latitudes, longitudes, 0, 1, SRTMDataOptions.SRTMDataAverage.NEAREST_ONLY, elevations, found);
+        Assertions.assertFalse(found[0]);
+
+        // interpolation uses the remaining data points
+        for (SRTMDataOptions.SRTMDataAverage averageMode : new SRTMDataOptions.SRTMDataAverage[] {
+                SRTMDataOptions.SRTMDataAverage.AVERAGE_NEIGHBOURS, SRTMDataOptions.SRTMDataAverage.BILINEAR, SRTMDataOptions.SRTMDataAverage.BICUBIC}) {
+            data.getValuesForCoordinates(latitudes, longitudes, 1, latitudes.length, averageMode, elevations, found);
+            Assertions.assertTrue(found[1]);
+            Assertions.assertTrue(found[2]);
+            Assertions.assertEquals(MAX_VALUE, elevations[1], 0.01);
+        }
+    }
+    
+    @Test
+    public void testRealValues() {
+        // same as TestSRTM.checkRealValues
+        final SRTMDataOptions srtmOptions = new SRTMDataOptions(SRTMDataOptions.SRTMDataAverage.NEAREST_ONLY, "src/test/resources");
+        final SRTMElevationService service = new SRTMElevationService(new ElevationProviderOptions(ElevationProviderOptions.LookUpMode.SRTM_ONLY), srtmOptions);
+
+        // MT EVEREST, MT RAINIER, MT COOK, ACONGAGUA - and some in the sea
+        final double[] latitudes = {27.9881, 46.8523, -43.5950, -32.6532, 0.5};
+        final double[] longitudes = {86.9250, -121.7603, 170.1418, -70.0109, 0.5};
+        final double[] expected = {8840, 4369, 3712, 6929, IElevationProvider.NO_ELEVATION};
+        final double[] elevations = new double[latitudes.length];
+        final boolean[] found = new boolean[latitudes.length];
+        
+        Assertions.assertEquals(4, service.getElevationsForCoordinates(latitudes, longitudes, elevations, found));
+        for (int i = 0; i < latitudes.length; i++) {
+            Assertions.assertEquals(i < 4, found[i]);
+            Assertions.assertEquals(expected[i], elevations[i], 0.01);
+        }
+        
+        // interpolation stays close to the nearest value for the peaks
+        srtmOptions.setSRTMDataAverage(SRTMDataOptions.SRTMDataAverage.BICUBIC);
+        Assertions.assertEquals(4, service.getElevationsForCoordinates(latitudes, longitudes, elevations, found));
+        for (int i = 0; i < 4; i++) {
+            Assertions.assertEquals(expected[i], elevations[i], 100.0);
+        }
+    }
+}
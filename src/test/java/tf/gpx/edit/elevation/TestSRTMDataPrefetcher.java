@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.gpx.edit.elevation;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import javafx.geometry.BoundingBox;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import tf.gpx.edit.leafletmap.LatLonElev;
+
+/**
+ * Test tile selection and background loading of SRTMDataPrefetcher.
+ * 
+ * @author thomas
+ */
+public class TestSRTMDataPrefetcher {
+    private final static String TEST_PATH = "src/test/resources";
+
+    @Test
+    public void testNamesForBoundingBox() {
+        // lat / lon as in TrackMap
+        Set<String> names = SRTMDataPrefetcher.getDataNamesForBoundingBox(new BoundingBox(46.2, -121.8, 0.5, 0.5));
+        Assertions.assertEquals(1, names.size());
+        Assertions.assertTrue(names.contains("N46W122"));
+
+        names = SRTMDataPrefetcher.getDataNamesForBoundingBox(new BoundingBox(-0.5, -0.5, 1.0, 1.0));
+        Assertions.assertEquals(4, names.size());
+        Assertions.assertTrue(names.contains("N00E000"));
+        Assertions.assertTrue(names.contains("N00W001"));
+        Assertions.assertTrue(names.contains("S01E000"));
+        Assertions.assertTrue(names.contains("S01W001"));
+
+        // across the date line
+        names = SRTMDataPrefetcher.getDataNamesForBoundingBox(new BoundingBox(-43.5, 179.5, 0.2, 1.0));
+        Assertions.assertEquals(2, names.size());
+        Assertions.assertTrue(names.contains("S44E179"));
+        Assertions.assertTrue(names.contains("S44W180"));
+
+        // too much to prefetch
+        names = SRTMDataPrefetcher.getDataNamesForBoundingBox(new BoundingBox(40.0, 0.0, 10.0, 10.0));
+        Assertions.assertTrue(names.isEmpty());
+    }
+
+    @Test
+    public void testNamesForCoordinates() {
+        final Set<String> names = SRTMDataPrefetcher.getDataNamesForCoordinates(Arrays.asList(
+                new LatLonElev(46.5, -121.5), 
+                new LatLonElev(46.9, -121.1), 
+                new LatLonElev(-32.5, -70.5), 
+                new LatLonElev(-43.5, 170.5),
+                new LatLonElev(27.9, 86.9)));
+        
+        // same names as used for the data files
+        Assertions.assertEquals(4, names.size());
+        Assertions.assertTrue(names.contains(SRTMDataHelper.getNameForCoordinate(46.5, -121.5)));
+        Assertions.assertTrue(names.contains(SRTMDataHelper.getNameForCoordinate(-32.5, -70.5)));
+        Assertions.assertTrue(names.contains(SRTMDataHelper.getNameForCoordinate(-43.5, 170.5)));
+        Assertions.assertTrue(names.contains(SRTMDataHelper.getNameForCoordinate(27.9, 86.9)));
+    }
+
+    @Test
+    public void testPrefetch() throws InterruptedException, ExecutionException, TimeoutException {
+        final SRTMDataOptions srtmOptions = new SRTMDataOptions().setSRTMDataPath(TEST_PATH);
+        
+        // N27E086 is there, N00E000 isn't and shouldn't end up as empty data in the store
+        SRTMDataPrefetcher.getInstance().prefetchDataNames(Arrays.asList("N27E086", "N00E000"), srtmOptions).get(60, TimeUnit.SECONDS);
+        
+        Assertions.assertTrue(SRTMDataStore.getInstance().hasDataForName("N27E086"));
+        Assertions.assertFalse(SRTMDataStore.getInstance().hasDataForName("N00E000"));
+        
+        // and the store serves it from memory
+        final SRTMData data = SRTMDataStore.getInstance().getDataForName("N27E086", srtmOptions);
+        Assertions.assertFalse(data.isEmpty());
+        Assertions.assertEquals("N27E086", data.getKey().getKey());
+    }
+
+    @Test
+    public void testStoreSize() throws InterruptedException, ExecutionException, TimeoutException {
+        final SRTMDataOptions srtmOptions = new SRTMDataOptions().setSRTMDataPath(TEST_PATH);
+        // all test files - more than we want to keep in memory
+        final List<BoundingBox> boundingBoxes = Arrays.asList(
+                new BoundingBox(27.2, 86.2, 0.5, 0.5), 
+                new BoundingBox(46.2, -121.8, 0.5, 0.5), 
+                new BoundingBox(-32.8, -70.8, 0.5, 0.5), 
+                new BoundingBox(-43.8, 170.2, 0.5, 0.5));
+        
+        SRTMDataStore.getInstance().setMaxStoreSize(2);
+        try {
+            Assertions.assertTrue(SRTMDataStore.getInstance().size() <= 2);
+
+            for (int i = 0; i < 3; i++) {
+                for (BoundingBox boundingBox : boundingBoxes) {
+                    SRTMDataPrefetcher.getInstance().prefetchDataNames(
+                            SRTMDataPrefetcher.getDataNamesForBoundingBox(boundingBox), srtmOptions).get(60, TimeUnit.SECONDS);
+                    Assertions.assertTrue(SRTMDataStore.getInstance().size() <= 2);
+                }
+            }
+            
+            // the most recent ones are kept
+            Assertions.assertTrue(SRTMDataStore.getInstance().hasDataForName("S44E170"));
+            Assertions.assertTrue(SRTMDataStore.getInstance().hasDataForName("S33W071"));
+            Assertions.assertFalse(SRTMDataStore.getInstance().hasDataForName("N27E086"));
+            
+            // and dropped ones can be read again
+            final SRTMData data = SRTMDataStore.getInstance().getDataForName("N27E086", srtmOptions);
+            Assertions.assertFalse(data.isEmpty());
+            Assertions.assertEquals(2, SRTMDataStore.getInstance().size());
+        } finally {
+            SRTMDataStore.getInstance().setMaxStoreSize(SRTMDataStore.MAX_STORE_SIZE);
+        }
+    }
+}
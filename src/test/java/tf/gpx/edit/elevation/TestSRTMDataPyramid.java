@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.gpx.edit.elevation;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test the downsampled overview levels of SRTM data.
+ * 
+ * @author thomas
+ */
+public class TestSRTMDataPyramid {
+    private final static SRTMDataHelper.SRTMDataType DATA_TYPE = SRTMDataHelper.SRTMDataType.SRTM3;
+    
+    private SRTMData getTestData() {
+        // same values as TestSRTMDataReader: row + col
+        final SRTMData result = new SRTMData("N46E011", "N46E011", DATA_TYPE);
+        for (int row = 0; row < DATA_TYPE.getDataCount(); row++) { 
+            for (int col = 0; col < DATA_TYPE.getDataCount(); col++) { 
+                result.setValue(row, col, (short) (row + col)); 
+            } 
+        }
+        return result;
+    }
+    
+    // coordinate in the middle of the given row / col in tile N46E011
+    private double getLatitude(final int rowNum) {
+        return 47.0 - rowNum * DATA_TYPE.getGridSize() / 3600.0;
+    }
+    private double getLongitude(final int colNum) {
+        return 11.0 + colNum * DATA_TYPE.getGridSize() / 3600.0;
+    }
+
+    @Test
+    public void testLevels() {
+        final SRTMData data = getTestData();
+        final SRTMDataPyramid pyramid = data.getPyramid();
+        // only calculated once
+        Assertions.assertSame(pyramid, data.getPyramid());
+        
+        Assertions.assertEquals(601, pyramid.getLevelSize(2));
+        Assertions.assertEquals(301, pyramid.getLevelSize(4));
+        Assertions.assertEquals(151, pyramid.getLevelSize(8));
+        
+        for (int factor : SRTMDataPyramid.LEVEL_FACTORS) {
+            for (int rowNum = 1; rowNum < DATA_TYPE.getDataCount() - 1; rowNum += 97) {
+                for (int colNum = 1; colNum < DATA_TYPE.getDataCount() - 1; colNum += 89) {
+                    final int rowStart = (rowNum / factor) * factor;
+                    final int colStart = (colNum / factor) * factor;
+                    
+                    final double latitude = getLatitude(rowNum);
+                    final double longitude = getLongitude(colNum);
+
+                    final Pair<Boolean, Double> min = pyramid.getValueForCoordinate(latitude, longitude, factor, SRTMDataPyramid.Statistic.MIN);
+                    final Pair<Boolean, Double> max = pyramid.getValueForCoordinate(latitude, longitude, factor, SRTMDataPyramid.Statistic.MAX);
+                    final Pair<Boolean, Double> mean = pyramid.getValueForCoordinate(latitude, longitude, factor, SRTMDataPyramid.Statistic.MEAN);
+                    
+                    Assertions.assertTrue(min.getLeft());
+                    Assertions.assertTrue(max.getLeft());
+                    Assertions.assertTrue(mean.getLeft());
+                    
+                    Assertions.assertEquals(rowStart + colStart, min.getRight(), 0.1);
+                    Assertions.assertEquals(rowStart + colStart + 2 * (factor - 1), max.getRight(), 0.1);
+                    Assertions.assertEquals(rowStart + colStart + factor - 1, mean.getRight(), 0.1);
+                    
+                    // and the cell contains the full resolution value
+                    final Pair<Boolean, Double> full = data.getValueForCoordinate(latitude, longitude, SRTMDataOptions.SRTMDataAverage.NEAREST_ONLY);
+                    Assertions.assertEquals(rowNum + colNum, full.getRight(), 0.1);
+                    Assertions.assertTrue(min.getRight() <= full.getRight());
+                    Assertions.assertTrue(max.getRight() >= full.getRight());
+                }
+            }
+        }
+        
+        // last cell isn't complete - only the last row / col
+        final int last = DATA_TYPE.getDataCount() - 1;
+        final Pair<Boolean, Double> corner = 
+                pyramid.getValueForCoordinate(getLatitude(last) + 0.00001, getLongitude(last) - 0.00001, 8, SRTMDataPyramid.Statistic.MEAN);
+        Assertions.assertEquals(2 * last, corner.getRight(), 0.1);
+    }
+
+    @Test
+    public void testNoData() {
+        final SRTMData data = new SRTMData("N46E011", "N46E011", DATA_TYPE);
+        // one valid value in a cell of voids
+        for (int row = 0; row < 8; row++) { 
+            for (int col = 0; col < 8; col++) { 
+                data.setValue(row, col, Short.MIN_VALUE); 
+            } 
+        }
+        data.setValue(5, 6, (short) 1000);
+        
+        final SRTMDataPyramid pyramid = data.getPyramid();
+        Pair<Boolean, Double> value = pyramid.getValueForCoordinate(getLatitude(1), getLongitude(1), 8, SRTMDataPyramid.Statistic.MEAN);
+        Assertions.assertTrue(value.getLeft());
+        Assertions.assertEquals(1000.0, value.getRight(), 0.1);
+
+        value = pyramid.getValueForCoordinate(getLatitude(1), getLongitude(1), 2, SRTMDataPyramid.Statistic.MAX);
+        Assertions.assertFalse(value.getLeft());
+        Assertions.assertEquals(IElevationProvider.NO_ELEVATION, value.getRight(), 0.1);
+    }
+
+    @Test
+    public void testResolution() {
+        final SRTMDataPyramid pyramid = getTestData().getPyramid();
+        
+        // SRTM3: approx. 92.6m per cell
+        Assertions.assertEquals(1, pyramid.getFactorForResolution(10.0));
+        Assertions.assertEquals(1, pyramid.getFactorForResolution(150.0));
+        Assertions.assertEquals(2, pyramid.getFactorForResolution(200.0));
+        Assertions.assertEquals(4, pyramid.getFactorForResolution(400.0));
+        Assertions.assertEquals(8, pyramid.getFactorForResolution(800.0));
+        Assertions.assertEquals(8, pyramid.getFactorForResolution(100000.0));
+    }
+
+    @Test
+    public void testRealData() {
+        final SRTMDataOptions srtmOptions = new SRTMDataOptions().setSRTMDataPath("src/test/resources");
+        final SRTMElevationService service = new SRTMElevationService(new ElevationProviderOptions(ElevationProviderOptions.LookUpMode.SRTM_ONLY), srtmOptions);
+        
+        final double latitude = 46.8528;
+        final double longitude = -121.7604;
+        final Pair<Boolean, Double> full = service.getElevationForCoordinate(latitude, longitude);
+        Assertions.assertTrue(full.getLeft());
+
+        // high resolution is the same as the normal lookup
+        Assertions.assertEquals(full.getRight(), service.getElevationForCoordinate(latitude, longitude, 10.0, SRTMDataPyramid.Statistic.MEAN).getRight(), 0.1);
+        
+        double lastMax = full.getRight();
+        double lastMin = full.getRight();
+        for (double resolution : new double[] {200.0, 400.0, 800.0}) {
+            final Pair<Boolean, Double> max = service.getElevationForCoordinate(latitude, longitude, resolution, SRTMDataPyramid.Statistic.MAX);
+            final Pair<Boolean, Double> min = service.getElevationForCoordinate(latitude, longitude, resolution, SRTMDataPyramid.Statistic.MIN);
+            Assertions.assertTrue(max.getLeft());
+            Assertions.assertTrue(min.getLeft());
+            
+            // coarser levels contain the finer ones
+            Assertions.assertTrue(max.getRight() >= lastMax);
+            Assertions.assertTrue(min.getRight() <= lastMin);
+            lastMax = max.getRight();
+            lastMin = min.getRight();
+        }
+    }
+}
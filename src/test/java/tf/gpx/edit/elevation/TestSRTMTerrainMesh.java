@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.gpx.edit.elevation;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test chunking, level of detail and stitching of the terrain meshes.
+ *
+ * @author thomas
+ */
+public class TestSRTMTerrainMesh {
+    private final SRTMElevationService service = 
+            new SRTMElevationService(
+                    new ElevationProviderOptions(ElevationProviderOptions.LookUpMode.SRTM_ONLY), 
+                    new SRTMDataOptions(SRTMDataOptions.SRTMDataAverage.NEAREST_ONLY, "src/test/resources"));
+    
+    // Mount Rainier tile
+    private SRTMTerrainMesh getTerrain(final int maxVertices) {
+        return new SRTMTerrainMesh(service, 46.0, 47.0, -122.0, -121.0).setMaxVertices(maxVertices);
+    }
+    
+    @Test
+    public void testChunks() {
+        final Instant startTime = Instant.now();
+        final SRTMTerrainMesh terrain = getTerrain(SRTMTerrainMesh.DEFAULT_MAX_VERTICES).calculate();
+        final Duration duration = Duration.between(startTime, Instant.now());
+        System.out.println(String.format("Terrain for SRTM3 tile: %d chunks, %d vertices, %d ms", terrain.getChunks().size(), terrain.getTotalVertexCount(), duration.toMillis()));
+        
+        Assertions.assertFalse(terrain.noElevationData());
+        Assertions.assertFalse(terrain.hasNoData());
+        Assertions.assertEquals(3.0 / 3600.0, terrain.getCellSize(), 1e-9);
+        Assertions.assertEquals(SRTMTerrainMesh.DEFAULT_CHUNK_CELLS, terrain.getChunkCells());
+        // 1200 cells per side
+        Assertions.assertEquals(19, terrain.getChunkRows());
+        Assertions.assertEquals(19, terrain.getChunkColumns());
+        Assertions.assertEquals(1, terrain.getBaseStep());
+        // much less than the full data
+        Assertions.assertTrue(terrain.getTotalVertexCount() < 1201 * 1201 / 4);
+        
+        // full detail around the center, coarse at the corners
+        int minStep = Integer.MAX_VALUE;
+        for (SRTMTerrainMesh.Chunk chunk : terrain.getChunks()) {
+            minStep = Math.min(minStep, chunk.getStep());
+            if (chunk.getChunkRow() == 9 && chunk.getChunkColumn() == 9) {
+                Assertions.assertEquals(1, chunk.getStep());
+            }
+            if (chunk.getChunkRow() == 0 && chunk.getChunkColumn() == 0) {
+                Assertions.assertEquals(8, chunk.getStep());
+            }
+            // last chunk in a row is only partially filled
+            if (chunk.getChunkColumn() == terrain.getChunkColumns() - 1) {
+                Assertions.assertEquals(-121.0, terrain.getLongitude(chunk, chunk.getVertexColumns() - 1), 1e-9);
+            }
+        }
+        Assertions.assertEquals(1, minStep);
+        
+        // vertices not on the border have the values of the data
+        for (SRTMTerrainMesh.Chunk chunk : terrain.getChunks()) {
+            for (int row = 1; row < chunk.getVertexRows() - 1; row += 7) {
+                for (int col = 1; col < chunk.getVertexColumns() - 1; col += 7) {
+                    final double expected = service.getElevationForCoordinate(terrain.getLatitude(chunk, row), terrain.getLongitude(chunk, col)).getRight();
+                    Assertions.assertEquals(expected, chunk.getElevation(row, col), 0.1);
+                }
+            }
+        }
+        
+        // summit is in the data
+        Assertions.assertTrue(terrain.getMaxElevation() > 4300);
+        Assertions.assertTrue(terrain.getMinElevation() < 1000);
+    }
+    
+    @Test
+    public void testStitching() {
+        final SRTMTerrainMesh terrain = getTerrain(SRTMTerrainMesh.DEFAULT_MAX_VERTICES).calculate();
+        
+        for (SRTMTerrainMesh.Chunk chunk : terrain.getChunks()) {
+            if (chunk.getChunkColumn() == terrain.getChunkColumns() - 1) {
+                continue;
+            }
+            final SRTMTerrainMesh.Chunk east = terrain.getChunks().get(chunk.getChunkRow() * terrain.getChunkColumns() + chunk.getChunkColumn() + 1);
+            final SRTMTerrainMesh.Chunk fine = (chunk.getStep() <= east.getStep()) ? chunk : east;
+            final SRTMTerrainMesh.Chunk coarse = (fine == chunk) ? east : chunk;
+            final int fineCol = (fine == chunk) ? fine.getVertexColumns() - 1 : 0;
+            final int coarseCol = (coarse == chunk) ? coarse.getVertexColumns() - 1 : 0;
+            final int ratio = coarse.getStep() / fine.getStep();
+
+            // shared edge: same positions on the coarse grid, interpolated values in between
+            for (int row = 0; row < fine.getVertexRows(); row++) {
+                final float value = fine.getElevation(row, fineCol);
+                if (row % ratio == 0 || row == fine.getVertexRows() - 1) {
+                    final int coarseRow = (row == fine.getVertexRows() - 1) ? coarse.getVertexRows() - 1 : row / ratio;
+                    Assertions.assertEquals(terrain.getLatitude(coarse, coarseRow), terrain.getLatitude(fine, row), 1e-9);
+                    Assertions.assertEquals(coarse.getElevation(coarseRow, coarseCol), value, 0.01);
+                } else {
+                    final float lower = coarse.getElevation(row / ratio, coarseCol);
+                    final float upper = coarse.getElevation(Math.min(row / ratio + 1, coarse.getVertexRows() - 1), coarseCol);
+                    Assertions.assertTrue(value >= Math.min(lower, upper) - 0.01 && value <= Math.max(lower, upper) + 0.01);
+                }
+            }
+        }
+    }
+    
+    @Test
+    public void testBudget() {
+        final SRTMTerrainMesh terrain = getTerrain(20000).calculate();
+        
+        Assertions.assertTrue(terrain.getBaseStep() > 1);
+        Assertions.assertTrue(terrain.getTotalVertexCount() <= 20000);
+        
+        // and other focus changes the details
+        final SRTMTerrainMesh cornerFocus = getTerrain(SRTMTerrainMesh.DEFAULT_MAX_VERTICES).setFocus(46.99, -121.99).calculate();
+        Assertions.assertEquals(1, cornerFocus.getChunks().get(0).getStep());
+        Assertions.assertTrue(cornerFocus.getChunks().get(cornerFocus.getChunks().size() - 1).getStep() > 1);
+    }
+    
+    @Test
+    public void testMeshes() {
+        final SRTMTerrainMesh terrain = getTerrain(SRTMTerrainMesh.DEFAULT_MAX_VERTICES).calculate();
+        final int colorCount = 8;
+        terrain.buildMeshes(1.0 / 100000.0, 46.5, -121.5, colorCount, false);
+        
+        for (SRTMTerrainMesh.Chunk chunk : terrain.getChunks()) {
+            Assertions.assertEquals(3 * chunk.getVertexCount(), chunk.getPoints().length);
+            Assertions.assertEquals(2 * chunk.getVertexCount(), chunk.getTexCoords().length);
+            Assertions.assertEquals(12 * (chunk.getVertexRows() - 1) * (chunk.getVertexColumns() - 1), chunk.getFaces().length);
+            
+            for (int i = 0; i < chunk.getVertexCount(); i++) {
+                final float x = chunk.getPoints()[3 * i];
+                final float z = chunk.getPoints()[3 * i + 2];
+                Assertions.assertTrue(Math.abs(x) <= 0.5 + 1e-6);
+                Assertions.assertTrue(Math.abs(z) <= 0.5 + 1e-6);
+                Assertions.assertTrue(chunk.getPoints()[3 * i + 1] >= 0f);
+                
+                final float u = chunk.getTexCoords()[2 * i];
+                Assertions.assertTrue(u > 0f && u < 1f);
+            }
+            for (int index : chunk.getFaces()) {
+                Assertions.assertTrue(index >= 0 && index < chunk.getVertexCount());
+            }
+        }
+        
+        // any scaler gives the same result as the linear one it is equivalent to
+        final List<float[]> linearPoints = new ArrayList<>();
+        for (SRTMTerrainMesh.Chunk chunk : terrain.getChunks()) {
+            linearPoints.add(chunk.getPoints().clone());
+        }
+        terrain.buildMeshes((value) -> value * (1.0 / 100000.0), 46.5, -121.5, colorCount, false);
+        for (int i = 0; i < terrain.getChunks().size(); i++) {
+            Assertions.assertArrayEquals(linearPoints.get(i), terrain.getChunks().get(i).getPoints());
+        }
+        
+        // and a non-linear one is applied to each vertex
+        terrain.buildMeshes((value) -> Math.sqrt(value) / 40.0, 46.5, -121.5, colorCount, false);
+        for (int i = 0; i < terrain.getChunks().size(); i++) {
+            final float[] points = terrain.getChunks().get(i).getPoints();
+            for (int j = 1; j < points.length; j += 3) {
+                final double elevation = linearPoints.get(i)[j] * 100000.0;
+                Assertions.assertEquals(Math.sqrt(elevation) / 40.0, points[j], 1e-3);
+            }
+        }
+    }
+    
+    @Test
+    public void testNoData() {
+        // northern half has no tile
+        final SRTMTerrainMesh terrain = new SRTMTerrainMesh(service, 46.5, 47.5, -121.8, -121.2).calculate();
+        Assertions.assertFalse(terrain.noElevationData());
+        Assertions.assertTrue(terrain.hasNoData());
+        
+        final SRTMTerrainMesh nothing = new SRTMTerrainMesh(service, 0.2, 0.8, 0.2, 0.8).calculate();
+        Assertions.assertTrue(nothing.noElevationData());
+        Assertions.assertTrue(nothing.getChunks().isEmpty());
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.gpx.edit.elevation;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import javax.imageio.ImageIO;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import tf.gpx.edit.algorithms.EarthGeometry;
+import tf.gpx.edit.leafletmap.LocalTileServer;
+
+/**
+ * Test terrain tiles on a synthetic inclined plane and on real terrain.
+ *
+ * @author thomas
+ */
+public class TestSRTMTerrainTiles {
+    private static Path testpath;
+    
+    // steep plane rising to the east - starting below sea level to fit into short values
+    private final static String TILE_NAME = "N47E011";
+    private final static double METER_PER_COLUMN = 15.0;
+    
+    @BeforeAll
+    public static void setUpClass() throws IOException {
+        testpath = Files.createTempDirectory("TestGPXEditor");
+        
+        final int count = SRTMDataHelper.SRTMDataType.SRTM1.getDataCount();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(testpath.resolve(TILE_NAME + ".hgt").toFile())))) {
+            for (int row = 0; row < count; row++) {
+                for (int col = 0; col < count; col++) {
+                    out.writeShort((short) ((col - count / 2) * METER_PER_COLUMN));
+                }
+            }
+        }
+    }
+
+    @AfterAll
+    public static void tearDownClass() throws IOException {
+        // delete temp directory + files
+        FileUtils.deleteDirectory(testpath.toFile());
+    }
+    
+    private static int getTileX(final double longitude, final int zoom) {
+        return (int) Math.floor((longitude + 180.0) / 360.0 * (1 << zoom));
+    }
+    
+    private static int getTileY(final double latitude, final int zoom) {
+        final double latRad = Math.toRadians(latitude);
+        return (int) Math.floor((1.0 - Math.log(Math.tan(latRad) + 1.0 / Math.cos(latRad)) / Math.PI) / 2.0 * (1 << zoom));
+    }
+    
+    @Test
+    public void testInclinedPlane() {
+        final SRTMTerrainTiles tiles = new SRTMTerrainTiles(new SRTMDataOptions(SRTMDataOptions.SRTMDataAverage.BILINEAR, testpath.toString()));
+
+        final int zoom = 12;
+        final double latitude = 47.5;
+        final SRTMTerrainTiles.TerrainTile terrain = tiles.getTerrainTile(zoom, getTileX(11.5, zoom), getTileY(latitude, zoom));
+        Assertions.assertTrue(terrain.hasData());
+        
+        // the tile spans less than 0.1° - slope doesn't change noticeably with the latitude
+        final double columnWidth = EarthGeometry.LengthOfADegree / 3600.0 * Math.cos(Math.toRadians(latitude));
+        final double expectedSlope = Math.toDegrees(Math.atan(METER_PER_COLUMN / columnWidth));
+        final double sunZenith = Math.toRadians(90.0 - SRTMTerrainTiles.SUN_ALTITUDE);
+        final double expectedShade = Math.cos(sunZenith) * Math.cos(Math.toRadians(expectedSlope)) + 
+                Math.sin(sunZenith) * Math.sin(Math.toRadians(expectedSlope)) * Math.cos(Math.toRadians(SRTMTerrainTiles.SUN_AZIMUTH - 270.0));
+
+        for (int py = 0; py < SRTMTerrainTiles.TILE_SIZE; py += 15) {
+            for (int px = 0; px < SRTMTerrainTiles.TILE_SIZE; px += 15) {
+                Assertions.assertFalse(Double.isNaN(terrain.getElevation(px, py)));
+                Assertions.assertEquals(expectedSlope, terrain.getSlope(px, py), 0.5);
+                // facing west
+                Assertions.assertEquals(270.0, terrain.getAspect(px, py), 1.0);
+                Assertions.assertEquals(expectedShade, terrain.getHillshade(px, py), 0.01);
+            }
+        }
+        
+        // elevation increases to the east
+        Assertions.assertTrue(terrain.getElevation(255, 128) > terrain.getElevation(0, 128));
+
+        // all pixels are in the same slope class
+        final int[] pixels = SRTMTerrainTiles.getTilePixels(terrain, SRTMTerrainTiles.TerrainLayer.SLOPE);
+        Assertions.assertNotEquals(0, pixels[0]);
+        for (int pixel : pixels) {
+            Assertions.assertEquals(pixels[0], pixel);
+        }
+    }
+    
+    @Test
+    public void testRealTerrain() throws IOException {
+        final SRTMTerrainTiles tiles = new SRTMTerrainTiles(new SRTMDataOptions(SRTMDataOptions.SRTMDataAverage.BILINEAR, "src/test/resources"));
+
+        // Mount Rainier
+        final int zoom = 12;
+        final int x = getTileX(-121.7604, zoom);
+        final int y = getTileY(46.8529, zoom);
+
+        final Instant startTime = Instant.now();
+        final SRTMTerrainTiles.TerrainTile terrain = tiles.getTerrainTile(zoom, x, y);
+        final Duration duration = Duration.between(startTime, Instant.now());
+        System.out.println(String.format("Terrain tile %d/%d/%d: %d ms", zoom, x, y, duration.toMillis()));
+        Assertions.assertTrue(terrain.hasData());
+        
+        // there are some steep parts on a glaciated volcano
+        int steepCount = 0;
+        double minAspect = 360.0;
+        double maxAspect = 0.0;
+        for (int py = 0; py < SRTMTerrainTiles.TILE_SIZE; py++) {
+            for (int px = 0; px < SRTMTerrainTiles.TILE_SIZE; px++) {
+                final double slope = terrain.getSlope(px, py);
+                Assertions.assertTrue(slope >= 0.0 && slope < 90.0);
+                final double shade = terrain.getHillshade(px, py);
+                Assertions.assertTrue(shade >= 0.0 && shade <= 1.0);
+                
+                if (slope > SRTMTerrainTiles.SLOPE_LIMITS[0]) {
+                    steepCount++;
+                }
+                if (!Double.isNaN(terrain.getAspect(px, py))) {
+                    minAspect = Math.min(minAspect, terrain.getAspect(px, py));
+                    maxAspect = Math.max(maxAspect, terrain.getAspect(px, py));
+                }
+            }
+        }
+        Assertions.assertTrue(steepCount > 0);
+        // all directions are there
+        Assertions.assertTrue(minAspect < 10.0);
+        Assertions.assertTrue(maxAspect > 350.0);
+        
+        for (SRTMTerrainTiles.TerrainLayer layer : SRTMTerrainTiles.TerrainLayer.values()) {
+            final byte[] png = tiles.getTile(layer, zoom, x, y);
+            Assertions.assertNotNull(png);
+            
+            final BufferedImage image = ImageIO.read(new ByteArrayInputStream(png));
+            Assertions.assertEquals(SRTMTerrainTiles.TILE_SIZE, image.getWidth());
+            Assertions.assertEquals(SRTMTerrainTiles.TILE_SIZE, image.getHeight());
+            
+            // second time it comes from the cache
+            Assertions.assertSame(png, tiles.getTile(layer, zoom, x, y));
+        }
+        Assertions.assertEquals(SRTMTerrainTiles.TerrainLayer.values().length, tiles.getCacheSize());
+    }
+    
+    @Test
+    public void testNoData() {
+        final SRTMTerrainTiles tiles = new SRTMTerrainTiles(new SRTMDataOptions(SRTMDataOptions.SRTMDataAverage.BILINEAR, "src/test/resources"));
+
+        final SRTMTerrainTiles.TerrainTile terrain = tiles.getTerrainTile(12, getTileX(0.5, 12), getTileY(0.5, 12));
+        Assertions.assertFalse(terrain.hasData());
+        Assertions.assertTrue(Double.isNaN(terrain.getSlope(128, 128)));
+        
+        // transparent tile for no data, nothing for invalid tiles
+        Assertions.assertNotNull(tiles.getTile(SRTMTerrainTiles.TerrainLayer.SLOPE, 12, getTileX(0.5, 12), getTileY(0.5, 12)));
+        Assertions.assertNull(tiles.getTile(SRTMTerrainTiles.TerrainLayer.SLOPE, 2, 4, 0));
+        Assertions.assertNull(tiles.getTile(SRTMTerrainTiles.TerrainLayer.SLOPE, SRTMTerrainTiles.MAX_ZOOM + 1, 0, 0));
+    }
+    
+    @Test
+    public void testLocalTileServer() throws IOException {
+        final SRTMTerrainTiles tiles = new SRTMTerrainTiles(new SRTMDataOptions(SRTMDataOptions.SRTMDataAverage.BILINEAR, "src/test/resources"));
+        final String name = SRTMTerrainTiles.TerrainLayer.HILLSHADE.getProviderName();
+        LocalTileServer.getInstance().registerTileProvider(name, (int zoom, int x, int y) -> {
+            return tiles.getTile(SRTMTerrainTiles.TerrainLayer.HILLSHADE, zoom, x, y);
+        });
+        
+        final int zoom = 12;
+        final int x = getTileX(-121.7604, zoom);
+        final int y = getTileY(46.8529, zoom);
+        
+        final String url = LocalTileServer.getInstance().resolveURL(SRTMTerrainTiles.TerrainLayer.HILLSHADE.getURLPattern());
+        Assertions.assertFalse(url.contains(LocalTileServer.PORT_PLACEHOLDER));
+        Assertions.assertTrue(url.startsWith("http://127.0.0.1:"));
+
+        try {
+            HttpURLConnection connection = (HttpURLConnection) URI.create(url.replace("{z}", Integer.toString(zoom)).replace("{x}", Integer.toString(x)).replace("{y}", Integer.toString(y))).toURL().openConnection();
+            Assertions.assertEquals(200, connection.getResponseCode());
+            Assertions.assertEquals("image/png", connection.getContentType());
+            try (InputStream in = connection.getInputStream()) {
+                Assertions.assertArrayEquals(tiles.getTile(SRTMTerrainTiles.TerrainLayer.HILLSHADE, zoom, x, y), in.readAllBytes());
+            }
+
+            // unknown provider & invalid tile
+            connection = (HttpURLConnection) URI.create(url.replace(name, "unknown").replace("{z}", "1").replace("{x}", "0").replace("{y}", "0")).toURL().openConnection();
+            Assertions.assertEquals(404, connection.getResponseCode());
+            connection = (HttpURLConnection) URI.create(url.replace("{z}", "1").replace("{x}", "5").replace("{y}", "0")).toURL().openConnection();
+            Assertions.assertEquals(404, connection.getResponseCode());
+        } finally {
+            LocalTileServer.getInstance().unregisterTileProvider(name);
+            LocalTileServer.getInstance().stop();
+        }
+    }
+}
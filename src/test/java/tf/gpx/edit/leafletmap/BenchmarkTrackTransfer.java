@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.gpx.edit.leafletmap;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.concurrent.Worker;
+import javafx.scene.Scene;
+import javafx.stage.Stage;
+
+/**
+ * Manual benchmark of adding large tracks to the map: formatted js array vs. encoded coordinates.
+ * 
+ * This is what TrackMap.setGPXWaypoints() spends most of its time on for large files.
+ * Needs a display since WebView can't run headless - therefore not a junit test.
+ *
+ * @author thomas
+ */
+public class BenchmarkTrackTransfer extends Application {
+    private final static int[] POINT_COUNTS = {10000, 100000, 500000};
+    private final static int RUNS = 5;
+
+    private final BenchmarkMapView mapView = new BenchmarkMapView();
+
+    private static class BenchmarkMapView extends LeafletMapView {
+        private Object runScript(final String script) {
+            return execScript(script);
+        }
+    }
+
+    public static void main(String[] args) {
+        launch(args);
+    }
+
+    @Override
+    public void start(Stage stage) throws Exception {
+        stage.setScene(new Scene(mapView, 800, 600));
+        stage.show();
+
+        mapView.displayMap(new MapConfig()).whenComplete((Worker.State workerState, Throwable u) -> {
+            if (Worker.State.SUCCEEDED.equals(workerState)) {
+                Platform.runLater(() -> {
+                    runBenchmark();
+                    Platform.exit();
+                });
+            }
+        });
+    }
+    
+    private void runBenchmark() {
+        for (int pointCount : POINT_COUNTS) {
+            final List<LatLonElev> track = new ArrayList<>();
+            for (int i = 0; i < pointCount; i++) {
+                track.add(new LatLonElev(51.5 + Math.sin(i * 1e-3) * 0.1, -0.09 + i * 1e-6));
+            }
+            
+            final long[] formatTimes = new long[RUNS];
+            final long[] encodeTimes = new long[RUNS];
+            for (int run = 0; run < RUNS; run++) {
+                Instant startTime = Instant.now();
+                // the way it was done before
+                final String jsPositions = track.stream().map((t) -> {
+                    return String.format(Locale.US, "    [%f, %f]", t.getLatitude(), t.getLongitude());
+                }).collect( Collectors.joining( ", \n" ) );
+                mapView.runScript(String.format(Locale.US, "var oldTrack = L.polyline([%s], {color: 'red'}).addTo(myMap);", jsPositions));
+                formatTimes[run] = Duration.between(startTime, Instant.now()).toNanos();
+                mapView.runScript("myMap.removeLayer(oldTrack);");
+
+                startTime = Instant.now();
+                final String newTrack = mapView.addTrack(track, "blue", false);
+                encodeTimes[run] = Duration.between(startTime, Instant.now()).toNanos();
+                mapView.removeMarker(newTrack);
+            }
+            
+            System.out.println(String.format("%d points: formatted %.1f ms, encoded %.1f ms", 
+                    pointCount, median(formatTimes) / 1e6, median(encodeTimes) / 1e6));
+        }
+    }
+    
+    private static long median(final long[] values) {
+        final long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+}
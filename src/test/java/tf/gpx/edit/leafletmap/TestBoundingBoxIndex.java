@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.gpx.edit.leafletmap;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test index of bounding boxes for viewport culling.
+ *
+ * @author thomas
+ */
+public class TestBoundingBoxIndex {
+    @Test
+    public void testIntersecting() {
+        final BoundingBoxIndex<String> index = new BoundingBoxIndex<>();
+        index.add("Alps", 45.0, 48.0, 6.0, 14.0);
+        index.add("Rainier", Arrays.asList(new LatLonElev(46.786, -121.735), new LatLonElev(46.8529, -121.7604)));
+        index.add("Point", 46.0, 46.0, 10.0, 10.0);
+        // nothing to index
+        index.add("Empty", Arrays.asList());
+        
+        Assertions.assertEquals(3, index.size());
+        
+        List<String> result = index.getIntersecting(45.5, 46.5, 9.0, 11.0);
+        Assertions.assertEquals(Arrays.asList("Alps", "Point"), result);
+        
+        result = index.getIntersecting(46.8, 47.0, -122.0, -121.0);
+        Assertions.assertEquals(Arrays.asList("Rainier"), result);
+        
+        // touching counts
+        result = index.getIntersecting(48.0, 49.0, 14.0, 15.0);
+        Assertions.assertEquals(Arrays.asList("Alps"), result);
+        
+        result = index.getIntersecting(0.0, 1.0, 0.0, 1.0);
+        Assertions.assertTrue(result.isEmpty());
+        
+        // leaflet shows the world more than once
+        result = index.getIntersecting(40.0, 50.0, -400.0, 400.0);
+        Assertions.assertEquals(3, result.size());
+        
+        index.clear();
+        Assertions.assertEquals(0, index.size());
+        Assertions.assertTrue(index.getIntersecting(-90.0, 90.0, -180.0, 180.0).isEmpty());
+    }
+    
+    @Test
+    public void testViewport() {
+        final BoundingBoxIndex<String> index = new BoundingBoxIndex<>();
+        index.add("West", 46.0, 47.0, 9.0, 10.0);
+        index.add("Middle", 46.0, 47.0, 10.5, 11.5);
+        index.add("East", 46.0, 47.0, 12.0, 13.0);
+        
+        BoundingBoxIndex.ViewportChange<String> change = index.setViewport(46.0, 47.0, 9.5, 11.0);
+        Assertions.assertEquals(Arrays.asList("West", "Middle"), change.getAdded());
+        Assertions.assertTrue(change.getRemoved().isEmpty());
+        Assertions.assertEquals(2, index.getVisibleCount());
+        
+        // nothing changes if we move just a bit
+        change = index.setViewport(46.0, 47.0, 9.6, 11.1);
+        Assertions.assertTrue(change.isEmpty());
+
+        // move east
+        change = index.setViewport(46.0, 47.0, 11.0, 12.5);
+        Assertions.assertEquals(Arrays.asList("East"), change.getAdded());
+        Assertions.assertEquals(Arrays.asList("West"), change.getRemoved());
+        Assertions.assertEquals(Arrays.asList("Middle", "East"), index.getVisible());
+        
+        // and away
+        change = index.setViewport(0.0, 1.0, 0.0, 1.0);
+        Assertions.assertTrue(change.getAdded().isEmpty());
+        Assertions.assertEquals(Arrays.asList("Middle", "East"), change.getRemoved());
+        Assertions.assertEquals(0, index.getVisibleCount());
+    }
+    
+    @Test
+    public void testRemove() {
+        final BoundingBoxIndex<String> index = new BoundingBoxIndex<>();
+        index.add("West", 46.0, 47.0, 9.0, 10.0);
+        index.add("Middle", 46.0, 47.0, 10.5, 11.5);
+        index.add("East", 46.0, 47.0, 12.0, 13.0);
+        index.setViewport(46.0, 47.0, 11.0, 12.5);
+        Assertions.assertTrue(index.isVisible("Middle"));
+        Assertions.assertFalse(index.isVisible("West"));
+        
+        // removing from the middle must keep visibility of the others
+        Assertions.assertTrue(index.remove("West"));
+        Assertions.assertFalse(index.remove("West"));
+        Assertions.assertFalse(index.contains("West"));
+        Assertions.assertEquals(2, index.size());
+        Assertions.assertEquals(Arrays.asList("East", "Middle"), index.getVisible());
+        
+        Assertions.assertTrue(index.remove("Middle"));
+        Assertions.assertEquals(Arrays.asList("East"), index.getVisible());
+        
+        // and we can add it again
+        index.add("West", 46.0, 47.0, 9.0, 10.0);
+        Assertions.assertTrue(index.contains("West"));
+        Assertions.assertFalse(index.isVisible("West"));
+        final BoundingBoxIndex.ViewportChange<String> change = index.setViewport(46.0, 47.0, 9.5, 12.5);
+        Assertions.assertEquals(Arrays.asList("West"), change.getAdded());
+        Assertions.assertTrue(change.getRemoved().isEmpty());
+    }
+    
+    @Test
+    public void testPerformance() {
+        // 1000 files with 10 segments each, spread over europe
+        final BoundingBoxIndex<Integer> index = new BoundingBoxIndex<>();
+        for (int i = 0; i < 10000; i++) {
+            final double lat = 40.0 + (i % 100) * 0.15;
+            final double lon = 0.0 + (i / 100) * 0.2;
+            index.add(i, lat, lat + 0.1, lon, lon + 0.1);
+        }
+        Assertions.assertEquals(10000, index.size());
+        
+        final Instant startTime = Instant.now();
+        int changes = 0;
+        // pan across the area
+        for (int i = 0; i < 100; i++) {
+            final BoundingBoxIndex.ViewportChange<Integer> change = index.setViewport(45.0, 47.0, i * 0.2, i * 0.2 + 3.0);
+            changes += change.getAdded().size() + change.getRemoved().size();
+        }
+        final Duration duration = Duration.between(startTime, Instant.now());
+        System.out.println(String.format("BoundingBoxIndex: 100 viewport changes for 10000 items, %d ms", duration.toMillis()));
+        
+        Assertions.assertTrue(changes > 0);
+        // only a fraction is visible at any time
+        Assertions.assertTrue(index.getVisibleCount() < index.size() / 10);
+        Assertions.assertTrue(duration.toMillis() < 1000);
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.gpx.edit.leafletmap;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test compact encoding of coordinates for leaflet.
+ *
+ * @author thomas
+ */
+public class TestLatLonEncoder {
+    private final static int POINT_COUNT = 100000;
+    
+    private static List<LatLonElev> getTrack() {
+        final Random random = new Random(42);
+
+        final List<LatLonElev> result = new ArrayList<>();
+        double latitude = 46.786;
+        double longitude = -121.735;
+        for (int i = 0; i < POINT_COUNT; i++) {
+            result.add(new LatLonElev(latitude, longitude));
+            latitude += (random.nextDouble() - 0.5) * 1e-4;
+            longitude += (random.nextDouble() - 0.5) * 1e-4;
+        }
+        return result;
+    }
+    
+    @Test
+    public void testRoundTrip() {
+        final List<LatLonElev> track = getTrack();
+        
+        final double[] decoded = LatLonEncoder.decode(LatLonEncoder.encode(track));
+        Assertions.assertEquals(2 * track.size(), decoded.length);
+        for (int i = 0; i < track.size(); i++) {
+            // no rounding whatsoever
+            Assertions.assertEquals(track.get(i).getLatitude(), decoded[2*i]);
+            Assertions.assertEquals(track.get(i).getLongitude(), decoded[2*i+1]);
+        }
+        
+        // array version gives the same
+        final double[] latitudes = new double[track.size()];
+        final double[] longitudes = new double[track.size()];
+        for (int i = 0; i < track.size(); i++) {
+            latitudes[i] = track.get(i).getLatitude();
+            longitudes[i] = track.get(i).getLongitude();
+        }
+        Assertions.assertEquals(LatLonEncoder.encode(track), LatLonEncoder.encode(latitudes, longitudes));
+        
+        Assertions.assertEquals("", LatLonEncoder.encode(new ArrayList<LatLonElev>()));
+        Assertions.assertEquals(0, LatLonEncoder.decode("").length);
+    }
+    
+    @Test
+    public void testBenchmark() {
+        final List<LatLonElev> track = getTrack();
+        
+        // warm up
+        String formatted = formatPositions(track);
+        String encoded = LatLonEncoder.encode(track);
+
+        final int runs = 5;
+        final long[] formatTimes = new long[runs];
+        final long[] encodeTimes = new long[runs];
+        for (int i = 0; i < runs; i++) {
+            Instant startTime = Instant.now();
+            formatted = formatPositions(track);
+            formatTimes[i] = Duration.between(startTime, Instant.now()).toNanos();
+
+            startTime = Instant.now();
+            encoded = LatLonEncoder.encode(track);
+            encodeTimes[i] = Duration.between(startTime, Instant.now()).toNanos();
+        }
+        Arrays.sort(formatTimes);
+        Arrays.sort(encodeTimes);
+        
+        System.out.println(String.format("%d points: String.format %.1f ms, %d chars - encoded %.1f ms, %d chars", 
+                track.size(), formatTimes[runs / 2] / 1e6, formatted.length(), encodeTimes[runs / 2] / 1e6, encoded.length()));
+        
+        // exact values in less space
+        Assertions.assertTrue(encoded.length() < formatted.length());
+        Assertions.assertTrue(encodeTimes[runs / 2] < formatTimes[runs / 2]);
+    }
+    
+    // the way it was done before in LeafletMapView.addTrack()
+    private static String formatPositions(final List<LatLonElev> positions) {
+        return positions.stream().map((t) -> {
+            return String.format(Locale.US, "    [%f, %f]", t.getLatitude(), t.getLongitude());
+        }).collect( Collectors.joining( ", \n" ) );
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.gpx.edit.leafletmap;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test collecting markers and tracks into one JSON payload.
+ *
+ * @author thomas
+ */
+public class TestMapSceneBuilder {
+    private int varNameSuffix = 1;
+    
+    private MapSceneBuilder createMapScene() {
+        return new MapSceneBuilder((t) -> {
+            return t + varNameSuffix++;
+        });
+    }
+    
+    @Test
+    public void testEmpty() throws IOException {
+        final MapSceneBuilder scene = createMapScene();
+        Assertions.assertTrue(scene.isEmpty());
+        
+        final JsonNode json = new ObjectMapper().readTree(scene.toJSON());
+        Assertions.assertEquals(0, json.get("icons").size());
+        Assertions.assertEquals(0, json.get("tracks").size());
+        Assertions.assertEquals(0, json.get("markers").size());
+        Assertions.assertEquals(0, json.get("clusters").size());
+        Assertions.assertEquals(0, json.get("calls").size());
+    }
+    
+    @Test
+    public void testScene() throws IOException {
+        final MapSceneBuilder scene = createMapScene();
+        
+        final List<LatLonElev> positions = Arrays.asList(new LatLonElev(46.786, -121.735), new LatLonElev(46.8529, -121.7604));
+        final String track = scene.addTrack(positions, "red", 2.0, 0.8, "round");
+        scene.addCall(track, "addClickToLayer", 0.0, 0.0);
+        scene.addCall(track, "addNameToLayer", "Paradise 'to' \"Summit\"");
+        
+        scene.addPNGIcon("icon1", "24", "AAAA");
+        final String marker1 = scene.addMarker(positions.get(0), "Line 1\nLine 2 - äöü", ColorMarker.GREEN_MARKER, 1000);
+        final String marker2 = scene.addMarker(positions.get(1), "", ColorMarker.RED_MARKER, 2000);
+        scene.addCall(marker1, "initCallback", 46.786, -121.735, track);
+        scene.bindPermanentTooltip(marker2, "Summit", "waypoint-name");
+        
+        Assertions.assertFalse(scene.isEmpty());
+        Assertions.assertEquals(1, scene.getTrackCount());
+        Assertions.assertEquals(2, scene.getMarkerCount());
+        Assertions.assertEquals("track1", track);
+        Assertions.assertEquals("marker2", marker1);
+        Assertions.assertEquals("marker3", marker2);
+
+        final String jsonString = scene.toJSON();
+        // only ascii - anything else is escaped
+        Assertions.assertTrue(jsonString.chars().allMatch((t) -> t < 128));
+        
+        final JsonNode json = new ObjectMapper().readTree(jsonString);
+
+        final JsonNode icon = json.get("icons").get(0);
+        Assertions.assertEquals("icon1", icon.get("name").asText());
+        Assertions.assertEquals("24", icon.get("size").asText());
+        Assertions.assertEquals("AAAA", icon.get("data").asText());
+
+        final JsonNode trackNode = json.get("tracks").get(0);
+        Assertions.assertEquals(track, trackNode.get("name").asText());
+        Assertions.assertEquals("red", trackNode.get("color").asText());
+        Assertions.assertEquals(2.0, trackNode.get("weight").asDouble());
+        Assertions.assertEquals(0.8, trackNode.get("opacity").asDouble());
+        Assertions.assertEquals("round", trackNode.get("lineCap").asText());
+        final double[] latLons = LatLonEncoder.decode(trackNode.get("latLngs").asText());
+        Assertions.assertArrayEquals(new double[] {46.786, -121.735, 46.8529, -121.7604}, latLons);
+        
+        final JsonNode markerNode = json.get("markers").get(0);
+        Assertions.assertEquals(marker1, markerNode.get("name").asText());
+        Assertions.assertEquals(46.786, markerNode.get("lat").asDouble());
+        Assertions.assertEquals(-121.735, markerNode.get("lng").asDouble());
+        Assertions.assertEquals("Line 1\nLine 2 - äöü", markerNode.get("title").asText());
+        Assertions.assertEquals("greenIcon", markerNode.get("icon").asText());
+        Assertions.assertEquals(1000, markerNode.get("zIndexOffset").asInt());
+        Assertions.assertEquals("redIcon", json.get("markers").get(1).get("icon").asText());
+        
+        // calls are kept in order
+        final JsonNode calls = json.get("calls");
+        Assertions.assertEquals(4, calls.size());
+        Assertions.assertEquals("addClickToLayer", calls.get(0).get("function").asText());
+        Assertions.assertEquals(2, calls.get(0).get("args").size());
+        Assertions.assertEquals("Paradise 'to' \"Summit\"", calls.get(1).get("args").get(0).asText());
+        Assertions.assertEquals(marker1, calls.get(2).get("layer").asText());
+        Assertions.assertEquals(-121.735, calls.get(2).get("args").get(1).asDouble());
+        Assertions.assertEquals(track, calls.get(2).get("args").get(2).asText());
+        Assertions.assertEquals("Summit", calls.get(3).get("tooltip").asText());
+        Assertions.assertEquals("waypoint-name", calls.get(3).get("className").asText());
+        Assertions.assertFalse(calls.get(3).has("function"));
+        
+        Assertions.assertTrue(scene.toScript().startsWith("applyMapScene({"));
+        Assertions.assertTrue(scene.toScript().endsWith("});"));
+    }
+    
+    @Test
+    public void testKeepLayers() throws IOException {
+        final MapSceneBuilder scene = createMapScene();
+        Assertions.assertFalse(new ObjectMapper().readTree(scene.toJSON()).has("keepLayers"));
+        
+        // clearing the map isn't nothing
+        scene.clearMarkersAndTracks(Arrays.asList("track1", "marker2"));
+        Assertions.assertFalse(scene.isEmpty());
+        
+        final JsonNode keepLayers = new ObjectMapper().readTree(scene.toJSON()).get("keepLayers");
+        Assertions.assertEquals(2, keepLayers.size());
+        Assertions.assertEquals("track1", keepLayers.get(0).asText());
+        Assertions.assertEquals("marker2", keepLayers.get(1).asText());
+    }
+    
+    @Test
+    public void testCluster() throws IOException {
+        final MapSceneBuilder scene = createMapScene();
+        final WaypointClusterIndex<LatLonElev> index = new WaypointClusterIndex<>(
+                Arrays.asList(new LatLonElev(46.786, -121.735), new LatLonElev(46.8529, -121.7604)));
+        
+        final WaypointClusterIndex.Cluster<LatLonElev> cluster = index.getClusters(0, -90.0, 90.0, -180.0, 180.0).get(0);
+        final String name = scene.addCluster(cluster);
+        Assertions.assertFalse(scene.isEmpty());
+        Assertions.assertEquals(1, scene.getClusterCount());
+        Assertions.assertEquals(0, scene.getMarkerCount());
+        
+        final JsonNode json = new ObjectMapper().readTree(scene.toJSON()).get("clusters").get(0);
+        Assertions.assertEquals(name, json.get("name").asText());
+        Assertions.assertEquals(2, json.get("count").asInt());
+        Assertions.assertEquals(cluster.getLatitude(), json.get("lat").asDouble(), 1e-9);
+        Assertions.assertEquals(4, json.get("bounds").size());
+        Assertions.assertEquals(cluster.getMinLatitude(), json.get("bounds").get(0).asDouble(), 1e-9);
+        Assertions.assertEquals(cluster.getMaxLongitude(), json.get("bounds").get(3).asDouble(), 1e-9);
+    }
+    
+    @Test
+    public void testLargeScene() {
+        final MapSceneBuilder scene = createMapScene();
+        
+        final List<String> names = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            final LatLonElev position = new LatLonElev(46.0 + i * 0.001, -121.0);
+            names.add(scene.addMarker(position, "Waypoint " + i, ColorMarker.BLUE_MARKER, 0));
+            scene.addCall(names.get(i), "initCallback", -1.0, -1.0, "");
+        }
+        
+        // all names are unique
+        Assertions.assertEquals(names.size(), names.stream().distinct().count());
+        Assertions.assertEquals(1000, scene.getMarkerCount());
+    }
+}
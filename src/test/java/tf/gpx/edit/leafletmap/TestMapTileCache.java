@@ -0,0 +1,334 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.gpx.edit.leafletmap;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test the disk cache for map tiles against a local stand-in tile server.
+ *
+ * @author thomas
+ */
+public class TestMapTileCache {
+    private static TileServerStub tileServer;
+    private Path testpath;
+    
+    @BeforeAll
+    public static void setUpClass() throws IOException {
+        tileServer = new TileServerStub();
+    }
+
+    @AfterAll
+    public static void tearDownClass() {
+        tileServer.stop();
+    }
+    
+    @BeforeEach
+    public void setUp() throws IOException {
+        testpath = Files.createTempDirectory("TestGPXEditor");
+        tileServer.reset();
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        // delete temp directory + files
+        FileUtils.deleteDirectory(testpath.toFile());
+    }
+    
+    private MapTileCache getCache(final long maxBytes) {
+        return new MapTileCache(testpath, maxBytes);
+    }
+    
+    @Test
+    public void testHitAndMiss() {
+        final MapTileCache cache = getCache(1024L * 1024L);
+        final MapTileCache.LayerTiles tiles = cache.getLayerTiles("Test Layer", tileServer.getURLTemplate());
+        
+        Assertions.assertArrayEquals(TileServerStub.getTile(3, 4, 5, 1), cache.getTile(tiles, 3, 4, 5));
+        Assertions.assertArrayEquals(TileServerStub.getTile(3, 4, 5, 1), cache.getTile(tiles, 3, 4, 5));
+        Assertions.assertEquals(1, tileServer.getRequestCount());
+        Assertions.assertEquals(1, cache.getMissCount());
+        Assertions.assertEquals(1, cache.getHitCount());
+        Assertions.assertTrue(cache.containsTile(tiles, 3, 4, 5));
+        Assertions.assertEquals(1, cache.size());
+        
+        // invalid tiles aren't requested at all
+        Assertions.assertNull(cache.getTile(tiles, 3, 8, 5));
+        Assertions.assertNull(cache.getTile(tiles, -1, 0, 0));
+        Assertions.assertEquals(1, tileServer.getRequestCount());
+        
+        // and its still there in the next session
+        final MapTileCache newCache = getCache(1024L * 1024L);
+        Assertions.assertEquals(1, newCache.size());
+        Assertions.assertEquals(cache.getTotalBytes(), newCache.getTotalBytes());
+        Assertions.assertArrayEquals(TileServerStub.getTile(3, 4, 5, 1), newCache.getTile(newCache.getLayerTiles("Test Layer", tileServer.getURLTemplate()), 3, 4, 5));
+        Assertions.assertEquals(1, tileServer.getRequestCount());
+        Assertions.assertEquals(1, newCache.getHitCount());
+        
+        // an API key doesn't change where the tiles are stored - but another layer does
+        Assertions.assertEquals(tiles.getDirectoryName(), cache.getLayerTiles("Test Layer", tileServer.getURLTemplate() + "?apikey=123").getDirectoryName());
+        Assertions.assertNotEquals(tiles.getDirectoryName(), cache.getLayerTiles("Test Layer", tileServer.getURLTemplate().replace("tiles", "other")).getDirectoryName());
+    }
+    
+    @Test
+    public void testRevalidation() {
+        final MapTileCache cache = getCache(1024L * 1024L);
+        final MapTileCache.LayerTiles tiles = cache.getLayerTiles("Test Layer", tileServer.getURLTemplate());
+        
+        // expires immediately
+        tileServer.setCacheControl("max-age=0");
+        Assertions.assertArrayEquals(TileServerStub.getTile(10, 100, 200, 1), cache.getTile(tiles, 10, 100, 200));
+        
+        // asks again but gets only a 304
+        Assertions.assertArrayEquals(TileServerStub.getTile(10, 100, 200, 1), cache.getTile(tiles, 10, 100, 200));
+        Assertions.assertEquals(2, tileServer.getRequestCount());
+        Assertions.assertEquals(1, tileServer.getNotModifiedCount());
+        Assertions.assertEquals(1, cache.getRevalidatedCount());
+        
+        // new tile available on the server
+        tileServer.setVersion(2);
+        Assertions.assertArrayEquals(TileServerStub.getTile(10, 100, 200, 2), cache.getTile(tiles, 10, 100, 200));
+        Assertions.assertEquals(3, tileServer.getRequestCount());
+        Assertions.assertEquals(1, tileServer.getNotModifiedCount());
+        Assertions.assertEquals(1, cache.size());
+        
+        // valid for some time after the next 304 - no more requests
+        tileServer.setCacheControl("max-age=3600");
+        Assertions.assertArrayEquals(TileServerStub.getTile(10, 100, 200, 2), cache.getTile(tiles, 10, 100, 200));
+        Assertions.assertArrayEquals(TileServerStub.getTile(10, 100, 200, 2), cache.getTile(tiles, 10, 100, 200));
+        Assertions.assertEquals(4, tileServer.getRequestCount());
+        Assertions.assertEquals(2, tileServer.getNotModifiedCount());
+        
+        // not to be stored at all
+        tileServer.setCacheControl("no-store");
+        Assertions.assertNotNull(cache.getTile(tiles, 10, 101, 200));
+        Assertions.assertFalse(cache.containsTile(tiles, 10, 101, 200));
+    }
+    
+    @Test
+    public void testStaleTiles() {
+        final MapTileCache cache = getCache(1024L * 1024L);
+        final MapTileCache.LayerTiles tiles = cache.getLayerTiles("Test Layer", tileServer.getURLTemplate());
+        
+        tileServer.setCacheControl("max-age=0");
+        Assertions.assertArrayEquals(TileServerStub.getTile(5, 1, 2, 1), cache.getTile(tiles, 5, 1, 2));
+        
+        // server has problems: better the old one than nothing
+        tileServer.setFailures(10, 503);
+        Assertions.assertArrayEquals(TileServerStub.getTile(5, 1, 2, 1), cache.getTile(tiles, 5, 1, 2));
+        Assertions.assertEquals(1, cache.getStaleCount());
+        Assertions.assertNull(cache.getTile(tiles, 5, 2, 2));
+        
+        // server not reachable at all
+        final MapTileCache.LayerTiles offline = cache.getLayerTiles("Test Layer", "http://localhost:1/tiles/{z}/{x}/{y}.png");
+        Assertions.assertNull(cache.getTile(offline, 5, 1, 2));
+        
+        // the old one is still in place
+        tileServer.setFailures(0, 503);
+        tileServer.setCacheControl("max-age=3600");
+        Assertions.assertArrayEquals(TileServerStub.getTile(5, 1, 2, 1), cache.getTile(tiles, 5, 1, 2));
+        Assertions.assertEquals(1, cache.getRevalidatedCount());
+    }
+    
+    @Test
+    public void testEviction() {
+        final MapTileCache.LayerTiles probe = getCache(1024L * 1024L).getLayerTiles("Test Layer", tileServer.getURLTemplate());
+        
+        // find out how much space a tile needs on disk
+        final MapTileCache sizeCache = getCache(1024L * 1024L);
+        sizeCache.getTile(probe, 0, 0, 0);
+        final long tileBytes = sizeCache.getTotalBytes();
+        sizeCache.clear();
+        Assertions.assertEquals(0, sizeCache.size());
+        
+        // room for 10 tiles
+        final MapTileCache cache = getCache(10 * tileBytes + tileBytes / 2);
+        final MapTileCache.LayerTiles tiles = cache.getLayerTiles("Test Layer", tileServer.getURLTemplate());
+        for (int x = 0; x < 10; x++) {
+            Assertions.assertNotNull(cache.getTile(tiles, 4, x, 0));
+        }
+        Assertions.assertEquals(10, cache.size());
+        
+        // first one is now the most recently used one
+        cache.getTile(tiles, 4, 0, 0);
+        for (int x = 10; x < 15; x++) {
+            Assertions.assertNotNull(cache.getTile(tiles, 4, x, 0));
+        }
+        
+        Assertions.assertEquals(10, cache.size());
+        Assertions.assertTrue(cache.getTotalBytes() <= cache.getMaxBytes());
+        Assertions.assertTrue(cache.containsTile(tiles, 4, 0, 0));
+        for (int x = 1; x < 6; x++) {
+            Assertions.assertFalse(cache.containsTile(tiles, 4, x, 0));
+            Assertions.assertFalse(Files.exists(testpath.resolve(tiles.getDirectoryName()).resolve("4").resolve(Integer.toString(x)).resolve("0" + MapTileCache.TILE_EXTENSION)));
+        }
+        for (int x = 6; x < 15; x++) {
+            Assertions.assertTrue(cache.containsTile(tiles, 4, x, 0));
+        }
+        
+        // smaller cache in the next session
+        final MapTileCache smallCache = getCache(5 * tileBytes);
+        Assertions.assertEquals(5, smallCache.size());
+        Assertions.assertTrue(smallCache.containsTile(tiles, 4, 14, 0));
+        
+        // and no cache at all
+        final MapTileCache noCache = getCache(0);
+        Assertions.assertFalse(noCache.isEnabled());
+        Assertions.assertNotNull(noCache.getTile(tiles, 4, 14, 0));
+        Assertions.assertEquals(0, noCache.size());
+    }
+    
+    @Test
+    public void testTileNumbers() {
+        // whole world: 1 + 4 + 16 + 64 tiles - next level would be too much
+        final List<int[]> world = MapTileCache.getTileNumbers(-85.0, 85.0, -180.0, 180.0, 0, 10, 100);
+        Assertions.assertEquals(85, world.size());
+        Assertions.assertArrayEquals(new int[] {0, 0, 0}, world.get(0));
+        Assertions.assertEquals(3, world.get(world.size()-1)[0]);
+        
+        // a single point: one tile per zoom level
+        final List<int[]> point = MapTileCache.getTileNumbers(47.0, 47.0, 11.0, 11.0, 5, 15, 1000);
+        Assertions.assertEquals(11, point.size());
+        for (int[] tile : point) {
+            final int tileCount = 1 << tile[0];
+            Assertions.assertEquals((int) Math.floor(WebMercatorProjection.longitudeToX(11.0) * tileCount), tile[1]);
+            Assertions.assertEquals((int) Math.floor(WebMercatorProjection.latitudeToY(47.0) * tileCount), tile[2]);
+        }
+    }
+    
+    @Test
+    public void testPrefetch() throws Exception {
+        final MapTileCache cache = getCache(100L * 1024L * 1024L);
+        final MapTileCache.LayerTiles tiles = cache.getLayerTiles("Test Layer", tileServer.getURLTemplate());
+        final MapTileCache.LayerTiles overlay = cache.getLayerTiles("Test Overlay", tileServer.getURLTemplate() + "?overlay");
+        
+        final List<int[]> tileNumbers = MapTileCache.getTileNumbers(47.0, 47.2, 11.0, 11.3, 8, 12, MapTileCache.MAX_PREFETCH_TILES);
+        final int[] lastProgress = {0, 0};
+        final int count = cache.prefetch(Arrays.asList(tiles, overlay), 47.0, 47.2, 11.0, 11.3, 8, 12, (done, total) -> {
+            synchronized (lastProgress) {
+                lastProgress[0] = Math.max(lastProgress[0], done);
+                lastProgress[1] = total;
+            }
+        }).get();
+        
+        Assertions.assertEquals(2 * tileNumbers.size(), count);
+        Assertions.assertEquals(2 * tileNumbers.size(), tileServer.getRequestCount());
+        Assertions.assertEquals(2 * tileNumbers.size(), cache.size());
+        Assertions.assertEquals(count, lastProgress[0]);
+        Assertions.assertEquals(count, lastProgress[1]);
+        for (int[] tile : tileNumbers) {
+            Assertions.assertTrue(cache.containsTile(tiles, tile[0], tile[1], tile[2]));
+            Assertions.assertTrue(cache.containsTile(overlay, tile[0], tile[1], tile[2]));
+        }
+        
+        // all there already
+        Assertions.assertEquals(count, cache.prefetch(Arrays.asList(tiles, overlay), 47.0, 47.2, 11.0, 11.3, 8, 12, null).get());
+        Assertions.assertEquals(2 * tileNumbers.size(), tileServer.getRequestCount());
+    }
+    
+    @Test
+    public void testPrefetchZoomOffset() throws Exception {
+        final MapTileCache cache = getCache(100L * 1024L * 1024L);
+        // 512px tiles: leaflet asks for one zoom level less than the map shows
+        final MapTileCache.LayerTiles tiles = cache.getLayerTiles("Test Layer", tileServer.getURLTemplate(), -1);
+        Assertions.assertEquals(-1, tiles.getZoomOffset());
+        Assertions.assertEquals(0, cache.getLayerTiles("Test Layer", tileServer.getURLTemplate()).getZoomOffset());
+        
+        final List<int[]> tileNumbers = MapTileCache.getTileNumbers(47.0, 47.2, 11.0, 11.3, 7, 11, MapTileCache.MAX_PREFETCH_TILES);
+        final int count = cache.prefetch(Arrays.asList(tiles), 47.0, 47.2, 11.0, 11.3, 8, 12, null).get();
+        
+        Assertions.assertEquals(tileNumbers.size(), count);
+        Assertions.assertEquals(tileNumbers.size(), tileServer.getRequestCount());
+        for (int[] tile : tileNumbers) {
+            Assertions.assertTrue(cache.containsTile(tiles, tile[0], tile[1], tile[2]));
+        }
+        // nothing for map zoom 12 that leaflet won't ask for
+        for (int[] tile : MapTileCache.getTileNumbers(47.0, 47.2, 11.0, 11.3, 12, 12, MapTileCache.MAX_PREFETCH_TILES)) {
+            Assertions.assertFalse(cache.containsTile(tiles, tile[0], tile[1], tile[2]));
+        }
+        
+        // and not below zoom 0
+        tileServer.reset();
+        Assertions.assertEquals(1, cache.prefetch(Arrays.asList(tiles), 47.0, 47.2, 11.0, 11.3, 0, 1, null).get());
+    }
+    
+    @Test
+    public void testLocalTileServer() throws Exception {
+        final MapTileCache cache = getCache(1024L * 1024L);
+        final String url = cache.getURL("Test Layer", tileServer.getURLTemplate());
+        Assertions.assertTrue(url.startsWith("http://127.0.0.1:"));
+        Assertions.assertFalse(url.contains(LocalTileServer.PORT_PLACEHOLDER));
+        
+        final HttpClient client = HttpClient.newHttpClient();
+        for (int i = 0; i < 2; i++) {
+            final HttpResponse<byte[]> response = client.send(
+                    HttpRequest.newBuilder(URI.create(url.replace("{z}", "3").replace("{x}", "4").replace("{y}", "5"))).build(), 
+                    HttpResponse.BodyHandlers.ofByteArray());
+            Assertions.assertEquals(200, response.statusCode());
+            Assertions.assertEquals("image/png", response.headers().firstValue("Content-Type").orElse(""));
+            // only for our own map - not for any web page out there
+            Assertions.assertTrue(response.headers().firstValue("Access-Control-Allow-Origin").isEmpty());
+            Assertions.assertArrayEquals(TileServerStub.getTile(3, 4, 5, 1), response.body());
+        }
+        Assertions.assertEquals(1, tileServer.getRequestCount());
+        Assertions.assertEquals(1, cache.getHitCount());
+        
+        final HttpResponse<byte[]> invalid = client.send(
+                HttpRequest.newBuilder(URI.create(url.replace("{z}", "3").replace("{x}", "40").replace("{y}", "5"))).build(), 
+                HttpResponse.BodyHandlers.ofByteArray());
+        Assertions.assertEquals(404, invalid.statusCode());
+        
+        // local server can't be started: use remote server directly - we want to see a map
+        try (ServerSocket blocker = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            final LocalTileServer failingServer = new LocalTileServer(blocker.getLocalPort());
+            final MapTileCache failingCache = getCache(1024L * 1024L).setTileServer(failingServer);
+            Assertions.assertTrue(failingServer.getPort() < 0);
+            Assertions.assertFalse(failingServer.isAvailable());
+            Assertions.assertEquals(tileServer.getURLTemplate(), failingCache.getURL("Test Layer", tileServer.getURLTemplate()));
+            failingServer.stop();
+        }
+        
+        Assertions.assertEquals("image/jpeg", LocalTileServer.getContentType(new byte[] {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, 0}));
+        Assertions.assertEquals("image/webp", LocalTileServer.getContentType("RIFF0000WEBPVP8 ".getBytes()));
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.gpx.edit.leafletmap;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test grid clustering of waypoints.
+ *
+ * @author thomas
+ */
+public class TestWaypointClusterIndex {
+    private static int getCount(final List<WaypointClusterIndex.Cluster<LatLonElev>> clusters) {
+        return clusters.stream().mapToInt((t) -> t.getCount()).sum();
+    }
+    
+    @Test
+    public void testClusters() {
+        final List<LatLonElev> waypoints = Arrays.asList(
+                // two close to each other
+                new LatLonElev(46.786, -121.735),
+                new LatLonElev(46.787, -121.736),
+                // the summit
+                new LatLonElev(46.8529, -121.7604),
+                // and far away
+                new LatLonElev(48.137, 11.575));
+        final WaypointClusterIndex<LatLonElev> index = new WaypointClusterIndex<>(waypoints);
+        Assertions.assertEquals(4, index.size());
+        
+        // the world: rainier & munich
+        List<WaypointClusterIndex.Cluster<LatLonElev>> clusters = index.getClusters(0, -90.0, 90.0, -180.0, 180.0);
+        Assertions.assertEquals(2, clusters.size());
+        Assertions.assertEquals(4, getCount(clusters));
+        
+        final WaypointClusterIndex.Cluster<LatLonElev> rainier = clusters.stream().filter((t) -> !t.isLeaf()).findFirst().get();
+        Assertions.assertEquals(3, rainier.getCount());
+        Assertions.assertNull(rainier.getItem());
+        // centroid is inside the cell & between the waypoints
+        Assertions.assertTrue(rainier.getLatitude() > 46.786 && rainier.getLatitude() < 46.8529);
+        Assertions.assertTrue(rainier.getLongitude() < -121.735 && rainier.getLongitude() > -121.7604);
+        Assertions.assertTrue(rainier.getMinLatitude() <= 46.786 && rainier.getMaxLatitude() >= 46.8529);
+        Assertions.assertTrue(rainier.getMinLongitude() <= -121.7604 && rainier.getMaxLongitude() >= -121.735);
+        
+        final WaypointClusterIndex.Cluster<LatLonElev> munich = clusters.stream().filter((t) -> t.isLeaf()).findFirst().get();
+        Assertions.assertEquals(waypoints.get(3), munich.getItem());
+        Assertions.assertEquals(48.137, munich.getLatitude(), 1e-9);
+        
+        // zoom in: summit gets separated, the others stay together
+        clusters = index.getClusters(13, 46.7, 46.9, -121.9, -121.6);
+        Assertions.assertEquals(2, clusters.size());
+        Assertions.assertEquals(3, getCount(clusters));
+        
+        // single waypoints keep their key
+        clusters = index.getClusters(WaypointClusterIndex.MAX_CLUSTER_ZOOM + 1, 46.7, 46.9, -121.9, -121.6);
+        Assertions.assertEquals(3, clusters.size());
+        Assertions.assertTrue(clusters.stream().allMatch((t) -> t.isLeaf()));
+        final Set<Long> keys = new HashSet<>();
+        clusters.forEach((t) -> keys.add(t.getKey()));
+        Assertions.assertTrue(keys.containsAll(index.getClusters(13, 46.7, 46.9, -121.9, -121.6).stream().filter((t) -> t.isLeaf()).map((t) -> t.getKey()).toList()));
+        
+        // nothing to see here
+        Assertions.assertTrue(index.getClusters(10, 0.0, 1.0, 0.0, 1.0).isEmpty());
+        Assertions.assertTrue(new WaypointClusterIndex<LatLonElev>(new ArrayList<>()).getClusters(0, -90.0, 90.0, -180.0, 180.0).isEmpty());
+    }
+    
+    @Test
+    public void testAllZoomLevels() {
+        final Random random = new Random(4711);
+        final List<LatLonElev> waypoints = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            waypoints.add(new LatLonElev(45.0 + random.nextDouble() * 3.0, 6.0 + random.nextDouble() * 8.0));
+        }
+        final WaypointClusterIndex<LatLonElev> index = new WaypointClusterIndex<>(waypoints);
+        
+        int lastSize = 0;
+        for (int zoom = 0; zoom <= WaypointClusterIndex.MAX_CLUSTER_ZOOM + 1; zoom++) {
+            // whole area - once with each way of looking up the cells
+            final List<WaypointClusterIndex.Cluster<LatLonElev>> clusters = index.getClusters(zoom, 44.0, 49.0, 5.0, 15.0);
+            Assertions.assertEquals(waypoints.size(), getCount(clusters), "Zoom " + zoom);
+            Assertions.assertEquals(waypoints.size(), getCount(index.getClusters(zoom, -90.0, 90.0, -540.0, 540.0)), "Zoom " + zoom);
+            
+            // the deeper we go, the more clusters we get
+            Assertions.assertTrue(clusters.size() >= lastSize);
+            lastSize = clusters.size();
+            
+            for (WaypointClusterIndex.Cluster<LatLonElev> cluster : clusters) {
+                Assertions.assertTrue(cluster.getLatitude() >= cluster.getMinLatitude() - 1e-9 && cluster.getLatitude() <= cluster.getMaxLatitude() + 1e-9);
+                Assertions.assertTrue(cluster.getLongitude() >= cluster.getMinLongitude() - 1e-9 && cluster.getLongitude() <= cluster.getMaxLongitude() + 1e-9);
+            }
+        }
+        Assertions.assertEquals(waypoints.size(), lastSize);
+    }
+    
+    @Test
+    public void testPerformance() {
+        // 200k POIs all over europe
+        final Random random = new Random(4711);
+        final List<LatLonElev> waypoints = new ArrayList<>();
+        for (int i = 0; i < 200000; i++) {
+            waypoints.add(new LatLonElev(36.0 + random.nextDouble() * 30.0, -10.0 + random.nextDouble() * 40.0));
+        }
+        
+        Instant startTime = Instant.now();
+        final WaypointClusterIndex<LatLonElev> index = new WaypointClusterIndex<>(waypoints);
+        final Duration buildDuration = Duration.between(startTime, Instant.now());
+        
+        startTime = Instant.now();
+        int maxClusters = 0;
+        // zoom in on munich with a viewport of approx. 1200 x 800 pixels
+        for (int zoom = 3; zoom <= 19; zoom++) {
+            final double lonSpan = 1200.0 * 360.0 / (256.0 * Math.pow(2, zoom));
+            final double latSpan = lonSpan * 800.0 / 1200.0 * Math.cos(Math.toRadians(48.137));
+            final List<WaypointClusterIndex.Cluster<LatLonElev>> clusters = 
+                    index.getClusters(zoom, 48.137 - latSpan, 48.137 + latSpan, 11.575 - lonSpan, 11.575 + lonSpan);
+            maxClusters = Math.max(maxClusters, clusters.size());
+        }
+        final Duration queryDuration = Duration.between(startTime, Instant.now());
+        System.out.println(String.format("WaypointClusterIndex: %d waypoints, build %d ms, 17 queries %d ms, max. %d clusters", 
+                waypoints.size(), buildDuration.toMillis(), queryDuration.toMillis(), maxClusters));
+        
+        // what is sent to the map is limited by the size of the viewport
+        Assertions.assertTrue(maxClusters < 2000);
+        Assertions.assertTrue(buildDuration.toMillis() < 2000);
+        Assertions.assertTrue(queryDuration.toMillis() < 1000);
+    }
+}
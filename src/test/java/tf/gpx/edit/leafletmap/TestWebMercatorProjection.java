@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.gpx.edit.leafletmap;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Random;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test web mercator projection against known tile numbers and pixel positions.
+ *
+ * @author thomas
+ */
+public class TestWebMercatorProjection {
+    @Test
+    public void testWorldCoordinates() {
+        Assertions.assertEquals(0.0, WebMercatorProjection.longitudeToX(-180.0), 1e-12);
+        Assertions.assertEquals(0.5, WebMercatorProjection.longitudeToX(0.0), 1e-12);
+        Assertions.assertEquals(0.5, WebMercatorProjection.latitudeToY(0.0), 1e-12);
+        Assertions.assertEquals(0.0, WebMercatorProjection.latitudeToY(WebMercatorProjection.MAX_LATITUDE), 1e-9);
+        // clamped at the poles
+        Assertions.assertEquals(1.0, WebMercatorProjection.latitudeToY(-90.0), 1e-9);
+        
+        // munich is tile 10/544/355
+        Assertions.assertEquals(544, (int) Math.floor(WebMercatorProjection.longitudeToX(11.575) * 1024));
+        Assertions.assertEquals(355, (int) Math.floor(WebMercatorProjection.latitudeToY(48.137) * 1024));
+        
+        // and back again
+        Assertions.assertEquals(48.137, WebMercatorProjection.yToLatitude(WebMercatorProjection.latitudeToY(48.137)), 1e-9);
+        Assertions.assertEquals(11.575, WebMercatorProjection.xToLongitude(WebMercatorProjection.longitudeToX(11.575)), 1e-9);
+    }
+    
+    @Test
+    public void testPixels() {
+        // whole world on one tile
+        WebMercatorProjection projection = new WebMercatorProjection(0.0, 0.0, 0, 256, 256);
+        Assertions.assertEquals(0.0, projection.getPixelX(-180.0), 1e-9);
+        Assertions.assertEquals(128.0, projection.getPixelX(0.0), 1e-9);
+        Assertions.assertEquals(128.0, projection.getPixelY(0.0), 1e-9);
+        Assertions.assertEquals(0.0, projection.getPixelY(WebMercatorProjection.MAX_LATITUDE), 1e-6);
+        
+        // bounds of a pane are its corners
+        final double width = 1200;
+        final double height = 800;
+        projection = new WebMercatorProjection(48.137, 11.575, 12, width, height);
+        final double minLon = WebMercatorProjection.xToLongitude((- width / 2.0) / (256 * 4096) + WebMercatorProjection.longitudeToX(11.575));
+        final double maxLon = WebMercatorProjection.xToLongitude((width / 2.0) / (256 * 4096) + WebMercatorProjection.longitudeToX(11.575));
+        final double maxLat = WebMercatorProjection.yToLatitude(WebMercatorProjection.latitudeToY(48.137) - (height / 2.0) / (256 * 4096));
+        final double minLat = WebMercatorProjection.yToLatitude(WebMercatorProjection.latitudeToY(48.137) + (height / 2.0) / (256 * 4096));
+        Assertions.assertEquals(0.0, projection.getPixelX(minLon), 1e-6);
+        Assertions.assertEquals(width, projection.getPixelX(maxLon), 1e-6);
+        Assertions.assertEquals(0.0, projection.getPixelY(maxLat), 1e-6);
+        Assertions.assertEquals(height, projection.getPixelY(minLat), 1e-6);
+        
+        // same thing from the bounds
+        final WebMercatorProjection fromBounds = WebMercatorProjection.forBounds(minLat, maxLat, minLon, maxLon, 12, width, height);
+        Assertions.assertEquals(12.0, fromBounds.getZoom(), 1e-9);
+        Assertions.assertEquals(projection.getPixelX(11.6), fromBounds.getPixelX(11.6), 1e-6);
+        Assertions.assertEquals(projection.getPixelY(48.2), fromBounds.getPixelY(48.2), 1e-6);
+        
+        // only visible points are returned
+        final double[] worldX = {WebMercatorProjection.longitudeToX(11.575), WebMercatorProjection.longitudeToX(12.5), WebMercatorProjection.longitudeToX(11.58)};
+        final double[] worldY = {WebMercatorProjection.latitudeToY(48.137), WebMercatorProjection.latitudeToY(48.137), WebMercatorProjection.latitudeToY(48.14)};
+        final double[] pixelX = new double[3];
+        final double[] pixelY = new double[3];
+        Assertions.assertEquals(2, projection.toVisiblePixels(worldX, worldY, 3, pixelX, pixelY));
+        Assertions.assertEquals(width / 2.0, pixelX[0], 1e-6);
+        Assertions.assertEquals(height / 2.0, pixelY[0], 1e-6);
+        Assertions.assertEquals(projection.getPixelX(11.58), pixelX[1], 1e-6);
+        Assertions.assertEquals(projection.getPixelY(48.14), pixelY[1], 1e-6);
+    }
+    
+    @Test
+    public void testPerformance() {
+        final int count = 2000000;
+        final Random random = new Random(4711);
+        final double[] worldX = new double[count];
+        final double[] worldY = new double[count];
+        for (int i = 0; i < count; i++) {
+            worldX[i] = WebMercatorProjection.longitudeToX(11.0 + random.nextDouble());
+            worldY[i] = WebMercatorProjection.latitudeToY(48.0 + random.nextDouble());
+        }
+        final double[] pixelX = new double[count];
+        final double[] pixelY = new double[count];
+        
+        final Instant startTime = Instant.now();
+        int visible = 0;
+        // pan & zoom around
+        for (int zoom = 8; zoom < 18; zoom++) {
+            visible += new WebMercatorProjection(48.5, 11.5, zoom, 1200, 800).toVisiblePixels(worldX, worldY, count, pixelX, pixelY);
+        }
+        final Duration duration = Duration.between(startTime, Instant.now());
+        System.out.println(String.format("WebMercatorProjection: 10 x %d points, %d ms", count, duration.toMillis()));
+        
+        Assertions.assertTrue(visible > 0);
+        Assertions.assertTrue(duration.toMillis() < 1000);
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.gpx.edit.leafletmap;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Local stand-in for a remote tile server.
+ *
+ * Serves /tiles/{z}/{x}/{y}.png with an ETag that depends on the current version of the tiles
+ * and answers conditional requests with 304 as long as the version hasn't changed.
+ * Can be told to fail with a given status for the first n requests.
+ *
+ * @author thomas
+ */
+public class TileServerStub {
+    public final static int TILE_SIZE = 1000;
+    
+    private final static Pattern TILE_PATH = Pattern.compile("^/tiles/(\\d+)/(\\d+)/(\\d+)\\.png$");
+    private final static byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    private final AtomicInteger requestCount = new AtomicInteger(0);
+    private final AtomicInteger notModifiedCount = new AtomicInteger(0);
+    private final AtomicInteger failuresLeft = new AtomicInteger(0);
+
+    private volatile int failureStatus = 500;
+    private volatile int version = 1;
+    private volatile String cacheControl = "max-age=3600";
+
+    public TileServerStub() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(executor);
+        server.createContext("/tiles", this::handleRequest);
+        server.start();
+    }
+
+    public String getURLTemplate() {
+        return "http://localhost:" + server.getAddress().getPort() + "/tiles/{z}/{x}/{y}.png";
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    public void reset() {
+        requestCount.set(0);
+        notModifiedCount.set(0);
+        failuresLeft.set(0);
+        version = 1;
+        cacheControl = "max-age=3600";
+    }
+
+    public void setFailures(final int count, final int status) {
+        failuresLeft.set(count);
+        failureStatus = status;
+    }
+
+    public void setVersion(final int newVersion) {
+        version = newVersion;
+    }
+
+    public void setCacheControl(final String value) {
+        cacheControl = value;
+    }
+
+    public int getRequestCount() {
+        return requestCount.get();
+    }
+
+    public int getNotModifiedCount() {
+        return notModifiedCount.get();
+    }
+    
+    public static byte[] getTile(final int zoom, final int x, final int y, final int version) {
+        final byte[] result = Arrays.copyOf(PNG_SIGNATURE, TILE_SIZE);
+        final byte[] text = (zoom + "/" + x + "/" + y + "@" + version).getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(text, 0, result, PNG_SIGNATURE.length, text.length);
+        return result;
+    }
+    
+    private static String getETag(final int version) {
+        return "\"v" + version + "\"";
+    }
+
+    private void handleRequest(final HttpExchange exchange) throws IOException {
+        try (exchange) {
+            requestCount.incrementAndGet();
+            
+            final Matcher matcher = TILE_PATH.matcher(exchange.getRequestURI().getPath());
+            if (!matcher.matches()) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            if (failuresLeft.getAndDecrement() > 0) {
+                exchange.sendResponseHeaders(failureStatus, -1);
+                return;
+            }
+
+            final int currentVersion = version;
+            exchange.getResponseHeaders().set("ETag", getETag(currentVersion));
+            exchange.getResponseHeaders().set("Cache-Control", cacheControl);
+            if (getETag(currentVersion).equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                notModifiedCount.incrementAndGet();
+                exchange.sendResponseHeaders(304, -1);
+                return;
+            }
+
+            final byte[] tile = getTile(
+                    Integer.parseInt(matcher.group(1)), 
+                    Integer.parseInt(matcher.group(2)), 
+                    Integer.parseInt(matcher.group(3)), 
+                    currentVersion);
+            exchange.getResponseHeaders().set("Content-Type", "image/png");
+            exchange.sendResponseHeaders(200, tile.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(tile);
+            }
+        }
+    }
+}
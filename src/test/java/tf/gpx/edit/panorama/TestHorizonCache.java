@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.gpx.edit.panorama;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import tf.gpx.edit.elevation.SRTMDataOptions;
+import tf.gpx.edit.leafletmap.IGeoCoordinate;
+import tf.gpx.edit.leafletmap.LatLonElev;
+import tf.gpx.edit.sun.AzimuthElevationAngle;
+
+/**
+ * Test the persistent horizon cache - standalone and as part of the Panorama.
+ *
+ * @author thomas
+ */
+public class TestHorizonCache {
+    private static Path testpath;
+    
+    private final SRTMDataOptions srtmOptions = new SRTMDataOptions(SRTMDataOptions.SRTMDataAverage.NEAREST_ONLY, "src/test/resources");
+
+    @BeforeAll
+    public static void setUpClass() throws IOException {
+        testpath = Files.createTempDirectory("TestGPXEditor");
+    }
+
+    @AfterAll
+    public static void tearDownClass() throws IOException {
+        // delete temp directory + files
+        FileUtils.deleteDirectory(testpath.toFile());
+    }
+    
+    private HorizonCache getCache(final String fileName, final int maxSize) {
+        return new HorizonCache(testpath.resolve(fileName), maxSize);
+    }
+    
+    private Panorama getPanorama(final double latitude, final double longitude, final int angleStep, final HorizonCache cache) {
+        return new Panorama(
+                new LatLonElev(latitude, longitude), 
+                Panorama.DISTANCE_FROM, Panorama.DISTANCE_TO, Panorama.DISTANCE_STEP, 
+                Panorama.ANGEL_FROM, Panorama.ANGEL_TO, angleStep, 
+                srtmOptions).setHorizonCache(cache);
+    }
+    
+    private void checkHorizon(final Horizon expected, final Horizon actual) {
+        Assertions.assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            final AzimuthElevationAngle expectedAngle = expected.get(i);
+            final AzimuthElevationAngle actualAngle = actual.get(i);
+            Assertions.assertEquals(expectedAngle.getAzimuth(), actualAngle.getAzimuth(), 0.0001);
+            Assertions.assertEquals(expectedAngle.getElevation(), actualAngle.getElevation(), 0.0001);
+
+            final IGeoCoordinate expectedCoord = expected.getValue(i);
+            final IGeoCoordinate actualCoord = actual.getValue(i);
+            Assertions.assertEquals(expectedCoord.getLatitude(), actualCoord.getLatitude(), 0.0001);
+            Assertions.assertEquals(expectedCoord.getLongitude(), actualCoord.getLongitude(), 0.0001);
+            Assertions.assertEquals(expectedCoord.getElevation(), actualCoord.getElevation(), 0.01);
+        }
+    }
+    
+    @Test
+    public void testEncoding() {
+        final Horizon horizon = getPanorama(46.786, -121.735, Panorama.ANGEL_STEP, null).getHorizon();
+        
+        final byte[] data = HorizonCache.encodeHorizon(horizon);
+        // 5 floats per entry + size
+        Assertions.assertEquals(Integer.BYTES + horizon.size() * 5 * Float.BYTES, data.length);
+        
+        checkHorizon(horizon, HorizonCache.decodeHorizon(data));
+    }
+    
+    @Test
+    public void testPanorama() {
+        final HorizonCache cache = getCache("panorama.cache", 10);
+        
+        Instant startTime = Instant.now();
+        final Horizon horizon = getPanorama(46.786, -121.735, Panorama.ANGEL_STEP, cache).getHorizon();
+        System.out.println("Horizon calculated: " + Duration.between(startTime, Instant.now()).toMillis() + " ms");
+        Assertions.assertEquals(0, cache.getHitCount());
+        Assertions.assertEquals(1, cache.getMissCount());
+        Assertions.assertEquals(1, cache.size());
+        
+        // nearby location - same cell of the grid
+        startTime = Instant.now();
+        final Panorama nearby = getPanorama(46.78601, -121.73501, Panorama.ANGEL_STEP, cache);
+        checkHorizon(horizon, nearby.getHorizon());
+        System.out.println("Horizon from cache: " + Duration.between(startTime, Instant.now()).toMillis() + " ms");
+        Assertions.assertFalse(nearby.noElevationData());
+        Assertions.assertEquals(1, cache.getHitCount());
+        
+        // different stepping is a different horizon
+        final Horizon coarse = getPanorama(46.786, -121.735, 2*Panorama.ANGEL_STEP, cache).getHorizon();
+        Assertions.assertEquals(horizon.size() / 2, coarse.size());
+        Assertions.assertEquals(2, cache.getMissCount());
+        Assertions.assertEquals(2, cache.size());
+        
+        // and a different location as well
+        getPanorama(46.80, -121.735, Panorama.ANGEL_STEP, cache).getHorizon();
+        Assertions.assertEquals(3, cache.getMissCount());
+        Assertions.assertEquals(3, cache.size());
+        
+        // not to be stored
+        getPanorama(46.82, -121.735, Panorama.ANGEL_STEP, cache).setStoreHorizon(false).getHorizon();
+        Assertions.assertEquals(4, cache.getMissCount());
+        Assertions.assertEquals(3, cache.size());
+        
+        // no data - no caching
+        final Panorama noData = getPanorama(10.0, 10.0, Panorama.ANGEL_STEP, cache);
+        noData.getHorizon();
+        Assertions.assertTrue(noData.noElevationData());
+        Assertions.assertEquals(3, cache.size());
+        
+        // next session
+        final HorizonCache newCache = getCache("panorama.cache", 10);
+        Assertions.assertEquals(3, newCache.size());
+        checkHorizon(horizon, getPanorama(46.786, -121.735, Panorama.ANGEL_STEP, newCache).getHorizon());
+        Assertions.assertEquals(1, newCache.getHitCount());
+        Assertions.assertEquals(0, newCache.getMissCount());
+    }
+    
+    @Test
+    public void testLRU() {
+        final HorizonCache cache = getCache("lru.cache", 2);
+        final Horizon horizon = getPanorama(46.786, -121.735, Panorama.ANGEL_STEP, null).getHorizon();
+        
+        cache.putHorizon("1", horizon);
+        cache.putHorizon("2", horizon);
+        // use 1 so that 2 is the least recently used
+        Assertions.assertNotNull(cache.getHorizon("1"));
+        cache.putHorizon("3", horizon);
+        
+        Assertions.assertEquals(2, cache.size());
+        Assertions.assertNotNull(cache.getHorizon("1"));
+        Assertions.assertNull(cache.getHorizon("2"));
+        Assertions.assertNotNull(cache.getHorizon("3"));
+        
+        // more records than allowed - file gets compacted
+        cache.putHorizon("4", horizon);
+        cache.putHorizon("5", horizon);
+        Assertions.assertTrue(cache.getFileRecords() <= 2 * cache.getMaxEntries());
+        
+        // LRU order survives reading the file
+        final HorizonCache newCache = getCache("lru.cache", 2);
+        Assertions.assertEquals(2, newCache.size());
+        Assertions.assertNotNull(newCache.getHorizon("4"));
+        Assertions.assertNotNull(newCache.getHorizon("5"));
+        
+        cache.clear();
+        Assertions.assertEquals(0, cache.size());
+        Assertions.assertFalse(Files.exists(cache.getCacheFile()));
+    }
+    
+    @Test
+    public void testInvalidFile() throws IOException {
+        final Path file = testpath.resolve("invalid.cache");
+        Files.writeString(file, "this is not a horizon cache");
+        
+        final HorizonCache cache = new HorizonCache(file, 10);
+        Assertions.assertEquals(0, cache.size());
+        Assertions.assertFalse(Files.exists(file));
+    }
+    
+    @Test
+    public void testDisabled() {
+        final HorizonCache cache = getCache("disabled.cache", 0);
+        Assertions.assertFalse(cache.isEnabled());
+        
+        final Horizon horizon = getPanorama(46.786, -121.735, Panorama.ANGEL_STEP, cache).getHorizon();
+        Assertions.assertFalse(horizon.isEmpty());
+        Assertions.assertEquals(0, cache.size());
+        Assertions.assertFalse(Files.exists(cache.getCacheFile()));
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.gpx.edit.panorama;
+
+import java.time.Duration;
+import java.time.Instant;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import tf.gpx.edit.elevation.SRTMDataOptions;
+import tf.gpx.edit.leafletmap.IGeoCoordinate;
+import tf.gpx.edit.leafletmap.LatLonElev;
+import tf.gpx.edit.sun.AzimuthElevationAngle;
+
+/**
+ * Test that the horizon engine gives the same horizon as the full panorama.
+ * 
+ * @author thomas
+ */
+public class TestHorizonEngine {
+    private final SRTMDataOptions srtmOptions = new SRTMDataOptions(SRTMDataOptions.SRTMDataAverage.NEAREST_ONLY, "src/test/resources");
+    
+    private Panorama getPanorama(final double latitude, final double longitude, final int angleFrom, final int angleTo, final int angleStep) {
+        return new Panorama(
+                new LatLonElev(latitude, longitude), 
+                Panorama.DISTANCE_FROM, Panorama.DISTANCE_TO, Panorama.DISTANCE_STEP, 
+                angleFrom, angleTo, angleStep, 
+                srtmOptions).setHorizonCache(null);
+    }
+    
+    private void checkHorizon(final double latitude, final double longitude, final int angleFrom, final int angleTo, final int angleStep) {
+        // horizon from the engine
+        final Panorama enginePanorama = getPanorama(latitude, longitude, angleFrom, angleTo, angleStep);
+        final Instant startTime = Instant.now();
+        final Horizon engineHorizon = enginePanorama.getHorizon();
+        final Duration duration = Duration.between(startTime, Instant.now());
+        System.out.println(String.format("Horizon engine for %.4f, %.4f: %d ms", latitude, longitude, duration.toMillis()));
+        
+        // horizon alone never calculates the full panorama
+        Assertions.assertFalse(enginePanorama.hasPanoramaViewingAngles());
+        Assertions.assertNull(enginePanorama.getMinElevationAngle());
+        Assertions.assertNull(enginePanorama.getMaxElevationAngle());
+        
+        // horizon from the full panorama
+        final Panorama fullPanorama = getPanorama(latitude, longitude, angleFrom, angleTo, angleStep);
+        fullPanorama.getPanoramaViewingAngles();
+        final Horizon fullHorizon = fullPanorama.getHorizon();
+        Assertions.assertTrue(fullPanorama.hasPanoramaViewingAngles());
+        
+        Assertions.assertFalse(engineHorizon.isEmpty());
+        Assertions.assertEquals(fullHorizon.size(), engineHorizon.size());
+        Assertions.assertEquals(fullPanorama.noElevationData(), enginePanorama.noElevationData());
+        
+        for (int i = 0; i < fullHorizon.size(); i++) {
+            final AzimuthElevationAngle fullAngle = fullHorizon.get(i);
+            final AzimuthElevationAngle engineAngle = engineHorizon.get(i);
+            Assertions.assertEquals(fullAngle.getAzimuth(), engineAngle.getAzimuth());
+            Assertions.assertEquals(fullAngle.getElevation(), engineAngle.getElevation());
+            
+            final IGeoCoordinate fullCoord = fullHorizon.getValue(i);
+            final IGeoCoordinate engineCoord = engineHorizon.getValue(i);
+            Assertions.assertEquals(fullCoord.getLatitude(), engineCoord.getLatitude());
+            Assertions.assertEquals(fullCoord.getLongitude(), engineCoord.getLongitude());
+            Assertions.assertEquals(fullCoord.getElevation(), engineCoord.getElevation());
+        }
+    }
+    
+    @Test
+    public void testMountRainier() {
+        // Paradise
+        checkHorizon(46.786, -121.735, Panorama.ANGEL_FROM, Panorama.ANGEL_TO, Panorama.ANGEL_STEP);
+        // summit - nothing above us
+        checkHorizon(46.8529, -121.7604, Panorama.ANGEL_FROM, Panorama.ANGEL_TO, Panorama.ANGEL_STEP);
+    }
+    
+    @Test
+    public void testOtherHemispheres() {
+        // Everest base camp
+        checkHorizon(28.0043, 86.8571, Panorama.ANGEL_FROM, Panorama.ANGEL_TO, Panorama.ANGEL_STEP);
+        // Aconcagua
+        checkHorizon(-32.70, -70.05, Panorama.ANGEL_FROM, Panorama.ANGEL_TO, Panorama.ANGEL_STEP);
+        // Mount Cook
+        checkHorizon(-43.73, 170.10, Panorama.ANGEL_FROM, Panorama.ANGEL_TO, Panorama.ANGEL_STEP);
+    }
+    
+    @Test
+    public void testAngleRanges() {
+        // as used for sunrise / sunset
+        checkHorizon(46.786, -121.735, 60, 300, 1);
+        // going backwards
+        checkHorizon(46.786, -121.735, 90, -90, -3);
+    }
+    
+    @Test
+    public void testNoData() {
+        final Panorama enginePanorama = getPanorama(10.0, 10.0, Panorama.ANGEL_FROM, Panorama.ANGEL_TO, Panorama.ANGEL_STEP);
+        final Horizon engineHorizon = enginePanorama.getHorizon();
+        Assertions.assertTrue(enginePanorama.noElevationData());
+        
+        final Panorama fullPanorama = getPanorama(10.0, 10.0, Panorama.ANGEL_FROM, Panorama.ANGEL_TO, Panorama.ANGEL_STEP);
+        fullPanorama.getPanoramaViewingAngles();
+        Assertions.assertEquals(fullPanorama.getHorizon().size(), engineHorizon.size());
+        Assertions.assertTrue(fullPanorama.noElevationData());
+    }
+}
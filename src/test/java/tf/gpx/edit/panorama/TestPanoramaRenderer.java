@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.gpx.edit.panorama;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import tf.gpx.edit.elevation.SRTMDataOptions;
+import tf.gpx.edit.leafletmap.LatLonElev;
+import tf.gpx.edit.sun.AzimuthElevationAngle;
+
+/**
+ * Test the rasterization of horizon & panorama.
+ * 
+ * @author thomas
+ */
+public class TestPanoramaRenderer {
+    private final static int WIDTH = 400;
+    private final static int HEIGHT = 200;
+    private final static double MIN_ANGLE = -10.0;
+    private final static double MAX_ANGLE = 30.0;
+    
+    private Horizon getFlatHorizon(final double angle, final double elevation) {
+        final Horizon result = new Horizon();
+        for (int azimuth = 0; azimuth < 360; azimuth += 3) {
+            result.put(new AzimuthElevationAngle(azimuth, angle), new LatLonElev(0.0, 0.0, elevation));
+        }
+        return result;
+    }
+    
+    private int getRow(final double angle) {
+        return (int) Math.floor((MAX_ANGLE - angle) / (MAX_ANGLE - MIN_ANGLE) * HEIGHT);
+    }
+    
+    @Test
+    public void testHorizon() {
+        final PanoramaRenderer renderer = new PanoramaRenderer();
+        renderer.setHorizon(getFlatHorizon(10.0, 2000.0));
+        Assertions.assertEquals(1, renderer.getRingCount());
+        
+        final PanoramaRenderer.Frame frame = renderer.render(0.0, 360.0, MIN_ANGLE, MAX_ANGLE, WIDTH, HEIGHT);
+        Assertions.assertEquals(WIDTH, frame.getWidth());
+        Assertions.assertEquals(HEIGHT, frame.getHeight());
+        
+        final int ridge = getRow(10.0);
+        for (int x = 0; x < WIDTH; x += 13) {
+            Assertions.assertEquals(PanoramaRenderer.SKY_COLOR, frame.getPixels()[(ridge - 1) * WIDTH + x]);
+            Assertions.assertEquals(PanoramaRenderer.NO_RING, frame.getRing(x, ridge - 1));
+            Assertions.assertEquals(PanoramaRenderer.RIDGE_COLOR, frame.getPixels()[ridge * WIDTH + x]);
+            Assertions.assertEquals(PanoramaRenderer.HORIZON_COLOR, frame.getPixels()[(ridge + 1) * WIDTH + x]);
+            Assertions.assertEquals(PanoramaRenderer.HORIZON_COLOR, frame.getPixels()[(HEIGHT - 1) * WIDTH + x]);
+            Assertions.assertEquals(0, frame.getRing(x, HEIGHT - 1));
+        }
+        
+        // tooltips only for terrain
+        Assertions.assertNull(frame.getTooltip(50, ridge - 10));
+        Assertions.assertEquals(String.format("Elev. %.1fm", 2000.0), frame.getTooltip(50, ridge + 10));
+        Assertions.assertNull(frame.getTooltip(-1, ridge + 10));
+        
+        // values beyond 360 are the same
+        final PanoramaRenderer.Frame shifted = renderer.render(360.0, 720.0, MIN_ANGLE, MAX_ANGLE, WIDTH, HEIGHT);
+        Assertions.assertEquals(PanoramaRenderer.RIDGE_COLOR, shifted.getPixels()[ridge * WIDTH + WIDTH / 2]);
+    }
+    
+    @Test
+    public void testSunPath() {
+        final PanoramaRenderer renderer = new PanoramaRenderer();
+        renderer.setHorizon(getFlatHorizon(10.0, 2000.0));
+        
+        final int color = 0xFFFFFF00;
+        // path from below the horizon up to 20 degrees and down again
+        renderer.addSunPath(new double[] {90.0, 180.0, 270.0}, new double[] {0.0, 20.0, 0.0}, color);
+        Assertions.assertTrue(renderer.hasSunPaths());
+        Assertions.assertFalse(renderer.isSunPathsVisible());
+        
+        PanoramaRenderer.Frame frame = renderer.render(0.0, 360.0, MIN_ANGLE, MAX_ANGLE, WIDTH, HEIGHT);
+        Assertions.assertEquals(PanoramaRenderer.SKY_COLOR, frame.getPixels()[getRow(20.0) * WIDTH + WIDTH / 2]);
+        renderer.recycle(frame);
+
+        renderer.setSunPathsVisible(true);
+        frame = renderer.render(0.0, 360.0, MIN_ANGLE, MAX_ANGLE, WIDTH, HEIGHT);
+        Assertions.assertEquals(color, frame.getPixels()[getRow(20.0) * WIDTH + WIDTH / 2]);
+        
+        // but not in front of the terrain
+        for (int y = getRow(10.0); y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                Assertions.assertNotEquals(color, frame.getPixels()[y * WIDTH + x]);
+            }
+        }
+        
+        renderer.clearSunPaths();
+        Assertions.assertFalse(renderer.hasSunPaths());
+        Assertions.assertFalse(renderer.isSunPathsVisible());
+    }
+    
+    @Test
+    public void testPanorama() {
+        // Paradise @ Mount Rainier
+        final Panorama panorama = new Panorama(
+                new LatLonElev(46.786, -121.735), 
+                Panorama.DISTANCE_FROM, Panorama.DISTANCE_TO, Panorama.DISTANCE_STEP, 
+                Panorama.ANGEL_FROM, Panorama.ANGEL_TO, Panorama.ANGEL_STEP, 
+                new SRTMDataOptions(SRTMDataOptions.SRTMDataAverage.NEAREST_ONLY, "src/test/resources")).setHorizonCache(null);
+        
+        final PanoramaRenderer renderer = new PanoramaRenderer();
+        renderer.setPanorama(panorama);
+        Assertions.assertTrue(renderer.getRingCount() > 0);
+        // some rings are hidden completely
+        Assertions.assertTrue(renderer.getRingCount() < panorama.getPanoramaViewingAngles().size());
+        
+        final int width = 1400;
+        final int height = 770;
+        final double minAngle = -10.0;
+        final double maxAngle = 40.0;
+        // warm up
+        renderer.recycle(renderer.render(0.0, 360.0, minAngle, maxAngle, width, height));
+        
+        final List<Long> durations = new ArrayList<>();
+        PanoramaRenderer.Frame frame = null;
+        for (int i = 0; i < 10; i++) {
+            renderer.recycle(frame);
+            final Instant startTime = Instant.now();
+            frame = renderer.render(i * 10.0, 360.0 + i * 10.0, minAngle, maxAngle, width, height);
+            durations.add(Duration.between(startTime, Instant.now()).toNanos());
+        }
+        Collections.sort(durations);
+        System.out.println(String.format("Render panorama %d x %d with %d rings: median %.1f ms", width, height, renderer.getRingCount(), durations.get(durations.size() / 2) / 1e6));
+        
+        // top of the terrain is the horizon - between the azimuth steps rings can be a bit lower than the interpolated horizon
+        frame = renderer.render(0.0, 360.0, minAngle, maxAngle, width, height);
+        final PanoramaRenderer horizonRenderer = new PanoramaRenderer();
+        horizonRenderer.setHorizon(panorama.getHorizon());
+        final PanoramaRenderer.Frame horizonFrame = horizonRenderer.render(0.0, 360.0, minAngle, maxAngle, width, height);
+        int matchCount = 0;
+        for (int x = 0; x < width; x++) {
+            int top = 0;
+            while (top < height && frame.getRing(x, top) == PanoramaRenderer.NO_RING) {
+                top++;
+            }
+            int horizonTop = 0;
+            while (horizonTop < height && horizonFrame.getRing(x, horizonTop) == PanoramaRenderer.NO_RING) {
+                horizonTop++;
+            }
+            Assertions.assertTrue(top >= horizonTop - 1);
+            if (Math.abs(top - horizonTop) <= 2) {
+                matchCount++;
+            }
+        }
+        Assertions.assertTrue(matchCount > 0.85 * width);
+        
+        // tooltips know the distance for all terrain pixels
+        Assertions.assertTrue(frame.getTooltip(width / 2, height - 1).startsWith("Dist: "));
+    }
+    
+    @Test
+    public void testRenderAsync() throws InterruptedException {
+        final PanoramaRenderer renderer = new PanoramaRenderer();
+        renderer.setHorizon(getFlatHorizon(10.0, 2000.0));
+        
+        final CountDownLatch lastDone = new CountDownLatch(1);
+        final List<Integer> widths = Collections.synchronizedList(new ArrayList<>());
+        for (int i = 1; i <= 20; i++) {
+            final int width = 100 + i;
+            renderer.renderAsync(0.0, 360.0, MIN_ANGLE, MAX_ANGLE, width, HEIGHT, (frame) -> {
+                widths.add(frame.getWidth());
+                if (frame.getWidth() == 120) {
+                    lastDone.countDown();
+                }
+            });
+        }
+        
+        Assertions.assertTrue(lastDone.await(10, TimeUnit.SECONDS));
+        // at least the last one gets rendered - but not all of them
+        Assertions.assertEquals(120, widths.get(widths.size() - 1));
+        Assertions.assertTrue(widths.size() <= 20);
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.gpx.edit.panorama;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import tf.gpx.edit.elevation.SRTMDataOptions;
+import tf.gpx.edit.leafletmap.LatLonElev;
+
+/**
+ * Test passes and cancellation of the progressive panorama calculation.
+ * 
+ * @author thomas
+ */
+public class TestProgressivePanorama {
+    private final SRTMDataOptions srtmOptions = new SRTMDataOptions(SRTMDataOptions.SRTMDataAverage.NEAREST_ONLY, "src/test/resources");
+    
+    private ProgressivePanorama getPanorama() {
+        // Paradise @ Mt. Rainier - consumer gets called directly from the calculation thread
+        return new ProgressivePanorama(
+                new LatLonElev(46.786, -121.735), 
+                Panorama.DISTANCE_FROM, Panorama.DISTANCE_TO, Panorama.DISTANCE_STEP, 
+                Panorama.ANGEL_FROM, Panorama.ANGEL_TO, Panorama.ANGEL_STEP, 
+                srtmOptions, Runnable::run);
+    }
+    
+    @Test
+    public void testPasses() throws InterruptedException, ExecutionException {
+        final List<Panorama> passes = new ArrayList<>();
+        final List<Boolean> lastPasses = new ArrayList<>();
+        final List<Long> durations = new ArrayList<>();
+        
+        final Instant startTime = Instant.now();
+        getPanorama().start((t, lastPass) -> {
+            durations.add(Duration.between(startTime, Instant.now()).toMillis());
+            passes.add(t);
+            lastPasses.add(lastPass);
+        }).get();
+        System.out.println("Durations of passes: " + durations);
+        
+        Assertions.assertEquals(ProgressivePanorama.PASS_FACTORS.length, passes.size());
+        for (int i = 0; i < passes.size(); i++) {
+            final Panorama pass = passes.get(i);
+            final boolean lastPass = (i == passes.size() - 1);
+            Assertions.assertEquals(lastPass, lastPasses.get(i));
+
+            // each pass is finer than the one before
+            Assertions.assertEquals(Panorama.ANGEL_STEP * ProgressivePanorama.PASS_FACTORS[i], pass.getAngleStepping());
+            Assertions.assertEquals(Panorama.DISTANCE_STEP * ProgressivePanorama.PASS_FACTORS[i], pass.getDistanceStepping());
+            Assertions.assertEquals(360 / pass.getAngleStepping(), pass.getHorizon().size());
+            Assertions.assertFalse(pass.noElevationData());
+        }
+
+        // last one is the full panorama
+        final Panorama full = passes.get(passes.size() - 1);
+        Assertions.assertTrue(full.hasPanoramaViewingAngles());
+        Assertions.assertNotNull(full.getMinElevationAngle());
+        Assertions.assertFalse(full.getPanoramaViewingAngles().isEmpty());
+        
+        Assertions.assertTrue(full.isStoreHorizon());
+        
+        // coarse passes only need the horizon - and don't clutter the cache with it
+        for (int i = 0; i < passes.size() - 1; i++) {
+            Assertions.assertFalse(passes.get(i).hasPanoramaViewingAngles());
+            Assertions.assertFalse(passes.get(i).isStoreHorizon());
+        }
+    }
+    
+    @Test
+    public void testCancel() throws InterruptedException, ExecutionException {
+        final ProgressivePanorama progressive = getPanorama();
+        final List<Panorama> passes = new ArrayList<>();
+        
+        // user moves on after the first pass
+        progressive.start((t, lastPass) -> {
+            passes.add(t);
+            progressive.cancel();
+        }).get();
+        
+        Assertions.assertTrue(progressive.isCancelled());
+        Assertions.assertEquals(1, passes.size());
+        
+        // nothing at all once cancelled before we start
+        final ProgressivePanorama cancelled = getPanorama();
+        cancelled.cancel();
+        cancelled.start((t, lastPass) -> {
+            passes.add(t);
+        }).get();
+        Assertions.assertEquals(1, passes.size());
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.gpx.edit.panorama;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import tf.gpx.edit.elevation.SRTMDataHelper;
+import tf.gpx.edit.elevation.SRTMDataOptions;
+import tf.gpx.edit.leafletmap.IGeoCoordinate;
+import tf.gpx.edit.leafletmap.LatLonElev;
+
+/**
+ * Test the viewshed on a synthetic SRTM1 tile with known visibility and on real terrain.
+ *
+ * @author thomas
+ */
+public class TestViewshed {
+    private static Path testpath;
+    
+    // flat plateau with a ridge approx. 2km north of the observer
+    private final static String TILE_NAME = "N45E010";
+    private final static short PLATEAU = 1000;
+    private final static short RIDGE = 1300;
+    private final static double RIDGE_SOUTH = 45.518;
+    private final static double RIDGE_NORTH = 45.5185;
+    private final static LatLonElev OBSERVER = new LatLonElev(45.5, 10.5);
+    
+    // one degree is approx. 111km
+    private final static double KM = 1.0 / 111.0;
+    
+    @BeforeAll
+    public static void setUpClass() throws IOException {
+        testpath = Files.createTempDirectory("TestGPXEditor");
+        
+        final int count = SRTMDataHelper.SRTMDataType.SRTM1.getDataCount();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(testpath.resolve(TILE_NAME + ".hgt").toFile())))) {
+            for (int row = 0; row < count; row++) {
+                // first row is the northern border
+                final double latitude = 46.0 - row / 3600.0;
+                final short value = (latitude >= RIDGE_SOUTH && latitude <= RIDGE_NORTH) ? RIDGE : PLATEAU;
+                for (int col = 0; col < count; col++) {
+                    out.writeShort(value);
+                }
+            }
+        }
+    }
+
+    @AfterAll
+    public static void tearDownClass() throws IOException {
+        // delete temp directory + files
+        FileUtils.deleteDirectory(testpath.toFile());
+    }
+    
+    private Viewshed getViewshed(final IGeoCoordinate observer, final double radius, final String path) {
+        return new Viewshed(
+                observer, radius, 
+                Viewshed.DEFAULT_OBSERVER_HEIGHT, Viewshed.DEFAULT_TARGET_HEIGHT, 
+                new SRTMDataOptions(SRTMDataOptions.SRTMDataAverage.NEAREST_ONLY, path));
+    }
+    
+    private void checkRasterVisibility(final Viewshed viewshed, final IGeoCoordinate target, final byte expected) {
+        final int row = (int) Math.round((viewshed.getNorth() - target.getLatitude()) / viewshed.getCellSize() - 0.5);
+        final int col = (int) Math.round((target.getLongitude() - viewshed.getWest()) / viewshed.getCellSize() - 0.5);
+        Assertions.assertEquals(expected, viewshed.getVisibility(row, col), "Raster visibility for " + target);
+    }
+    
+    @Test
+    public void testSyntheticTerrain() {
+        final Instant startTime = Instant.now();
+        final Viewshed viewshed = getViewshed(OBSERVER, Viewshed.DEFAULT_RADIUS, testpath.toString()).calculate();
+        final Duration duration = Duration.between(startTime, Instant.now());
+        System.out.println(String.format("Viewshed 20km on SRTM1: %d x %d cells, %d ms", viewshed.getRows(), viewshed.getColumns(), duration.toMillis()));
+
+        Assertions.assertFalse(viewshed.noElevationData());
+        Assertions.assertEquals(PLATEAU, viewshed.getObserver().getElevation(), 0.1);
+        Assertions.assertEquals(1.0 / 3600.0, viewshed.getCellSize(), 1e-9);
+        Assertions.assertTrue(viewshed.getNorth() > OBSERVER.getLatitude() + 20 * KM * 0.99);
+        Assertions.assertTrue(viewshed.getSouth() < OBSERVER.getLatitude() - 20 * KM * 0.99);
+        
+        // flat ground: earth curvature hides everything beyond approx. 5km for 1.7m above ground
+        final List<LatLonElev> targets = Arrays.asList(
+                new LatLonElev(OBSERVER.getLatitude() - 1 * KM, OBSERVER.getLongitude()),
+                new LatLonElev(OBSERVER.getLatitude() - 4 * KM, OBSERVER.getLongitude()),
+                new LatLonElev(OBSERVER.getLatitude() - 8 * KM, OBSERVER.getLongitude()),
+                new LatLonElev(OBSERVER.getLatitude(), OBSERVER.getLongitude() + 3 * KM),
+                new LatLonElev(OBSERVER.getLatitude(), OBSERVER.getLongitude() + 10 * KM),
+                // up to the ridge and behind it
+                new LatLonElev(OBSERVER.getLatitude() + 1 * KM, OBSERVER.getLongitude()),
+                // first row of the ridge - the next one is hidden by it
+                new LatLonElev(46.0 - 1735 / 3600.0, OBSERVER.getLongitude()),
+                new LatLonElev(OBSERVER.getLatitude() + 3 * KM, OBSERVER.getLongitude()),
+                // outside of the radius
+                new LatLonElev(OBSERVER.getLatitude() - 25 * KM, OBSERVER.getLongitude()));
+        final boolean[] expected = {true, true, false, true, false, true, true, false, false};
+        
+        final boolean[] visibility = viewshed.getVisibility(targets);
+        for (int i = 0; i < targets.size(); i++) {
+            Assertions.assertEquals(expected[i], visibility[i], "Visibility for " + targets.get(i));
+            Assertions.assertEquals(expected[i], viewshed.isVisible(targets.get(i)));
+            if (i < targets.size() - 1) {
+                checkRasterVisibility(viewshed, targets.get(i), expected[i] ? Viewshed.VISIBLE : Viewshed.HIDDEN);
+            }
+        }
+        
+        // and the corner is outside the circle
+        Assertions.assertEquals(Viewshed.OUTSIDE, viewshed.getVisibility(0, 0));
+        Assertions.assertTrue(viewshed.isVisible(OBSERVER));
+        Assertions.assertTrue(viewshed.getVisibleCount() > 0);
+        
+        // higher targets can be seen from farther away
+        final Viewshed highTargets = new Viewshed(OBSERVER, Viewshed.DEFAULT_RADIUS, Viewshed.DEFAULT_OBSERVER_HEIGHT, 10.0, 
+                new SRTMDataOptions(SRTMDataOptions.SRTMDataAverage.NEAREST_ONLY, testpath.toString())).calculate();
+        Assertions.assertTrue(highTargets.isVisible(targets.get(2)));
+        Assertions.assertTrue(highTargets.getVisibleCount() > viewshed.getVisibleCount());
+    }
+    
+    @Test
+    public void testRealTerrain() {
+        // Paradise @ Mount Rainier
+        final LatLonElev paradise = new LatLonElev(46.786, -121.735);
+        final Instant startTime = Instant.now();
+        final Viewshed viewshed = getViewshed(paradise, Viewshed.DEFAULT_RADIUS, "src/test/resources").calculate();
+        final Duration duration = Duration.between(startTime, Instant.now());
+        System.out.println(String.format("Viewshed 20km on SRTM3: %d x %d cells, %d ms", viewshed.getRows(), viewshed.getColumns(), duration.toMillis()));
+        
+        Assertions.assertFalse(viewshed.noElevationData());
+        Assertions.assertEquals(3.0 / 3600.0, viewshed.getCellSize(), 1e-9);
+        
+        // summit area is visible from Paradise
+        int summitCount = 0;
+        for (int row = 0; row < viewshed.getRows(); row++) {
+            for (int col = 0; col < viewshed.getColumns(); col++) {
+                if (Math.abs(viewshed.getLatitude(row) - 46.8529) < 0.003 && 
+                        Math.abs(viewshed.getLongitude(col) + 121.7604) < 0.003 && 
+                        viewshed.getVisibility(row, col) == Viewshed.VISIBLE) {
+                    summitCount++;
+                }
+            }
+        }
+        Assertions.assertTrue(summitCount > 0);
+        
+        // some but not all is visible in the mountains
+        final int visibleCount = viewshed.getVisibleCount();
+        Assertions.assertTrue(visibleCount > 0);
+        Assertions.assertTrue(visibleCount < viewshed.getRows() * viewshed.getColumns() / 2);
+        
+        // raster and single rays mostly agree - raster rays don't hit each cell exactly
+        int agreeCount = 0;
+        int checkCount = 0;
+        for (int row = 0; row < viewshed.getRows(); row += 7) {
+            for (int col = 0; col < viewshed.getColumns(); col += 7) {
+                final byte value = viewshed.getVisibility(row, col);
+                if (value == Viewshed.OUTSIDE) {
+                    continue;
+                }
+                checkCount++;
+                if ((value == Viewshed.VISIBLE) == viewshed.isVisible(new LatLonElev(viewshed.getLatitude(row), viewshed.getLongitude(col)))) {
+                    agreeCount++;
+                }
+            }
+        }
+        Assertions.assertTrue(agreeCount > 0.95 * checkCount);
+    }
+    
+    @Test
+    public void testNoData() {
+        final Viewshed viewshed = getViewshed(new LatLonElev(0.5, 0.5), Viewshed.DEFAULT_RADIUS, "src/test/resources").calculate();
+        
+        Assertions.assertTrue(viewshed.noElevationData());
+        Assertions.assertEquals(0, viewshed.getRows());
+        Assertions.assertEquals(0, viewshed.getVisibleCount());
+        Assertions.assertFalse(viewshed.isVisible(new LatLonElev(0.5, 0.5)));
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.gpx.edit.sun;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.GregorianCalendar;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import tf.gpx.edit.elevation.SRTMDataOptions;
+import tf.gpx.edit.leafletmap.LatLonElev;
+import tf.gpx.edit.panorama.Horizon;
+import tf.gpx.edit.panorama.Panorama;
+
+/**
+ * Test parallel calculation of sunrise / sunset for a date range against the day by day calculation.
+ * 
+ * @author thomas
+ */
+public class TestSunPathForDateRange {
+    private final static ZoneId PACIFIC = ZoneId.of("America/Los_Angeles");
+    
+    private static long toMillis(final GregorianCalendar time) {
+        return (time != null) ? time.getTimeInMillis() : SunPathForDateRange.NO_TIME;
+    }
+
+    private Horizon getHorizon(final LatLonElev location) {
+        return new Panorama(
+                location, 
+                Panorama.DISTANCE_FROM, Panorama.DISTANCE_TO, Panorama.DISTANCE_STEP, 
+                Panorama.ANGEL_FROM, Panorama.ANGEL_TO, Panorama.ANGEL_STEP, 
+                new SRTMDataOptions(SRTMDataOptions.SRTMDataAverage.NEAREST_ONLY, "src/test/resources")).setHorizonCache(null).getHorizon();
+    }
+    
+    @Test
+    public void testYearWithHorizon() {
+        // Paradise @ Mount Rainier
+        final LatLonElev location = new LatLonElev(46.786, -121.735);
+        final Horizon horizon = getHorizon(location);
+        final LocalDate start = LocalDate.of(2025, 1, 1);
+        final LocalDate end = LocalDate.of(2025, 12, 31);
+
+        // day by day
+        Instant startTime = Instant.now();
+        final SunPathForDay[] sunPaths = new SunPathForDay[365];
+        for (int i = 0; i < sunPaths.length; i++) {
+            sunPaths[i] = new SunPathForDay(GregorianCalendar.from(start.plusDays(i).atStartOfDay(PACIFIC)), location);
+            sunPaths[i].calcSunriseSunsetForHorizon(horizon);
+        }
+        final Duration sequential = Duration.between(startTime, Instant.now());
+
+        // all at once
+        startTime = Instant.now();
+        final SunPathForDateRange dateRange = new SunPathForDateRange(location, horizon, start, end, PACIFIC).calculate();
+        final Duration parallel = Duration.between(startTime, Instant.now());
+        // timing only for information - same work per day, so any speedup depends on the number of cores available
+        System.out.println(String.format("Sun path for year: day by day %d ms, date range %d ms", sequential.toMillis(), parallel.toMillis()));
+
+        Assertions.assertTrue(dateRange.isCalculated());
+        Assertions.assertEquals(365, dateRange.getDayCount());
+        Assertions.assertEquals(end, dateRange.getDate(364));
+        
+        for (int i = 0; i < sunPaths.length; i++) {
+            final SunPathForDay sunPath = sunPaths[i];
+            Assertions.assertEquals(toMillis(sunPath.getSunrise()), dateRange.getSunrise(i));
+            Assertions.assertEquals(toMillis(sunPath.getSunset()), dateRange.getSunset(i));
+            Assertions.assertEquals(toMillis(sunPath.getFirstSunriseAboveHorizon()), dateRange.getFirstSunriseAboveHorizon(i));
+            Assertions.assertEquals(toMillis(sunPath.getLastSunsetBelowHorizon()), dateRange.getLastSunsetBelowHorizon(i));
+            Assertions.assertEquals(sunPath.sunNeverRises(), dateRange.sunNeverRises(i));
+            Assertions.assertEquals(sunPath.sunNeverShows(), dateRange.sunNeverShows(i));
+            
+            // mountains around us: sun shows later and goes earlier
+            Assertions.assertTrue(dateRange.getFirstSunriseAboveHorizon(i) >= dateRange.getSunrise(i));
+            Assertions.assertTrue(dateRange.getLastSunsetBelowHorizon(i) <= dateRange.getSunset(i));
+            Assertions.assertEquals(
+                    (sunPath.getSunset().getTimeInMillis() - sunPath.getSunrise().getTimeInMillis()) / 1000, 
+                    dateRange.getDaylight(i).toSeconds());
+            Assertions.assertTrue(dateRange.getSunlight(i).compareTo(dateRange.getDaylight(i)) <= 0);
+            Assertions.assertTrue(dateRange.getSunlight(i).toSeconds() > 0);
+        }
+        
+        // longer days in summer
+        Assertions.assertTrue(dateRange.getDaylight(171).compareTo(dateRange.getDaylight(354)) > 0);
+        Assertions.assertTrue(dateRange.getSunlight(171).compareTo(dateRange.getSunlight(354)) > 0);
+    }
+
+    @Test
+    public void testWithoutHorizon() {
+        // Paradise @ Mount Rainier - but without the mountains around us
+        final LatLonElev location = new LatLonElev(46.786, -121.735);
+        final SunPathForDateRange dateRange = 
+                new SunPathForDateRange(location, null, LocalDate.of(2025, 1, 1), LocalDate.of(2025, 12, 31), PACIFIC).calculate();
+        
+        Assertions.assertEquals(365, dateRange.getDayCount());
+        for (int i = 0; i < dateRange.getDayCount(); i++) {
+            Assertions.assertFalse(dateRange.sunNeverRises(i));
+            Assertions.assertFalse(dateRange.sunNeverSets(i));
+            Assertions.assertNotEquals(SunPathForDateRange.NO_TIME, dateRange.getSunrise(i));
+            Assertions.assertNotEquals(SunPathForDateRange.NO_TIME, dateRange.getSunset(i));
+            // nothing to hide the sun: sunlight is daylight
+            Assertions.assertEquals(dateRange.getDaylight(i), dateRange.getSunlight(i));
+            Assertions.assertTrue(dateRange.getSunlight(i).compareTo(Duration.ofHours(8)) > 0);
+            Assertions.assertTrue(dateRange.getSunlight(i).compareTo(Duration.ofHours(16)) < 0);
+        }
+        
+        // longer days in summer
+        Assertions.assertTrue(dateRange.getSunlight(171).compareTo(dateRange.getSunlight(354)) > 0);
+    }
+
+    @Test
+    public void testPolarWithoutHorizon() {
+        // Tromso
+        final LatLonElev location = new LatLonElev(69.6492, 18.9553);
+        final ZoneId zone = ZoneId.of("Europe/Oslo");
+        final SunPathForDateRange dateRange = new SunPathForDateRange(location, null, LocalDate.of(2025, 6, 20), LocalDate.of(2025, 6, 21), zone).calculate();
+
+        Assertions.assertEquals(2, dateRange.getDayCount());
+        for (int i = 0; i < dateRange.getDayCount(); i++) {
+            // midnight sun
+            Assertions.assertTrue(dateRange.sunNeverSets(i));
+            Assertions.assertEquals(SunPathForDateRange.NO_TIME, dateRange.getSunrise(i));
+            Assertions.assertEquals(SunPathForDateRange.NO_TIME, dateRange.getSunset(i));
+            Assertions.assertEquals(Duration.ofHours(24), dateRange.getDaylight(i));
+            Assertions.assertEquals(Duration.ofHours(24), dateRange.getSunlight(i));
+        }
+
+        final SunPathForDateRange year = SunPathForDateRange.forYear(location, null, 2025);
+        Assertions.assertEquals(365, year.getDayCount());
+        Assertions.assertFalse(year.isCalculated());
+        Assertions.assertEquals(LocalDate.of(2025, 1, 1), year.getDate(0));
+        Assertions.assertEquals(LocalDate.of(2025, 12, 31), year.getDate(364));
+        year.calculate();
+        Assertions.assertTrue(year.isCalculated());
+        // midnight sun around June 21st, polar night around December 21st - weeks long, so the time zone doesn't matter
+        Assertions.assertTrue(year.sunNeverSets(171));
+        Assertions.assertTrue(year.sunNeverRises(354));
+        Assertions.assertFalse(year.sunNeverSets(79));
+        Assertions.assertFalse(year.sunNeverRises(79));
+
+        // only calculate the polar night
+        final SunPathForDateRange polarNight = new SunPathForDateRange(location, null, LocalDate.of(2025, 12, 21), LocalDate.of(2025, 12, 21), zone).calculate();
+        Assertions.assertTrue(polarNight.sunNeverRises(0));
+        Assertions.assertTrue(polarNight.sunNeverShows(0));
+        Assertions.assertEquals(Duration.ZERO, polarNight.getDaylight(0));
+        Assertions.assertEquals(Duration.ZERO, polarNight.getSunlight(0));
+    }
+}
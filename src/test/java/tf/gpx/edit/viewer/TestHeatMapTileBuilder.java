@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.gpx.edit.viewer;
+
+import eu.hansolo.fx.heatmap.ColorMapping;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Random;
+import javax.imageio.ImageIO;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import tf.gpx.edit.leafletmap.WebMercatorProjection;
+
+/**
+ * Test creation of heat map tiles from GPX files and serving them.
+ *
+ * @author thomas
+ */
+public class TestHeatMapTileBuilder {
+    private final static int ZOOM = 12;
+    private final static double LATITUDE = 48.137154;
+    private final static double LONGITUDE = 11.576124;
+    
+    private Path testpath;
+    
+    @BeforeEach
+    public void setUp() throws IOException {
+        testpath = Files.createTempDirectory("TestGPXEditor");
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        // delete temp directory + files
+        FileUtils.deleteDirectory(testpath.toFile());
+    }
+    
+    // a track going east with one point every approx. 10m and a few laps
+    private File createGPXFile(final String name, final int laps) throws IOException {
+        final File result = testpath.resolve(name).toFile();
+        try (PrintWriter out = new PrintWriter(result, "UTF-8")) {
+            out.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+            out.println("<gpx version=\"1.1\" creator=\"Test\" xmlns=\"http://www.topografix.com/GPX/1/1\">");
+            out.println("<trk><name>Test</name>");
+            for (int lap = 0; lap < laps; lap++) {
+                out.println("<trkseg>");
+                for (int i = 0; i < 1000; i++) {
+                    out.println(String.format("<trkpt lat=\"%.6f\" lon=\"%.6f\"><ele>500.0</ele></trkpt>", LATITUDE, LONGITUDE + i * 0.0001));
+                }
+                out.println("</trkseg>");
+            }
+            out.println("</trk>");
+            // waypoints and routes are not part of the heat map
+            out.println(String.format("<wpt lat=\"%.6f\" lon=\"%.6f\"><name>Somewhere</name></wpt>", LATITUDE + 1.0, LONGITUDE));
+            out.println("</gpx>");
+        }
+        return result;
+    }
+    
+    private static int getTileNumber(final double world, final int zoom) {
+        return (int) Math.floor(world * (1 << zoom));
+    }
+    
+    private static int getTilePixel(final double world, final int zoom) {
+        return (int) Math.floor(world * (1 << zoom) * HeatMapTileBuilder.TILE_SIZE) % HeatMapTileBuilder.TILE_SIZE;
+    }
+    
+    private static int getAlpha(final BufferedImage image, final double worldX, final double worldY, final int zoom) {
+        return (image.getRGB(getTilePixel(worldX, zoom), getTilePixel(worldY, zoom)) >>> 24) & 0xFF;
+    }
+    
+    private HeatMapTileBuilder buildTiles(final String name, final int bufferSize, final File... gpxFiles) {
+        final HeatMapTileBuilder builder = new HeatMapTileBuilder(testpath.resolve(name), ZOOM, ColorMapping.BLUE_CYAN_GREEN_YELLOW_RED, bufferSize);
+        for (File gpxFile : gpxFiles) {
+            Assertions.assertTrue(builder.addFile(gpxFile));
+        }
+        Assertions.assertTrue(builder.build());
+        return builder;
+    }
+    
+    @Test
+    public void testBuildTiles() throws IOException {
+        final File gpxFile1 = createGPXFile("test1.gpx", 1);
+        final File gpxFile2 = createGPXFile("test2.gpx", 5);
+        
+        final HeatMapTileBuilder builder = buildTiles("tiles", HeatMapTileBuilder.DEFAULT_BUFFER_SIZE, gpxFile1, gpxFile2);
+        Assertions.assertEquals(2, builder.getFileCount());
+        Assertions.assertEquals(6000, builder.getPointCount());
+        Assertions.assertEquals(1, builder.getRunCount());
+        // one tile per zoom level at least
+        Assertions.assertTrue(builder.getTileCount() > ZOOM);
+        
+        final double worldX = WebMercatorProjection.longitudeToX(LONGITUDE + 0.05);
+        final double worldY = WebMercatorProjection.latitudeToY(LATITUDE);
+        for (int zoom = 0; zoom <= ZOOM; zoom++) {
+            final File tileFile = HeatMapTiles.getTileFile(builder.getTargetPath(), zoom, getTileNumber(worldX, zoom), getTileNumber(worldY, zoom));
+            Assertions.assertTrue(tileFile.isFile(), "Tile for zoom " + zoom);
+            
+            final BufferedImage image = ImageIO.read(tileFile);
+            Assertions.assertEquals(HeatMapTileBuilder.TILE_SIZE, image.getWidth());
+            Assertions.assertTrue(getAlpha(image, worldX, worldY, zoom) > 0, "Track on zoom " + zoom);
+        }
+        
+        // nothing where the waypoint is
+        final double wptY = WebMercatorProjection.latitudeToY(LATITUDE + 1.0);
+        Assertions.assertFalse(HeatMapTiles.getTileFile(builder.getTargetPath(), ZOOM, getTileNumber(worldX, ZOOM), getTileNumber(wptY, ZOOM)).exists());
+        
+        // more laps are brighter: compare to the first file only
+        final HeatMapTileBuilder single = buildTiles("single", HeatMapTileBuilder.DEFAULT_BUFFER_SIZE, gpxFile1);
+        final BufferedImage singleImage = ImageIO.read(HeatMapTiles.getTileFile(single.getTargetPath(), ZOOM, getTileNumber(worldX, ZOOM), getTileNumber(worldY, ZOOM)));
+        final BufferedImage multipleImage = ImageIO.read(HeatMapTiles.getTileFile(builder.getTargetPath(), ZOOM, getTileNumber(worldX, ZOOM), getTileNumber(worldY, ZOOM)));
+        Assertions.assertTrue(getAlpha(multipleImage, worldX, worldY, ZOOM) > getAlpha(singleImage, worldX, worldY, ZOOM));
+        
+        // a real file
+        final HeatMapTileBuilder real = buildTiles("real", HeatMapTileBuilder.DEFAULT_BUFFER_SIZE, new File("src/test/resources/test1.gpx"));
+        Assertions.assertTrue(real.getPointCount() > 0);
+        Assertions.assertTrue(HeatMapTiles.getTileFile(real.getTargetPath(), 0, 0, 0).isFile());
+    }
+    
+    @Test
+    public void testSmallBuffer() throws IOException {
+        final File gpxFile1 = createGPXFile("test1.gpx", 3);
+        final File gpxFile2 = createGPXFile("test2.gpx", 2);
+        
+        final HeatMapTileBuilder large = buildTiles("large", HeatMapTileBuilder.DEFAULT_BUFFER_SIZE, gpxFile1, gpxFile2);
+        // smallest possible buffer - lots of runs that need more than one merge pass
+        final HeatMapTileBuilder small = buildTiles("small", 1, gpxFile1, gpxFile2);
+        
+        Assertions.assertEquals(1, large.getRunCount());
+        Assertions.assertTrue(small.getRunCount() > 64);
+        Assertions.assertEquals(large.getPixelCount(), small.getPixelCount());
+        Assertions.assertEquals(large.getTileCount(), small.getTileCount());
+        
+        // same result, independent of the buffer size
+        final Collection<File> tiles = FileUtils.listFiles(large.getTargetPath().toFile(), new String[] {"png"}, true);
+        Assertions.assertEquals(large.getTileCount(), tiles.size());
+        for (File tile : tiles) {
+            final File other = small.getTargetPath().resolve(large.getTargetPath().relativize(tile.toPath())).toFile();
+            Assertions.assertTrue(FileUtils.contentEquals(tile, other), "Tile " + tile);
+        }
+        
+        // a new build removes old tiles
+        final HeatMapTileBuilder empty = buildTiles("large", HeatMapTileBuilder.DEFAULT_BUFFER_SIZE);
+        Assertions.assertEquals(0, empty.getTileCount());
+        Assertions.assertTrue(FileUtils.listFiles(large.getTargetPath().toFile(), new String[] {"png"}, true).isEmpty());
+    }
+    
+    @Test
+    public void testTileProvider() throws IOException {
+        final HeatMapTileBuilder builder = buildTiles("tiles", HeatMapTileBuilder.DEFAULT_BUFFER_SIZE, createGPXFile("test1.gpx", 1));
+        final HeatMapTiles tiles = new HeatMapTiles(builder.getTargetPath());
+        Assertions.assertEquals(ZOOM, tiles.getPyramidZoom());
+        
+        final double worldX = WebMercatorProjection.longitudeToX(LONGITUDE + 0.05);
+        final double worldY = WebMercatorProjection.latitudeToY(LATITUDE);
+        
+        // tiles on disk as they are
+        final File tileFile = HeatMapTiles.getTileFile(builder.getTargetPath(), ZOOM, getTileNumber(worldX, ZOOM), getTileNumber(worldY, ZOOM));
+        Assertions.assertArrayEquals(Files.readAllBytes(tileFile.toPath()), tiles.getTile(ZOOM, getTileNumber(worldX, ZOOM), getTileNumber(worldY, ZOOM)));
+        
+        // higher zoom levels are scaled from the highest one
+        for (int zoom = ZOOM + 1; zoom <= ZOOM + 3; zoom++) {
+            final byte[] tile = tiles.getTile(zoom, getTileNumber(worldX, zoom), getTileNumber(worldY, zoom));
+            final BufferedImage image = ImageIO.read(new ByteArrayInputStream(tile));
+            Assertions.assertEquals(HeatMapTiles.TILE_SIZE, image.getWidth());
+            Assertions.assertTrue(getAlpha(image, worldX, worldY, zoom) > 0, "Track on zoom " + zoom);
+        }
+        
+        // empty where we don't have anything
+        final BufferedImage empty = ImageIO.read(new ByteArrayInputStream(tiles.getTile(ZOOM, 0, 0)));
+        Assertions.assertEquals(0, getAlpha(empty, 0.0, 0.0, ZOOM));
+        
+        // and nothing for invalid tiles
+        Assertions.assertNull(tiles.getTile(-1, 0, 0));
+        Assertions.assertNull(tiles.getTile(2, 4, 0));
+        Assertions.assertNull(tiles.getTile(HeatMapTiles.MAX_ZOOM + 1, 0, 0));
+    }
+    
+    @Test
+    public void testManyPoints() {
+        final int count = 10000000;
+        final Random random = new Random(42);
+        final HeatMapTileBuilder builder = new HeatMapTileBuilder(testpath.resolve("tiles"), HeatMapTileBuilder.DEFAULT_MAX_ZOOM, ColorMapping.BLUE_CYAN_GREEN_YELLOW_RED);
+        
+        final Instant startTime = Instant.now();
+        // random walk with approx. 5m steps and a new track every 10000 points
+        double latitude = LATITUDE;
+        double longitude = LONGITUDE;
+        for (int i = 0; i < count; i++) {
+            if (i % 10000 == 0) {
+                builder.endSegment();
+                latitude = LATITUDE + random.nextGaussian() * 0.05;
+                longitude = LONGITUDE + random.nextGaussian() * 0.05;
+            }
+            latitude += random.nextGaussian() * 0.00005;
+            longitude += random.nextGaussian() * 0.00005;
+            builder.addPoint(latitude, longitude);
+        }
+        Assertions.assertTrue(builder.build());
+        final Duration duration = Duration.between(startTime, Instant.now());
+        System.out.println(String.format("%s in %d ms", builder.toString(), duration.toMillis()));
+        
+        Assertions.assertEquals(count, builder.getPointCount());
+        Assertions.assertTrue(builder.getRunCount() > 1);
+        Assertions.assertTrue(builder.getTileCount() > HeatMapTileBuilder.DEFAULT_MAX_ZOOM);
+    }
+}
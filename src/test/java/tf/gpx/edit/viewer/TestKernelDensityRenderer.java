@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.gpx.edit.viewer;
+
+import eu.hansolo.fx.heatmap.ColorMapping;
+import eu.hansolo.fx.heatmap.KernelDensityRenderer;
+import eu.hansolo.fx.heatmap.OpacityDistribution;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Random;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test the kernel density rendering of the heat map.
+ *
+ * @author thomas
+ */
+public class TestKernelDensityRenderer {
+    private final static int WIDTH = 100;
+    private final static int HEIGHT = 80;
+    private final static double RADIUS = 15.0;
+    
+    private final KernelDensityRenderer renderer = new KernelDensityRenderer();
+    private final int[] colors = KernelDensityRenderer.getColorTable(ColorMapping.BLUE_CYAN_GREEN_YELLOW_RED);
+    
+    private static int getAlpha(final KernelDensityRenderer.Frame frame, final int x, final int y) {
+        return (frame.getPixels()[y * frame.getWidth() + x] >>> 24) & 0xFF;
+    }
+    
+    private KernelDensityRenderer.Frame render(final double[] x, final double[] y) {
+        return renderer.render(x, y, x.length, WIDTH, HEIGHT, RADIUS, OpacityDistribution.CUSTOM, colors, true);
+    }
+    
+    @Test
+    public void testSingleEvent() {
+        final KernelDensityRenderer.Frame frame = render(new double[] {50.5}, new double[] {40.5});
+        
+        Assertions.assertEquals(WIDTH, frame.getWidth());
+        Assertions.assertEquals(HEIGHT, frame.getHeight());
+        
+        // peak at the event and symmetric around it
+        final int peak = getAlpha(frame, 50, 40);
+        Assertions.assertEquals(KernelDensityRenderer.PEAK_BRIGHTNESS * 255, peak, 1.0);
+        for (int delta = 1; delta < 10; delta++) {
+            Assertions.assertEquals(getAlpha(frame, 50 - delta, 40), getAlpha(frame, 50 + delta, 40));
+            Assertions.assertEquals(getAlpha(frame, 50, 40 - delta), getAlpha(frame, 50, 40 + delta));
+            Assertions.assertEquals(getAlpha(frame, 50 + delta, 40), getAlpha(frame, 50, 40 + delta));
+            Assertions.assertTrue(getAlpha(frame, 50 + delta, 40) <= getAlpha(frame, 50 + delta - 1, 40));
+        }
+        
+        // nothing outside of the radius
+        Assertions.assertEquals(0, getAlpha(frame, 50 + (int) RADIUS + 1, 40));
+        Assertions.assertEquals(0, getAlpha(frame, 0, 0));
+        
+        // events outside are ignored
+        final KernelDensityRenderer.Frame empty = render(new double[] {-50.0, WIDTH + 10.0}, new double[] {40.0, 40.0});
+        for (int pixel : empty.getPixels()) {
+            Assertions.assertEquals(0, pixel);
+        }
+    }
+    
+    @Test
+    public void testDensity() {
+        final KernelDensityRenderer.Frame single = render(new double[] {50.5}, new double[] {40.5});
+        final KernelDensityRenderer.Frame multiple = render(new double[] {50.5, 50.5, 50.5}, new double[] {40.5, 40.5, 40.5});
+        
+        // more events are brighter - but never more than opaque
+        Assertions.assertTrue(getAlpha(multiple, 50, 40) > getAlpha(single, 50, 40));
+        Assertions.assertTrue(getAlpha(multiple, 55, 40) > getAlpha(single, 55, 40));
+        Assertions.assertTrue(getAlpha(multiple, 50, 40) <= 255);
+        
+        // without fading all touched pixels are opaque
+        final KernelDensityRenderer.Frame opaque = renderer.render(new double[] {50.5}, new double[] {40.5}, 1, WIDTH, HEIGHT, RADIUS, OpacityDistribution.CUSTOM, colors, false);
+        Assertions.assertEquals(255, getAlpha(opaque, 55, 40));
+    }
+    
+    @Test
+    public void testKernel() {
+        final float[] exponential = KernelDensityRenderer.getKernel(RADIUS, OpacityDistribution.EXPONENTIAL);
+        final float[] custom = KernelDensityRenderer.getKernel(RADIUS, OpacityDistribution.CUSTOM);
+        final float[] linear = KernelDensityRenderer.getKernel(RADIUS, OpacityDistribution.LINEAR);
+        
+        Assertions.assertEquals(1.0f, custom[0]);
+        Assertions.assertTrue(custom.length <= RADIUS + 1);
+        
+        // more spread for wider distributions
+        Assertions.assertTrue(exponential.length <= custom.length);
+        Assertions.assertTrue(exponential[3] < custom[3]);
+        Assertions.assertTrue(custom[3] < linear[3]);
+    }
+    
+    @Test
+    public void testPerformance() {
+        final int width = 1200;
+        final int height = 800;
+        final int count = 1000000;
+        final Random random = new Random(42);
+        
+        final double[] x = new double[count];
+        final double[] y = new double[count];
+        for (int i = 0; i < count; i++) {
+            x[i] = width / 2.0 + random.nextGaussian() * width / 6.0;
+            y[i] = height / 2.0 + random.nextGaussian() * height / 6.0;
+        }
+        
+        // warm up
+        renderer.render(x, y, count, width, height, RADIUS, OpacityDistribution.CUSTOM, colors, true);
+        
+        final Instant startTime = Instant.now();
+        final KernelDensityRenderer.Frame frame = renderer.render(x, y, count, width, height, RADIUS, OpacityDistribution.CUSTOM, colors, true);
+        final Duration duration = Duration.between(startTime, Instant.now());
+        System.out.println(String.format("Heat map with %d events on %d x %d pixels: %d ms", count, width, height, duration.toMillis()));
+        
+        Assertions.assertTrue(getAlpha(frame, width / 2, height / 2) > 200);
+    }
+}